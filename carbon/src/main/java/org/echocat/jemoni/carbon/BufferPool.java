@@ -0,0 +1,134 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of equally sized buffers. Buffers are {@link #acquire() acquired} by the converting thread and
+ * {@link #release(ByteBuffer) released} by the writing thread after they were written. If the pool is empty a new
+ * buffer is allocated, if it is full a released buffer is left to the garbage collector.
+ */
+public class BufferPool {
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final int _bufferSize;
+    private final boolean _direct;
+    private final BlockingQueue<ByteBuffer> _buffers;
+
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _discards = new AtomicLong();
+
+    public BufferPool(@Nonnegative int bufferSize, boolean direct) {
+        this(bufferSize, direct, DEFAULT_CAPACITY);
+    }
+
+    public BufferPool(@Nonnegative int bufferSize, boolean direct, @Nonnegative int capacity) {
+        _bufferSize = bufferSize;
+        _direct = direct;
+        _buffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @Nonnegative
+    public int getBufferSize() {
+        return _bufferSize;
+    }
+
+    public boolean isDirect() {
+        return _direct;
+    }
+
+    /**
+     * @return a cleared buffer of {@link #getBufferSize() buffer size}.
+     */
+    @Nonnull
+    public ByteBuffer acquire() {
+        ByteBuffer result = _buffers.poll();
+        if (result != null) {
+            _hits.incrementAndGet();
+            result.clear();
+        } else {
+            _misses.incrementAndGet();
+            result = allocate(_bufferSize, _direct);
+        }
+        return result;
+    }
+
+    /**
+     * @return a cleared buffer with at least the given size. Buffers bigger than the {@link #getBufferSize() buffer
+     * size} are not pooled.
+     */
+    @Nonnull
+    public ByteBuffer acquire(@Nonnegative int minimumSize) {
+        return minimumSize <= _bufferSize ? acquire() : allocate(minimumSize, _direct);
+    }
+
+    /**
+     * Gives the buffer back to the pool. The buffer must not be used afterwards.
+     */
+    public void release(@Nonnull ByteBuffer buffer) {
+        if (buffer.capacity() != _bufferSize || buffer.isDirect() != _direct || !_buffers.offer(buffer)) {
+            _discards.incrementAndGet();
+        }
+    }
+
+    @Nonnegative
+    public int getAvailable() {
+        return _buffers.size();
+    }
+
+    /**
+     * @return the number of {@link #acquire() acquisitions} served by a pooled buffer.
+     */
+    @Nonnegative
+    public long getHits() {
+        return _hits.get();
+    }
+
+    /**
+     * @return the number of {@link #acquire() acquisitions} which required the allocation of a new buffer.
+     */
+    @Nonnegative
+    public long getMisses() {
+        return _misses.get();
+    }
+
+    /**
+     * @return the number of {@link #release(ByteBuffer) released} buffers which were not pooled because the pool was
+     * full or they did not fit.
+     */
+    @Nonnegative
+    public long getDiscards() {
+        return _discards.get();
+    }
+
+    @Nonnull
+    protected static ByteBuffer allocate(@Nonnegative int size, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{bufferSize=" + _bufferSize + ", direct=" + _direct + ", available=" + getAvailable() + "}";
+    }
+
+}
@@ -0,0 +1,287 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon;
+
+import org.echocat.jemoni.carbon.aggregation.AggregationFunction;
+import org.echocat.jemoni.carbon.aggregation.AggregationRule;
+import org.echocat.jemoni.carbon.capture.CaptureFile;
+import org.echocat.jemoni.carbon.protocol.Protocol;
+import org.echocat.jomon.runtime.util.Duration;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.echocat.jemoni.carbon.aggregation.AggregationRule.aggregate;
+
+/**
+ * Receives measure points like carbon and forwards them through a {@link CarbonWriter} - a replacement for a
+ * carbon-aggregator or carbon-relay on each host. Aggregation, batching, backpressure and reconnects are all
+ * configured at the writer: paths matching one of its {@link CarbonWriter#getAggregationRules() aggregation rules}
+ * are combined over its {@link CarbonWriter#getAggregationInterval() aggregation interval}, all others are forwarded
+ * as they are. The receiving threads never wait for the writer: if its queue is full the measure points are
+ * {@link #getDropped() dropped}, so one slow target could not stall all connections of an IO loop.
+ *
+ * <p>The relay could run inside an application or standalone by its {@link #main(String...) main method}.</p>
+ */
+public class CarbonRelay extends VirtualCarbonServer {
+
+    protected static final String USAGE = "Usage: " + CarbonRelay.class.getName() + " --target <host>:<port>"
+        + " [--listen [<host>:]<port>] [--pickle <port>] [--udp <port>] [--protocol plaintext|pickle] [--ioThreads <count>]"
+        + " [--interval <duration>] [--rule <pattern>=<function>]... [--capture <directory>]";
+
+    private final CarbonWriter _writer;
+    private final AtomicLong _forwarded = new AtomicLong();
+    private final AtomicLong _dropped = new AtomicLong();
+
+    public CarbonRelay(@Nonnull InetSocketAddress address, @Nonnegative int ioThreads, @Nonnull CarbonWriter writer) {
+        super(address, ioThreads, false);
+        _writer = writer;
+        start();
+    }
+
+    public CarbonRelay(@Nonnull InetSocketAddress address, @Nonnull CarbonWriter writer) {
+        this(address, DEFAULT_IO_THREADS, writer);
+    }
+
+    @Nonnull
+    public CarbonWriter getWriter() {
+        return _writer;
+    }
+
+    /**
+     * @return the number of measure points which were passed to the {@link #getWriter() writer}.
+     */
+    @Nonnegative
+    public long getForwarded() {
+        return _forwarded.get();
+    }
+
+    /**
+     * @return the number of measure points which were dropped because the queue of the {@link #getWriter() writer}
+     * was full or the writer was not running.
+     */
+    @Nonnegative
+    public long getDropped() {
+        return _dropped.get();
+    }
+
+    @Override
+    protected void consume(@Nonnull MeasurePoint measurePoint) {
+        if (_writer.tryWrite(measurePoint)) {
+            _forwarded.incrementAndGet();
+        } else {
+            _dropped.incrementAndGet();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + getAddress() + " -> " + _writer.getAddress() + "}";
+    }
+
+    public static void main(String... args) throws Exception {
+        final CarbonWriter writer = new CarbonWriter();
+        final Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+        options.applyTo(writer);
+        final CarbonRelay relay = new CarbonRelay(options.getListen(), options.getIoThreads(), writer);
+        boolean success = false;
+        try {
+            if (options.getPicklePort() != null) {
+                relay.openPickleListener(options.getPicklePort());
+            }
+            if (options.getUdpPort() != null) {
+                relay.openUdpListener(options.getUdpPort());
+            }
+            writer.init();
+            success = true;
+        } finally {
+            if (!success) {
+                try {
+                    relay.close();
+                } finally {
+                    writer.close();
+                }
+            }
+        }
+        final CaptureFile capture = options.getCapture() != null ? new CaptureFile(options.getCapture()) : null;
+        relay.setCapture(capture);
+        final CountDownLatch closed = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread("CarbonRelay.shutdown") { @Override public void run() {
+            try {
+                relay.close();
+                writer.flush();
+                writer.close();
+                if (capture != null) {
+                    capture.close();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                closed.countDown();
+            }
+        }});
+        System.out.println("Started " + relay + ".");
+        closed.await();
+    }
+
+    /**
+     * Command line options of {@link #main(String...)}.
+     */
+    protected static class Options {
+
+        @Nonnull
+        public static Options parse(@Nonnull String... args) throws IllegalArgumentException {
+            final Options result = new Options();
+            for (int i = 0; i < args.length; i += 2) {
+                final String name = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value of " + name + ".");
+                }
+                final String value = args[i + 1];
+                if ("--target".equals(name)) {
+                    result._target = toAddress(value, null);
+                } else if ("--listen".equals(name)) {
+                    result._listen = toAddress(value, "0.0.0.0");
+                } else if ("--pickle".equals(name)) {
+                    result._picklePort = toInt(name, value);
+                } else if ("--udp".equals(name)) {
+                    result._udpPort = toInt(name, value);
+                } else if ("--protocol".equals(name)) {
+                    result._protocol = Protocol.valueOf(value);
+                } else if ("--ioThreads".equals(name)) {
+                    result._ioThreads = toInt(name, value);
+                } else if ("--interval".equals(name)) {
+                    result._interval = new Duration(value);
+                } else if ("--rule".equals(name)) {
+                    result._rules.add(toRule(value));
+                } else if ("--capture".equals(name)) {
+                    result._capture = new File(value);
+                } else {
+                    throw new IllegalArgumentException("Unknown option: " + name);
+                }
+            }
+            if (result._target == null) {
+                throw new IllegalArgumentException("Missing --target.");
+            }
+            return result;
+        }
+
+        private InetSocketAddress _target;
+        private InetSocketAddress _listen = new InetSocketAddress(2003);
+        private Integer _picklePort;
+        private Integer _udpPort;
+        private Protocol _protocol = Protocol.plaintext;
+        private int _ioThreads = DEFAULT_IO_THREADS;
+        private Duration _interval = CarbonWriter.DEFAULT_AGGREGATION_INTERVAL;
+        private final List<AggregationRule> _rules = new ArrayList<>();
+        private File _capture;
+
+        @Nonnull
+        public InetSocketAddress getTarget() {
+            return _target;
+        }
+
+        @Nonnull
+        public InetSocketAddress getListen() {
+            return _listen;
+        }
+
+        @Nullable
+        public Integer getPicklePort() {
+            return _picklePort;
+        }
+
+        @Nullable
+        public Integer getUdpPort() {
+            return _udpPort;
+        }
+
+        @Nonnull
+        public Protocol getProtocol() {
+            return _protocol;
+        }
+
+        @Nonnegative
+        public int getIoThreads() {
+            return _ioThreads;
+        }
+
+        @Nonnull
+        public Duration getInterval() {
+            return _interval;
+        }
+
+        @Nonnull
+        public List<AggregationRule> getRules() {
+            return _rules;
+        }
+
+        @Nullable
+        public File getCapture() {
+            return _capture;
+        }
+
+        public void applyTo(@Nonnull CarbonWriter writer) {
+            writer.setAddress(_target);
+            writer.setProtocol(_protocol);
+            writer.setAggregationRules(_rules);
+            writer.setAggregationInterval(_interval);
+        }
+
+        @Nonnull
+        protected static InetSocketAddress toAddress(@Nonnull String value, @Nullable String defaultHost) throws IllegalArgumentException {
+            final int separator = value.lastIndexOf(':');
+            if (separator < 0 && defaultHost == null) {
+                throw new IllegalArgumentException("Expected <host>:<port> but got: " + value);
+            }
+            final String host = separator >= 0 ? value.substring(0, separator) : defaultHost;
+            return new InetSocketAddress(host, toInt("port", value.substring(separator + 1)));
+        }
+
+        @Nonnull
+        protected static AggregationRule toRule(@Nonnull String value) throws IllegalArgumentException {
+            final int separator = value.lastIndexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected <pattern>=<function> but got: " + value);
+            }
+            return aggregate(value.substring(0, separator), AggregationFunction.valueOf(value.substring(separator + 1)));
+        }
+
+        protected static int toInt(@Nonnull String name, @Nonnull String value) throws IllegalArgumentException {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Illegal " + name + ": " + value, e);
+            }
+        }
+
+    }
+
+}
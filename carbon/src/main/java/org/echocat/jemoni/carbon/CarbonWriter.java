@@ -14,6 +14,25 @@
 
 package org.echocat.jemoni.carbon;
 
+import org.echocat.jemoni.carbon.aggregation.AggregationRule;
+import org.echocat.jemoni.carbon.aggregation.Aggregator;
+import org.echocat.jemoni.carbon.protocol.Encoder;
+import org.echocat.jemoni.carbon.protocol.PathCache;
+import org.echocat.jemoni.carbon.protocol.Protocol;
+import org.echocat.jemoni.carbon.queue.BackpressurePolicy;
+import org.echocat.jemoni.carbon.queue.BackpressureStatistics;
+import org.echocat.jemoni.carbon.queue.RingBuffer;
+import org.echocat.jemoni.carbon.queue.RingBuffer.EntryFactory;
+import org.echocat.jemoni.carbon.queue.WaitStrategy;
+import org.echocat.jemoni.carbon.spill.SpillStore;
+import org.echocat.jemoni.carbon.transport.CircuitBreaker;
+import org.echocat.jemoni.carbon.transport.ConnectionState;
+import org.echocat.jemoni.carbon.transport.IncompleteWriteException;
+import org.echocat.jemoni.carbon.transport.TcpTransport;
+import org.echocat.jemoni.carbon.transport.Transport;
+import org.echocat.jemoni.carbon.transport.UdpTransport;
+import org.echocat.jemoni.jmx.JmxRegistry;
+import org.echocat.jemoni.jmx.RegistrationWithFacade;
 import org.echocat.jomon.runtime.concurrent.RetryForSpecifiedCountStrategy;
 import org.echocat.jomon.runtime.util.Duration;
 import org.slf4j.Logger;
@@ -21,29 +40,40 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.*;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
-import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.BlockingDeque;
+import java.util.RandomAccess;
 import java.util.concurrent.Callable;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
-import static java.lang.Character.isLetterOrDigit;
-import static java.lang.Character.isWhitespace;
+import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
 import static java.lang.Thread.currentThread;
-import static java.nio.ByteBuffer.allocate;
 import static java.nio.charset.Charset.forName;
 import static java.util.Arrays.asList;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.echocat.jemoni.carbon.protocol.Protocol.pickle;
+import static org.echocat.jemoni.carbon.protocol.Protocol.plaintext;
+import static org.echocat.jemoni.carbon.queue.BackpressurePolicy.block;
+import static org.echocat.jemoni.carbon.queue.BackpressurePolicy.dropNewest;
+import static org.echocat.jemoni.carbon.queue.WaitStrategy.park;
 import static org.echocat.jomon.runtime.concurrent.Retryer.executeWithRetry;
 import static org.echocat.jomon.runtime.concurrent.ThreadUtils.stop;
 import static org.echocat.jomon.runtime.util.ResourceUtils.closeQuietly;
@@ -52,29 +82,102 @@ public class CarbonWriter implements AutoCloseable {
 
     public static final Charset DEFAULT_CHARSET = forName("UTF-8");
     public static final Duration DEFAULT_MAX_BUFFER_LIFETIME = new Duration("10s");
+    public static final int DEFAULT_QUEUE_CAPACITY = RingBuffer.DEFAULT_CAPACITY;
+    public static final WaitStrategy DEFAULT_WAIT_STRATEGY = park;
+    public static final BackpressurePolicy DEFAULT_BACKPRESSURE_POLICY = block;
+    public static final Duration DEFAULT_BACKPRESSURE_TIMEOUT = new Duration("1s");
+    public static final Protocol DEFAULT_PROTOCOL = plaintext;
+    public static final long DEFAULT_SPILL_REPLAY_RATE = 1024 * 1024;
+    public static final Duration DEFAULT_STATISTICS_INTERVAL = new Duration("1m");
+    public static final Duration DEFAULT_AGGREGATION_INTERVAL = new Duration("1s");
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+    public static final long DEFAULT_TARGET_BATCH_SIZE = 64 * 1024;
+    public static final Duration DEFAULT_MINIMUM_RECONNECT_DELAY = CircuitBreaker.DEFAULT_MINIMUM_DELAY;
+    public static final Duration DEFAULT_MAXIMUM_RECONNECT_DELAY = CircuitBreaker.DEFAULT_MAXIMUM_DELAY;
+    public static final ThreadMode DEFAULT_THREAD_MODE = ThreadMode.platform;
+    public static final int DEFAULT_PATH_CACHE_CAPACITY = PathCache.DEFAULT_CAPACITY;
 
     private static final Logger LOG = LoggerFactory.getLogger(CarbonWriter.class);
 
-    protected static final int BUFFER_SIZE = 1024;
+    protected static final int MAX_CONVERSION_BATCH_SIZE = 256;
+    protected static final int MAX_ENQUEUE_BATCH_SIZE = 256;
+    protected static final long FLUSH_CHECK_INTERVAL_IN_NANOS = MILLISECONDS.toNanos(100);
+    protected static final long MAX_REQUEUED_BYTES = 100 * 1024 * 1024;
+    protected static final EntryFactory<Slot> SLOT_FACTORY = new EntryFactory<Slot>() { @Nonnull @Override public Slot create() {
+        return new Slot();
+    }};
     protected static final RetryForSpecifiedCountStrategy<Void> RETRYING_STRATEGY = new RetryForSpecifiedCountStrategy<Void>(2) { @Override protected boolean isExceptionThatForceRetry(@Nonnull Throwable e) {
-        return e instanceof IOException;
+        return e instanceof IOException && !(e instanceof ClosedByInterruptException) && !(e instanceof IncompleteWriteException);
     }};
 
-    private final BlockingDeque<MeasurePoint> _messageQueue = new LinkedBlockingDeque<>(1000);
     private List<ByteBuffer> _bufferQueue = new ArrayList<>();
-    private ByteBuffer _buffer = allocate(BUFFER_SIZE);
+    private ByteBuffer _buffer;
+    private Encoder _bufferEncoder;
+    private long _pendingBytes;
+    private long _firstPendingAt;
+    private final List<WriteFuture> _pendingFutures = new ArrayList<>();
+    private final List<WriteFuture> _aggregatedFutures = new ArrayList<>();
+    private FlushPolicy _flushPolicy = new FlushPolicy(DEFAULT_TARGET_BATCH_SIZE, MILLISECONDS.toNanos(DEFAULT_MAX_BUFFER_LIFETIME.toMilliSeconds()), nanoTime());
+    private Aggregator _aggregator;
+    private final Slot _aggregatedSlot = new Slot();
+    private final Aggregator.Target _aggregationTarget = new Aggregator.Target() {
+        @Override
+        public void write(@Nonnull String path, @Nonnull Tags tags, long value, long epochSeconds) {
+            _aggregatedSlot.setLong(path, value, epochSeconds);
+            _aggregatedSlot.setTags(tags);
+            convertAndPutIntoQueue(_aggregatedSlot);
+        }
+
+        @Override
+        public void write(@Nonnull String path, @Nonnull Tags tags, double value, long epochSeconds) {
+            _aggregatedSlot.setDouble(path, value, epochSeconds);
+            _aggregatedSlot.setTags(tags);
+            convertAndPutIntoQueue(_aggregatedSlot);
+        }
+    };
 
     private final Lock _lock = new ReentrantLock();
     private final Condition _condition = _lock.newCondition();
 
     private volatile InetSocketAddress _address;
     private volatile Charset _charset = DEFAULT_CHARSET;
+    private volatile Protocol _protocol = DEFAULT_PROTOCOL;
+    private volatile int _pathCacheCapacity = DEFAULT_PATH_CACHE_CAPACITY;
+    private volatile PathCache _pathCache = new PathCache(DEFAULT_PATH_CACHE_CAPACITY);
+    private volatile Encoder _encoder = DEFAULT_PROTOCOL.createEncoder(DEFAULT_CHARSET, _pathCache);
     private volatile Duration _maxBufferLifetime = DEFAULT_MAX_BUFFER_LIFETIME;
+    private volatile int _queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private volatile WaitStrategy _waitStrategy = DEFAULT_WAIT_STRATEGY;
+    private volatile ThreadMode _threadMode = DEFAULT_THREAD_MODE;
+    private volatile int _bufferSize = DEFAULT_BUFFER_SIZE;
+    private volatile long _targetBatchSize = DEFAULT_TARGET_BATCH_SIZE;
+    private volatile boolean _directBuffers;
+    private volatile int _bufferPoolCapacity = BufferPool.DEFAULT_CAPACITY;
+    private volatile BufferPool _bufferPool = new BufferPool(DEFAULT_BUFFER_SIZE, false);
+
+    private volatile RingBuffer<Slot> _queue;
+
+    private volatile Transport _transport = new TcpTransport();
+    private volatile BackpressurePolicy _backpressurePolicy = DEFAULT_BACKPRESSURE_POLICY;
+    private volatile Duration _backpressureTimeout = DEFAULT_BACKPRESSURE_TIMEOUT;
+    private volatile long _backpressureTimeoutInNanos = MILLISECONDS.toNanos(DEFAULT_BACKPRESSURE_TIMEOUT.toMilliSeconds());
+    private final BackpressureStatistics _backpressureStatistics = new BackpressureStatistics();
+    private final CarbonWriterStatistics _statistics = new CarbonWriterStatistics(this);
+    private volatile String _statisticsPath;
+    private volatile Duration _statisticsInterval = DEFAULT_STATISTICS_INTERVAL;
+    private volatile List<AggregationRule> _aggregationRules = Collections.emptyList();
+    private volatile Duration _aggregationInterval = DEFAULT_AGGREGATION_INTERVAL;
+    private volatile JmxRegistry _jmxRegistry;
+    private volatile SpillStore _spillStore;
+    private volatile long _spillReplayRate = DEFAULT_SPILL_REPLAY_RATE;
+    private volatile Duration _minimumReconnectDelay = DEFAULT_MINIMUM_RECONNECT_DELAY;
+    private volatile Duration _maximumReconnectDelay = DEFAULT_MAXIMUM_RECONNECT_DELAY;
+    private volatile CircuitBreaker _circuitBreaker = new CircuitBreaker();
 
     private Thread _convertingThread;
     private Thread _writingThread;
-
-    private Socket _socket;
+    private RegistrationWithFacade<BackpressureStatistics> _backpressureStatisticsRegistration;
+    private RegistrationWithFacade<CarbonWriterStatistics> _statisticsRegistration;
 
     public InetSocketAddress getAddress() {
         return _address;
@@ -90,18 +193,16 @@ public class CarbonWriter implements AutoCloseable {
             if (_convertingThread != null) {
                 _convertingThread.setName(toString() + ".Converter");
             }
-            if (_socket != null) {
-                try {
-                    closeQuietly(_socket);
-                } finally {
-                    _socket = null;
-                }
-            }
         } finally {
             _lock.unlock();
         }
+        // Outside of the lock - closing waits for a running write of the transport.
+        closeQuietly(_transport);
     }
 
+    /**
+     * @return the maximum time a converted measure point waits before it is written.
+     */
     @Nonnull
     public Duration getMaxBufferLifetime() {
         return _maxBufferLifetime;
@@ -109,6 +210,13 @@ public class CarbonWriter implements AutoCloseable {
 
     public void setMaxBufferLifetime(@Nonnull Duration maxBufferLifetime) {
         _maxBufferLifetime = maxBufferLifetime;
+        _lock.lock();
+        try {
+            _flushPolicy.setMaxLatencyInNanos(MILLISECONDS.toNanos(maxBufferLifetime.toMilliSeconds()));
+            _condition.signalAll();
+        } finally {
+            _lock.unlock();
+        }
     }
 
     @Nonnull
@@ -118,15 +226,336 @@ public class CarbonWriter implements AutoCloseable {
 
     public void setCharset(@Nonnull Charset charset) {
         _charset = charset;
+        updateEncoder();
+    }
+
+    @Nonnull
+    public Protocol getProtocol() {
+        return _protocol;
+    }
+
+    public void setProtocol(@Nonnull Protocol protocol) {
+        _protocol = protocol;
+        updateEncoder();
+    }
+
+    /**
+     * @return the maximum number of paths whose sanitized and encoded bytes are cached. <code>0</code> disables the
+     * cache.
+     * @see PathCache
+     */
+    @Nonnegative
+    public int getPathCacheCapacity() {
+        return _pathCacheCapacity;
+    }
+
+    public void setPathCacheCapacity(@Nonnegative int pathCacheCapacity) {
+        _pathCacheCapacity = pathCacheCapacity;
+        updateEncoder();
+    }
+
+    @Nullable
+    public PathCache getPathCache() {
+        return _pathCache;
+    }
+
+    /**
+     * Creates a new encoder - and a new path cache because the cached bytes depend on charset and protocol.
+     */
+    protected void updateEncoder() {
+        final int pathCacheCapacity = _pathCacheCapacity;
+        final PathCache pathCache = pathCacheCapacity > 0 ? new PathCache(pathCacheCapacity) : null;
+        _pathCache = pathCache;
+        _encoder = _protocol.createEncoder(_charset, pathCache);
+    }
+
+    @Nonnegative
+    public int getQueueCapacity() {
+        return _queueCapacity;
+    }
+
+    public void setQueueCapacity(@Nonnegative int queueCapacity) {
+        _queueCapacity = queueCapacity;
+    }
+
+    @Nonnull
+    public WaitStrategy getWaitStrategy() {
+        return _waitStrategy;
+    }
+
+    public void setWaitStrategy(@Nonnull WaitStrategy waitStrategy) {
+        _waitStrategy = waitStrategy;
+    }
+
+    /**
+     * @return the kind of threads the converter and the writer run in. Applied on {@link #init()}.
+     */
+    @Nonnull
+    public ThreadMode getThreadMode() {
+        return _threadMode;
+    }
+
+    public void setThreadMode(@Nonnull ThreadMode threadMode) {
+        _threadMode = threadMode;
+    }
+
+    /**
+     * @return the size of one buffer measure points are encoded into. A batch consists of one or more buffers.
+     */
+    @Nonnegative
+    public int getBufferSize() {
+        return _bufferSize;
+    }
+
+    public void setBufferSize(@Nonnegative int bufferSize) {
+        _bufferSize = bufferSize;
+    }
+
+    /**
+     * @return <code>true</code> if the buffers are allocated outside of the heap which saves one copy for each socket
+     * write.
+     */
+    public boolean isDirectBuffers() {
+        return _directBuffers;
+    }
+
+    public void setDirectBuffers(boolean directBuffers) {
+        _directBuffers = directBuffers;
+    }
+
+    /**
+     * @return the maximum number of written buffers which are kept for reuse.
+     */
+    @Nonnegative
+    public int getBufferPoolCapacity() {
+        return _bufferPoolCapacity;
+    }
+
+    public void setBufferPoolCapacity(@Nonnegative int bufferPoolCapacity) {
+        _bufferPoolCapacity = bufferPoolCapacity;
+    }
+
+    @Nonnull
+    public BufferPool getBufferPool() {
+        return _bufferPool;
+    }
+
+    /**
+     * @return the number of bytes which are written at once as soon as they are converted. Smaller batches are only
+     * written if the current throughput will not fill a batch within the {@link #getMaxBufferLifetime() max buffer
+     * lifetime}.
+     * @see FlushPolicy
+     */
+    @Nonnegative
+    public long getTargetBatchSize() {
+        return _targetBatchSize;
+    }
+
+    public void setTargetBatchSize(@Nonnegative long targetBatchSize) {
+        _targetBatchSize = targetBatchSize;
+        _lock.lock();
+        try {
+            _flushPolicy.setTargetBatchSize(targetBatchSize);
+            _condition.signalAll();
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    @Nonnull
+    public Transport getTransport() {
+        return _transport;
+    }
+
+    public void setTransport(@Nonnull Transport transport) {
+        final Transport oldTransport = _transport;
+        _transport = transport;
+        closeQuietly(oldTransport);
+    }
+
+    /**
+     * @return what happens to new measure points if the queue is full.
+     */
+    @Nonnull
+    public BackpressurePolicy getBackpressurePolicy() {
+        return _backpressurePolicy;
+    }
+
+    public void setBackpressurePolicy(@Nonnull BackpressurePolicy backpressurePolicy) {
+        _backpressurePolicy = backpressurePolicy;
+    }
+
+    /**
+     * @return how long {@link BackpressurePolicy#blockWithTimeout} waits for room in the queue.
+     */
+    @Nonnull
+    public Duration getBackpressureTimeout() {
+        return _backpressureTimeout;
+    }
+
+    public void setBackpressureTimeout(@Nonnull Duration backpressureTimeout) {
+        _backpressureTimeout = backpressureTimeout;
+        _backpressureTimeoutInNanos = MILLISECONDS.toNanos(backpressureTimeout.toMilliSeconds());
+    }
+
+    @Nonnull
+    public BackpressureStatistics getBackpressureStatistics() {
+        return _backpressureStatistics;
+    }
+
+    @Nonnull
+    public CarbonWriterStatistics getStatistics() {
+        return _statistics;
+    }
+
+    /**
+     * @return the path under which this writer sends its own {@link #getStatistics() statistics} to carbon every
+     * {@link #getStatisticsInterval() statistics interval}. If <code>null</code> nothing is sent.
+     */
+    @Nullable
+    public String getStatisticsPath() {
+        return _statisticsPath;
+    }
+
+    public void setStatisticsPath(@Nullable String statisticsPath) {
+        _statisticsPath = statisticsPath;
+    }
+
+    @Nonnull
+    public Duration getStatisticsInterval() {
+        return _statisticsInterval;
+    }
+
+    public void setStatisticsInterval(@Nonnull Duration statisticsInterval) {
+        _statisticsInterval = statisticsInterval;
+    }
+
+    /**
+     * @return the rules which select the paths to aggregate. Values of these paths are combined by the function of
+     * the first matching rule and only one value per path and {@link #getAggregationInterval() aggregation interval}
+     * is sent. If empty nothing is aggregated.
+     */
+    @Nonnull
+    public List<AggregationRule> getAggregationRules() {
+        return _aggregationRules;
+    }
+
+    public void setAggregationRules(@Nonnull List<AggregationRule> aggregationRules) {
+        _aggregationRules = Collections.unmodifiableList(new ArrayList<>(aggregationRules));
+    }
+
+    @Nonnull
+    public Duration getAggregationInterval() {
+        return _aggregationInterval;
+    }
+
+    public void setAggregationInterval(@Nonnull Duration aggregationInterval) {
+        _aggregationInterval = aggregationInterval;
+    }
+
+    /**
+     * @return the registry where the {@link #getStatistics() statistics} and the
+     * {@link #getBackpressureStatistics() backpressure statistics} are registered on {@link #init()}. If
+     * <code>null</code> nothing is registered.
+     */
+    @Nullable
+    public JmxRegistry getJmxRegistry() {
+        return _jmxRegistry;
+    }
+
+    public void setJmxRegistry(@Nullable JmxRegistry jmxRegistry) {
+        _jmxRegistry = jmxRegistry;
+    }
+
+    /**
+     * @return the store which takes buffers that could not be delivered and replays them as soon as carbon is
+     * reachable again. If <code>null</code> these buffers are lost.
+     */
+    @Nullable
+    public SpillStore getSpillStore() {
+        return _spillStore;
+    }
+
+    public void setSpillStore(@Nullable SpillStore spillStore) {
+        final SpillStore oldSpillStore = _spillStore;
+        _spillStore = spillStore;
+        closeQuietly(oldSpillStore);
+    }
+
+    /**
+     * @return the maximum number of bytes per second which are replayed from the {@link #getSpillStore() spill store}.
+     */
+    @Nonnegative
+    public long getSpillReplayRate() {
+        return _spillReplayRate;
+    }
+
+    public void setSpillReplayRate(@Nonnegative long spillReplayRate) {
+        _spillReplayRate = spillReplayRate;
+    }
+
+    /**
+     * @return the time without write attempts after the first failed write. It doubles with every further failed
+     * write up to the {@link #getMaximumReconnectDelay() maximum reconnect delay}. While no write is attempted the
+     * buffers go into the {@link #getSpillStore() spill store} - or are kept in memory up to a limit if there is none.
+     */
+    @Nonnull
+    public Duration getMinimumReconnectDelay() {
+        return _minimumReconnectDelay;
+    }
+
+    public void setMinimumReconnectDelay(@Nonnull Duration minimumReconnectDelay) {
+        _minimumReconnectDelay = minimumReconnectDelay;
+    }
+
+    @Nonnull
+    public Duration getMaximumReconnectDelay() {
+        return _maximumReconnectDelay;
+    }
+
+    public void setMaximumReconnectDelay(@Nonnull Duration maximumReconnectDelay) {
+        _maximumReconnectDelay = maximumReconnectDelay;
+    }
+
+    @Nonnull
+    public ConnectionState getConnectionState() {
+        return _circuitBreaker.getState();
     }
 
     public void write(@Nonnull MeasurePoint... measurePoints) throws InterruptedException {
         write(asList(measurePoints));
     }
 
+    /**
+     * Puts the given measure points into the queue in batches of up to {@link #MAX_ENQUEUE_BATCH_SIZE} - each batch
+     * is claimed at once and is either accepted or dropped as a whole by the
+     * {@link #getBackpressurePolicy() backpressure policy}.
+     */
     public void write(@Nonnull Iterable<MeasurePoint> measurePoints) throws InterruptedException {
-        for (MeasurePoint measurePoint : measurePoints) {
-            write(measurePoint);
+        final List<MeasurePoint> points = toRandomAccessList(measurePoints);
+        final RingBuffer<Slot> queue = _queue;
+        if (queue != null) {
+            final int maximumBatchSize = Math.max(1, Math.min(MAX_ENQUEUE_BATCH_SIZE, queue.getCapacity() / 2));
+            for (int offset = 0; offset < points.size(); offset += maximumBatchSize) {
+                final int count = Math.min(maximumBatchSize, points.size() - offset);
+                final long first = _backpressurePolicy.claim(queue, count, _backpressureTimeoutInNanos, _backpressureStatistics);
+                if (first >= 0) {
+                    int i = 0;
+                    try {
+                        for (; i < count; i++) {
+                            set(queue.get(first + i), points.get(offset + i));
+                            queue.publish(first + i);
+                        }
+                    } finally {
+                        for (; i < count; i++) {
+                            queue.get(first + i).clear();
+                            queue.publish(first + i);
+                        }
+                    }
+                }
+            }
+        } else if (!points.isEmpty()) {
+            _backpressureStatistics.recordDropped(_backpressurePolicy, points.size());
         }
     }
 
@@ -145,22 +574,260 @@ public class CarbonWriter implements AutoCloseable {
     }
 
     public void write(@Nonnull MeasurePoint measurePoint) throws InterruptedException {
-        if (_writingThread != null || _convertingThread != null) {
-            _messageQueue.put(measurePoint);
+        final Number value = measurePoint.getValue();
+        if (isIntegral(value)) {
+            writeLong(measurePoint.getPath(), measurePoint.getTags(), value.longValue(), toUnixTimestamp(measurePoint));
+        } else {
+            writeDouble(measurePoint.getPath(), measurePoint.getTags(), toDouble(value), toUnixTimestamp(measurePoint));
+        }
+    }
+
+    public void writeLong(@Nonnull String path, long value) throws InterruptedException {
+        writeLong(path, value, currentUnixTimestamp());
+    }
+
+    public void writeLong(@Nonnull String path, long value, long epochSeconds) throws InterruptedException {
+        writeLong(path, Tags.EMPTY, value, epochSeconds);
+    }
+
+    /**
+     * Writes a measure point of the tagged series <code>path;tag1=value1;...</code>.
+     */
+    public void writeLong(@Nonnull String path, @Nonnull Tags tags, long value) throws InterruptedException {
+        writeLong(path, tags, value, currentUnixTimestamp());
+    }
+
+    public void writeLong(@Nonnull String path, @Nonnull Tags tags, long value, long epochSeconds) throws InterruptedException {
+        final RingBuffer<Slot> queue = _queue;
+        if (queue != null) {
+            final long sequence = claim(queue);
+            if (sequence >= 0) {
+                final Slot slot = queue.get(sequence);
+                slot.setLong(path, value, epochSeconds);
+                slot.setTags(tags);
+                queue.publish(sequence);
+            }
+        } else {
+            _backpressureStatistics.recordDropped(_backpressurePolicy);
+        }
+    }
+
+    public void writeDouble(@Nonnull String path, double value) throws InterruptedException {
+        writeDouble(path, value, currentUnixTimestamp());
+    }
+
+    public void writeDouble(@Nonnull String path, double value, long epochSeconds) throws InterruptedException {
+        writeDouble(path, Tags.EMPTY, value, epochSeconds);
+    }
+
+    public void writeDouble(@Nonnull String path, @Nonnull Tags tags, double value) throws InterruptedException {
+        writeDouble(path, tags, value, currentUnixTimestamp());
+    }
+
+    public void writeDouble(@Nonnull String path, @Nonnull Tags tags, double value, long epochSeconds) throws InterruptedException {
+        final RingBuffer<Slot> queue = _queue;
+        if (queue != null) {
+            final long sequence = claim(queue);
+            if (sequence >= 0) {
+                final Slot slot = queue.get(sequence);
+                slot.setDouble(path, value, epochSeconds);
+                slot.setTags(tags);
+                queue.publish(sequence);
+            }
+        } else {
+            _backpressureStatistics.recordDropped(_backpressurePolicy);
+        }
+    }
+
+    /**
+     * Puts the given measure point into the queue if there is room for it - this never blocks regardless of the
+     * {@link #getBackpressurePolicy() backpressure policy}. The decision is recorded as
+     * {@link BackpressurePolicy#dropNewest}.
+     *
+     * @return <code>false</code> if the queue was full or this writer is not running.
+     */
+    public boolean tryWrite(@Nonnull MeasurePoint measurePoint) {
+        final RingBuffer<Slot> queue = _queue;
+        final long sequence = tryClaim(queue);
+        if (sequence >= 0) {
+            setAndPublish(queue, sequence, measurePoint, null);
+        }
+        return sequence >= 0;
+    }
+
+    public boolean tryWrite(@Nonnull String path, long value) {
+        return tryWrite(path, value, currentUnixTimestamp());
+    }
+
+    public boolean tryWrite(@Nonnull String path, long value, long epochSeconds) {
+        final RingBuffer<Slot> queue = _queue;
+        final long sequence = tryClaim(queue);
+        if (sequence >= 0) {
+            queue.get(sequence).setLong(path, value, epochSeconds);
+            queue.publish(sequence);
+        }
+        return sequence >= 0;
+    }
+
+    public boolean tryWrite(@Nonnull String path, double value) {
+        return tryWrite(path, value, currentUnixTimestamp());
+    }
+
+    public boolean tryWrite(@Nonnull String path, double value, long epochSeconds) {
+        final RingBuffer<Slot> queue = _queue;
+        final long sequence = tryClaim(queue);
+        if (sequence >= 0) {
+            queue.get(sequence).setDouble(path, value, epochSeconds);
+            queue.publish(sequence);
+        }
+        return sequence >= 0;
+    }
+
+    @Nonnull
+    public WriteFuture writeAsync(@Nonnull String path, @Nonnull Number value) {
+        return writeAsync(new MeasurePoint(path, value));
+    }
+
+    /**
+     * Like {@link #tryWrite(MeasurePoint)} this never blocks. If the queue is full the returned future has already
+     * failed with a {@link RejectedExecutionException}.
+     *
+     * @return a future which is done as soon as the given measure point was written to the socket.
+     */
+    @Nonnull
+    public WriteFuture writeAsync(@Nonnull MeasurePoint measurePoint) {
+        final WriteFuture result = new WriteFuture(measurePoint);
+        final RingBuffer<Slot> queue = _queue;
+        final long sequence = tryClaim(queue);
+        if (sequence >= 0) {
+            setAndPublish(queue, sequence, measurePoint, result);
+        } else {
+            result.fail(new RejectedExecutionException(queue != null ? "The queue of " + this + " is full." : this + " is not running."));
+        }
+        return result;
+    }
+
+    @Nonnegative
+    public int getQueueSize() {
+        final RingBuffer<Slot> queue = _queue;
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * @return the number of converted buffers which wait to be written.
+     */
+    @Nonnegative
+    public int getPendingBuffers() {
+        _lock.lock();
+        try {
+            return _bufferQueue.size();
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @return the claimed sequence or <code>-1</code> if the {@link #getBackpressurePolicy() backpressure policy}
+     * decided to drop the new measure point.
+     */
+    protected long claim(@Nonnull RingBuffer<Slot> queue) throws InterruptedException {
+        return _backpressurePolicy.claim(queue, _backpressureTimeoutInNanos, _backpressureStatistics);
+    }
+
+    /**
+     * @return the claimed sequence or <code>-1</code> if the queue is full or <code>null</code>.
+     */
+    protected long tryClaim(@Nullable RingBuffer<Slot> queue) {
+        final long result;
+        if (queue != null) {
+            try {
+                result = dropNewest.claim(queue, 0, _backpressureStatistics);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("The policy " + dropNewest + " should never wait.", e);
+            }
+        } else {
+            _backpressureStatistics.recordDropped(dropNewest);
+            result = -1;
+        }
+        return result;
+    }
+
+    /**
+     * Fills the claimed slot and publishes it in any case. If the measure point could not be set - e.g. because of a
+     * missing value - the slot is published cleared and skipped by the converter which would otherwise wait for it
+     * forever.
+     */
+    protected void setAndPublish(@Nonnull RingBuffer<Slot> queue, @Nonnegative long sequence, @Nonnull MeasurePoint measurePoint, @Nullable WriteFuture future) {
+        final Slot slot = queue.get(sequence);
+        boolean success = false;
+        try {
+            set(slot, measurePoint);
+            slot.setFuture(future);
+            success = true;
+        } finally {
+            if (!success) {
+                slot.clear();
+            }
+            queue.publish(sequence);
+        }
+    }
+
+    /**
+     * @throws NullPointerException if the path, value or timestamp of the given measure point is missing.
+     */
+    protected void set(@Nonnull Slot slot, @Nonnull MeasurePoint measurePoint) {
+        if (measurePoint.getPath() == null) {
+            throw new NullPointerException("The path of a measure point is required.");
+        }
+        final Number value = measurePoint.getValue();
+        if (isIntegral(value)) {
+            slot.setLong(measurePoint.getPath(), value.longValue(), toUnixTimestamp(measurePoint));
+        } else {
+            slot.setDouble(measurePoint.getPath(), toDouble(value), toUnixTimestamp(measurePoint));
+        }
+        slot.setTags(measurePoint.getTags());
+    }
+
+    @Nonnull
+    protected List<MeasurePoint> toRandomAccessList(@Nonnull Iterable<MeasurePoint> measurePoints) {
+        final List<MeasurePoint> result;
+        if (measurePoints instanceof List && measurePoints instanceof RandomAccess) {
+            result = (List<MeasurePoint>) measurePoints;
+        } else {
+            result = new ArrayList<>();
+            final Iterator<MeasurePoint> i = measurePoints.iterator();
+            while (i.hasNext()) {
+                result.add(i.next());
+            }
         }
+        return result;
     }
 
     @PostConstruct
     public void init() throws Exception {
+        if (_protocol == pickle && _transport instanceof UdpTransport) {
+            throw new IllegalArgumentException("The " + pickle + " protocol could not be sent using " + _transport + ".");
+        }
         _lock.lock();
         try {
             boolean success = false;
             try {
-                _writingThread = new Thread(new Writer(), toString() + ".Writer");
-                _writingThread.setDaemon(true);
+                _queue = new RingBuffer<>(_queueCapacity, SLOT_FACTORY, _waitStrategy);
+                _aggregator = _aggregationRules.isEmpty() ? null : new Aggregator(_aggregationRules);
+                _flushPolicy = new FlushPolicy(_targetBatchSize, MILLISECONDS.toNanos(_maxBufferLifetime.toMilliSeconds()), nanoTime());
+                _bufferPool = new BufferPool(_bufferSize, _directBuffers, _bufferPoolCapacity);
+                _circuitBreaker = new CircuitBreaker(_minimumReconnectDelay, _maximumReconnectDelay);
+                if (_bufferEncoder == null) {
+                    _buffer = null;
+                }
+                final JmxRegistry jmxRegistry = _jmxRegistry;
+                if (jmxRegistry != null) {
+                    _backpressureStatisticsRegistration = jmxRegistry.register(_backpressureStatistics, String.valueOf(_address));
+                    _statisticsRegistration = jmxRegistry.register(_statistics, String.valueOf(_address));
+                }
+                _writingThread = _threadMode.newThread(new Writer(), toString() + ".Writer", true);
                 _writingThread.start();
-                _convertingThread = new Thread(new Converter(), toString() + ".Converter");
-                _convertingThread.setDaemon(true);
+                _convertingThread = _threadMode.newThread(new Converter(_queue), toString() + ".Converter", true);
                 _convertingThread.start();
                 success = true;
             } finally {
@@ -198,9 +865,31 @@ public class CarbonWriter implements AutoCloseable {
                     }
                 } finally {
                     try {
-                        closeQuietly(_socket);
+                        try {
+                            try {
+                                spillLeftovers();
+                            } finally {
+                                failLeftoverFutures();
+                            }
+                        } finally {
+                            closeQuietly(_spillStore);
+                        }
                     } finally {
-                        _socket = null;
+                        try {
+                            closeQuietly(_transport);
+                        } finally {
+                            try {
+                                try {
+                                    closeQuietly(_backpressureStatisticsRegistration);
+                                } finally {
+                                    closeQuietly(_statisticsRegistration);
+                                }
+                            } finally {
+                                _backpressureStatisticsRegistration = null;
+                                _statisticsRegistration = null;
+                                _queue = null;
+                            }
+                        }
                     }
                 }
             } finally {
@@ -209,133 +898,490 @@ public class CarbonWriter implements AutoCloseable {
         }
     }
 
-    protected void convertAndPutIntoQueue(@Nonnull MeasurePoint measurePoint) {
-        final byte[] message = convert(measurePoint);
+    /**
+     * Converts everything in the queue on the current thread. Only call this if the converter thread is stopped.
+     */
+    protected void convertQueued() {
+        final RingBuffer<Slot> queue = _queue;
+        if (queue != null) {
+            long sequence;
+            while ((sequence = queue.tryTake()) >= 0) {
+                convertAndRelease(queue, sequence);
+            }
+        }
+    }
+
+    /**
+     * Puts a flush marker into the queue and waits until the converter thread reached it - so everything which was
+     * queued before is either aggregated or converted. Returns early if the converter thread is not running.
+     */
+    protected void awaitConverted() throws InterruptedException {
+        final RingBuffer<Slot> queue;
+        final Thread converter;
         _lock.lock();
         try {
-            if (message.length > _buffer.remaining()) {
-                if (_bufferQueue.size() > 1000) {
-                    LOG.warn("The queue seems to be full. Current size is " + _bufferQueue.size() + ". Is the converting thread dead?");
-                }
-                _bufferQueue.add(_buffer);
-                _buffer = allocate(message.length < BUFFER_SIZE ? BUFFER_SIZE : message.length);
-            }
-            _buffer.put(message);
-            _condition.signalAll();
+            queue = _queue;
+            converter = _convertingThread;
         } finally {
             _lock.unlock();
         }
-    }
+        if (queue != null && converter != null) {
+            final CountDownLatch converted = new CountDownLatch(1);
+            long sequence = -1;
+            while (sequence < 0 && converter.isAlive()) {
+                sequence = queue.claim(FLUSH_CHECK_INTERVAL_IN_NANOS);
+            }
+            if (sequence >= 0) {
+                queue.get(sequence).setFlushMarker(converted);
+                queue.publish(sequence);
+                boolean done = false;
+                while (!done && converter.isAlive()) {
+                    done = converted.await(FLUSH_CHECK_INTERVAL_IN_NANOS, NANOSECONDS);
+                }
+            }
+        }
+    }
 
-    @Nonnull
-    protected byte[] convert(@Nonnull MeasurePoint measurePoint) {
-        final String messageAsString = formatPath(measurePoint) + " " + formatValue(measurePoint) + " " + toUnixTimestamp(measurePoint) + "\n";
-        return messageAsString.getBytes(_charset);
+    /**
+     * Puts everything which was not yet written - converted or not - into the spill store (if any).
+     */
+    protected void spillLeftovers() {
+        final SpillStore spillStore = _spillStore;
+        if (spillStore != null) {
+            convertQueued();
+            final List<ByteBuffer> leftovers = new ArrayList<>();
+            final List<WriteFuture> futures = new ArrayList<>();
+            _lock.lock();
+            try {
+                drainAggregator();
+                finishBuffer();
+                takeQueuedBuffers(leftovers, futures);
+            } finally {
+                _lock.unlock();
+            }
+            spill(spillStore, leftovers);
+            release(leftovers);
+            fail(futures, new IOException(this + " was closed before the measure point was written. It was spilled into " + spillStore + "."));
+        }
     }
 
-    @Nonnull
-    protected String formatPath(@Nonnull MeasurePoint measurePoint) {
-        final StringBuilder sb = new StringBuilder();
-        for (char c : measurePoint.getPath().toCharArray()) {
-            if (isLetterOrDigit(c) || c == '-' || c == '_' || c == '.') {
-                sb.append(c);
-            } else if (isWhitespace(c)) {
-                sb.append('_');
+    /**
+     * Fails the futures of all measure points which were not yet written - queued, aggregated or converted.
+     */
+    protected void failLeftoverFutures() {
+        final IllegalStateException failure = new IllegalStateException(this + " was closed before the measure point was written.");
+        final RingBuffer<Slot> queue = _queue;
+        if (queue != null) {
+            long sequence;
+            while ((sequence = queue.tryTake()) >= 0) {
+                final Slot slot = queue.get(sequence);
+                final WriteFuture future = slot.getFuture();
+                if (future != null) {
+                    future.fail(failure);
+                }
+                slot.clear();
+                queue.release(sequence);
             }
         }
-        return sb.toString();
+        _lock.lock();
+        try {
+            fail(_aggregatedFutures, failure);
+            fail(_pendingFutures, failure);
+        } finally {
+            _lock.unlock();
+        }
     }
 
-    @Nonnull
-    protected Number formatValue(@Nonnull MeasurePoint measurePoint) {
-        return measurePoint.getValue();
+    /**
+     * Completes the given futures and clears the list.
+     */
+    protected void complete(@Nonnull List<WriteFuture> futures) {
+        for (int i = 0; i < futures.size(); i++) {
+            futures.get(i).complete();
+        }
+        futures.clear();
+    }
+
+    /**
+     * Fails the given futures and clears the list.
+     */
+    protected void fail(@Nonnull List<WriteFuture> futures, @Nonnull Throwable failure) {
+        for (int i = 0; i < futures.size(); i++) {
+            futures.get(i).fail(failure);
+        }
+        futures.clear();
+    }
+
+    /**
+     * Gives the given buffers back to the {@link #getBufferPool() pool} and clears the list.
+     */
+    protected void release(@Nonnull List<ByteBuffer> buffers) {
+        final BufferPool bufferPool = _bufferPool;
+        for (int i = 0; i < buffers.size(); i++) {
+            bufferPool.release(buffers.get(i));
+        }
+        buffers.clear();
+    }
+
+    protected void spill(@Nonnull SpillStore spillStore, @Nonnull List<ByteBuffer> buffers) {
+        if (!buffers.isEmpty()) {
+            try {
+                for (ByteBuffer buffer : buffers) {
+                    buffer.rewind();
+                }
+                if (!spillStore.append(buffers)) {
+                    LOG.warn("The spill store " + spillStore + " is full. " + buffers.size() + " buffer(s) for " + _address + " are lost.");
+                }
+            } catch (IOException e) {
+                LOG.warn("Could not spill " + buffers.size() + " buffer(s) for " + _address + " into " + spillStore + ". The messages are lost.", e);
+            }
+        }
+    }
+
+    protected void convertAndRelease(@Nonnull RingBuffer<Slot> queue, @Nonnegative long sequence) {
+        final Slot slot = queue.get(sequence);
+        try {
+            final WriteFuture future = slot.getFuture();
+            if (slot.isFlushMarker()) {
+                // Everything queued before was converted - clearing the slot releases the waiting flush.
+            } else if (slot.getPath() == null) {
+                if (future != null) {
+                    future.fail(new IllegalArgumentException("The measure point has no path."));
+                }
+            } else if (!aggregate(slot)) {
+                convertAndPutIntoQueue(slot);
+                if (future != null) {
+                    track(future, _pendingFutures);
+                }
+            } else if (future != null) {
+                track(future, _aggregatedFutures);
+            }
+        } finally {
+            slot.clear();
+            queue.release(sequence);
+        }
+    }
+
+    protected void track(@Nonnull WriteFuture future, @Nonnull List<WriteFuture> futures) {
+        _lock.lock();
+        try {
+            futures.add(future);
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the value of the given slot was taken by the aggregator and must not be converted.
+     */
+    protected boolean aggregate(@Nonnull Slot slot) {
+        final Aggregator aggregator = _aggregator;
+        final boolean result;
+        if (aggregator != null) {
+            _lock.lock();
+            try {
+                if (slot.isIntegral()) {
+                    result = aggregator.aggregate(slot.getPath(), slot.getTags(), slot.getLongValue(), slot.getTimestamp());
+                } else {
+                    result = aggregator.aggregate(slot.getPath(), slot.getTags(), slot.getDoubleValue(), slot.getTimestamp());
+                }
+            } finally {
+                _lock.unlock();
+            }
+        } else {
+            result = false;
+        }
+        return result;
+    }
+
+    /**
+     * Converts the aggregated values of all paths - one per path.
+     */
+    protected void drainAggregator() {
+        _lock.lock();
+        try {
+            final Aggregator aggregator = _aggregator;
+            if (aggregator != null) {
+                aggregator.drainTo(_aggregationTarget);
+                _aggregatedSlot.clear();
+                _pendingFutures.addAll(_aggregatedFutures);
+                _aggregatedFutures.clear();
+            }
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    protected void convertAndPutIntoQueue(@Nonnull Slot slot) {
+        final Encoder encoder = _encoder;
+        final String path = slot.getPath();
+        final Tags tags = slot.getTags();
+        _lock.lock();
+        try {
+            ensureRemainingInBuffer(encoder, encoder.getMaximumSizeOf(path, tags));
+            final int positionBefore = _buffer.position();
+            if (_bufferEncoder == null) {
+                encoder.startFrame(_buffer);
+                _bufferEncoder = encoder;
+            }
+            if (slot.isIntegral()) {
+                encoder.encode(path, tags, slot.getLongValue(), slot.getTimestamp(), _buffer);
+            } else {
+                encoder.encode(path, tags, slot.getDoubleValue(), slot.getTimestamp(), _buffer);
+            }
+            _statistics.recordPoint();
+            recordPending(_buffer.position() - positionBefore);
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up the writer only for the first pending bytes and if the pending bytes complete a batch - not for every
+     * converted measure point.
+     */
+    protected void recordPending(@Nonnegative int bytes) {
+        final FlushPolicy flushPolicy = _flushPolicy;
+        final boolean batchWasComplete = flushPolicy.isBatchComplete(_pendingBytes);
+        if (_pendingBytes == 0) {
+            _firstPendingAt = nanoTime();
+            _condition.signalAll();
+        }
+        _pendingBytes += bytes;
+        flushPolicy.recordConverted(bytes);
+        if (!batchWasComplete && flushPolicy.isBatchComplete(_pendingBytes)) {
+            _condition.signalAll();
+        }
+    }
+
+    protected void ensureRemainingInBuffer(@Nonnull Encoder encoder, @Nonnegative int required) {
+        if (_bufferEncoder != null && (required > _buffer.remaining() || _bufferEncoder != encoder)) {
+            if (_bufferQueue.size() > 1000) {
+                LOG.warn("The queue seems to be full. Current size is " + _bufferQueue.size() + ". Is the converting thread dead?");
+            }
+            finishBuffer();
+        }
+        if (_buffer == null || required > _buffer.remaining()) {
+            if (_buffer != null) {
+                _bufferPool.release(_buffer);
+            }
+            _buffer = _bufferPool.acquire(required);
+        }
+    }
+
+    /**
+     * Completes the frame of the current buffer and puts it flipped into the queue. The next buffer is acquired on
+     * demand.
+     */
+    protected void finishBuffer() {
+        if (_bufferEncoder != null) {
+            _bufferEncoder.finishFrame(_buffer);
+            _bufferEncoder = null;
+            _buffer.flip();
+            _bufferQueue.add(_buffer);
+            _buffer = null;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the given <code>value</code> could be written as <code>long</code> without any loss.
+     */
+    protected boolean isIntegral(@Nonnull Number value) {
+        final boolean result;
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte || value instanceof AtomicLong || value instanceof AtomicInteger) {
+            result = true;
+        } else if (value instanceof BigInteger) {
+            result = ((BigInteger) value).bitLength() < 64;
+        } else if (value instanceof BigDecimal) {
+            boolean exact;
+            try {
+                ((BigDecimal) value).longValueExact();
+                exact = true;
+            } catch (ArithmeticException ignored) {
+                exact = false;
+            }
+            result = exact;
+        } else {
+            result = false;
+        }
+        return result;
+    }
+
+    /**
+     * @return the given <code>value</code> as <code>double</code>. A {@link Float} is widened by its decimal
+     * representation so <code>0.1f</code> is written as <code>0.1</code> and not as <code>0.10000000149011612</code>.
+     */
+    protected double toDouble(@Nonnull Number value) {
+        return value instanceof Float ? Double.parseDouble(Float.toString((Float) value)) : value.doubleValue();
     }
 
-    @Nonnegative
     protected long toUnixTimestamp(@Nonnull MeasurePoint measurePoint) {
         return MILLISECONDS.toSeconds(measurePoint.getTimestamp().getTime());
     }
 
-    @Nonnull
-    protected List<ByteBuffer> getNextForWrite(boolean force) throws InterruptedException {
-        final List<ByteBuffer> result = new ArrayList<>();
+    protected long currentUnixTimestamp() {
+        return MILLISECONDS.toSeconds(currentTimeMillis());
+    }
+
+    /**
+     * Moves all buffers which should be written now and the futures of their measure points into the given lists.
+     */
+    protected void getNextForWrite(boolean force, @Nonnull List<ByteBuffer> target, @Nonnull List<WriteFuture> futures) throws InterruptedException {
         if (force) {
             _lock.lock();
         } else {
             _lock.lockInterruptibly();
         }
         try {
-            if (force || !_condition.await(_maxBufferLifetime.toMilliSeconds(), MILLISECONDS)) {
-                result.add(_buffer);
-                _buffer = allocate(BUFFER_SIZE);
+            if (force) {
+                drainAggregator();
+            } else {
+                awaitFlush();
             }
-            result.addAll(_bufferQueue);
-            _bufferQueue = new ArrayList<>();
+            finishBuffer();
+            takeQueuedBuffers(target, futures);
+            _pendingBytes = 0;
         } finally {
             _lock.unlock();
         }
-        return result;
     }
 
+    protected void takeQueuedBuffers(@Nonnull List<ByteBuffer> target, @Nonnull List<WriteFuture> futures) {
+        for (int i = 0; i < _bufferQueue.size(); i++) {
+            target.add(_bufferQueue.get(i));
+        }
+        _bufferQueue.clear();
+        futures.addAll(_pendingFutures);
+        _pendingFutures.clear();
+    }
+
+    /**
+     * Waits until the {@link FlushPolicy flush policy} decides to write the pending bytes. If there are no pending
+     * bytes this returns after the {@link #getMaxBufferLifetime() max buffer lifetime} at the latest.
+     */
+    protected void awaitFlush() throws InterruptedException {
+        final FlushPolicy flushPolicy = _flushPolicy;
+        boolean flush = false;
+        if (_pendingBytes == 0) {
+            _condition.awaitNanos(flushPolicy.getMaxLatencyInNanos());
+        }
+        while (!flush && _pendingBytes > 0) {
+            final long now = nanoTime();
+            final long remaining = flushPolicy.getFlushAt(_firstPendingAt, _pendingBytes, now) - now;
+            if (remaining > 0) {
+                _condition.awaitNanos(remaining);
+            } else {
+                flush = true;
+            }
+        }
+    }
+
+    /**
+     * Converts and writes everything which was written until now.
+     */
     public void flush() throws IOException {
         try {
-            final List<ByteBuffer> buffers = getNextForWrite(true);
-            writeMessages(buffers);
+            awaitConverted();
+            final List<ByteBuffer> buffers = new ArrayList<>();
+            final List<WriteFuture> futures = new ArrayList<>();
+            getNextForWrite(true, buffers, futures);
+            try {
+                writeMessages(buffers);
+                complete(futures);
+            } catch (IOException e) {
+                fail(futures, e);
+                throw e;
+            } finally {
+                release(buffers);
+            }
         } catch (InterruptedException e) {
             currentThread().interrupt();
             throw new RuntimeException("Could not flush.", e);
         }
     }
 
-    protected void writeMessages(@Nonnull Iterable<ByteBuffer> buffers) throws InterruptedException, IOException {
-        for (final ByteBuffer buffer : buffers) {
-            executeWithRetry(new Callable<Void>() { @Override public Void call() throws IOException, InterruptedException {
-                writeMessage(buffer);
-                return null;
-            }}, RETRYING_STRATEGY, IOException.class);
-        }
-    }
-
-    protected void writeMessage(@Nonnull ByteBuffer buffer) throws IOException, InterruptedException {
-        boolean success = false;
-        final Socket socket = getSocket();
-        if (socket != null) {
+    protected void writeMessages(@Nonnull List<ByteBuffer> buffers) throws InterruptedException, IOException {
+        final InetSocketAddress address = _address;
+        if (!buffers.isEmpty()) {
+            if (address == null) {
+                throw new IOException(this + " has no address to write to.");
+            }
+            final WriteAttempt attempt = new WriteAttempt(address, buffers.toArray(new ByteBuffer[buffers.size()]));
+            final CircuitBreaker circuitBreaker = _circuitBreaker;
+            boolean success = false;
             try {
-                final OutputStream os = socket.getOutputStream();
-                try {
-                    os.write(buffer.array(), 0, buffer.position());
-                    success = true;
-                } finally {
-                    if (success) {
-                        os.flush();
-                    } else {
-                        closeQuietly(os);
-                    }
+                executeWithRetry(attempt, RETRYING_STRATEGY, IOException.class);
+                success = true;
+                if (attempt.getDropped() > 0) {
+                    _statistics.recordDroppedBuffers(attempt.getDropped());
+                    throw new IncompleteWriteException("Dropped the rest of " + attempt.getDropped() + " partially written buffer(s) for " + address + " to prevent duplicate lines.");
+                }
+            } catch (IncompleteWriteException e) {
+                // The target was reached - only parts of the content were dropped.
+                success = true;
+                throw e;
+            } catch (RuntimeException e) {
+                if (attempt.isInterrupted()) {
+                    currentThread().interrupt();
+                    throw new InterruptedException("Interrupted while writing to " + address + ".");
                 }
+                throw e;
             } finally {
-                if (!success) {
-                    closeQuietly(socket);
+                if (success) {
+                    if (circuitBreaker.recordSuccess() != ConnectionState.connected) {
+                        LOG.info("Connection to " + address + " is back.");
+                    }
+                } else if (!attempt.isInterrupted()) {
+                    final long delay = circuitBreaker.recordFailure(currentTimeMillis());
+                    LOG.warn("Could not write to " + address + ". Next attempt in " + new Duration(delay) + ".");
                 }
             }
         }
     }
 
-    @Nullable
-    protected Socket getSocket() throws IOException, InterruptedException {
-        _lock.lockInterruptibly();
-        try {
-            if (_socket == null || !_socket.isConnected() || _socket.isClosed()) {
-                final InetSocketAddress address = _address;
-                if (address != null) {
-                    _socket = new Socket();
-                    _socket.connect(address);
-                } else {
-                    _socket = null;
-                }
-            }
-            return _socket;
-        } finally {
-            _lock.unlock();
+    /**
+     * Puts the current {@link #getStatistics() statistics} as measure points under the given path into the queue. If
+     * the queue is full the statistics are skipped - reporting never blocks.
+     */
+    protected void reportStatistics(@Nonnull String path) {
+        final CarbonWriterStatistics statistics = _statistics;
+        final long timestamp = currentUnixTimestamp();
+        report(path + ".queueSize", statistics.getQueueSize(), timestamp);
+        report(path + ".pendingBuffers", statistics.getPendingBuffers(), timestamp);
+        report(path + ".points", statistics.getPoints(), timestamp);
+        report(path + ".bytes", statistics.getBytes(), timestamp);
+        report(path + ".pointsPerSecond", statistics.getPointsPerSecond(), timestamp);
+        report(path + ".bytesPerSecond", statistics.getBytesPerSecond(), timestamp);
+        report(path + ".batches", statistics.getBatches(), timestamp);
+        report(path + ".averageBatchSize", statistics.getAverageBatchSize(), timestamp);
+        report(path + ".maximumBatchSize", statistics.getMaximumBatchSize(), timestamp);
+        report(path + ".averageWriteLatency", statistics.getAverageWriteLatency(), timestamp);
+        report(path + ".maximumWriteLatency", statistics.getMaximumWriteLatency(), timestamp);
+        report(path + ".retries", statistics.getRetries(), timestamp);
+        report(path + ".failedWrites", statistics.getFailedWrites(), timestamp);
+        report(path + ".reconnects", statistics.getReconnects(), timestamp);
+        report(path + ".connected", getConnectionState() == ConnectionState.connected ? 1 : 0, timestamp);
+        report(path + ".droppedBuffers", statistics.getDroppedBuffers(), timestamp);
+        report(path + ".bufferPoolMisses", statistics.getBufferPoolMisses(), timestamp);
+        report(path + ".pathCacheMisses", statistics.getPathCacheMisses(), timestamp);
+        report(path + ".dropped", _backpressureStatistics.getDropped(), timestamp);
+    }
+
+    protected void report(@Nonnull String path, long value, long epochSeconds) {
+        final RingBuffer<Slot> queue = _queue;
+        final long sequence = queue != null ? queue.tryClaim() : -1;
+        if (sequence >= 0) {
+            queue.get(sequence).setLong(path, value, epochSeconds);
+            queue.publish(sequence);
+        }
+    }
+
+    protected void report(@Nonnull String path, double value, long epochSeconds) {
+        final RingBuffer<Slot> queue = _queue;
+        final long sequence = queue != null ? queue.tryClaim() : -1;
+        if (sequence >= 0) {
+            queue.get(sequence).setDouble(path, value, epochSeconds);
+            queue.publish(sequence);
         }
     }
 
@@ -363,47 +1409,408 @@ public class CarbonWriter implements AutoCloseable {
         return getClass().getSimpleName() + "{" + _address + "}";
     }
 
+    /**
+     * Reused entry of the queue which carries one measure point as primitives from the producer to the converter.
+     */
+    protected static class Slot implements BackpressurePolicy.Evictable {
+
+        private String _path;
+        private Tags _tags = Tags.EMPTY;
+        private boolean _integral;
+        private long _longValue;
+        private double _doubleValue;
+        private long _timestamp;
+        private WriteFuture _future;
+        private CountDownLatch _flushMarker;
+
+        public void setLong(@Nonnull String path, long value, long timestamp) {
+            _path = path;
+            _tags = Tags.EMPTY;
+            _integral = true;
+            _longValue = value;
+            _timestamp = timestamp;
+            _future = null;
+        }
+
+        public void setDouble(@Nonnull String path, double value, long timestamp) {
+            _path = path;
+            _tags = Tags.EMPTY;
+            _integral = false;
+            _doubleValue = value;
+            _timestamp = timestamp;
+            _future = null;
+        }
+
+        public void setTags(@Nonnull Tags tags) {
+            _tags = tags;
+        }
+
+        public void setFuture(@Nullable WriteFuture future) {
+            _future = future;
+        }
+
+        /**
+         * Marks this slot as flush marker. The given latch is counted down as soon as this slot is cleared.
+         */
+        public void setFlushMarker(@Nonnull CountDownLatch flushMarker) {
+            clear();
+            _flushMarker = flushMarker;
+        }
+
+        public boolean isFlushMarker() {
+            return _flushMarker != null;
+        }
+
+        public void clear() {
+            _path = null;
+            _tags = Tags.EMPTY;
+            _future = null;
+            final CountDownLatch flushMarker = _flushMarker;
+            if (flushMarker != null) {
+                _flushMarker = null;
+                flushMarker.countDown();
+            }
+        }
+
+        @Override
+        public void evicted() {
+            final WriteFuture future = _future;
+            if (future != null) {
+                future.fail(new RejectedExecutionException("The measure point was evicted from the queue by " + BackpressurePolicy.dropOldest + "."));
+            }
+            clear();
+        }
+
+        @Nullable
+        public String getPath() {
+            return _path;
+        }
+
+        @Nonnull
+        public Tags getTags() {
+            return _tags;
+        }
+
+        public boolean isIntegral() {
+            return _integral;
+        }
+
+        public long getLongValue() {
+            return _longValue;
+        }
+
+        public double getDoubleValue() {
+            return _doubleValue;
+        }
+
+        public long getTimestamp() {
+            return _timestamp;
+        }
+
+        @Nullable
+        public WriteFuture getFuture() {
+            return _future;
+        }
+
+    }
+
     protected class Converter implements Runnable {
+
+        @SuppressWarnings("InnerClassFieldHidesOuterClassField")
+        private final RingBuffer<Slot> _queue;
+
+        public Converter(@Nonnull RingBuffer<Slot> queue) {
+            _queue = queue;
+        }
+
+        private long _nextAggregationDrainAt;
+
         @Override
         public void run() {
+            _nextAggregationDrainAt = nanoTime() + MILLISECONDS.toNanos(_aggregationInterval.toMilliSeconds());
             try {
                 while (!currentThread().isInterrupted()) {
-                    final MeasurePoint next = _messageQueue.take();
-                    convertAndPutIntoQueue(next);
+                    long sequence = _aggregator != null ? _queue.take(Math.max(0, _nextAggregationDrainAt - nanoTime())) : _queue.take();
+                    _lock.lock();
+                    try {
+                        int converted = 0;
+                        while (sequence >= 0) {
+                            convertAndRelease(_queue, sequence);
+                            converted++;
+                            sequence = converted < MAX_CONVERSION_BATCH_SIZE ? _queue.tryTake() : -1;
+                        }
+                        drainAggregatorIfRequired();
+                    } finally {
+                        _lock.unlock();
+                    }
                 }
             } catch (InterruptedException ignored) {
                 currentThread().interrupt();
             }
         }
+
+        protected void drainAggregatorIfRequired() {
+            final long now = nanoTime();
+            if (_aggregator != null && now - _nextAggregationDrainAt >= 0) {
+                drainAggregator();
+                _nextAggregationDrainAt = now + MILLISECONDS.toNanos(_aggregationInterval.toMilliSeconds());
+            }
+        }
+    }
+
+    /**
+     * One write of a batch which is retried on {@link IOException}s. The position of each buffer tells how far it was
+     * written, so a retry only sends the buffers which were not touched at all. The rest of a partially written buffer
+     * is {@link #getDropped() dropped} - sending it again would duplicate lines. An interrupt is remembered so it is
+     * not taken for a failed write.
+     */
+    protected class WriteAttempt implements Callable<Void> {
+
+        private final InetSocketAddress _address;
+        private final ByteBuffer[] _batch;
+
+        private boolean _retry;
+        private int _dropped;
+        private volatile boolean _interrupted;
+
+        public WriteAttempt(@Nonnull InetSocketAddress address, @Nonnull ByteBuffer[] batch) {
+            _address = address;
+            _batch = batch;
+            for (ByteBuffer buffer : batch) {
+                buffer.rewind();
+            }
+        }
+
+        public boolean isInterrupted() {
+            return _interrupted;
+        }
+
+        /**
+         * @return the number of buffers which were partially written by a failed try and were not sent again.
+         */
+        @Nonnegative
+        public int getDropped() {
+            return _dropped;
+        }
+
+        @Override
+        public Void call() throws IOException, InterruptedException {
+            final ByteBuffer[] batch;
+            if (_retry) {
+                _statistics.recordRetry();
+                batch = selectUntouched();
+            } else {
+                batch = _batch;
+            }
+            _retry = true;
+            long size = 0;
+            for (ByteBuffer buffer : batch) {
+                size += buffer.remaining();
+            }
+            final long start = nanoTime();
+            boolean success = false;
+            try {
+                if (batch.length > 0) {
+                    _transport.write(_address, batch);
+                }
+                success = true;
+            } catch (IncompleteWriteException e) {
+                success = true;
+                throw e;
+            } catch (InterruptedException | ClosedByInterruptException e) {
+                _interrupted = true;
+                throw e;
+            } finally {
+                if (success) {
+                    _statistics.recordWrite(size, nanoTime() - start);
+                } else if (!_interrupted) {
+                    _statistics.recordFailedWrite();
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return all buffers of the batch which were not touched by a former try. Partially written ones are
+         * counted as dropped and are skipped from now on.
+         */
+        @Nonnull
+        protected ByteBuffer[] selectUntouched() {
+            final List<ByteBuffer> result = new ArrayList<>(_batch.length);
+            for (ByteBuffer buffer : _batch) {
+                if (buffer.position() == 0) {
+                    result.add(buffer);
+                } else if (buffer.hasRemaining()) {
+                    buffer.position(buffer.limit());
+                    _dropped++;
+                }
+            }
+            return result.toArray(new ByteBuffer[result.size()]);
+        }
+
     }
 
     protected class Writer implements Runnable {
+
+        private long _replayAllowance;
+        private long _lastReplayAt = currentTimeMillis();
+        private long _lastStatisticsReportAt = currentTimeMillis();
+        private final List<ByteBuffer> _buffers = new ArrayList<>();
+        private final List<WriteFuture> _futures = new ArrayList<>();
+
         @Override
         public void run() {
             try {
                 while (!currentThread().isInterrupted()) {
-                    final List<ByteBuffer> buffers = getNextForWrite(false);
-                    try {
-                        writeMessages(buffers);
-                    } catch (ConnectException e) {
-                        _lock.lockInterruptibly();
+                    final List<ByteBuffer> buffers = _buffers;
+                    final List<WriteFuture> futures = _futures;
+                    getNextForWrite(false, buffers, futures);
+                    final SpillStore spillStore = _spillStore;
+                    _statistics.updateRates();
+                    reportStatisticsIfRequired();
+                    if (_circuitBreaker.isAttemptAllowed(currentTimeMillis())) {
                         try {
-                            if (_bufferQueue.size() < 100000) {
-                                LOG.warn("Could not reach " + _address + " reschedule messages.", e);
-                                _bufferQueue.addAll(buffers);
-                            } else {
-                                LOG.warn("Could not reach " + _address + " . The messages are lost.", e);
+                            writeMessages(buffers);
+                            release(buffers);
+                            complete(futures);
+                            if (spillStore != null && _address != null) {
+                                replay(spillStore);
                             }
-                        } finally {
-                            _lock.unlock();
+                        } catch (IncompleteWriteException e) {
+                            LOG.warn(e.getMessage());
+                            release(buffers);
+                            fail(futures, e);
+                        } catch (IOException e) {
+                            LOG.debug("Could not write to " + _address + ".", e);
+                            keepUndelivered(buffers, futures, spillStore, e instanceof ConnectException);
                         }
-                    } catch (IOException e) {
-                        LOG.warn("Could not write message to " + _address + ". The messages are lost.", e);
+                    } else {
+                        keepUndelivered(buffers, futures, spillStore, true);
                     }
                 }
             } catch (InterruptedException ignored) {
                 currentThread().interrupt();
+            } finally {
+                fail(_futures, new IllegalStateException(CarbonWriter.this + " was closed before the measure point was written."));
             }
         }
+
+        /**
+         * Spills the given buffers or puts them back into the queue for the next attempt if allowed. Buffers which
+         * were already touched by the failed write are neither spilled nor put back to prevent duplicates. Everything
+         * else is dropped.
+         */
+        protected void keepUndelivered(@Nonnull List<ByteBuffer> buffers, @Nonnull List<WriteFuture> futures, @Nullable SpillStore spillStore, boolean requeueAllowed) throws InterruptedException {
+            if (!buffers.isEmpty()) {
+                if (releaseTouched(buffers) > 0) {
+                    fail(futures, new IOException("Could not write to " + _address + ". The measure point was maybe written partially and is not written again to prevent duplicates."));
+                }
+                if (spillStore != null) {
+                    spill(spillStore, buffers);
+                    fail(futures, new IOException("Could not write to " + _address + ". The measure point was spilled into " + spillStore + "."));
+                } else if (requeueAllowed) {
+                    requeue(buffers, futures);
+                }
+                if (spillStore == null && !buffers.isEmpty()) {
+                    LOG.debug("Could not write " + buffers.size() + " buffer(s) to " + _address + ". The messages are lost.");
+                    _statistics.recordDroppedBuffers(buffers.size());
+                    fail(futures, new IOException("Could not write to " + _address + ". The measure point is lost."));
+                }
+                release(buffers);
+            }
+        }
+
+        /**
+         * Removes all buffers which were touched by a failed write from the given list and gives them back to the
+         * pool.
+         *
+         * @return the number of removed buffers.
+         */
+        @Nonnegative
+        protected int releaseTouched(@Nonnull List<ByteBuffer> buffers) {
+            final BufferPool bufferPool = _bufferPool;
+            int kept = 0;
+            for (int i = 0; i < buffers.size(); i++) {
+                final ByteBuffer buffer = buffers.get(i);
+                if (buffer.position() > 0) {
+                    if (buffer.hasRemaining()) {
+                        _statistics.recordDroppedBuffers(1);
+                    }
+                    bufferPool.release(buffer);
+                } else {
+                    buffers.set(kept++, buffer);
+                }
+            }
+            final int result = buffers.size() - kept;
+            buffers.subList(kept, buffers.size()).clear();
+            return result;
+        }
+
+        /**
+         * Moves the given buffers in front of the queue as long as the queue does not exceed
+         * {@link #MAX_REQUEUED_BYTES}.
+         */
+        protected void requeue(@Nonnull List<ByteBuffer> buffers, @Nonnull List<WriteFuture> futures) throws InterruptedException {
+            _lock.lockInterruptibly();
+            try {
+                long queuedBytes = 0;
+                for (int i = 0; i < _bufferQueue.size(); i++) {
+                    queuedBytes += _bufferQueue.get(i).limit();
+                }
+                for (int i = 0; i < buffers.size(); i++) {
+                    queuedBytes += buffers.get(i).limit();
+                }
+                if (queuedBytes <= MAX_REQUEUED_BYTES) {
+                    _bufferQueue.addAll(0, buffers);
+                    buffers.clear();
+                    _pendingFutures.addAll(0, futures);
+                    futures.clear();
+                }
+            } finally {
+                _lock.unlock();
+            }
+        }
+
+        protected void reportStatisticsIfRequired() {
+            final String statisticsPath = _statisticsPath;
+            final long now = currentTimeMillis();
+            if (statisticsPath != null && now - _lastStatisticsReportAt >= _statisticsInterval.toMilliSeconds()) {
+                _lastStatisticsReportAt = now;
+                reportStatistics(statisticsPath);
+            }
+        }
+
+        /**
+         * Writes the oldest records of the given store as long as the {@link #getSpillReplayRate() replay rate}
+         * allows it. Records stay in the store if they could not be written.
+         */
+        protected void replay(@Nonnull SpillStore spillStore) throws InterruptedException {
+            final long now = currentTimeMillis();
+            final long rate = _spillReplayRate;
+            final long maximumAllowance = rate * Math.max(1000, _maxBufferLifetime.toMilliSeconds()) / 1000;
+            _replayAllowance = Math.min(maximumAllowance, _replayAllowance + (now - _lastReplayAt) * rate / 1000);
+            _lastReplayAt = now;
+            try {
+                ByteBuffer record = _replayAllowance > 0 ? spillStore.peek() : null;
+                while (record != null && !currentThread().isInterrupted()) {
+                    _replayAllowance -= record.remaining();
+                    try {
+                        writeMessages(Collections.singletonList(record));
+                    } catch (IncompleteWriteException e) {
+                        LOG.warn(e.getMessage());
+                    } catch (IOException e) {
+                        if (record.position() == 0) {
+                            throw e;
+                        }
+                        LOG.warn("Dropped a partially replayed record for " + _address + " to prevent duplicate lines.", e);
+                    }
+                    spillStore.remove();
+                    record = _replayAllowance > 0 ? spillStore.peek() : null;
+                }
+            } catch (IOException e) {
+                LOG.info("Could not replay spilled messages to " + _address + ". Will try it later again.", e);
+            }
+        }
+
     }
 }
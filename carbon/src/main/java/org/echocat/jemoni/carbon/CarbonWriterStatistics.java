@@ -0,0 +1,283 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon;
+
+import org.echocat.jemoni.carbon.protocol.PathCache;
+import org.echocat.jemoni.jmx.annotations.Attribute;
+import org.echocat.jemoni.jmx.annotations.Bean;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Self instrumentation of a {@link CarbonWriter}. Recording is one atomic increment on the calling thread. The rates
+ * are calculated by the writing thread of the writer at most once per second.
+ */
+@Bean(description = "Throughput, latency and queue state of a carbon writer.")
+public class CarbonWriterStatistics {
+
+    private static final long RATE_INTERVAL_IN_NANOS = SECONDS.toNanos(1);
+
+    private final CarbonWriter _writer;
+
+    private final AtomicLong _points = new AtomicLong();
+    private final AtomicLong _bytes = new AtomicLong();
+    private final AtomicLong _batches = new AtomicLong();
+    private final AtomicLong _maximumBatchSize = new AtomicLong();
+    private final AtomicLong _writeLatencyInNanos = new AtomicLong();
+    private final AtomicLong _maximumWriteLatencyInNanos = new AtomicLong();
+    private final AtomicLong _retries = new AtomicLong();
+    private final AtomicLong _failedWrites = new AtomicLong();
+    private final AtomicLong _reconnects = new AtomicLong();
+    private final AtomicLong _droppedBuffers = new AtomicLong();
+    private final AtomicBoolean _connectionLost = new AtomicBoolean();
+    private volatile long _lastFailedWriteAt;
+
+    private volatile long _lastRateUpdateAt = nanoTime();
+    private volatile long _lastPoints;
+    private volatile long _lastBytes;
+    private volatile double _pointsPerSecond;
+    private volatile double _bytesPerSecond;
+
+    public CarbonWriterStatistics(@Nonnull CarbonWriter writer) {
+        _writer = writer;
+    }
+
+    public void recordPoint() {
+        _points.incrementAndGet();
+    }
+
+    /**
+     * Records one successful write of a batch with <code>size</code> bytes which took <code>latencyInNanos</code>.
+     */
+    public void recordWrite(@Nonnegative long size, @Nonnegative long latencyInNanos) {
+        _bytes.addAndGet(size);
+        _batches.incrementAndGet();
+        _writeLatencyInNanos.addAndGet(latencyInNanos);
+        updateMaximum(_maximumBatchSize, size);
+        updateMaximum(_maximumWriteLatencyInNanos, latencyInNanos);
+        if (_connectionLost.compareAndSet(true, false)) {
+            _reconnects.incrementAndGet();
+        }
+    }
+
+    public void recordFailedWrite() {
+        _failedWrites.incrementAndGet();
+        _lastFailedWriteAt = currentTimeMillis();
+        _connectionLost.set(true);
+    }
+
+    public void recordDroppedBuffers(@Nonnegative int buffers) {
+        _droppedBuffers.addAndGet(buffers);
+    }
+
+    public void recordRetry() {
+        _retries.incrementAndGet();
+    }
+
+    /**
+     * Recalculates the rates if the last calculation is at least one second ago. Should only be called by one thread.
+     */
+    public void updateRates() {
+        final long now = nanoTime();
+        final long elapsed = now - _lastRateUpdateAt;
+        if (elapsed >= RATE_INTERVAL_IN_NANOS) {
+            final long points = _points.get();
+            final long bytes = _bytes.get();
+            _pointsPerSecond = (double) (points - _lastPoints) * RATE_INTERVAL_IN_NANOS / elapsed;
+            _bytesPerSecond = (double) (bytes - _lastBytes) * RATE_INTERVAL_IN_NANOS / elapsed;
+            _lastPoints = points;
+            _lastBytes = bytes;
+            _lastRateUpdateAt = now;
+        }
+    }
+
+    protected void updateMaximum(@Nonnull AtomicLong maximum, long value) {
+        long current = maximum.get();
+        while (value > current && !maximum.compareAndSet(current, value)) {
+            current = maximum.get();
+        }
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of measure points waiting in the queue for conversion.")
+    public int getQueueSize() {
+        return _writer.getQueueSize();
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of converted buffers waiting to be written.")
+    public int getPendingBuffers() {
+        return _writer.getPendingBuffers();
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of written buffers which are kept for reuse.")
+    public int getBufferPoolAvailable() {
+        return _writer.getBufferPool().getAvailable();
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of buffers which were reused from the pool.")
+    public long getBufferPoolHits() {
+        return _writer.getBufferPool().getHits();
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of buffers which had to be allocated because the pool was empty.")
+    public long getBufferPoolMisses() {
+        return _writer.getBufferPool().getMisses();
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of written buffers which were not kept because the pool was full or they did not fit.")
+    public long getBufferPoolDiscards() {
+        return _writer.getBufferPool().getDiscards();
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of paths whose encoded bytes are cached.")
+    public int getPathCacheSize() {
+        final PathCache pathCache = _writer.getPathCache();
+        return pathCache != null ? pathCache.getSize() : 0;
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of paths whose encoded bytes were taken from the cache.")
+    public long getPathCacheHits() {
+        final PathCache pathCache = _writer.getPathCache();
+        return pathCache != null ? pathCache.getHits() : 0;
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of paths which had to be sanitized and encoded because they were not cached. If this keeps growing the path cache capacity is too small.")
+    public long getPathCacheMisses() {
+        final PathCache pathCache = _writer.getPathCache();
+        return pathCache != null ? pathCache.getMisses() : 0;
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of converted measure points.")
+    public long getPoints() {
+        return _points.get();
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of bytes written to carbon.")
+    public long getBytes() {
+        return _bytes.get();
+    }
+
+    @Nonnegative
+    @Attribute(description = "Converted measure points per second.")
+    public double getPointsPerSecond() {
+        return _pointsPerSecond;
+    }
+
+    @Nonnegative
+    @Attribute(description = "Bytes per second written to carbon.")
+    public double getBytesPerSecond() {
+        return _bytesPerSecond;
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of batches written to carbon.")
+    public long getBatches() {
+        return _batches.get();
+    }
+
+    @Nonnegative
+    @Attribute(description = "Average size of a written batch in bytes.")
+    public long getAverageBatchSize() {
+        final long batches = _batches.get();
+        return batches > 0 ? _bytes.get() / batches : 0;
+    }
+
+    @Nonnegative
+    @Attribute(description = "Size of the biggest written batch in bytes.")
+    public long getMaximumBatchSize() {
+        return _maximumBatchSize.get();
+    }
+
+    @Nonnegative
+    @Attribute(description = "Average duration of a successful socket write in microseconds.")
+    public long getAverageWriteLatency() {
+        final long batches = _batches.get();
+        return batches > 0 ? NANOSECONDS.toMicros(_writeLatencyInNanos.get() / batches) : 0;
+    }
+
+    @Nonnegative
+    @Attribute(description = "Duration of the slowest successful socket write in microseconds.")
+    public long getMaximumWriteLatency() {
+        return NANOSECONDS.toMicros(_maximumWriteLatencyInNanos.get());
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of write attempts which were retried.")
+    public long getRetries() {
+        return _retries.get();
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of failed write attempts.")
+    public long getFailedWrites() {
+        return _failedWrites.get();
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of successful writes after a failed one - which requires a new connection.")
+    public long getReconnects() {
+        return _reconnects.get();
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of converted buffers which were dropped because carbon was not reachable and there was neither a spill store nor room to keep them.")
+    public long getDroppedBuffers() {
+        return _droppedBuffers.get();
+    }
+
+    @Nonnull
+    @Attribute(description = "State of the connection: connected, disconnected (no write attempts until the reconnect delay is over) or reconnecting.")
+    public String getConnectionState() {
+        return _writer.getConnectionState().name();
+    }
+
+    /**
+     * @return <code>true</code> if the last write attempt failed.
+     */
+    public boolean isConnectionLost() {
+        return _connectionLost.get();
+    }
+
+    /**
+     * @return the time in milliseconds of the last failed write attempt or <code>0</code> if there was none.
+     */
+    public long getLastFailedWriteAt() {
+        return _lastFailedWriteAt;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{points=" + getPoints() + ", bytes=" + getBytes() + ", failedWrites=" + getFailedWrites() + "}";
+    }
+
+}
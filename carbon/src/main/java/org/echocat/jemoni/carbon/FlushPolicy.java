@@ -0,0 +1,110 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon;
+
+import javax.annotation.Nonnegative;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Decides when the converted but not yet written bytes of a {@link CarbonWriter} are written. Pending bytes are
+ * written as soon as they reach the target batch size. Below that they only wait if the observed throughput will
+ * fill the batch within the maximum latency - otherwise waiting would only add latency, so they are written at once.
+ * This results in big batches under load and low latency if it is quiet.
+ *
+ * <p>This class is not thread safe.</p>
+ */
+public class FlushPolicy {
+
+    protected static final long WINDOW_IN_NANOS = MILLISECONDS.toNanos(100);
+    protected static final double SMOOTHING_FACTOR = 0.3d;
+
+    private long _targetBatchSize;
+    private long _maxLatencyInNanos;
+
+    private long _bytesInWindow;
+    private long _windowStartedAt;
+    private double _throughput;
+
+    public FlushPolicy(@Nonnegative long targetBatchSize, @Nonnegative long maxLatencyInNanos, long now) {
+        _targetBatchSize = targetBatchSize;
+        _maxLatencyInNanos = maxLatencyInNanos;
+        _windowStartedAt = now;
+    }
+
+    @Nonnegative
+    public long getTargetBatchSize() {
+        return _targetBatchSize;
+    }
+
+    public void setTargetBatchSize(@Nonnegative long targetBatchSize) {
+        _targetBatchSize = targetBatchSize;
+    }
+
+    @Nonnegative
+    public long getMaxLatencyInNanos() {
+        return _maxLatencyInNanos;
+    }
+
+    public void setMaxLatencyInNanos(@Nonnegative long maxLatencyInNanos) {
+        _maxLatencyInNanos = maxLatencyInNanos;
+    }
+
+    public void recordConverted(@Nonnegative long bytes) {
+        _bytesInWindow += bytes;
+    }
+
+    public boolean isBatchComplete(@Nonnegative long pendingBytes) {
+        return pendingBytes >= _targetBatchSize;
+    }
+
+    /**
+     * @return the {@link System#nanoTime() time} when the pending bytes should be written. If this is not after
+     * <code>now</code> they should be written immediately.
+     */
+    public long getFlushAt(long firstPendingAt, @Nonnegative long pendingBytes, long now) {
+        final long result;
+        if (isBatchComplete(pendingBytes)) {
+            result = now;
+        } else {
+            final double throughput = getThroughput(now);
+            final long latest = firstPendingAt + _maxLatencyInNanos;
+            final double timeToFill = throughput > 0 ? (_targetBatchSize - pendingBytes) * SECONDS.toNanos(1) / throughput : Double.MAX_VALUE;
+            result = now + timeToFill < latest ? now + (long) timeToFill : now;
+        }
+        return result;
+    }
+
+    /**
+     * @return the smoothed number of converted bytes per second.
+     */
+    public double getThroughput(long now) {
+        final long elapsed = now - _windowStartedAt;
+        if (elapsed >= WINDOW_IN_NANOS) {
+            final double current = (double) _bytesInWindow * SECONDS.toNanos(1) / elapsed;
+            _throughput = SMOOTHING_FACTOR * current + (1 - SMOOTHING_FACTOR) * _throughput;
+            _bytesInWindow = 0;
+            _windowStartedAt = now;
+        }
+        return _throughput;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{targetBatchSize=" + _targetBatchSize + ", throughput=" + _throughput + "}";
+    }
+
+}
@@ -15,6 +15,7 @@
 package org.echocat.jemoni.carbon;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -27,13 +28,32 @@ public class MeasurePoint {
     private final String _path;
     private final Date _timestamp;
     private final Number _value;
+    private final Tags _tags;
+
+    /**
+     * @return the measure point of the given tagged series like <code>path;tag1=value1;tag2=value2</code>.
+     */
+    @Nonnull
+    public static MeasurePoint ofSeries(@Nonnull String series, @Nonnull Date timestamp, @Nonnull Number value) {
+        final int separator = series.indexOf(';');
+        return separator >= 0 ? new MeasurePoint(series.substring(0, separator), Tags.parse(series.substring(separator + 1)), timestamp, value) : new MeasurePoint(series, timestamp, value);
+    }
 
     public MeasurePoint(@Nonnull String path, @Nonnull Number value) {
-        this(path, new Date(currentTimeMillis() / 1000 * 1000), value);
+        this(path, Tags.EMPTY, value);
     }
 
     public MeasurePoint(@Nonnull String path, @Nonnull Date timestamp, @Nonnull Number value) {
+        this(path, Tags.EMPTY, timestamp, value);
+    }
+
+    public MeasurePoint(@Nonnull String path, @Nullable Tags tags, @Nonnull Number value) {
+        this(path, tags, new Date(currentTimeMillis() / 1000 * 1000), value);
+    }
+
+    public MeasurePoint(@Nonnull String path, @Nullable Tags tags, @Nonnull Date timestamp, @Nonnull Number value) {
         _path = path;
+        _tags = tags != null ? tags : Tags.EMPTY;
         _timestamp = timestamp;
         _value = value;
     }
@@ -43,6 +63,11 @@ public class MeasurePoint {
         return _path;
     }
 
+    @Nonnull
+    public Tags getTags() {
+        return _tags;
+    }
+
     @Nonnull
     public Date getTimestamp() {
         return _timestamp;
@@ -62,7 +87,7 @@ public class MeasurePoint {
             result = false;
         } else {
             final MeasurePoint that = (MeasurePoint) o;
-            result = getPath().equals(that.getPath()) && getTimestamp().equals(that.getTimestamp()) && getValue().equals(that.getValue());
+            result = getPath().equals(that.getPath()) && getTags().equals(that.getTags()) && getTimestamp().equals(that.getTimestamp()) && getValue().equals(that.getValue());
         }
         return result;
     }
@@ -70,6 +95,7 @@ public class MeasurePoint {
     @Override
     public int hashCode() {
         int result = getPath().hashCode();
+        result = 31 * result + getTags().hashCode();
         result = 31 * result + getTimestamp().hashCode();
         result = 31 * result + getValue().hashCode();
         return result;
@@ -77,6 +103,6 @@ public class MeasurePoint {
 
     @Override
     public String toString() {
-        return getPath() + "(" + new SimpleDateFormat(TIME_PATTERN).format(getTimestamp()) + "): " + getValue();
+        return getPath() + getTags() + "(" + new SimpleDateFormat(TIME_PATTERN).format(getTimestamp()) + "): " + getValue();
     }
 }
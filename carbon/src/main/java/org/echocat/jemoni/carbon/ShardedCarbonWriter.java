@@ -0,0 +1,265 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon;
+
+import org.echocat.jemoni.carbon.protocol.PathEncoder;
+import org.echocat.jemoni.carbon.sharding.ConsistentHashRing;
+
+import javax.annotation.*;
+import java.io.IOException;
+import java.util.*;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.echocat.jemoni.carbon.sharding.ConsistentHashRing.DEFAULT_REPLICA_COUNT;
+import static org.echocat.jemoni.carbon.transport.ConnectionState.disconnected;
+import static org.echocat.jomon.runtime.util.ResourceUtils.closeQuietly;
+
+/**
+ * Distributes measure points over several {@link CarbonWriter writers} - usually one per carbon-relay - by the
+ * {@link ConsistentHashRing consistent hash ring} of carbon-relay. So every path ends on the same relay as if it
+ * was sent through a carbon-relay with <code>RELAY_METHOD = consistent-hashing</code>.
+ *
+ * <p>Each {@link Shard shard} keeps its own queue, buffers and connection. If the last write of a writer failed,
+ * new measure points go to the next writer on the ring until its
+ * {@link CarbonWriter#getMinimumReconnectDelay() reconnect delay} is over. The writers are owned by this writer: {@link #init()} and {@link #close()} are delegated to them.</p>
+ */
+public class ShardedCarbonWriter implements AutoCloseable {
+
+    public static class Shard {
+
+        private final CarbonWriter _writer;
+        private final String _instance;
+
+        public Shard(@Nonnull CarbonWriter writer) {
+            this(writer, null);
+        }
+
+        public Shard(@Nonnull CarbonWriter writer, @Nullable String instance) {
+            _writer = writer;
+            _instance = instance;
+        }
+
+        @Nonnull
+        public CarbonWriter getWriter() {
+            return _writer;
+        }
+
+        /**
+         * @return the instance name as it is used in the <code>DESTINATIONS</code> of carbon-relay
+         * (<code>host:port:instance</code>).
+         */
+        @Nullable
+        public String getInstance() {
+            return _instance;
+        }
+
+        /**
+         * @return the key of this shard on the ring. It is the same as carbon-relay uses: the python representation
+         * of the tuple <code>(host, instance)</code>.
+         */
+        @Nonnull
+        public String getKey() {
+            if (_writer.getAddress() == null) {
+                throw new IllegalStateException("There is no address set for " + _writer + ".");
+            }
+            return "('" + _writer.getAddress().getHostString() + "', " + (_instance != null ? "'" + _instance + "'" : "None") + ")";
+        }
+
+        @Override
+        public String toString() {
+            return getKey();
+        }
+
+    }
+
+    private volatile List<Shard> _shards = Collections.emptyList();
+    private volatile int _replicaCount = DEFAULT_REPLICA_COUNT;
+
+    private volatile ConsistentHashRing<CarbonWriter> _ring;
+
+    @Nonnull
+    public List<Shard> getShards() {
+        return _shards;
+    }
+
+    public void setShards(@Nonnull Iterable<Shard> shards) {
+        final List<Shard> result = new ArrayList<>();
+        for (Shard shard : shards) {
+            result.add(shard);
+        }
+        _shards = unmodifiableList(result);
+    }
+
+    public void setShards(@Nonnull Shard... shards) {
+        setShards(asList(shards));
+    }
+
+    /**
+     * Sets one {@link Shard shard} without instance name for each of the given writers.
+     */
+    public void setWriters(@Nonnull Iterable<CarbonWriter> writers) {
+        final List<Shard> shards = new ArrayList<>();
+        for (CarbonWriter writer : writers) {
+            shards.add(new Shard(writer));
+        }
+        setShards(shards);
+    }
+
+    @Nonnegative
+    public int getReplicaCount() {
+        return _replicaCount;
+    }
+
+    public void setReplicaCount(@Nonnegative int replicaCount) {
+        _replicaCount = replicaCount;
+    }
+
+    public void write(@Nonnull MeasurePoint... measurePoints) throws InterruptedException {
+        write(asList(measurePoints));
+    }
+
+    public void write(@Nonnull Iterable<MeasurePoint> measurePoints) throws InterruptedException {
+        for (MeasurePoint measurePoint : measurePoints) {
+            write(measurePoint);
+        }
+    }
+
+    @Nonnull
+    public MeasurePoint write(@Nonnull String path, @Nonnull Number value) throws InterruptedException {
+        final MeasurePoint point = new MeasurePoint(path, value);
+        write(point);
+        return point;
+    }
+
+    @Nonnull
+    public MeasurePoint write(@Nonnull String path, @Nonnull Date timestamp, @Nonnull Number value) throws InterruptedException {
+        final MeasurePoint point = new MeasurePoint(path, timestamp, value);
+        write(point);
+        return point;
+    }
+
+    public void write(@Nonnull MeasurePoint measurePoint) throws InterruptedException {
+        final CarbonWriter writer = selectWriterFor(getKeyFor(measurePoint.getPath(), measurePoint.getTags()));
+        if (writer != null) {
+            writer.write(measurePoint);
+        }
+    }
+
+    public void writeLong(@Nonnull String path, long value) throws InterruptedException {
+        writeLong(path, value, MILLISECONDS.toSeconds(currentTimeMillis()));
+    }
+
+    public void writeLong(@Nonnull String path, long value, long epochSeconds) throws InterruptedException {
+        final CarbonWriter writer = selectWriterFor(getKeyFor(path, Tags.EMPTY));
+        if (writer != null) {
+            writer.writeLong(path, value, epochSeconds);
+        }
+    }
+
+    public void writeDouble(@Nonnull String path, double value) throws InterruptedException {
+        writeDouble(path, value, MILLISECONDS.toSeconds(currentTimeMillis()));
+    }
+
+    public void writeDouble(@Nonnull String path, double value, long epochSeconds) throws InterruptedException {
+        final CarbonWriter writer = selectWriterFor(getKeyFor(path, Tags.EMPTY));
+        if (writer != null) {
+            writer.writeDouble(path, value, epochSeconds);
+        }
+    }
+
+    /**
+     * @return the name of the series as carbon-relay receives and hashes it: the {@link PathEncoder#sanitize(String)
+     * sanitized} path followed by the {@link Tags#getSuffix() tags}.
+     */
+    @Nonnull
+    protected String getKeyFor(@Nonnull String path, @Nonnull Tags tags) {
+        final String sanitized = PathEncoder.sanitize(path);
+        return tags.isEmpty() ? sanitized : sanitized + tags.getSuffix();
+    }
+
+    /**
+     * @return the first available writer on the ring for the given series key. If no writer is available the one the
+     * key belongs to. If this writer is not initialized <code>null</code> - the measure point is dropped as
+     * {@link CarbonWriter} does it before {@link CarbonWriter#init() init}.
+     */
+    @Nullable
+    protected CarbonWriter selectWriterFor(@Nonnull String key) {
+        final ConsistentHashRing<CarbonWriter> ring = _ring;
+        CarbonWriter result = null;
+        if (ring != null) {
+            final List<CarbonWriter> candidates = ring.getNodes(key);
+            for (int i = 0; result == null && i < candidates.size(); i++) {
+                final CarbonWriter candidate = candidates.get(i);
+                if (isAvailable(candidate)) {
+                    result = candidate;
+                }
+            }
+            if (result == null) {
+                result = candidates.get(0);
+            }
+        }
+        return result;
+    }
+
+    protected boolean isAvailable(@Nonnull CarbonWriter writer) {
+        return writer.getConnectionState() != disconnected;
+    }
+
+    public void flush() throws IOException {
+        for (Shard shard : _shards) {
+            shard.getWriter().flush();
+        }
+    }
+
+    @PostConstruct
+    public void init() throws Exception {
+        final Map<String, CarbonWriter> writersByKey = new LinkedHashMap<>();
+        for (Shard shard : _shards) {
+            if (writersByKey.put(shard.getKey(), shard.getWriter()) != null) {
+                throw new IllegalArgumentException("There is more than one shard with key " + shard.getKey() + ". Set different instance names.");
+            }
+        }
+        boolean success = false;
+        try {
+            for (CarbonWriter writer : writersByKey.values()) {
+                writer.init();
+            }
+            _ring = new ConsistentHashRing<>(writersByKey, _replicaCount);
+            success = true;
+        } finally {
+            if (!success) {
+                close();
+            }
+        }
+    }
+
+    @Override
+    @PreDestroy
+    public void close() throws Exception {
+        _ring = null;
+        for (Shard shard : _shards) {
+            closeQuietly(shard.getWriter());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + _shards;
+    }
+
+}
@@ -0,0 +1,223 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.lang.Character.isLetterOrDigit;
+import static java.lang.Character.isWhitespace;
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * Immutable set of tags of a Graphite (1.1+) tagged series: <code>path;tag1=value1;tag2=value2</code>. Tags are
+ * sanitized and sorted by name once on creation and interned, so every distinct set exists only once and its
+ * encoded form is created only once per charset and written as is.
+ *
+ * <p>Tag names keep only letters, digits, <code>-</code>, <code>_</code> and <code>.</code>. Tag values lose
+ * <code>;</code> and a leading <code>~</code>. Whitespaces are replaced by <code>_</code> in both. Tags with an empty
+ * name or value are ignored.</p>
+ */
+public class Tags {
+
+    public static final Tags EMPTY = new Tags(new TreeMap<String, String>());
+
+    protected static final int MAXIMUM_INTERNED = 10000;
+
+    private static final ConcurrentMap<Tags, Tags> INTERNED = new ConcurrentHashMap<>();
+
+    /**
+     * @return the tags of the given names and values: <code>tags("name1", "value1", "name2", "value2")</code>
+     */
+    @Nonnull
+    public static Tags tags(@Nonnull String... namesAndValues) {
+        if (namesAndValues.length % 2 != 0) {
+            throw new IllegalArgumentException("Expected pairs of names and values but got " + namesAndValues.length + " strings.");
+        }
+        final Map<String, String> nameToValue = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            nameToValue.put(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return tags(nameToValue);
+    }
+
+    @Nonnull
+    public static Tags tags(@Nullable Map<String, String> nameToValue) {
+        final Tags result;
+        if (nameToValue == null || nameToValue.isEmpty()) {
+            result = EMPTY;
+        } else {
+            final SortedMap<String, String> sanitized = new TreeMap<>();
+            for (Entry<String, String> nameAndValue : nameToValue.entrySet()) {
+                final String name = sanitizeName(nameAndValue.getKey());
+                final String value = sanitizeValue(nameAndValue.getValue());
+                if (!name.isEmpty() && !value.isEmpty()) {
+                    sanitized.put(name, value);
+                }
+            }
+            result = sanitized.isEmpty() ? EMPTY : intern(new Tags(sanitized));
+        }
+        return result;
+    }
+
+    /**
+     * @return the tags of the given series suffix like <code>;tag1=value1;tag2=value2</code>.
+     */
+    @Nonnull
+    public static Tags parse(@Nullable String suffix) {
+        final Map<String, String> nameToValue = new HashMap<>();
+        if (suffix != null) {
+            for (String tag : suffix.split(";")) {
+                final int separator = tag.indexOf('=');
+                if (separator > 0) {
+                    nameToValue.put(tag.substring(0, separator), tag.substring(separator + 1));
+                }
+            }
+        }
+        return tags(nameToValue);
+    }
+
+    @Nonnull
+    protected static Tags intern(@Nonnull Tags tags) {
+        Tags result = INTERNED.get(tags);
+        if (result == null) {
+            if (INTERNED.size() < MAXIMUM_INTERNED) {
+                final Tags existing = INTERNED.putIfAbsent(tags, tags);
+                result = existing != null ? existing : tags;
+            } else {
+                result = tags;
+            }
+        }
+        return result;
+    }
+
+    @Nonnull
+    protected static String sanitizeName(@Nullable String name) {
+        final StringBuilder sb = new StringBuilder(name != null ? name.length() : 0);
+        if (name != null) {
+            for (int i = 0; i < name.length(); i++) {
+                final char c = name.charAt(i);
+                if (isLetterOrDigit(c) || c == '-' || c == '_' || c == '.') {
+                    sb.append(c);
+                } else if (isWhitespace(c)) {
+                    sb.append('_');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    @Nonnull
+    protected static String sanitizeValue(@Nullable String value) {
+        final StringBuilder sb = new StringBuilder(value != null ? value.length() : 0);
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (isWhitespace(c)) {
+                    sb.append('_');
+                } else if (c != ';' && (c != '~' || sb.length() > 0) && !Character.isISOControl(c)) {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private final Map<String, String> _nameToValue;
+    private final String _suffix;
+    private volatile Encoded _encoded;
+
+    protected Tags(@Nonnull SortedMap<String, String> sanitizedNameToValue) {
+        _nameToValue = unmodifiableMap(sanitizedNameToValue);
+        final StringBuilder sb = new StringBuilder();
+        for (Entry<String, String> nameAndValue : sanitizedNameToValue.entrySet()) {
+            sb.append(';').append(nameAndValue.getKey()).append('=').append(nameAndValue.getValue());
+        }
+        _suffix = sb.toString();
+    }
+
+    public boolean isEmpty() {
+        return _nameToValue.isEmpty();
+    }
+
+    /**
+     * @return the sanitized tags sorted by name.
+     */
+    @Nonnull
+    public Map<String, String> getNameToValue() {
+        return _nameToValue;
+    }
+
+    @Nullable
+    public String get(@Nonnull String name) {
+        return _nameToValue.get(name);
+    }
+
+    /**
+     * @return the part which follows the path in a tagged series: <code>;tag1=value1;tag2=value2</code> or an empty
+     * string if there are no tags.
+     */
+    @Nonnull
+    public String getSuffix() {
+        return _suffix;
+    }
+
+    /**
+     * @return the {@link #getSuffix() suffix} encoded with the given charset. The returned array is cached and must
+     * not be modified.
+     */
+    @Nonnull
+    public byte[] getEncodedSuffix(@Nonnull Charset charset) {
+        Encoded encoded = _encoded;
+        if (encoded == null || !encoded._charset.equals(charset)) {
+            encoded = new Encoded(charset, _suffix.getBytes(charset));
+            _encoded = encoded;
+        }
+        return encoded._bytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof Tags && _suffix.equals(((Tags) o)._suffix));
+    }
+
+    @Override
+    public int hashCode() {
+        return _suffix.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return _suffix;
+    }
+
+    protected static class Encoded {
+
+        private final Charset _charset;
+        private final byte[] _bytes;
+
+        protected Encoded(@Nonnull Charset charset, @Nonnull byte[] bytes) {
+            _charset = charset;
+            _bytes = bytes;
+        }
+
+    }
+
+}
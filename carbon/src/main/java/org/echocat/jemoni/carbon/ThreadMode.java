@@ -0,0 +1,129 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Describes which kind of threads run the background work of {@link CarbonWriter} and
+ * {@link org.echocat.jemoni.carbon.jmx.Jmx2CarbonBridge}. Both keep the returned {@link Thread} to interrupt and
+ * join it on close - this works for every kind.
+ */
+public enum ThreadMode {
+    /**
+     * One platform thread per task - each with its own native stack.
+     */
+    platform {
+        @Nonnull
+        @Override
+        public Thread newThread(@Nonnull Runnable task, @Nonnull String name, boolean daemon) {
+            final Thread result = new Thread(task, name);
+            result.setDaemon(daemon);
+            return result;
+        }
+    },
+    /**
+     * One virtual thread per task. Mostly sleeping tasks cost nearly nothing. Virtual threads are always daemon
+     * threads. If the JDK does not support them (before Java 21) {@link #platform} threads are used.
+     */
+    virtual {
+        @Nonnull
+        @Override
+        public Thread newThread(@Nonnull Runnable task, @Nonnull String name, boolean daemon) {
+            final Thread result = VirtualThreads.newThread(task, name);
+            return result != null ? result : platform.newThread(task, name, daemon);
+        }
+
+        @Override
+        public boolean isSupported() {
+            return VirtualThreads.isSupported();
+        }
+    };
+
+    /**
+     * @return a new not yet started thread which will run the given task.
+     */
+    @Nonnull
+    public abstract Thread newThread(@Nonnull Runnable task, @Nonnull String name, boolean daemon);
+
+    /**
+     * @return <code>false</code> if this mode is not supported by the current JDK and falls back to {@link #platform}.
+     */
+    public boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Uses <code>Thread.ofVirtual().name(name).unstarted(task)</code> by reflection - this code has to run on Java 7.
+     */
+    protected static final class VirtualThreads {
+
+        private static final Logger LOG = LoggerFactory.getLogger(ThreadMode.class);
+
+        private static final Method OF_VIRTUAL;
+        private static final Method NAME;
+        private static final Method UNSTARTED;
+
+        static {
+            Method ofVirtual = null;
+            Method name = null;
+            Method unstarted = null;
+            try {
+                final Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                name = builderType.getMethod("name", String.class);
+                unstarted = builderType.getMethod("unstarted", Runnable.class);
+                // Fails on JDKs where virtual threads are still a preview feature and not enabled.
+                ofVirtual.invoke(null);
+            } catch (ClassNotFoundException | NoSuchMethodException ignored) {
+                ofVirtual = null;
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                LOG.info("Virtual threads are not available. Platform threads will be used instead.", e);
+                ofVirtual = null;
+            }
+            OF_VIRTUAL = ofVirtual;
+            NAME = name;
+            UNSTARTED = unstarted;
+        }
+
+        public static boolean isSupported() {
+            return OF_VIRTUAL != null;
+        }
+
+        @Nullable
+        public static Thread newThread(@Nonnull Runnable task, @Nonnull String name) {
+            Thread result = null;
+            if (OF_VIRTUAL != null) {
+                try {
+                    final Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name);
+                    result = (Thread) UNSTARTED.invoke(builder, task);
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    throw new IllegalStateException("Could not create virtual thread " + name + ".", e);
+                }
+            }
+            return result;
+        }
+
+        private VirtualThreads() {}
+
+    }
+
+}
@@ -14,51 +14,150 @@
 
 package org.echocat.jemoni.carbon;
 
+import org.echocat.jemoni.carbon.capture.CaptureFile;
+import org.echocat.jemoni.carbon.protocol.PickleDecoder;
+import org.echocat.jemoni.carbon.protocol.PlaintextDecoder;
+import org.echocat.jemoni.carbon.protocol.Protocol;
+import org.echocat.jemoni.carbon.store.PathGlob;
+import org.echocat.jemoni.carbon.store.TimeSeriesStore;
 import org.echocat.jomon.net.FreeTcpPortDetector;
 import org.echocat.jomon.runtime.numbers.IntegerRange;
+import org.echocat.jomon.runtime.util.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.io.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static java.lang.Double.parseDouble;
-import static java.lang.Long.parseLong;
+import static java.lang.System.currentTimeMillis;
 import static java.net.InetAddress.getLocalHost;
+import static java.nio.ByteBuffer.allocate;
+import static java.nio.channels.SelectionKey.OP_ACCEPT;
+import static java.nio.channels.SelectionKey.OP_READ;
 import static java.nio.charset.Charset.forName;
-import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.echocat.jemoni.carbon.protocol.PickleDecoder.MAXIMUM_FRAME_SIZE;
+import static org.echocat.jemoni.carbon.protocol.Protocol.pickle;
+import static org.echocat.jemoni.carbon.protocol.Protocol.plaintext;
 import static org.echocat.jomon.runtime.concurrent.ThreadUtils.stop;
 
+/**
+ * Carbon stand-in which records all received measure points - for tests and local load tests. All connections are
+ * served by a small number of {@link IoLoop selector threads}, lines and pickle frames are decoded directly from the
+ * read buffers and the measure points are recorded without locking, so hundreds of concurrent writers are fine.
+ *
+ * <p>By default every received measure point is kept. For long running tests and local dashboards a
+ * {@link #setStore(TimeSeriesStore) store} could be set instead which is memory bounded and could be queried by path
+ * globs and time ranges.</p>
+ *
+ * <p>Instead of polling {@link #getLastRecordedMeasurePoints()} tests could {@link #awaitPoints(PointMatcher, int,
+ * Duration) await} the expected points or {@link #subscribe(Subscriber) subscribe} to all received ones.</p>
+ *
+ * <p>If a {@link #setCapture(CaptureFile) capture} is set the received lines and pickle frames are additionally
+ * recorded as they were received, so they could be {@link org.echocat.jemoni.carbon.capture.CaptureReplayer replayed}
+ * against another carbon later.</p>
+ */
 public class VirtualCarbonServer implements Closeable {
 
+    public static final int DEFAULT_IO_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Selects the measure points {@link #awaitPoints(PointMatcher, int, Duration) awaited} for.
+     */
+    public interface PointMatcher {
+
+        public boolean matches(@Nonnull MeasurePoint measurePoint);
+
+    }
+
+    /**
+     * Is called by the receiving thread for every received measure point - so it has to return fast.
+     */
+    public interface Subscriber {
+
+        public void onReceived(@Nonnull MeasurePoint measurePoint);
+
+    }
+
+    @Nonnull
+    public static PointMatcher anyPoint() {
+        return new PointMatcher() { @Override public boolean matches(@Nonnull MeasurePoint measurePoint) {
+            return true;
+        }};
+    }
+
+    /**
+     * @see PathGlob
+     */
+    @Nonnull
+    public static PointMatcher pointsMatching(@Nonnull String glob) throws IllegalArgumentException {
+        final PathGlob pathGlob = PathGlob.glob(glob);
+        return new PointMatcher() { @Override public boolean matches(@Nonnull MeasurePoint measurePoint) {
+            return pathGlob.matches(measurePoint.getPath());
+        }};
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(VirtualCarbonServer.class);
 
-    private final List<MeasurePoint> _recordedMeasurePoints = new ArrayList<>();
+    protected static final int MAXIMUM_DATAGRAM_SIZE = 65507;
+    protected static final int INITIAL_READ_BUFFER_SIZE = 16 * 1024;
+    protected static final int MAXIMUM_LINE_SIZE = 1024 * 1024;
+
+    private final Queue<MeasurePoint> _recordedMeasurePoints = new ConcurrentLinkedQueue<>();
+    private final List<Subscriber> _subscribers = new CopyOnWriteArrayList<>();
 
+    private final InetAddress _bindAddress;
     private final InetSocketAddress _address;
-    private final Acceptor _acceptor;
-    private final Set<Worker> _workers = new HashSet<>();
+    private final IoLoop[] _ioLoops;
+    private final AtomicInteger _nextIoLoop = new AtomicInteger();
+    private final PickleDecoder _pickleDecoder = new PickleDecoder();
 
-    private Exception _fatalException;
+    private InetSocketAddress _pickleAddress;
+    private InetSocketAddress _udpAddress;
+    private DatagramReceiver _udpReceiver;
 
-    private volatile Charset _charset = forName("UTF-8");
+    private volatile Exception _fatalException;
 
-    public VirtualCarbonServer(@Nonnull InetSocketAddress address) {
-        final ServerSocket serverSocket;
-        try {
-            _address = address.getAddress().isAnyLocalAddress() ? new InetSocketAddress(getLocalHost(), address.getPort()) : address;
-            serverSocket = new ServerSocket();
-            serverSocket.bind(address);
-        } catch (IOException e) {
-            throw new RuntimeException("Could not bind to " + address + ".", e);
+    private volatile PlaintextDecoder _plaintextDecoder = new PlaintextDecoder(forName("UTF-8"));
+    private volatile TimeSeriesStore _store;
+    private volatile CaptureFile _capture;
+
+    public VirtualCarbonServer(@Nonnull InetSocketAddress address, @Nonnegative int ioThreads) {
+        this(address, ioThreads, true);
+    }
+
+    /**
+     * @param start if <code>false</code> the address is already bound but nothing is received until {@link #start()}
+     * is called - for subclasses which have to initialize their fields before.
+     */
+    protected VirtualCarbonServer(@Nonnull InetSocketAddress address, @Nonnegative int ioThreads, boolean start) {
+        _bindAddress = address.getAddress();
+        _ioLoops = new IoLoop[Math.max(1, ioThreads)];
+        for (int i = 0; i < _ioLoops.length; i++) {
+            _ioLoops[i] = new IoLoop(i);
+        }
+        final ServerSocketChannel channel = bind(address);
+        _ioLoops[0].register(new Listener(channel, plaintext));
+        _address = toReachableAddress(new InetSocketAddress(_bindAddress, channel.socket().getLocalPort()));
+        if (start) {
+            start();
         }
-        _acceptor = new Acceptor(serverSocket);
-        _acceptor.start();
+    }
+
+    public VirtualCarbonServer(@Nonnull InetSocketAddress address) {
+        this(address, DEFAULT_IO_THREADS);
     }
 
     public VirtualCarbonServer(@Nonnegative int port) {
@@ -83,11 +182,35 @@ public class VirtualCarbonServer implements Closeable {
 
     @Nonnull
     public Charset getCharset() {
-        return _charset;
+        return _plaintextDecoder.getCharset();
     }
 
     public void setCharset(@Nonnull Charset charset) {
-        _charset = charset;
+        _plaintextDecoder = new PlaintextDecoder(charset);
+    }
+
+    @Nullable
+    public TimeSeriesStore getStore() {
+        return _store;
+    }
+
+    /**
+     * @param store if set all received measure points are only recorded in this store.
+     */
+    public void setStore(@Nullable TimeSeriesStore store) {
+        _store = store;
+    }
+
+    @Nullable
+    public CaptureFile getCapture() {
+        return _capture;
+    }
+
+    /**
+     * @param capture if set all received lines and pickle frames are additionally recorded into it.
+     */
+    public void setCapture(@Nullable CaptureFile capture) {
+        _capture = capture;
     }
 
     @Nonnull
@@ -95,143 +218,545 @@ public class VirtualCarbonServer implements Closeable {
         return _address;
     }
 
+    @Nonnegative
+    public int getIoThreads() {
+        return _ioLoops.length;
+    }
+
+    /**
+     * @return the address of the pickle protocol listener or <code>null</code> if no one was opened.
+     */
+    @Nullable
+    public InetSocketAddress getPickleAddress() {
+        synchronized (_ioLoops) {
+            return _pickleAddress;
+        }
+    }
+
+    /**
+     * Opens an additional listener which receives the pickle protocol of carbon on a free port. If there is already
+     * such a listener its address is returned.
+     */
     @Nonnull
-    public List<MeasurePoint> getLastRecordedMeasurePoints() throws IOException {
-        synchronized (this) {
-            assertNoFatalException();
-            return new ArrayList<>(_recordedMeasurePoints);
+    public InetSocketAddress openPickleListener() {
+        return openPickleListener(detectPort(_bindAddress, null).getPort());
+    }
+
+    @Nonnull
+    public InetSocketAddress openPickleListener(@Nonnegative int port) {
+        synchronized (_ioLoops) {
+            if (_pickleAddress == null) {
+                final ServerSocketChannel channel = bind(new InetSocketAddress(_bindAddress, port));
+                _ioLoops[0].register(new Listener(channel, pickle));
+                _pickleAddress = toReachableAddress(new InetSocketAddress(_bindAddress, channel.socket().getLocalPort()));
+            }
+            return _pickleAddress;
+        }
+    }
+
+    /**
+     * @return the address of the UDP listener or <code>null</code> if no one was opened.
+     */
+    @Nullable
+    public InetSocketAddress getUdpAddress() {
+        synchronized (_ioLoops) {
+            return _udpAddress;
+        }
+    }
+
+    /**
+     * Opens an additional listener which receives plaintext datagrams on a free port. If there is already such a
+     * listener its address is returned.
+     */
+    @Nonnull
+    public InetSocketAddress openUdpListener() {
+        return openUdpListener(0);
+    }
+
+    @Nonnull
+    public InetSocketAddress openUdpListener(@Nonnegative int port) {
+        synchronized (_ioLoops) {
+            if (_udpReceiver == null) {
+                final InetSocketAddress address = new InetSocketAddress(_bindAddress, port);
+                final DatagramSocket socket;
+                try {
+                    socket = new DatagramSocket(address);
+                } catch (SocketException e) {
+                    throw new RuntimeException("Could not bind to " + address + ".", e);
+                }
+                _udpReceiver = new DatagramReceiver(socket);
+                _udpReceiver.start();
+                _udpAddress = toReachableAddress(new InetSocketAddress(_bindAddress, socket.getLocalPort()));
+            }
+            return _udpAddress;
         }
     }
 
+    /**
+     * @return all recorded measure points in the order they were received or - if a {@link #getStore() store} is set -
+     * all points of the store ordered by their timestamp.
+     */
+    @Nonnull
+    public List<MeasurePoint> getLastRecordedMeasurePoints() throws IOException {
+        assertNoFatalException();
+        final TimeSeriesStore store = _store;
+        return store != null ? store.getAll() : new ArrayList<>(_recordedMeasurePoints);
+    }
+
     public void clearRecordedMeasurePoints() throws IOException {
-        synchronized (this) {
+        assertNoFatalException();
+        _recordedMeasurePoints.clear();
+        final TimeSeriesStore store = _store;
+        if (store != null) {
+            store.clear();
+        }
+    }
+
+    /**
+     * Waits until at least <code>count</code> measure points matching the given matcher were received - including the
+     * ones which were already recorded.
+     *
+     * @return all matching measure points which were received until now.
+     * @throws TimeoutException if there were not enough matching measure points received within the timeout.
+     */
+    @Nonnull
+    public List<MeasurePoint> awaitPoints(@Nonnull PointMatcher matcher, @Nonnegative int count, @Nonnull Duration timeout) throws IOException, InterruptedException, TimeoutException {
+        final Awaiter awaiter = new Awaiter(matcher);
+        subscribe(awaiter);
+        try {
             assertNoFatalException();
-            _recordedMeasurePoints.clear();
+            final TimeSeriesStore store = _store;
+            awaiter.recorded(store != null ? store.getAll() : _recordedMeasurePoints);
+            return awaiter.await(count, timeout);
+        } finally {
+            unsubscribe(awaiter);
         }
     }
 
+    /**
+     * Calls the given subscriber for every measure point which is received from now on.
+     */
+    public void subscribe(@Nonnull Subscriber subscriber) {
+        _subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(@Nonnull Subscriber subscriber) {
+        _subscribers.remove(subscriber);
+    }
+
     protected void assertNoFatalException() throws IOException {
-        if (_fatalException != null) {
-            if (_fatalException instanceof RuntimeException) {
-                throw (RuntimeException) _fatalException;
-            } else if (_fatalException instanceof IOException) {
-                throw (IOException) _fatalException;
+        final Exception fatalException = _fatalException;
+        if (fatalException != null) {
+            if (fatalException instanceof RuntimeException) {
+                throw (RuntimeException) fatalException;
+            } else if (fatalException instanceof IOException) {
+                throw (IOException) fatalException;
             } else {
-                throw new RuntimeException("Could not read messages from remote.", _fatalException);
+                throw new RuntimeException("Could not read messages from remote.", fatalException);
             }
         }
     }
 
-    protected void recordedMeasurePoints(@Nullable MeasurePoint measurePoint) {
-        if (measurePoint != null) {
-            synchronized (this) {
-                _recordedMeasurePoints.add(measurePoint);
-            }
+    protected void start() {
+        for (IoLoop ioLoop : _ioLoops) {
+            ioLoop.start();
         }
     }
 
-    @Nullable
-    protected MeasurePoint parseMeasurePoint(@Nonnull String plain, @Nonnull SocketAddress remote) {
-        MeasurePoint measurePoint;
-        final String trimmed = plain.trim();
-        if (!trimmed.isEmpty()) {
-            final String[] parts = trimmed.split(" ", 3);
-            if (parts.length == 3) {
+    protected void record(@Nullable MeasurePoint measurePoint) {
+        if (measurePoint != null) {
+            consume(measurePoint);
+            for (Subscriber subscriber : _subscribers) {
                 try {
-                    final Date date = new Date(SECONDS.toMillis(parseLong(parts[2])));
-                    final double value = parseDouble(parts[1]);
-                    measurePoint = new MeasurePoint(parts[0], date, value);
-                } catch (NumberFormatException ignored) {
-                    LOG.info("Received illegal measure point from " + remote + ": " + trimmed);
-                    measurePoint = null;
+                    subscriber.onReceived(measurePoint);
+                } catch (RuntimeException e) {
+                    LOG.warn("Subscriber " + subscriber + " failed to handle " + measurePoint + ".", e);
                 }
-            } else {
-                LOG.info("Received illegal measure point from " + remote + ": " + trimmed);
-                measurePoint = null;
             }
+        }
+    }
+
+    /**
+     * Keeps the given received measure point - in the {@link #getStore() store} or in memory.
+     */
+    protected void consume(@Nonnull MeasurePoint measurePoint) {
+        final TimeSeriesStore store = _store;
+        if (store != null) {
+            store.add(measurePoint);
         } else {
-            measurePoint = null;
+            _recordedMeasurePoints.add(measurePoint);
+        }
+    }
+
+    /**
+     * Records all complete lines of the given buffer and moves its position behind the last one.
+     *
+     * @param scanFrom the first position which could contain a line break - all before was already scanned.
+     */
+    protected void recordLines(@Nonnull ByteBuffer buffer, @Nonnegative int scanFrom, @Nonnull SocketAddress remote) {
+        final PlaintextDecoder decoder = _plaintextDecoder;
+        final int limit = buffer.limit();
+        int lineStart = buffer.position();
+        for (int i = scanFrom; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                recordLine(decoder, buffer, lineStart, i, remote);
+                lineStart = i + 1;
+            }
+        }
+        capture(plaintext, buffer, buffer.position(), lineStart);
+        buffer.position(lineStart);
+    }
+
+    protected void recordLine(@Nonnull PlaintextDecoder decoder, @Nonnull ByteBuffer buffer, @Nonnegative int start, @Nonnegative int end, @Nonnull SocketAddress remote) {
+        try {
+            record(decoder.decode(buffer, start, end));
+        } catch (IllegalArgumentException e) {
+            LOG.info("Received illegal measure point from " + remote + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records all complete frames of the given buffer and moves its position behind the last one.
+     *
+     * @return the number of bytes the next frame requires or <code>-1</code> if the frame length is illegal.
+     */
+    protected int recordPickleFrames(@Nonnull ByteBuffer buffer, @Nonnull SocketAddress remote) {
+        final int start = buffer.position();
+        int result = 0;
+        while (result == 0 && buffer.remaining() >= 4) {
+            final int length = buffer.getInt(buffer.position());
+            if (length < 0 || length > MAXIMUM_FRAME_SIZE) {
+                LOG.info("Received illegal pickle frame length from " + remote + ": " + length);
+                result = -1;
+            } else if (buffer.remaining() - 4 < length) {
+                result = 4 + length;
+            } else {
+                final ByteBuffer frame = buffer.duplicate();
+                frame.position(buffer.position() + 4).limit(buffer.position() + 4 + length);
+                for (MeasurePoint measurePoint : parsePickleFrame(frame.slice(), remote)) {
+                    record(measurePoint);
+                }
+                buffer.position(buffer.position() + 4 + length);
+            }
+        }
+        capture(pickle, buffer, start, buffer.position());
+        return result;
+    }
+
+    /**
+     * Records the bytes between <code>start</code> and <code>end</code> into the {@link #getCapture() capture} if one
+     * is set - without changing the position of the buffer.
+     */
+    protected void capture(@Nonnull Protocol protocol, @Nonnull ByteBuffer buffer, @Nonnegative int start, @Nonnegative int end) {
+        final CaptureFile capture = _capture;
+        if (capture != null && end > start) {
+            final ByteBuffer content = buffer.duplicate();
+            content.limit(end).position(start);
+            try {
+                capture.append(protocol, currentTimeMillis(), content);
+            } catch (IOException e) {
+                LOG.warn("Could not capture " + (end - start) + " received bytes into " + capture + ".", e);
+            }
+        }
+    }
+
+    @Nonnull
+    protected List<MeasurePoint> parsePickleFrame(@Nonnull ByteBuffer frame, @Nonnull SocketAddress remote) {
+        List<MeasurePoint> result;
+        try {
+            result = _pickleDecoder.decode(frame);
+        } catch (IllegalArgumentException e) {
+            LOG.info("Received illegal pickle frame from " + remote + ".", e);
+            result = Collections.emptyList();
         }
-        return measurePoint;
+        return result;
+    }
+
+    protected void fail(@Nonnull Exception e) {
+        if (_fatalException == null) {
+            _fatalException = e;
+        }
+    }
+
+    @Nonnull
+    protected IoLoop nextIoLoop() {
+        return _ioLoops[(_nextIoLoop.getAndIncrement() & Integer.MAX_VALUE) % _ioLoops.length];
     }
 
     @Override
     public void close() throws IOException {
-        stop(_workers);
-        stop(_acceptor);
+        stop(Arrays.asList(_ioLoops));
+        synchronized (_ioLoops) {
+            if (_udpReceiver != null) {
+                stop(_udpReceiver);
+            }
+        }
     }
 
-    protected class Acceptor extends Thread implements Closeable {
+    /**
+     * Something which is served by an {@link IoLoop}.
+     */
+    protected interface Registrable {
 
-        private final ServerSocket _serverSocket;
+        public void register(@Nonnull Selector selector) throws IOException;
 
-        public Acceptor(@Nonnull ServerSocket serverSocket) {
-            super(VirtualCarbonServer.this.getClass().getSimpleName() + ".Acceptor(" + serverSocket.getLocalSocketAddress() + ")");
-            _serverSocket = serverSocket;
+        public void close() throws IOException;
+
+    }
+
+    /**
+     * Selects on its own selector and serves all listeners and connections registered to it. Accepted connections are
+     * distributed round robin over all loops.
+     */
+    protected class IoLoop extends Thread implements Closeable {
+
+        private final Selector _selector;
+        private final Queue<Registrable> _pending = new ConcurrentLinkedQueue<>();
+
+        public IoLoop(@Nonnegative int number) {
+            super(VirtualCarbonServer.this.getClass().getSimpleName() + ".IoLoop(" + number + ")");
+            try {
+                _selector = Selector.open();
+            } catch (IOException e) {
+                throw new RuntimeException("Could not open selector.", e);
+            }
+        }
+
+        public void register(@Nonnull Registrable registrable) {
+            _pending.add(registrable);
+            _selector.wakeup();
         }
 
         @Override
         public void run() {
             try {
-                while (!currentThread().isInterrupted()) {
-                    final Socket remote = _serverSocket.accept();
-                    synchronized (_workers) {
-                        final Worker worker = new Worker(remote);
-                        _workers.add(worker);
-                        worker.start();
+                while (!currentThread().isInterrupted() && _selector.isOpen()) {
+                    registerPending();
+                    _selector.select();
+                    final Iterator<SelectionKey> i = _selector.selectedKeys().iterator();
+                    while (i.hasNext()) {
+                        final SelectionKey key = i.next();
+                        i.remove();
+                        handle(key);
                     }
                 }
-            } catch (InterruptedIOException ignored) {
-                currentThread().interrupt();
+            } catch (ClosedSelectorException ignored) {
             } catch (Exception e) {
-                if (!(e instanceof SocketException) || !_serverSocket.isClosed()) {
-                    synchronized (VirtualCarbonServer.this) {
-                        _fatalException = e;
-                    }
-                    LOG.error("Got an error from " + _serverSocket + " while accepting a connection.", e);
+                fail(e);
+                LOG.error("Got an error while serving connections.", e);
+            } finally {
+                closeAll();
+            }
+        }
+
+        protected void registerPending() {
+            Registrable registrable = _pending.poll();
+            while (registrable != null) {
+                try {
+                    registrable.register(_selector);
+                } catch (IOException e) {
+                    LOG.info("Could not register " + registrable + ".", e);
+                    closeQuietly(registrable);
+                }
+                registrable = _pending.poll();
+            }
+        }
+
+        protected void handle(@Nonnull SelectionKey key) {
+            final Object attachment = key.attachment();
+            try {
+                if (key.isValid() && key.isAcceptable()) {
+                    ((Listener) attachment).accept();
+                } else if (key.isValid() && key.isReadable()) {
+                    ((Connection) attachment).read();
                 }
+            } catch (IOException e) {
+                LOG.debug("Closing " + attachment + " because of an error.", e);
+                closeQuietly((Registrable) attachment);
             }
         }
+
+        protected void closeAll() {
+            try {
+                for (SelectionKey key : _selector.keys()) {
+                    closeQuietly((Registrable) key.attachment());
+                }
+            } catch (ClosedSelectorException ignored) {}
+            Registrable registrable = _pending.poll();
+            while (registrable != null) {
+                closeQuietly(registrable);
+                registrable = _pending.poll();
+            }
+            try {
+                _selector.close();
+            } catch (IOException ignored) {}
+        }
+
+        protected void closeQuietly(@Nonnull Registrable registrable) {
+            try {
+                registrable.close();
+            } catch (IOException ignored) {}
+        }
+
         @Override
         public void close() throws IOException {
-            _serverSocket.close();
             interrupt();
+            _selector.wakeup();
+        }
+
+    }
+
+    protected class Listener implements Registrable {
+
+        private final ServerSocketChannel _channel;
+        private final Protocol _protocol;
+
+        public Listener(@Nonnull ServerSocketChannel channel, @Nonnull Protocol protocol) {
+            _channel = channel;
+            _protocol = protocol;
+        }
+
+        @Override
+        public void register(@Nonnull Selector selector) throws IOException {
+            _channel.register(selector, OP_ACCEPT, this);
+        }
+
+        public void accept() throws IOException {
+            final SocketChannel channel = _channel.accept();
+            if (channel != null) {
+                channel.configureBlocking(false);
+                nextIoLoop().register(new Connection(channel, _protocol));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            _channel.close();
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "(" + _channel.socket().getLocalSocketAddress() + ", " + _protocol + ")";
+        }
+
+    }
+
+    protected class Connection implements Registrable {
+
+        private final SocketChannel _channel;
+        private final Protocol _protocol;
+        private final SocketAddress _remote;
+        private ByteBuffer _buffer = allocate(INITIAL_READ_BUFFER_SIZE);
+        private int _scanned;
+
+        public Connection(@Nonnull SocketChannel channel, @Nonnull Protocol protocol) {
+            _channel = channel;
+            _protocol = protocol;
+            _remote = channel.socket().getRemoteSocketAddress();
+        }
+
+        @Override
+        public void register(@Nonnull Selector selector) throws IOException {
+            _channel.register(selector, OP_READ, this);
+        }
+
+        public void read() throws IOException {
+            final int read = _channel.read(_buffer);
+            if (read > 0) {
+                _buffer.flip();
+                final boolean keepOpen = _protocol == pickle ? readPickle() : readPlaintext();
+                if (!keepOpen) {
+                    close();
+                }
+            } else if (read < 0) {
+                if (_protocol != pickle && _buffer.position() > 0) {
+                    _buffer.flip();
+                    capture(plaintext, _buffer, 0, _buffer.limit());
+                    recordLine(_plaintextDecoder, _buffer, 0, _buffer.limit(), _remote);
+                }
+                close();
+            }
+        }
+
+        protected boolean readPlaintext() {
+            recordLines(_buffer, _scanned, _remote);
+            _buffer.compact();
+            _scanned = _buffer.position();
+            return ensureRemaining(1, MAXIMUM_LINE_SIZE);
+        }
+
+        protected boolean readPickle() {
+            final int required = recordPickleFrames(_buffer, _remote);
+            _buffer.compact();
+            return required >= 0 && ensureRemaining(required - _buffer.position(), MAXIMUM_FRAME_SIZE + 4);
+        }
+
+        /**
+         * @return <code>false</code> if the buffer would exceed the given maximum size.
+         */
+        protected boolean ensureRemaining(int remaining, @Nonnegative int maximumSize) {
+            boolean result = true;
+            if (_buffer.remaining() < remaining) {
+                final int required = _buffer.position() + remaining;
+                if (required > maximumSize) {
+                    LOG.info("Received more than " + maximumSize + " bytes without a complete message from " + _remote + ". Closing the connection.");
+                    result = false;
+                } else {
+                    final ByteBuffer buffer = allocate(Math.min(maximumSize, Math.max(required, _buffer.capacity() * 2)));
+                    _buffer.flip();
+                    buffer.put(_buffer);
+                    _buffer = buffer;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _channel.close();
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "(" + _remote + ", " + _protocol + ")";
         }
 
     }
 
-    protected class Worker extends Thread implements Closeable {
+    protected class DatagramReceiver extends Thread implements Closeable {
 
-        private final Socket _socket;
+        private final DatagramSocket _socket;
 
-        public Worker(@Nonnull Socket socket) {
-            super(VirtualCarbonServer.this.getClass().getSimpleName() + ".Worker(" + socket.getRemoteSocketAddress() + ">" + socket.getLocalSocketAddress() +  ")");
+        public DatagramReceiver(@Nonnull DatagramSocket socket) {
+            super(VirtualCarbonServer.this.getClass().getSimpleName() + ".DatagramReceiver(" + socket.getLocalSocketAddress() + ")");
             _socket = socket;
         }
 
         @Override
         public void run() {
-            try (final InputStream is = _socket.getInputStream()) {
-                try (final Reader reader = new InputStreamReader(is, _charset)) {
-                    try (final BufferedReader bufferedReader = new BufferedReader(reader)) {
-                        String line = bufferedReader.readLine();
-                        while (!currentThread().isInterrupted() && _socket.isConnected() && line != null) {
-                            final MeasurePoint measurePoint = parseMeasurePoint(line, _socket.getRemoteSocketAddress());
-                            recordedMeasurePoints(measurePoint);
-                            line = bufferedReader.readLine();
-                        }
+            final byte[] data = new byte[MAXIMUM_DATAGRAM_SIZE];
+            final DatagramPacket packet = new DatagramPacket(data, MAXIMUM_DATAGRAM_SIZE);
+            try {
+                while (!currentThread().isInterrupted()) {
+                    packet.setLength(MAXIMUM_DATAGRAM_SIZE);
+                    _socket.receive(packet);
+                    final ByteBuffer buffer = ByteBuffer.wrap(data, 0, packet.getLength());
+                    recordLines(buffer, 0, packet.getSocketAddress());
+                    if (buffer.hasRemaining()) {
+                        capture(plaintext, buffer, buffer.position(), buffer.limit());
+                        recordLine(_plaintextDecoder, buffer, buffer.position(), buffer.limit(), packet.getSocketAddress());
                     }
                 }
             } catch (InterruptedIOException ignored) {
                 currentThread().interrupt();
-            } catch (SocketException ignored) {
             } catch (Exception e) {
-                synchronized (VirtualCarbonServer.this) {
-                    _fatalException = e;
+                if (!(e instanceof SocketException) || !_socket.isClosed()) {
+                    fail(e);
+                    LOG.error("Got an error from " + _socket + " while receiving a datagram.", e);
                 }
-                LOG.error("Got an error from " + _socket + " while handle connection.", e);
             }
         }
+
         @Override
         public void close() throws IOException {
             _socket.close();
@@ -240,10 +765,110 @@ public class VirtualCarbonServer implements Closeable {
 
     }
 
+    @Nonnull
+    protected static ServerSocketChannel bind(@Nonnull InetSocketAddress address) {
+        try {
+            final ServerSocketChannel result = ServerSocketChannel.open();
+            result.socket().bind(address);
+            result.configureBlocking(false);
+            return result;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not bind to " + address + ".", e);
+        }
+    }
+
+    @Nonnull
+    protected static InetSocketAddress toReachableAddress(@Nonnull InetSocketAddress address) {
+        try {
+            return address.getAddress().isAnyLocalAddress() ? new InetSocketAddress(getLocalHost(), address.getPort()) : address;
+        } catch (UnknownHostException e) {
+            throw new RuntimeException("Could not resolve local host for " + address + ".", e);
+        }
+    }
+
     @Nonnull
     protected static InetSocketAddress detectPort(@Nullable InetAddress address, @Nullable IntegerRange portRange) {
         final int port = new FreeTcpPortDetector(address, portRange).detect();
         return new InetSocketAddress(address, port);
     }
 
+    /**
+     * Collects the matching measure points of {@link #awaitPoints(PointMatcher, int, Duration)}. Points which are
+     * received while the already recorded points are collected could be reported twice - these are only counted once.
+     * Points received afterwards are always counted.
+     */
+    protected static class Awaiter implements Subscriber {
+
+        private final PointMatcher _matcher;
+        private final List<MeasurePoint> _matched = new ArrayList<>();
+        private final List<MeasurePoint> _received = new ArrayList<>();
+
+        private boolean _recorded;
+
+        public Awaiter(@Nonnull PointMatcher matcher) {
+            _matcher = matcher;
+        }
+
+        @Override
+        public void onReceived(@Nonnull MeasurePoint measurePoint) {
+            if (_matcher.matches(measurePoint)) {
+                synchronized (this) {
+                    if (_recorded) {
+                        _matched.add(measurePoint);
+                        notifyAll();
+                    } else {
+                        _received.add(measurePoint);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Takes the matching points of the given snapshot. Only the points received before are checked against it -
+         * all points received afterwards are new even if they are equal to recorded ones.
+         */
+        public void recorded(@Nonnull Iterable<MeasurePoint> measurePoints) {
+            final Map<MeasurePoint, Integer> recorded = new HashMap<>();
+            final List<MeasurePoint> matched = new ArrayList<>();
+            for (MeasurePoint measurePoint : measurePoints) {
+                if (_matcher.matches(measurePoint)) {
+                    final Integer count = recorded.get(measurePoint);
+                    recorded.put(measurePoint, count != null ? count + 1 : 1);
+                    matched.add(measurePoint);
+                }
+            }
+            synchronized (this) {
+                _matched.addAll(matched);
+                for (MeasurePoint measurePoint : _received) {
+                    final Integer count = recorded.get(measurePoint);
+                    if (count == null) {
+                        _matched.add(measurePoint);
+                    } else if (count > 1) {
+                        recorded.put(measurePoint, count - 1);
+                    } else {
+                        recorded.remove(measurePoint);
+                    }
+                }
+                _received.clear();
+                _recorded = true;
+                notifyAll();
+            }
+        }
+
+        @Nonnull
+        public synchronized List<MeasurePoint> await(@Nonnegative int count, @Nonnull Duration timeout) throws InterruptedException, TimeoutException {
+            final long deadline = currentTimeMillis() + timeout.toMilliSeconds();
+            long remaining = timeout.toMilliSeconds();
+            while (_matched.size() < count && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - currentTimeMillis();
+            }
+            if (_matched.size() < count) {
+                throw new TimeoutException("Received only " + _matched.size() + " of " + count + " expected measure points within " + timeout + ".");
+            }
+            return new ArrayList<>(_matched);
+        }
+
+    }
+
 }
@@ -0,0 +1,157 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Result of {@link CarbonWriter#writeAsync(String, long) an asynchronous write}. It is done as soon as the measure
+ * point was written to the socket - or failed if it was dropped, spilled or the writer was closed before.
+ *
+ * <p>Listeners are called by the thread which completes this future - usually the writer thread - so they should
+ * return quickly. Listeners added after completion are called at once by the adding thread.</p>
+ */
+public class WriteFuture implements Future<Void> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteFuture.class);
+
+    private final CountDownLatch _done = new CountDownLatch(1);
+    private final MeasurePoint _measurePoint;
+    private List<Runnable> _listeners;
+    private volatile Throwable _failure;
+
+    public WriteFuture(@Nonnull MeasurePoint measurePoint) {
+        _measurePoint = measurePoint;
+    }
+
+    @Nonnull
+    public MeasurePoint getMeasurePoint() {
+        return _measurePoint;
+    }
+
+    /**
+     * @return the reason why the measure point was not written or <code>null</code> if it was written or this future
+     * is not yet done.
+     */
+    @Nullable
+    public Throwable getFailure() {
+        return _failure;
+    }
+
+    public void addListener(@Nonnull Runnable listener) {
+        final boolean done;
+        synchronized (this) {
+            done = isDone();
+            if (!done) {
+                if (_listeners == null) {
+                    _listeners = new ArrayList<>(1);
+                }
+                _listeners.add(listener);
+            }
+        }
+        if (done) {
+            notify(listener);
+        }
+    }
+
+    public void complete() {
+        finish(null);
+    }
+
+    public void fail(@Nonnull Throwable failure) {
+        finish(failure);
+    }
+
+    protected void finish(@Nullable Throwable failure) {
+        final List<Runnable> listeners;
+        synchronized (this) {
+            if (isDone()) {
+                listeners = null;
+            } else {
+                _failure = failure;
+                _done.countDown();
+                listeners = _listeners;
+                _listeners = null;
+            }
+        }
+        if (listeners != null) {
+            for (Runnable listener : listeners) {
+                notify(listener);
+            }
+        }
+    }
+
+    protected void notify(@Nonnull Runnable listener) {
+        try {
+            listener.run();
+        } catch (RuntimeException e) {
+            LOG.warn("Listener " + listener + " of " + this + " failed.", e);
+        }
+    }
+
+    /**
+     * A measure point which is already queued could not be taken back - so this always returns <code>false</code>.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return _done.getCount() == 0;
+    }
+
+    @Override
+    public Void get() throws InterruptedException, ExecutionException {
+        _done.await();
+        return getResult();
+    }
+
+    @Override
+    public Void get(long timeout, @Nonnull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!_done.await(timeout, unit)) {
+            throw new TimeoutException("The measure point " + _measurePoint + " was not written within " + timeout + " " + unit + ".");
+        }
+        return getResult();
+    }
+
+    @Nullable
+    protected Void getResult() throws ExecutionException {
+        final Throwable failure = _failure;
+        if (failure != null) {
+            throw new ExecutionException("Could not write " + _measurePoint + ".", failure);
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + _measurePoint + (isDone() ? _failure != null ? ", failed" : ", written" : "") + "}";
+    }
+
+}
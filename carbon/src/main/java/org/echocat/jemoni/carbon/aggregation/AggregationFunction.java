@@ -0,0 +1,111 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.aggregation;
+
+import javax.annotation.Nonnegative;
+
+/**
+ * Combines all values of one path within one aggregation interval into one value.
+ */
+public enum AggregationFunction {
+    sum {
+        @Override
+        public long aggregate(@Nonnegative long count, long sum, long min, long max, long last) {
+            return sum;
+        }
+
+        @Override
+        public double aggregate(@Nonnegative long count, double sum, double min, double max, double last) {
+            return sum;
+        }
+    },
+    avg {
+        @Override
+        public boolean isIntegral(boolean integralValues) {
+            return false;
+        }
+
+        @Override
+        public long aggregate(@Nonnegative long count, long sum, long min, long max, long last) {
+            return sum / count;
+        }
+
+        @Override
+        public double aggregate(@Nonnegative long count, double sum, double min, double max, double last) {
+            return sum / count;
+        }
+    },
+    min {
+        @Override
+        public long aggregate(@Nonnegative long count, long sum, long min, long max, long last) {
+            return min;
+        }
+
+        @Override
+        public double aggregate(@Nonnegative long count, double sum, double min, double max, double last) {
+            return min;
+        }
+    },
+    max {
+        @Override
+        public long aggregate(@Nonnegative long count, long sum, long min, long max, long last) {
+            return max;
+        }
+
+        @Override
+        public double aggregate(@Nonnegative long count, double sum, double min, double max, double last) {
+            return max;
+        }
+    },
+    last {
+        @Override
+        public long aggregate(@Nonnegative long count, long sum, long min, long max, long last) {
+            return last;
+        }
+
+        @Override
+        public double aggregate(@Nonnegative long count, double sum, double min, double max, double last) {
+            return last;
+        }
+    },
+    count {
+        @Override
+        public boolean isIntegral(boolean integralValues) {
+            return true;
+        }
+
+        @Override
+        public long aggregate(@Nonnegative long count, long sum, long min, long max, long last) {
+            return count;
+        }
+
+        @Override
+        public double aggregate(@Nonnegative long count, double sum, double min, double max, double last) {
+            return count;
+        }
+    };
+
+    /**
+     * @return <code>true</code> if the result is integral - which is usually the case if all values are integral.
+     */
+    public boolean isIntegral(boolean integralValues) {
+        return integralValues;
+    }
+
+    public abstract long aggregate(@Nonnegative long count, long sum, long min, long max, long last);
+
+    public abstract double aggregate(@Nonnegative long count, double sum, double min, double max, double last);
+
+}
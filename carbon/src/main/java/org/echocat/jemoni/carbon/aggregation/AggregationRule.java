@@ -0,0 +1,79 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.aggregation;
+
+import javax.annotation.Nonnull;
+import java.util.regex.Pattern;
+
+import static java.util.regex.Pattern.compile;
+
+/**
+ * All paths which match the {@link #getPattern() pattern} completely are aggregated with the
+ * {@link #getFunction() function}.
+ */
+public class AggregationRule {
+
+    @Nonnull
+    public static AggregationRule aggregate(@Nonnull String pattern, @Nonnull AggregationFunction function) {
+        return new AggregationRule(compile(pattern), function);
+    }
+
+    private final Pattern _pattern;
+    private final AggregationFunction _function;
+
+    public AggregationRule(@Nonnull Pattern pattern, @Nonnull AggregationFunction function) {
+        _pattern = pattern;
+        _function = function;
+    }
+
+    @Nonnull
+    public Pattern getPattern() {
+        return _pattern;
+    }
+
+    @Nonnull
+    public AggregationFunction getFunction() {
+        return _function;
+    }
+
+    public boolean matches(@Nonnull String path) {
+        return _pattern.matcher(path).matches();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        final boolean result;
+        if (this == o) {
+            result = true;
+        } else if (o == null || !getClass().equals(o.getClass())) {
+            result = false;
+        } else {
+            final AggregationRule that = (AggregationRule) o;
+            result = _pattern.pattern().equals(that._pattern.pattern()) && _pattern.flags() == that._pattern.flags() && _function == that._function;
+        }
+        return result;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * _pattern.pattern().hashCode() + _function.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return _function + "(" + _pattern + ")";
+    }
+
+}
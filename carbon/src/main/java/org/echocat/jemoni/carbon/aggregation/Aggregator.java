@@ -0,0 +1,241 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.aggregation;
+
+import org.echocat.jemoni.carbon.Tags;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.Map.Entry;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Collects the values of all paths matched by one of its {@link AggregationRule rules} until they are
+ * {@link #drainTo(Target) drained} - usually once per aggregation interval. Each path has one reused accumulator of
+ * primitives, so aggregating a value allocates nothing. The first matching rule wins. Rules match the path only but
+ * every set of {@link Tags tags} of a path is an own series and is aggregated separately.
+ *
+ * <p>This class is not thread safe.</p>
+ */
+public class Aggregator {
+
+    /**
+     * Receives one aggregated value per series.
+     */
+    public interface Target {
+
+        public void write(@Nonnull String path, @Nonnull Tags tags, long value, long epochSeconds);
+
+        public void write(@Nonnull String path, @Nonnull Tags tags, double value, long epochSeconds);
+
+    }
+
+    protected static final int MAXIMUM_NOT_AGGREGATED_PATHS = 10000;
+
+    private final List<AggregationRule> _rules;
+    private final Map<Tags, Map<String, Accumulator>> _accumulators = new HashMap<>();
+    private final Set<String> _notAggregatedPaths = new HashSet<>();
+
+    public Aggregator(@Nonnull Iterable<AggregationRule> rules) {
+        final List<AggregationRule> copy = new ArrayList<>();
+        for (AggregationRule rule : rules) {
+            copy.add(rule);
+        }
+        _rules = unmodifiableList(copy);
+    }
+
+    @Nonnull
+    public List<AggregationRule> getRules() {
+        return _rules;
+    }
+
+    /**
+     * @return <code>false</code> if the given path is not aggregated and the value has to be written as is.
+     */
+    public boolean aggregate(@Nonnull String path, long value, long epochSeconds) {
+        return aggregate(path, Tags.EMPTY, value, epochSeconds);
+    }
+
+    /**
+     * @return <code>false</code> if the given path is not aggregated and the value has to be written as is.
+     */
+    public boolean aggregate(@Nonnull String path, double value, long epochSeconds) {
+        return aggregate(path, Tags.EMPTY, value, epochSeconds);
+    }
+
+    /**
+     * @return <code>false</code> if the given path is not aggregated and the value has to be written as is.
+     */
+    public boolean aggregate(@Nonnull String path, @Nonnull Tags tags, long value, long epochSeconds) {
+        final Accumulator accumulator = accumulatorFor(path, tags);
+        if (accumulator != null) {
+            accumulator.add(value, epochSeconds);
+        }
+        return accumulator != null;
+    }
+
+    /**
+     * @return <code>false</code> if the given path is not aggregated and the value has to be written as is.
+     */
+    public boolean aggregate(@Nonnull String path, @Nonnull Tags tags, double value, long epochSeconds) {
+        final Accumulator accumulator = accumulatorFor(path, tags);
+        if (accumulator != null) {
+            accumulator.add(value, epochSeconds);
+        }
+        return accumulator != null;
+    }
+
+    /**
+     * Writes one value for each series which received values since the last call into the given target and resets
+     * them. Series which received nothing are forgotten.
+     */
+    public void drainTo(@Nonnull Target target) {
+        final Iterator<Entry<Tags, Map<String, Accumulator>>> i = _accumulators.entrySet().iterator();
+        while (i.hasNext()) {
+            final Entry<Tags, Map<String, Accumulator>> tagsAndAccumulators = i.next();
+            final Map<String, Accumulator> pathToAccumulator = tagsAndAccumulators.getValue();
+            drainTo(tagsAndAccumulators.getKey(), pathToAccumulator, target);
+            if (pathToAccumulator.isEmpty()) {
+                i.remove();
+            }
+        }
+    }
+
+    protected void drainTo(@Nonnull Tags tags, @Nonnull Map<String, Accumulator> pathToAccumulator, @Nonnull Target target) {
+        final Iterator<Entry<String, Accumulator>> i = pathToAccumulator.entrySet().iterator();
+        while (i.hasNext()) {
+            final Entry<String, Accumulator> pathAndAccumulator = i.next();
+            final Accumulator accumulator = pathAndAccumulator.getValue();
+            if (accumulator.isEmpty()) {
+                i.remove();
+            } else {
+                accumulator.drainTo(pathAndAccumulator.getKey(), tags, target);
+            }
+        }
+    }
+
+    @Nullable
+    protected Accumulator accumulatorFor(@Nonnull String path, @Nonnull Tags tags) {
+        Map<String, Accumulator> pathToAccumulator = _accumulators.get(tags);
+        Accumulator result = pathToAccumulator != null ? pathToAccumulator.get(path) : null;
+        if (result == null && !_notAggregatedPaths.contains(path)) {
+            final AggregationFunction function = functionFor(path);
+            if (function != null) {
+                if (pathToAccumulator == null) {
+                    pathToAccumulator = new HashMap<>();
+                    _accumulators.put(tags, pathToAccumulator);
+                }
+                result = new Accumulator(function);
+                pathToAccumulator.put(path, result);
+            } else {
+                if (_notAggregatedPaths.size() >= MAXIMUM_NOT_AGGREGATED_PATHS) {
+                    _notAggregatedPaths.clear();
+                }
+                _notAggregatedPaths.add(path);
+            }
+        }
+        return result;
+    }
+
+    @Nullable
+    protected AggregationFunction functionFor(@Nonnull String path) {
+        AggregationFunction result = null;
+        for (int i = 0; result == null && i < _rules.size(); i++) {
+            final AggregationRule rule = _rules.get(i);
+            if (rule.matches(path)) {
+                result = rule.getFunction();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + _rules;
+    }
+
+    protected static class Accumulator {
+
+        private final AggregationFunction _function;
+
+        private long _count;
+        private boolean _integral;
+        private long _longSum;
+        private long _longMin;
+        private long _longMax;
+        private long _longLast;
+        private double _doubleSum;
+        private double _doubleMin;
+        private double _doubleMax;
+        private double _doubleLast;
+        private long _timestamp;
+
+        public Accumulator(@Nonnull AggregationFunction function) {
+            _function = function;
+        }
+
+        public void add(long value, long epochSeconds) {
+            if (_count == 0) {
+                _integral = true;
+                _longSum = value;
+                _longMin = value;
+                _longMax = value;
+            } else {
+                _longSum += value;
+                _longMin = Math.min(_longMin, value);
+                _longMax = Math.max(_longMax, value);
+            }
+            _longLast = value;
+            addDouble(value, epochSeconds);
+        }
+
+        public void add(double value, long epochSeconds) {
+            _integral = false;
+            addDouble(value, epochSeconds);
+        }
+
+        protected void addDouble(double value, long epochSeconds) {
+            if (_count == 0) {
+                _doubleSum = value;
+                _doubleMin = value;
+                _doubleMax = value;
+            } else {
+                _doubleSum += value;
+                _doubleMin = Math.min(_doubleMin, value);
+                _doubleMax = Math.max(_doubleMax, value);
+            }
+            _doubleLast = value;
+            _timestamp = epochSeconds;
+            _count++;
+        }
+
+        public boolean isEmpty() {
+            return _count == 0;
+        }
+
+        public void drainTo(@Nonnull String path, @Nonnull Tags tags, @Nonnull Target target) {
+            if (_function.isIntegral(_integral)) {
+                target.write(path, tags, _function.aggregate(_count, _longSum, _longMin, _longMax, _longLast), _timestamp);
+            } else {
+                target.write(path, tags, _function.aggregate(_count, _doubleSum, _doubleMin, _doubleMax, _doubleLast), _timestamp);
+            }
+            _count = 0;
+        }
+
+    }
+
+}
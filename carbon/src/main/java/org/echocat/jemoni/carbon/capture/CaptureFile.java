@@ -0,0 +1,292 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.capture;
+
+import org.echocat.jemoni.carbon.protocol.Protocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.echocat.jomon.runtime.util.ResourceUtils.closeQuietly;
+
+/**
+ * Records bytes received by a {@link org.echocat.jemoni.carbon.VirtualCarbonServer} together with the time they were
+ * received at into memory mapped, append only segment files below a {@link #getDirectory() directory}, so they could
+ * be {@link CaptureReplayer replayed} later. Existing segments are continued. If the {@link #getMaximumSize() maximum
+ * size} is reached further bytes are {@link #getDropped() dropped} - older ones are never overwritten.
+ */
+public class CaptureFile implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final long DEFAULT_MAXIMUM_SIZE = 1024L * 1024 * 1024;
+
+    protected static final String SEGMENT_SUFFIX = ".capture";
+    protected static final FilenameFilter SEGMENT_FILTER = new FilenameFilter() { @Override public boolean accept(File dir, String name) {
+        return name.endsWith(SEGMENT_SUFFIX) && name.length() > SEGMENT_SUFFIX.length();
+    }};
+
+    private static final Logger LOG = LoggerFactory.getLogger(CaptureFile.class);
+
+    private final Lock _lock = new ReentrantLock();
+    private final File _directory;
+    private final AtomicLong _dropped = new AtomicLong();
+
+    private volatile int _segmentSize = DEFAULT_SEGMENT_SIZE;
+    private volatile long _maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    private Deque<CaptureSegment> _segments;
+
+    public CaptureFile(@Nonnull File directory) {
+        _directory = directory;
+    }
+
+    @Nonnull
+    public File getDirectory() {
+        return _directory;
+    }
+
+    @Nonnegative
+    public int getSegmentSize() {
+        return _segmentSize;
+    }
+
+    public void setSegmentSize(@Nonnegative int segmentSize) {
+        _segmentSize = segmentSize;
+    }
+
+    /**
+     * @return the maximum number of bytes all segments together could occupy on disk.
+     */
+    @Nonnegative
+    public long getMaximumSize() {
+        return _maximumSize;
+    }
+
+    public void setMaximumSize(@Nonnegative long maximumSize) {
+        _maximumSize = maximumSize;
+    }
+
+    /**
+     * @return the number of bytes which were not captured because the {@link #getMaximumSize() maximum size} was
+     * reached.
+     */
+    @Nonnegative
+    public long getDropped() {
+        return _dropped.get();
+    }
+
+    /**
+     * Appends the remaining content of the given buffer as one record. The position of the buffer is not modified.
+     *
+     * @return <code>false</code> if the capture is full and the content was dropped.
+     */
+    public boolean append(@Nonnull Protocol protocol, long receivedAt, @Nonnull ByteBuffer content) throws IOException {
+        final int length = content.remaining();
+        _lock.lock();
+        try {
+            final Deque<CaptureSegment> segments = openIfRequired();
+            CaptureSegment segment = segments.peekLast();
+            if (segment == null || !segment.hasRoomFor(length)) {
+                final int size = Math.max(_segmentSize, CaptureSegment.RECORD_HEADER_SIZE + length);
+                segment = sizeOf(segments) + size <= _maximumSize ? createSegment(segments, size) : null;
+            }
+            if (segment != null) {
+                segment.append(protocol, receivedAt, content.duplicate());
+            } else {
+                _dropped.addAndGet(length);
+            }
+            return segment != null;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes the captured records of all segments to disk. The segments stay open for further records.
+     */
+    public void flush() throws IOException {
+        _lock.lock();
+        try {
+            if (_segments != null) {
+                for (CaptureSegment segment : _segments) {
+                    segment.force();
+                }
+            }
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @return a reader of all records which are captured until now - also of a capture of an earlier run. The reader
+     * maps the segment files itself, so capturing continues while reading.
+     */
+    @Nonnull
+    public Reader openReader() throws IOException {
+        final String[] names = _directory.isDirectory() ? _directory.list(SEGMENT_FILTER) : new String[0];
+        Arrays.sort(names);
+        final Deque<File> files = new ArrayDeque<>();
+        for (String name : names) {
+            files.addLast(new File(_directory, name));
+        }
+        return new Reader(files);
+    }
+
+    @Nonnegative
+    protected static long sizeOf(@Nonnull Deque<CaptureSegment> segments) {
+        long result = 0;
+        for (CaptureSegment segment : segments) {
+            result += segment.getCapacity();
+        }
+        return result;
+    }
+
+    @Nonnull
+    protected CaptureSegment createSegment(@Nonnull Deque<CaptureSegment> segments, @Nonnegative int size) throws IOException {
+        final CaptureSegment last = segments.peekLast();
+        final long sequence = last != null ? last.getSequence() + 1 : 0;
+        final CaptureSegment result = new CaptureSegment(new File(_directory, String.format("%019d", sequence) + SEGMENT_SUFFIX), sequence, size);
+        segments.addLast(result);
+        return result;
+    }
+
+    @Nonnull
+    protected Deque<CaptureSegment> openIfRequired() throws IOException {
+        if (_segments == null) {
+            if (!_directory.isDirectory() && !_directory.mkdirs()) {
+                throw new IOException("Could not create directory " + _directory + ".");
+            }
+            final Deque<CaptureSegment> segments = new ArrayDeque<>();
+            final String[] names = _directory.list(SEGMENT_FILTER);
+            Arrays.sort(names);
+            boolean success = false;
+            try {
+                for (String name : names) {
+                    segments.addLast(new CaptureSegment(new File(_directory, name), sequenceOf(name)));
+                }
+                success = true;
+            } finally {
+                if (!success) {
+                    for (CaptureSegment segment : segments) {
+                        closeQuietly(segment);
+                    }
+                }
+            }
+            if (!segments.isEmpty()) {
+                LOG.info("Continuing capture with " + segments.size() + " existing segment(s) in " + _directory + ".");
+            }
+            _segments = segments;
+        }
+        return _segments;
+    }
+
+    @Nonnegative
+    protected static long sequenceOf(@Nonnull String fileName) throws IOException {
+        final String plain = fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length());
+        try {
+            return Long.parseLong(plain);
+        } catch (NumberFormatException ignored) {
+            throw new IOException("Illegal segment file name: " + fileName);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        _lock.lock();
+        try {
+            if (_segments != null) {
+                try {
+                    for (CaptureSegment segment : _segments) {
+                        segment.close();
+                    }
+                } finally {
+                    _segments = null;
+                }
+            }
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + _directory + "}";
+    }
+
+    /**
+     * Reads all records of the segments in the order they were captured. This class is not thread safe.
+     */
+    public static class Reader implements Closeable {
+
+        private final Deque<File> _files;
+
+        private CaptureSegment _segment;
+        private int _position;
+
+        protected Reader(@Nonnull Deque<File> files) {
+            _files = files;
+        }
+
+        /**
+         * @return the next record or <code>null</code> if all records were read.
+         */
+        @Nullable
+        public CaptureRecord next() throws IOException {
+            CaptureRecord result = null;
+            while (result == null && (_segment != null || !_files.isEmpty())) {
+                if (_segment == null) {
+                    final File file = _files.removeFirst();
+                    _segment = new CaptureSegment(file, sequenceOf(file.getName()));
+                    _position = 0;
+                }
+                result = _segment.read(_position);
+                if (result != null) {
+                    _position += CaptureSegment.RECORD_HEADER_SIZE + result.getLength();
+                } else {
+                    _segment.close();
+                    _segment = null;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (_segment != null) {
+                try {
+                    _segment.close();
+                } finally {
+                    _segment = null;
+                }
+            }
+        }
+
+    }
+
+}
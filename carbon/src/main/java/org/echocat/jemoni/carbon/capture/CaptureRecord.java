@@ -0,0 +1,69 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.capture;
+
+import org.echocat.jemoni.carbon.protocol.Protocol;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+
+/**
+ * Bytes which were received at once by a {@link org.echocat.jemoni.carbon.VirtualCarbonServer} - always complete
+ * lines or complete length prefixed pickle frames.
+ */
+public class CaptureRecord {
+
+    private final Protocol _protocol;
+    private final long _receivedAt;
+    private final ByteBuffer _content;
+
+    public CaptureRecord(@Nonnull Protocol protocol, long receivedAt, @Nonnull ByteBuffer content) {
+        _protocol = protocol;
+        _receivedAt = receivedAt;
+        _content = content;
+    }
+
+    @Nonnull
+    public Protocol getProtocol() {
+        return _protocol;
+    }
+
+    /**
+     * @return the time in milliseconds since epoch the content was received at.
+     */
+    public long getReceivedAt() {
+        return _receivedAt;
+    }
+
+    /**
+     * @return the content - a new read only view every call.
+     */
+    @Nonnull
+    public ByteBuffer getContent() {
+        return _content.asReadOnlyBuffer();
+    }
+
+    @Nonnegative
+    public int getLength() {
+        return _content.remaining();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + _protocol + ", receivedAt=" + _receivedAt + ", length=" + getLength() + "}";
+    }
+
+}
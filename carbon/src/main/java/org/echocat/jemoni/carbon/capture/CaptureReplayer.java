@@ -0,0 +1,217 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.capture;
+
+import org.echocat.jemoni.carbon.CarbonWriter;
+import org.echocat.jemoni.carbon.MeasurePoint;
+import org.echocat.jemoni.carbon.protocol.PickleDecoder;
+import org.echocat.jemoni.carbon.protocol.PlaintextDecoder;
+import org.echocat.jemoni.carbon.protocol.Protocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.Charset.forName;
+import static org.echocat.jemoni.carbon.protocol.Protocol.pickle;
+
+/**
+ * Pushes all records of a {@link CaptureFile} through a {@link CarbonWriter} - with the original pauses between them
+ * divided by the {@link #getSpeed() speed}. The measure points keep their original timestamps, so the target receives
+ * exactly what was captured.
+ */
+public class CaptureReplayer {
+
+    protected static final String USAGE = "Usage: " + CaptureReplayer.class.getName() + " <directory> <host>:<port> [<speed>] [plaintext|pickle]";
+
+    private static final Logger LOG = LoggerFactory.getLogger(CaptureReplayer.class);
+
+    private final CaptureFile _capture;
+    private final CarbonWriter _writer;
+    private final PickleDecoder _pickleDecoder = new PickleDecoder();
+
+    private double _speed = 1;
+    private PlaintextDecoder _plaintextDecoder = new PlaintextDecoder(forName("UTF-8"));
+
+    public CaptureReplayer(@Nonnull CaptureFile capture, @Nonnull CarbonWriter writer) {
+        _capture = capture;
+        _writer = writer;
+    }
+
+    @Nonnull
+    public CaptureFile getCapture() {
+        return _capture;
+    }
+
+    @Nonnull
+    public CarbonWriter getWriter() {
+        return _writer;
+    }
+
+    /**
+     * @return <code>1</code> replays with the original rate, <code>2</code> twice as fast and <code>0</code> as fast as
+     * possible.
+     */
+    @Nonnegative
+    public double getSpeed() {
+        return _speed;
+    }
+
+    public void setSpeed(@Nonnegative double speed) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Illegal speed: " + speed);
+        }
+        _speed = speed;
+    }
+
+    @Nonnull
+    public Charset getCharset() {
+        return _plaintextDecoder.getCharset();
+    }
+
+    /**
+     * @param charset of the captured plaintext lines.
+     */
+    public void setCharset(@Nonnull Charset charset) {
+        _plaintextDecoder = new PlaintextDecoder(charset);
+    }
+
+    /**
+     * @return the number of measure points which were written.
+     */
+    @Nonnegative
+    public long replay() throws IOException, InterruptedException {
+        long result = 0;
+        try (final CaptureFile.Reader reader = _capture.openReader()) {
+            long firstReceivedAt = 0;
+            long startedAt = 0;
+            CaptureRecord record = reader.next();
+            if (record != null) {
+                firstReceivedAt = record.getReceivedAt();
+                startedAt = currentTimeMillis();
+            }
+            while (record != null) {
+                waitUntil(startedAt, record.getReceivedAt() - firstReceivedAt);
+                final List<MeasurePoint> measurePoints = decode(record);
+                _writer.write(measurePoints);
+                result += measurePoints.size();
+                record = reader.next();
+            }
+        }
+        return result;
+    }
+
+    protected void waitUntil(long startedAt, long offset) throws InterruptedException {
+        final double speed = _speed;
+        if (speed > 0 && offset > 0) {
+            final long sleep = startedAt + (long) (offset / speed) - currentTimeMillis();
+            if (sleep > 0) {
+                Thread.sleep(sleep);
+            }
+        }
+    }
+
+    @Nonnull
+    protected List<MeasurePoint> decode(@Nonnull CaptureRecord record) {
+        final ByteBuffer content = record.getContent();
+        return record.getProtocol() == pickle ? decodePickleFrames(content) : decodeLines(content);
+    }
+
+    @Nonnull
+    protected List<MeasurePoint> decodeLines(@Nonnull ByteBuffer content) {
+        final PlaintextDecoder decoder = _plaintextDecoder;
+        final List<MeasurePoint> result = new ArrayList<>();
+        final int limit = content.limit();
+        int lineStart = content.position();
+        for (int i = lineStart; i <= limit; i++) {
+            if (i == limit || content.get(i) == '\n') {
+                try {
+                    final MeasurePoint measurePoint = decoder.decode(content, lineStart, i);
+                    if (measurePoint != null) {
+                        result.add(measurePoint);
+                    }
+                } catch (IllegalArgumentException e) {
+                    LOG.info("Skipping illegal captured measure point: " + e.getMessage());
+                }
+                lineStart = i + 1;
+            }
+        }
+        return result;
+    }
+
+    @Nonnull
+    protected List<MeasurePoint> decodePickleFrames(@Nonnull ByteBuffer content) {
+        final List<MeasurePoint> result = new ArrayList<>();
+        while (content.remaining() >= 4) {
+            final int length = content.getInt();
+            if (length < 0 || length > content.remaining()) {
+                LOG.info("Skipping captured pickle frame with illegal length: " + length);
+                content.position(content.limit());
+            } else {
+                final ByteBuffer frame = content.slice();
+                frame.limit(length);
+                try {
+                    result.addAll(_pickleDecoder.decode(frame));
+                } catch (IllegalArgumentException e) {
+                    LOG.info("Skipping illegal captured pickle frame.", e);
+                }
+                content.position(content.position() + length);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + _capture + " -> " + _writer.getAddress() + ", speed=" + _speed + "}";
+    }
+
+    public static void main(String... args) throws Exception {
+        if (args.length < 2 || args.length > 4 || args[1].lastIndexOf(':') < 0) {
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+        final int separator = args[1].lastIndexOf(':');
+        final CarbonWriter writer = new CarbonWriter();
+        writer.setAddress(new InetSocketAddress(args[1].substring(0, separator), Integer.parseInt(args[1].substring(separator + 1))));
+        if (args.length > 3) {
+            writer.setProtocol(Protocol.valueOf(args[3]));
+        }
+        writer.init();
+        try (final CaptureFile capture = new CaptureFile(new File(args[0]))) {
+            final CaptureReplayer replayer = new CaptureReplayer(capture, writer);
+            if (args.length > 2) {
+                replayer.setSpeed(Double.parseDouble(args[2]));
+            }
+            final long started = currentTimeMillis();
+            final long written = replayer.replay();
+            writer.flush();
+            System.out.println("Replayed " + written + " measure points of " + capture + " in " + (currentTimeMillis() - started) + "ms.");
+        } finally {
+            writer.close();
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.capture;
+
+import org.echocat.jemoni.carbon.protocol.Protocol;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+
+/**
+ * One memory mapped, append only file of a {@link CaptureFile}. Every record is a 4 byte length of the content, the
+ * 8 byte time it was received at and 1 byte of its {@link Protocol} followed by the content. A length of
+ * <code>0</code> marks the end of the written part. Reading does not modify the segment, so it could be replayed any
+ * number of times. This class is not thread safe.
+ */
+public class CaptureSegment implements Closeable {
+
+    protected static final int RECORD_HEADER_SIZE = 4 + 8 + 1;
+
+    private final File _file;
+    private final long _sequence;
+
+    private MappedByteBuffer _buffer;
+    private int _writePosition;
+
+    /**
+     * Creates a new empty segment of the given <code>size</code>.
+     */
+    public CaptureSegment(@Nonnull File file, @Nonnegative long sequence, @Nonnegative int size) throws IOException {
+        _file = file;
+        _sequence = sequence;
+        _buffer = map(file, size);
+    }
+
+    /**
+     * Opens an already existing segment and recovers its write position.
+     */
+    public CaptureSegment(@Nonnull File file, @Nonnegative long sequence) throws IOException {
+        _file = file;
+        _sequence = sequence;
+        _buffer = map(file, file.length());
+        recover();
+    }
+
+    @Nonnull
+    public File getFile() {
+        return _file;
+    }
+
+    @Nonnegative
+    public long getSequence() {
+        return _sequence;
+    }
+
+    @Nonnegative
+    public int getCapacity() {
+        return _buffer.capacity();
+    }
+
+    /**
+     * @return the position behind the last written record.
+     */
+    @Nonnegative
+    public int getWritePosition() {
+        return _writePosition;
+    }
+
+    public boolean hasRoomFor(@Nonnegative int length) {
+        return _writePosition + RECORD_HEADER_SIZE + length <= _buffer.capacity();
+    }
+
+    /**
+     * Appends the remaining content of <code>content</code>. The caller has to ensure that there is
+     * {@link #hasRoomFor(int) room for it}.
+     */
+    public void append(@Nonnull Protocol protocol, long receivedAt, @Nonnull ByteBuffer content) {
+        final int length = content.remaining();
+        final ByteBuffer target = _buffer.duplicate();
+        target.position(_writePosition + 4);
+        target.putLong(receivedAt);
+        target.put((byte) protocol.ordinal());
+        target.put(content);
+        _buffer.putInt(_writePosition, length);
+        _writePosition += RECORD_HEADER_SIZE + length;
+    }
+
+    /**
+     * @return the record at the given position or <code>null</code> if there is none. The next record starts at
+     * <code>position + {@link #RECORD_HEADER_SIZE} + {@link CaptureRecord#getLength()}</code>.
+     */
+    @Nullable
+    public CaptureRecord read(@Nonnegative int position) throws IOException {
+        final CaptureRecord result;
+        final int length = recordLengthAt(position);
+        if (length > 0) {
+            final int protocol = _buffer.get(position + 12);
+            if (protocol < 0 || protocol >= Protocol.values().length) {
+                throw new IOException("Illegal protocol " + protocol + " of record at " + position + " in " + _file + ".");
+            }
+            final ByteBuffer content = _buffer.duplicate();
+            content.limit(position + RECORD_HEADER_SIZE + length).position(position + RECORD_HEADER_SIZE);
+            result = new CaptureRecord(Protocol.values()[protocol], _buffer.getLong(position + 4), content.slice());
+        } else {
+            result = null;
+        }
+        return result;
+    }
+
+    protected void recover() {
+        int position = 0;
+        int length = recordLengthAt(position);
+        while (length > 0) {
+            position += RECORD_HEADER_SIZE + length;
+            length = recordLengthAt(position);
+        }
+        _writePosition = position;
+    }
+
+    /**
+     * @return the length of the record at <code>position</code> or <code>0</code> if there is no complete record.
+     */
+    protected int recordLengthAt(@Nonnegative int position) {
+        int result = 0;
+        if (position + RECORD_HEADER_SIZE <= _buffer.capacity()) {
+            final int length = _buffer.getInt(position);
+            if (length > 0 && length <= _buffer.capacity() - position - RECORD_HEADER_SIZE) {
+                result = length;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the appended records to disk.
+     */
+    public void force() {
+        if (_buffer != null) {
+            _buffer.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_buffer != null) {
+            _buffer.force();
+            _buffer = null;
+        }
+    }
+
+    @Nonnull
+    protected static MappedByteBuffer map(@Nonnull File file, @Nonnegative long size) throws IOException {
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(size);
+            try (final FileChannel channel = randomAccessFile.getChannel()) {
+                return channel.map(READ_WRITE, 0, size);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + _file + "}";
+    }
+
+}
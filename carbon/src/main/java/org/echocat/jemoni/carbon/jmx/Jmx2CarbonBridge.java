@@ -15,9 +15,13 @@
 package org.echocat.jemoni.carbon.jmx;
 
 import org.echocat.jemoni.carbon.CarbonWriter;
+import org.echocat.jemoni.carbon.MeasurePoint;
+import org.echocat.jemoni.carbon.Tags;
+import org.echocat.jemoni.carbon.ThreadMode;
 import org.echocat.jemoni.carbon.jmx.configuration.Configuration;
 import org.echocat.jemoni.carbon.jmx.configuration.Rule;
 import org.echocat.jemoni.jmx.JmxRegistry;
+import org.echocat.jomon.runtime.util.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +40,7 @@ import java.util.Map.Entry;
 import java.util.regex.Pattern;
 
 import static java.lang.Boolean.TRUE;
+import static java.lang.System.currentTimeMillis;
 import static java.lang.Thread.currentThread;
 import static java.util.Arrays.asList;
 import static java.util.regex.Pattern.compile;
@@ -66,10 +71,13 @@ public class Jmx2CarbonBridge implements AutoCloseable {
     private final MBeanServer _server;
     private final CarbonWriter _carbonWriter;
     private final Set<Thread> _updatingThreads = new HashSet<>();
+    private final Map<Rule, LastValueMap> _ruleToLastValues = new HashMap<>();
 
     private ClassLoader _classLoader = currentThread().getContextClassLoader();
     private Configuration _configuration;
     private String _pathPrefix = getLocalhost() + ".";
+    private ThreadMode _threadMode = ThreadMode.platform;
+    private boolean _keyPropertiesAsTags;
 
     @Nonnull
     protected static String getLocalhost() {
@@ -120,6 +128,31 @@ public class Jmx2CarbonBridge implements AutoCloseable {
         _pathPrefix = pathPrefix;
     }
 
+    /**
+     * @return the kind of threads the workers - one per rule - run in.
+     */
+    @Nonnull
+    public ThreadMode getThreadMode() {
+        return _threadMode;
+    }
+
+    public void setThreadMode(@Nonnull ThreadMode threadMode) {
+        _threadMode = threadMode;
+    }
+
+    /**
+     * @return <code>true</code> if the key properties of an object name like <code>type=Memory</code> are written as
+     * tags of a tagged series (<code>java_lang.HeapMemoryUsage_used;type=Memory</code>) instead of being flattened into
+     * the path.
+     */
+    public boolean isKeyPropertiesAsTags() {
+        return _keyPropertiesAsTags;
+    }
+
+    public void setKeyPropertiesAsTags(boolean keyPropertiesAsTags) {
+        _keyPropertiesAsTags = keyPropertiesAsTags;
+    }
+
     @Nonnull
     public CarbonWriter getCarbonWriter() {
         return _carbonWriter;
@@ -244,16 +277,34 @@ public class Jmx2CarbonBridge implements AutoCloseable {
     protected void startThreads(@Nonnull Configuration configuration, @Nonnull Map<Rule, Set<AttributeDefinitions>> ruleToAttributeNames) {
         synchronized (this) {
             stopThreads();
+            _ruleToLastValues.keySet().retainAll(ruleToAttributeNames.keySet());
             for (Entry<Rule, Set<AttributeDefinitions>> ruleAndAttributeNames : ruleToAttributeNames.entrySet()) {
                 final Rule rule = ruleAndAttributeNames.getKey();
-                final Worker worker = new Worker(configuration, rule, ruleAndAttributeNames.getValue());
-                final Thread thread = new Thread(worker, worker.toString());
+                final Worker worker = new Worker(configuration, rule, ruleAndAttributeNames.getValue(), lastValuesFor(rule));
+                final Thread thread = _threadMode.newThread(worker, worker.toString(), false);
                 thread.start();
                 _updatingThreads.add(thread);
             }
         }
     }
 
+    /**
+     * @return the last written values of the given rule - kept over {@link #updateMBeanIndex() index updates}, so
+     * restarted workers do not write all unchanged values again - or <code>null</code> if the rule writes every value.
+     */
+    @Nullable
+    protected LastValueMap lastValuesFor(@Nonnull Rule rule) {
+        LastValueMap result = null;
+        if (rule.getHeartbeatEvery() != null) {
+            result = _ruleToLastValues.get(rule);
+            if (result == null) {
+                result = new LastValueMap();
+                _ruleToLastValues.put(rule, result);
+            }
+        }
+        return result;
+    }
+
     protected void stopThreads() {
         synchronized (this) {
             final Iterator<Thread> i = _updatingThreads.iterator();
@@ -301,11 +352,14 @@ public class Jmx2CarbonBridge implements AutoCloseable {
         private final Configuration _configuration;
         private final Rule _rule;
         private final Set<AttributeDefinitions> _attributeNames;
+        private final Map<ObjectName, Tags> _objectNameToTags = new HashMap<>();
+        private final LastValueMap _lastValues;
 
-        public Worker(@Nonnull Configuration configuration, @Nonnull Rule rule, @Nonnull Set<AttributeDefinitions> attributeNames) {
+        public Worker(@Nonnull Configuration configuration, @Nonnull Rule rule, @Nonnull Set<AttributeDefinitions> attributeNames, @Nullable LastValueMap lastValues) {
             _configuration = configuration;
             _rule = rule;
             _attributeNames = attributeNames;
+            _lastValues = lastValues;
         }
 
         @Override
@@ -313,18 +367,20 @@ public class Jmx2CarbonBridge implements AutoCloseable {
             try {
                 while (!currentThread().isInterrupted()) {
                     if (_carbonWriter.getAddress() != null) {
+                        final long now = currentTimeMillis();
                         for (AttributeDefinitions attributeDefinitions : _attributeNames) {
                             final ObjectName objectName = attributeDefinitions.getObjectName();
+                            final Map<String, Object> attributes = readAttributesOf(attributeDefinitions);
                             final Iterator<AttributeDefinition> i = attributeDefinitions.iterator();
                             while (i.hasNext()) {
                                 final AttributeDefinition definition = i.next();
                                 try {
-                                    final Map<String, Object> keyToValue = findValuesOf(definition);
+                                    final Map<String, Object> keyToValue = findValuesOf(definition, attributes);
                                     for (Entry<String, Object> keyAndValue : keyToValue.entrySet()) {
                                         final String key = keyAndValue.getKey();
                                         final Object value = keyAndValue.getValue();
                                         if (value instanceof Number) {
-                                            _carbonWriter.write(getPathFor(objectName, key, definition), (Number) value);
+                                            write(objectName, key, definition, (Number) value, now);
                                         }
                                     }
                                 } catch (InstanceNotFoundException ignored) {
@@ -345,32 +401,123 @@ public class Jmx2CarbonBridge implements AutoCloseable {
             }
         }
 
+        protected void write(@Nonnull ObjectName objectName, @Nonnull String key, @Nonnull AttributeDefinition definition, @Nonnull Number value, long now) throws InterruptedException {
+            final String path;
+            final Tags tags;
+            if (_keyPropertiesAsTags) {
+                path = getPathFor(objectName.getDomain().replace('.', '_'), key, definition);
+                tags = getTagsFor(objectName);
+            } else {
+                path = getPathFor(objectName, key, definition);
+                tags = Tags.EMPTY;
+            }
+            if (isChanged(path, tags, value, now)) {
+                _carbonWriter.write(new MeasurePoint(path, tags, value));
+            }
+        }
+
+        /**
+         * @return <code>true</code> if the rule writes every value or if the value of the given series changed or
+         * its heartbeat is due.
+         */
+        protected boolean isChanged(@Nonnull String path, @Nonnull Tags tags, @Nonnull Number value, long now) {
+            final LastValueMap lastValues = _lastValues;
+            final Duration heartbeatEvery = _rule.getHeartbeatEvery();
+            final boolean result;
+            if (lastValues != null && heartbeatEvery != null) {
+                final String series = tags.isEmpty() ? path : path + tags.getSuffix();
+                result = lastValues.update(series, LastValueMap.toBits(value), now, heartbeatEvery.toMilliSeconds());
+            } else {
+                result = true;
+            }
+            return result;
+        }
+
         @Nonnull
         protected String getPathFor(@Nonnull ObjectName objectName, @Nonnull String key, @Nonnull AttributeDefinition definition) {
+            return getPathFor(getNormalizedNameFor(objectName), key, definition);
+        }
+
+        @Nonnull
+        protected String getPathFor(@Nonnull String normalizedName, @Nonnull String key, @Nonnull AttributeDefinition definition) {
             final StringBuilder sb = new StringBuilder();
             final String pathPrefix = _pathPrefix;
             if (pathPrefix != null) {
                 sb.append(pathPrefix);
             }
-            sb.append(getNormalizedNameFor(objectName)).append('.').append(key);
+            sb.append(normalizedName).append('.').append(key);
             return _configuration.format(definition, sb.toString());
         }
 
+        /**
+         * @return the key properties of the given object name as tags - created once per object name.
+         */
+        @Nonnull
+        protected Tags getTagsFor(@Nonnull ObjectName objectName) {
+            Tags result = _objectNameToTags.get(objectName);
+            if (result == null) {
+                result = Tags.tags(objectName.getKeyPropertyList());
+                _objectNameToTags.put(objectName, result);
+            }
+            return result;
+        }
+
         @Nonnull
         protected String getNormalizedNameFor(@Nonnull ObjectName objectName) {
             final String nameWithoutDots = objectName.toString().replace('.', '_');
             return NAME_REPLACE_PATTERN.matcher(nameWithoutDots).replaceAll(".");
         }
 
+        /**
+         * Reads all top level attributes of the given definitions with one call. Attributes which could not be read
+         * are missing in the result - they are read one by one by {@link #findValueOf(AttributeDefinition, Object)}
+         * later which also reports their errors.
+         *
+         * @return the read values by attribute name.
+         */
+        @Nonnull
+        protected Map<String, Object> readAttributesOf(@Nonnull AttributeDefinitions definitions) {
+            final Set<String> names = new LinkedHashSet<>();
+            for (AttributeDefinition definition : definitions) {
+                names.add(definition.getName());
+            }
+            final Map<String, Object> result = new HashMap<>();
+            if (!names.isEmpty()) {
+                try {
+                    for (Attribute attribute : _server.getAttributes(definitions.getObjectName(), names.toArray(new String[names.size()])).asList()) {
+                        result.put(attribute.getName(), attribute.getValue());
+                    }
+                } catch (Exception ignored) {
+                    // Every attribute is read one by one - this also reports the error.
+                }
+            }
+            return result;
+        }
+
         @Nonnull
         protected Map<String, Object> findValuesOf(@Nonnull AttributeDefinition definition) throws Exception {
             return findValuesOf(definition, null, null);
         }
 
+        /**
+         * @param attributes already {@link #readAttributesOf(AttributeDefinitions) read} values by attribute name - the
+         *                   attribute is only read by its own if it is missing.
+         */
+        @Nonnull
+        protected Map<String, Object> findValuesOf(@Nonnull AttributeDefinition definition, @Nonnull Map<String, Object> attributes) throws Exception {
+            final String name = definition.getName();
+            final Object value = attributes.containsKey(name) ? ofValueType(definition, attributes.get(name)) : findValueOf(definition, null);
+            return toValues(definition, null, value);
+        }
+
         @Nonnull
         protected Map<String, Object> findValuesOf(@Nonnull AttributeDefinition definition, @Nullable String namePrefix, @Nullable Object parent) throws Exception {
+            return toValues(definition, namePrefix, findValueOf(definition, parent));
+        }
+
+        @Nonnull
+        protected Map<String, Object> toValues(@Nonnull AttributeDefinition definition, @Nullable String namePrefix, @Nullable Object value) throws Exception {
             final Map<String, Object> nameToValue = new HashMap<>();
-            final Object value = findValueOf(definition, parent);
             if (value instanceof CompositeData) {
                 final Set<AttributeDefinition> children = definition.getChildren();
                 if (children != null) {
@@ -409,7 +556,12 @@ public class Jmx2CarbonBridge implements AutoCloseable {
             } catch (AttributeNotFoundException ignored) {
                 result = null;
             }
-            return result != null && definition.getValueType().isInstance(result) ? result : null;
+            return ofValueType(definition, result);
+        }
+
+        @Nullable
+        protected Object ofValueType(@Nonnull AttributeDefinition definition, @Nullable Object value) {
+            return value != null && definition.getValueType().isInstance(value) ? value : null;
         }
 
         @Nullable
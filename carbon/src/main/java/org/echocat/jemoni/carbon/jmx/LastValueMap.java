@@ -0,0 +1,137 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.jmx;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import static java.lang.Double.doubleToLongBits;
+
+/**
+ * Remembers the last written value of every series to suppress writes of unchanged values. Keys, values and times
+ * are kept in plain arrays with open addressing, so there is neither an entry object nor a boxed value per series.
+ * If the map reaches its maximum size it is cleared which only causes one write per series which was not required.
+ *
+ * <p>This class is not thread safe.</p>
+ */
+public class LastValueMap {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 100000;
+
+    protected static final int INITIAL_CAPACITY = 64;
+
+    private final int _maximumSize;
+
+    private String[] _keys = new String[INITIAL_CAPACITY];
+    private long[] _values = new long[INITIAL_CAPACITY];
+    private long[] _writtenAt = new long[INITIAL_CAPACITY];
+    private int _size;
+
+    public LastValueMap() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public LastValueMap(@Nonnegative int maximumSize) {
+        _maximumSize = maximumSize;
+    }
+
+    /**
+     * @return the bits which represent the given value - integral values are kept as they are, so values beyond
+     * 2<sup>53</sup> are compared exactly.
+     */
+    public static long toBits(@Nonnull Number value) {
+        final long result;
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            result = value.longValue();
+        } else {
+            result = doubleToLongBits(value.doubleValue());
+        }
+        return result;
+    }
+
+    /**
+     * @return <code>true</code> if the given value has to be written because the series is new, its value changed or
+     * its last write is at least <code>heartbeatInMillis</code> ago. In this case the value is recorded as written at
+     * <code>now</code>.
+     */
+    public boolean update(@Nonnull String key, long value, long now, @Nonnegative long heartbeatInMillis) {
+        int index = indexOf(key, _keys);
+        final boolean result;
+        if (_keys[index] == null) {
+            if (_size >= _maximumSize) {
+                clear();
+                index = indexOf(key, _keys);
+            } else if ((_size + 1) * 2 > _keys.length) {
+                grow();
+                index = indexOf(key, _keys);
+            }
+            _keys[index] = key;
+            _size++;
+            result = true;
+        } else {
+            result = _values[index] != value || now - _writtenAt[index] >= heartbeatInMillis;
+        }
+        if (result) {
+            _values[index] = value;
+            _writtenAt[index] = now;
+        }
+        return result;
+    }
+
+    @Nonnegative
+    public int size() {
+        return _size;
+    }
+
+    public void clear() {
+        _keys = new String[INITIAL_CAPACITY];
+        _values = new long[INITIAL_CAPACITY];
+        _writtenAt = new long[INITIAL_CAPACITY];
+        _size = 0;
+    }
+
+    protected void grow() {
+        final String[] oldKeys = _keys;
+        final long[] oldValues = _values;
+        final long[] oldWrittenAt = _writtenAt;
+        _keys = new String[oldKeys.length * 2];
+        _values = new long[oldKeys.length * 2];
+        _writtenAt = new long[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            final String key = oldKeys[i];
+            if (key != null) {
+                final int index = indexOf(key, _keys);
+                _keys[index] = key;
+                _values[index] = oldValues[i];
+                _writtenAt[index] = oldWrittenAt[i];
+            }
+        }
+    }
+
+    /**
+     * @return the index of the given key or of the free slot where it belongs to.
+     */
+    @Nonnegative
+    protected static int indexOf(@Nonnull String key, @Nonnull String[] keys) {
+        final int mask = keys.length - 1;
+        final int hash = key.hashCode();
+        int index = (hash ^ (hash >>> 16)) & mask;
+        while (keys[index] != null && !keys[index].equals(key)) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+}
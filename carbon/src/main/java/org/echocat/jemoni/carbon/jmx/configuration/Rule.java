@@ -36,6 +36,7 @@ public class Rule extends IncludeExcludeSupport<Rule> {
 
     private String _name = randomUUID().toString();
     private Duration _updateEvery = new Duration("10s");
+    private Duration _heartbeatEvery;
 
     @Override
     @XmlElement(name = "include", required = false, namespace = SCHEMA_NAMESPACE)
@@ -79,6 +80,20 @@ public class Rule extends IncludeExcludeSupport<Rule> {
         _updateEvery = updateEvery;
     }
 
+    /**
+     * @return if set a value is only written if it changed since its last write or if its last write is at least this
+     * duration ago. If not set every value is written every {@link #getUpdateEvery() update}.
+     */
+    @Nullable
+    @XmlAttribute(name = "heartbeatEvery", required = false)
+    public Duration getHeartbeatEvery() {
+        return _heartbeatEvery;
+    }
+
+    public void setHeartbeatEvery(@Nullable Duration heartbeatEvery) {
+        _heartbeatEvery = heartbeatEvery;
+    }
+
     @Nonnull
     public Rule name(@Nullable String name) {
         setName(name);
@@ -96,6 +111,17 @@ public class Rule extends IncludeExcludeSupport<Rule> {
         return updateEvery(updateEvery != null ? new Duration(updateEvery) : null);
     }
 
+    @Nonnull
+    public Rule heartbeatEvery(@Nullable Duration heartbeatEvery) {
+        setHeartbeatEvery(heartbeatEvery);
+        return this;
+    }
+
+    @Nonnull
+    public Rule heartbeatEvery(@Nullable String heartbeatEvery) {
+        return heartbeatEvery(heartbeatEvery != null ? new Duration(heartbeatEvery) : null);
+    }
+
     @Override
     public boolean equals(Object o) {
         final boolean result;
@@ -105,7 +131,7 @@ public class Rule extends IncludeExcludeSupport<Rule> {
             result = false;
         } else {
             final Rule that = (Rule) o;
-            result = (_name != null ? _name.equals(that._name) : that._name == null) && (_updateEvery != null ? _updateEvery.equals(that._updateEvery) : that._updateEvery == null);
+            result = (_name != null ? _name.equals(that._name) : that._name == null) && (_updateEvery != null ? _updateEvery.equals(that._updateEvery) : that._updateEvery == null) && (_heartbeatEvery != null ? _heartbeatEvery.equals(that._heartbeatEvery) : that._heartbeatEvery == null);
         }
         return result;
     }
@@ -115,6 +141,7 @@ public class Rule extends IncludeExcludeSupport<Rule> {
         int result = super.hashCode();
         result = 31 * result + (_name != null ? _name.hashCode() : 0);
         result = 31 * result + (_updateEvery != null ? _updateEvery.hashCode() : 0);
+        result = 31 * result + (_heartbeatEvery != null ? _heartbeatEvery.hashCode() : 0);
         return result;
     }
 
@@ -124,6 +151,9 @@ public class Rule extends IncludeExcludeSupport<Rule> {
         sb.append(getClass().getSimpleName()).append('{');
         sb.append("name=").append(_name);
         sb.append(", updateEvery=").append(_updateEvery);
+        if (_heartbeatEvery != null) {
+            sb.append(", heartbeatEvery=").append(_heartbeatEvery);
+        }
         final List<ObjectRule> includes = getIncludes();
         if (includes != null && !includes.isEmpty()) {
             sb.append(", includes=").append(includes);
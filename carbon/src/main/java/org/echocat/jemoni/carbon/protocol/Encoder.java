@@ -0,0 +1,67 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.protocol;
+
+import org.echocat.jemoni.carbon.Tags;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes measure points directly into the buffers which are later written to carbon. Every buffer contains exactly
+ * one frame which is started with {@link #startFrame(ByteBuffer)} before the first measure point and completed with
+ * {@link #finishFrame(ByteBuffer)} after the last one. Implementations are not required to be thread safe - a writer
+ * uses its encoder from one thread at a time.
+ */
+public interface Encoder {
+
+    /**
+     * @return the maximum number of bytes one measure point with the given <code>path</code> could require. This
+     * includes the space needed to start and finish a frame around it.
+     */
+    @Nonnegative
+    public int getMaximumSizeOf(@Nonnull String path);
+
+    /**
+     * @return the maximum number of bytes one measure point of the tagged series with the given <code>path</code>
+     * and <code>tags</code> could require.
+     */
+    @Nonnegative
+    public int getMaximumSizeOf(@Nonnull String path, @Nonnull Tags tags);
+
+    /**
+     * Starts a new frame at the beginning of the given empty <code>target</code>.
+     */
+    public void startFrame(@Nonnull ByteBuffer target);
+
+    /**
+     * Completes the frame which was started at the beginning of the given <code>target</code>.
+     */
+    public void finishFrame(@Nonnull ByteBuffer target);
+
+    public void encode(@Nonnull String path, long value, long timestamp, @Nonnull ByteBuffer target);
+
+    public void encode(@Nonnull String path, double value, long timestamp, @Nonnull ByteBuffer target);
+
+    /**
+     * Encodes a measure point of the tagged series <code>path;tag1=value1;...</code>. The path is sanitized, the
+     * {@link Tags#getEncodedSuffix(java.nio.charset.Charset) encoded tags} are written as they are.
+     */
+    public void encode(@Nonnull String path, @Nonnull Tags tags, long value, long timestamp, @Nonnull ByteBuffer target);
+
+    public void encode(@Nonnull String path, @Nonnull Tags tags, double value, long timestamp, @Nonnull ByteBuffer target);
+
+}
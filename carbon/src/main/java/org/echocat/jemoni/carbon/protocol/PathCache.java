@@ -0,0 +1,148 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.protocol;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded cache of raw paths to their sanitized and encoded bytes, used by {@link PathEncoder}. The cache is a fixed
+ * array of sets with {@value #WAYS} entries each: a path could only be in the set of its hash and a new path replaces
+ * one entry of its set if the set is full. Lookups compare the path by identity first, so the common case of the same
+ * path instance every tick does not even compare characters. This class is thread safe and does not lock.
+ */
+public class PathCache {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    protected static final int WAYS = 4;
+
+    private final AtomicReferenceArray<Entry> _entries;
+    private final int _setMask;
+
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+
+    public PathCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the maximum number of cached paths - rounded up to a power of two.
+     */
+    public PathCache(@Nonnegative int capacity) {
+        int entries = WAYS;
+        while (entries < capacity) {
+            entries <<= 1;
+        }
+        _entries = new AtomicReferenceArray<>(entries);
+        _setMask = (entries / WAYS) - 1;
+    }
+
+    /**
+     * @return the encoded bytes of the given path or <code>null</code> if they are not cached. The returned array must
+     * not be modified.
+     */
+    @Nullable
+    public byte[] get(@Nonnull String path) {
+        final int hash = path.hashCode();
+        final int first = indexOf(hash);
+        byte[] result = null;
+        for (int i = first; result == null && i < first + WAYS; i++) {
+            final Entry entry = _entries.get(i);
+            if (entry != null && (entry._path == path || (entry._hash == hash && entry._path.equals(path)))) {
+                result = entry._bytes;
+            }
+        }
+        if (result != null) {
+            _hits.incrementAndGet();
+        } else {
+            _misses.incrementAndGet();
+        }
+        return result;
+    }
+
+    public void put(@Nonnull String path, @Nonnull byte[] bytes) {
+        final int hash = path.hashCode();
+        final int first = indexOf(hash);
+        int target = -1;
+        for (int i = first; target < 0 && i < first + WAYS; i++) {
+            if (_entries.get(i) == null) {
+                target = i;
+            }
+        }
+        if (target < 0) {
+            target = first + (int) (_misses.get() & (WAYS - 1));
+        }
+        _entries.set(target, new Entry(path, hash, bytes));
+    }
+
+    @Nonnegative
+    public int getCapacity() {
+        return _entries.length();
+    }
+
+    /**
+     * @return the number of cached paths. This iterates over all entries.
+     */
+    @Nonnegative
+    public int getSize() {
+        int result = 0;
+        for (int i = 0; i < _entries.length(); i++) {
+            if (_entries.get(i) != null) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    @Nonnegative
+    public long getHits() {
+        return _hits.get();
+    }
+
+    @Nonnegative
+    public long getMisses() {
+        return _misses.get();
+    }
+
+    @Nonnegative
+    protected int indexOf(int hash) {
+        return ((hash ^ (hash >>> 16)) & _setMask) * WAYS;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{capacity=" + getCapacity() + ", hits=" + getHits() + ", misses=" + getMisses() + "}";
+    }
+
+    protected static class Entry {
+
+        private final String _path;
+        private final int _hash;
+        private final byte[] _bytes;
+
+        protected Entry(@Nonnull String path, int hash, @Nonnull byte[] bytes) {
+            _path = path;
+            _hash = hash;
+            _bytes = bytes;
+        }
+
+    }
+
+}
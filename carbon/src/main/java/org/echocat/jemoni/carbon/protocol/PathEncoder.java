@@ -0,0 +1,172 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.protocol;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+
+import static java.lang.Character.isLetterOrDigit;
+import static java.lang.Character.isWhitespace;
+import static java.nio.charset.CodingErrorAction.IGNORE;
+
+/**
+ * Writes sanitized paths into buffers: All characters which are not letters, digits, <code>-</code>,
+ * <code>_</code> or <code>.</code> are removed and whitespaces are replaced by <code>_</code>. If there is a
+ * {@link PathCache} the result is cached per path and the cached bytes are copied instead. This class is not thread
+ * safe.
+ */
+public class PathEncoder {
+
+    protected static final byte[] ASCII_PATH_MAPPING = new byte[128];
+
+    static {
+        for (char c = 0; c < ASCII_PATH_MAPPING.length; c++) {
+            if (isLetterOrDigit(c) || c == '-' || c == '_' || c == '.') {
+                ASCII_PATH_MAPPING[c] = (byte) c;
+            } else if (isWhitespace(c)) {
+                ASCII_PATH_MAPPING[c] = '_';
+            }
+        }
+    }
+
+    private final Charset _charset;
+    private final CharsetEncoder _charsetEncoder;
+    private final int _maximumBytesPerChar;
+    private final CharBuffer _nonAsciiChar = CharBuffer.allocate(1);
+    private final PathCache _cache;
+
+    public PathEncoder(@Nonnull Charset charset) {
+        this(charset, null);
+    }
+
+    public PathEncoder(@Nonnull Charset charset, @Nullable PathCache cache) {
+        _charset = charset;
+        _cache = cache;
+        _charsetEncoder = charset.newEncoder().onMalformedInput(IGNORE).onUnmappableCharacter(IGNORE);
+        _maximumBytesPerChar = (int) Math.ceil(_charsetEncoder.maxBytesPerChar());
+    }
+
+    @Nonnull
+    public Charset getCharset() {
+        return _charset;
+    }
+
+    @Nullable
+    public PathCache getCache() {
+        return _cache;
+    }
+
+    /**
+     * @return the given path with the same characters as {@link #write(String, ByteBuffer) written} - the path as
+     * carbon receives it.
+     */
+    @Nonnull
+    public static String sanitize(@Nonnull String path) {
+        final int length = path.length();
+        int i = 0;
+        while (i < length && isKept(path.charAt(i))) {
+            i++;
+        }
+        final String result;
+        if (i == length) {
+            result = path;
+        } else {
+            final StringBuilder sb = new StringBuilder(length);
+            sb.append(path, 0, i);
+            for (; i < length; i++) {
+                final char c = path.charAt(i);
+                if (isKept(c)) {
+                    sb.append(c);
+                } else if (isWhitespace(c)) {
+                    sb.append('_');
+                }
+            }
+            result = sb.toString();
+        }
+        return result;
+    }
+
+    protected static boolean isKept(char c) {
+        return c < ASCII_PATH_MAPPING.length ? c != 0 && ASCII_PATH_MAPPING[c] == c : isLetterOrDigit(c);
+    }
+
+    @Nonnegative
+    public int getMaximumSizeOf(@Nonnull String path) {
+        return path.length() * _maximumBytesPerChar;
+    }
+
+    public void write(@Nonnull String path, @Nonnull ByteBuffer target) {
+        final PathCache cache = _cache;
+        if (cache != null) {
+            final byte[] cached = cache.get(path);
+            if (cached != null) {
+                target.put(cached);
+            } else {
+                final int start = target.position();
+                encode(path, target);
+                cache.put(path, copyOf(target, start));
+            }
+        } else {
+            encode(path, target);
+        }
+    }
+
+    protected void encode(@Nonnull String path, @Nonnull ByteBuffer target) {
+        final int length = path.length();
+        for (int i = 0; i < length; i++) {
+            final char c = path.charAt(i);
+            if (c < ASCII_PATH_MAPPING.length) {
+                final byte mapped = ASCII_PATH_MAPPING[c];
+                if (mapped != 0) {
+                    target.put(mapped);
+                }
+            } else if (isLetterOrDigit(c)) {
+                writeNonAscii(c, target);
+            } else if (isWhitespace(c)) {
+                target.put((byte) '_');
+            }
+        }
+    }
+
+    @Nonnull
+    protected static byte[] copyOf(@Nonnull ByteBuffer target, @Nonnegative int start) {
+        final ByteBuffer written = target.duplicate();
+        written.flip();
+        written.position(start);
+        final byte[] result = new byte[written.remaining()];
+        written.get(result);
+        return result;
+    }
+
+    protected void writeNonAscii(char c, @Nonnull ByteBuffer target) {
+        _nonAsciiChar.clear();
+        _nonAsciiChar.put(c);
+        _nonAsciiChar.flip();
+        _charsetEncoder.reset();
+        _charsetEncoder.encode(_nonAsciiChar, target, true);
+        _charsetEncoder.flush(target);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + _charset + "}";
+    }
+
+}
@@ -0,0 +1,155 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.protocol;
+
+import org.echocat.jemoni.carbon.MeasurePoint;
+
+import javax.annotation.Nonnull;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static java.nio.ByteOrder.BIG_ENDIAN;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.echocat.jemoni.carbon.protocol.PickleEncoder.CHARSET;
+
+/**
+ * Decodes the payload of one pickle protocol frame (without the 4 byte length) into measure points. Only the
+ * binary opcodes of pickle protocols 1 and 2 which are required to represent a list of
+ * <code>(path, (timestamp, value))</code> tuples are supported - no objects could be created by a frame.
+ */
+public class PickleDecoder {
+
+    public static final int MAXIMUM_FRAME_SIZE = 1024 * 1024;
+
+    protected static final Object MARK = new Object();
+
+    @Nonnull
+    public List<MeasurePoint> decode(@Nonnull ByteBuffer payload) throws IllegalArgumentException {
+        final ByteBuffer source = payload.duplicate().order(LITTLE_ENDIAN);
+        final Deque<Object> stack = new ArrayDeque<>();
+        final Map<Integer, Object> memo = new HashMap<>();
+        boolean stopped = false;
+        try {
+            while (!stopped) {
+                final byte opcode = source.get();
+                switch (opcode) {
+                    case (byte) 0x80: source.get(); break;
+                    case '.': stopped = true; break;
+                    case '(': stack.push(MARK); break;
+                    case ']': stack.push(new ArrayList<>()); break;
+                    case ')': stack.push(new Object[0]); break;
+                    case 'l': stack.push(new ArrayList<>(popUntilMark(stack))); break;
+                    case 't': stack.push(popUntilMark(stack).toArray()); break;
+                    case (byte) 0x85: stack.push(popTuple(stack, 1)); break;
+                    case (byte) 0x86: stack.push(popTuple(stack, 2)); break;
+                    case (byte) 0x87: stack.push(popTuple(stack, 3)); break;
+                    case 'a': appendTo(stack, Collections.singletonList(stack.pop())); break;
+                    case 'e': appendTo(stack, popUntilMark(stack)); break;
+                    case 'U': stack.push(readString(source, source.get() & 0xff)); break;
+                    case 'T': case 'X': stack.push(readString(source, source.getInt())); break;
+                    case 'K': stack.push((long) (source.get() & 0xff)); break;
+                    case 'M': stack.push((long) (source.getShort() & 0xffff)); break;
+                    case 'J': stack.push((long) source.getInt()); break;
+                    case (byte) 0x8a: stack.push(readLong(source, source.get() & 0xff)); break;
+                    case 'G': stack.push(source.order(BIG_ENDIAN).getDouble()); source.order(LITTLE_ENDIAN); break;
+                    case 'q': memo.put(source.get() & 0xff, stack.peek()); break;
+                    case 'r': memo.put(source.getInt(), stack.peek()); break;
+                    case 'h': stack.push(memoEntry(memo, source.get() & 0xff)); break;
+                    case 'j': stack.push(memoEntry(memo, source.getInt())); break;
+                    default: throw new IllegalArgumentException("Unsupported opcode 0x" + Integer.toHexString(opcode & 0xff) + " at " + (source.position() - 1) + ".");
+                }
+            }
+            if (stack.size() != 1 || !(stack.peek() instanceof List)) {
+                throw new IllegalArgumentException("Frame does not contain a list.");
+            }
+            return toMeasurePoints((List<?>) stack.pop());
+        } catch (BufferUnderflowException | NoSuchElementException | ClassCastException | IndexOutOfBoundsException | NullPointerException e) {
+            throw new IllegalArgumentException("Illegal pickle frame.", e);
+        }
+    }
+
+    @Nonnull
+    protected List<MeasurePoint> toMeasurePoints(@Nonnull List<?> items) {
+        final List<MeasurePoint> result = new ArrayList<>(items.size());
+        for (Object item : items) {
+            final Object[] pathAndPoint = (Object[]) item;
+            final Object[] point = (Object[]) pathAndPoint[1];
+            final Date timestamp = new Date(SECONDS.toMillis(((Number) point[0]).longValue()));
+            result.add(MeasurePoint.ofSeries((String) pathAndPoint[0], timestamp, ((Number) point[1]).doubleValue()));
+        }
+        return result;
+    }
+
+    @Nonnull
+    protected List<Object> popUntilMark(@Nonnull Deque<Object> stack) {
+        final LinkedList<Object> result = new LinkedList<>();
+        Object current = stack.pop();
+        while (current != MARK) {
+            result.addFirst(current);
+            current = stack.pop();
+        }
+        return result;
+    }
+
+    @Nonnull
+    protected Object[] popTuple(@Nonnull Deque<Object> stack, int size) {
+        final Object[] result = new Object[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = stack.pop();
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void appendTo(@Nonnull Deque<Object> stack, @Nonnull List<Object> items) {
+        ((List<Object>) stack.peek()).addAll(items);
+    }
+
+    @Nonnull
+    protected Object memoEntry(@Nonnull Map<Integer, Object> memo, int index) {
+        final Object result = memo.get(index);
+        if (result == null) {
+            throw new IllegalArgumentException("Unknown memo entry " + index + ".");
+        }
+        return result;
+    }
+
+    @Nonnull
+    protected String readString(@Nonnull ByteBuffer source, int length) {
+        if (length < 0 || length > source.remaining()) {
+            throw new IllegalArgumentException("Illegal string length " + length + ".");
+        }
+        final byte[] bytes = new byte[length];
+        source.get(bytes);
+        return new String(bytes, CHARSET);
+    }
+
+    protected long readLong(@Nonnull ByteBuffer source, int length) {
+        if (length > 8) {
+            throw new IllegalArgumentException("Long with " + length + " bytes is too large.");
+        }
+        long result = 0;
+        for (int i = 0; i < length; i++) {
+            result |= (source.get() & 0xffL) << (i * 8);
+        }
+        if (length > 0 && length < 8 && (result & (1L << (length * 8 - 1))) != 0) {
+            result |= -1L << (length * 8);
+        }
+        return result;
+    }
+
+}
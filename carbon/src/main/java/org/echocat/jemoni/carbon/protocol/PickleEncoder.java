@@ -0,0 +1,154 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.protocol;
+
+import org.echocat.jemoni.carbon.Tags;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static java.nio.charset.Charset.forName;
+
+/**
+ * Encodes measure points as frames of the pickle protocol of carbon. Each frame is a 4 byte big endian length
+ * followed by a pickled (protocol 2) list of <code>(path, (timestamp, value))</code> tuples.
+ */
+public class PickleEncoder implements Encoder {
+
+    public static final Charset CHARSET = forName("UTF-8");
+
+    protected static final byte PROTO = (byte) 0x80;
+    protected static final byte EMPTY_LIST = ']';
+    protected static final byte MARK = '(';
+    protected static final byte APPENDS = 'e';
+    protected static final byte STOP = '.';
+    protected static final byte BINUNICODE = 'X';
+    protected static final byte BININT = 'J';
+    protected static final byte LONG1 = (byte) 0x8a;
+    protected static final byte BINFLOAT = 'G';
+    protected static final byte TUPLE2 = (byte) 0x86;
+
+    protected static final int HEADER_SIZE = 4 + 2 + 1 + 1;
+    protected static final int TRAILER_SIZE = 1 + 1;
+    protected static final int MAXIMUM_NUMBER_SIZE = 1 + 1 + 8;
+
+    private final PathEncoder _pathEncoder;
+
+    public PickleEncoder() {
+        this(null);
+    }
+
+    public PickleEncoder(@Nullable PathCache pathCache) {
+        _pathEncoder = new PathEncoder(CHARSET, pathCache);
+    }
+
+    @Override
+    @Nonnegative
+    public int getMaximumSizeOf(@Nonnull String path) {
+        return getMaximumSizeOf(path, Tags.EMPTY);
+    }
+
+    @Override
+    @Nonnegative
+    public int getMaximumSizeOf(@Nonnull String path, @Nonnull Tags tags) {
+        return HEADER_SIZE + 1 + 4 + _pathEncoder.getMaximumSizeOf(path) + tags.getEncodedSuffix(CHARSET).length + MAXIMUM_NUMBER_SIZE + MAXIMUM_NUMBER_SIZE + 1 + 1 + TRAILER_SIZE;
+    }
+
+    @Override
+    public void startFrame(@Nonnull ByteBuffer target) {
+        target.putInt(0);
+        target.put(PROTO);
+        target.put((byte) 2);
+        target.put(EMPTY_LIST);
+        target.put(MARK);
+    }
+
+    @Override
+    public void finishFrame(@Nonnull ByteBuffer target) {
+        target.put(APPENDS);
+        target.put(STOP);
+        target.putInt(0, target.position() - 4);
+    }
+
+    @Override
+    public void encode(@Nonnull String path, long value, long timestamp, @Nonnull ByteBuffer target) {
+        encode(path, Tags.EMPTY, value, timestamp, target);
+    }
+
+    @Override
+    public void encode(@Nonnull String path, double value, long timestamp, @Nonnull ByteBuffer target) {
+        encode(path, Tags.EMPTY, value, timestamp, target);
+    }
+
+    @Override
+    public void encode(@Nonnull String path, @Nonnull Tags tags, long value, long timestamp, @Nonnull ByteBuffer target) {
+        writeSeries(path, tags, target);
+        writeLong(timestamp, target);
+        writeLong(value, target);
+        target.put(TUPLE2);
+        target.put(TUPLE2);
+    }
+
+    @Override
+    public void encode(@Nonnull String path, @Nonnull Tags tags, double value, long timestamp, @Nonnull ByteBuffer target) {
+        writeSeries(path, tags, target);
+        writeLong(timestamp, target);
+        target.put(BINFLOAT);
+        target.putDouble(value);
+        target.put(TUPLE2);
+        target.put(TUPLE2);
+    }
+
+    protected void writeSeries(@Nonnull String path, @Nonnull Tags tags, @Nonnull ByteBuffer target) {
+        target.put(BINUNICODE);
+        final int lengthPosition = target.position();
+        target.position(lengthPosition + 4);
+        _pathEncoder.write(path, target);
+        if (!tags.isEmpty()) {
+            target.put(tags.getEncodedSuffix(CHARSET));
+        }
+        putLittleEndianInt(lengthPosition, target.position() - lengthPosition - 4, target);
+    }
+
+    protected static void writeLong(long value, @Nonnull ByteBuffer target) {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            target.put(BININT);
+            putLittleEndianInt(target.position(), (int) value, target);
+            target.position(target.position() + 4);
+        } else {
+            target.put(LONG1);
+            target.put((byte) 8);
+            for (int i = 0; i < 8; i++) {
+                target.put((byte) (value >>> (i * 8)));
+            }
+        }
+    }
+
+    protected static void putLittleEndianInt(@Nonnegative int index, int value, @Nonnull ByteBuffer target) {
+        target.put(index, (byte) value);
+        target.put(index + 1, (byte) (value >>> 8));
+        target.put(index + 2, (byte) (value >>> 16));
+        target.put(index + 3, (byte) (value >>> 24));
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName();
+    }
+
+}
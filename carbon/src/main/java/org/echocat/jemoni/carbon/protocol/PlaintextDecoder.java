@@ -0,0 +1,200 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.protocol;
+
+import org.echocat.jemoni.carbon.MeasurePoint;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+import static java.nio.charset.Charset.forName;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Decodes lines of the plaintext protocol of carbon: <code>&lt;path&gt; &lt;value&gt; &lt;timestamp&gt;</code>. The
+ * line is parsed directly from the bytes - only the path becomes a string. Simple decimal values and timestamps are
+ * parsed without any allocation, everything else like <code>1e-3</code> or <code>NaN</code> falls back to
+ * {@link Double#parseDouble(String)}. This class is thread safe.
+ */
+public class PlaintextDecoder {
+
+    protected static final Charset ASCII = forName("US-ASCII");
+
+    /**
+     * Powers of ten which are exact doubles - dividing a mantissa below 2<sup>53</sup> by one of them is correctly
+     * rounded.
+     */
+    protected static final double[] EXACT_POWERS_OF_TEN = new double[23];
+    protected static final int MAXIMUM_EXACT_DIGITS = 15;
+
+    static {
+        double power = 1;
+        for (int i = 0; i < EXACT_POWERS_OF_TEN.length; i++) {
+            EXACT_POWERS_OF_TEN[i] = power;
+            power *= 10;
+        }
+    }
+
+    private final Charset _charset;
+
+    public PlaintextDecoder(@Nonnull Charset charset) {
+        _charset = charset;
+    }
+
+    @Nonnull
+    public Charset getCharset() {
+        return _charset;
+    }
+
+    /**
+     * Decodes the line between <code>start</code> (inclusive) and <code>end</code> (exclusive) of the given source
+     * without changing its position. Surrounding whitespaces and a trailing <code>\r</code> are ignored.
+     *
+     * @return the measure point or <code>null</code> if the line is empty.
+     * @throws IllegalArgumentException if the line is not a valid measure point.
+     */
+    @Nullable
+    public MeasurePoint decode(@Nonnull ByteBuffer source, @Nonnegative int start, @Nonnegative int end) throws IllegalArgumentException {
+        final int pathStart = skipWhitespaces(source, start, end);
+        final MeasurePoint result;
+        if (pathStart < end) {
+            final int pathEnd = skipToken(source, pathStart, end);
+            final int valueStart = skipWhitespaces(source, pathEnd, end);
+            final int valueEnd = skipToken(source, valueStart, end);
+            final int timestampStart = skipWhitespaces(source, valueEnd, end);
+            final int timestampEnd = skipToken(source, timestampStart, end);
+            if (valueStart == valueEnd || timestampStart == timestampEnd || skipWhitespaces(source, timestampEnd, end) != end) {
+                throw new IllegalArgumentException("Illegal measure point: " + toString(source, start, end, _charset));
+            }
+            final double value = parseDouble(source, valueStart, valueEnd);
+            final long timestamp = parseLong(source, timestampStart, timestampEnd);
+            result = MeasurePoint.ofSeries(toString(source, pathStart, pathEnd, _charset), new Date(SECONDS.toMillis(timestamp)), value);
+        } else {
+            result = null;
+        }
+        return result;
+    }
+
+    protected static double parseDouble(@Nonnull ByteBuffer source, @Nonnegative int start, @Nonnegative int end) {
+        int i = start;
+        final boolean negative = source.get(i) == '-';
+        if (negative || source.get(i) == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int significantDigits = 0;
+        int fractionDigits = -1;
+        boolean simple = true;
+        for (; simple && i < end; i++) {
+            final byte b = source.get(i);
+            if (b >= '0' && b <= '9') {
+                digits++;
+                if (mantissa != 0 || b != '0') {
+                    significantDigits++;
+                }
+                if (significantDigits <= MAXIMUM_EXACT_DIGITS) {
+                    mantissa = mantissa * 10 + (b - '0');
+                }
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                simple = false;
+            }
+        }
+        final double result;
+        if (simple && digits > 0 && significantDigits <= MAXIMUM_EXACT_DIGITS && fractionDigits < EXACT_POWERS_OF_TEN.length) {
+            final double absolute = fractionDigits > 0 ? mantissa / EXACT_POWERS_OF_TEN[fractionDigits] : (double) mantissa;
+            result = negative ? -absolute : absolute;
+        } else {
+            try {
+                result = Double.parseDouble(toString(source, start, end, ASCII));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Illegal value: " + toString(source, start, end, ASCII), e);
+            }
+        }
+        return result;
+    }
+
+    protected static long parseLong(@Nonnull ByteBuffer source, @Nonnegative int start, @Nonnegative int end) {
+        int i = start;
+        final boolean negative = source.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            throw new IllegalArgumentException("Illegal timestamp: " + toString(source, start, end, ASCII));
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            final byte b = source.get(i);
+            if (b < '0' || b > '9') {
+                throw new IllegalArgumentException("Illegal timestamp: " + toString(source, start, end, ASCII));
+            }
+            result = result * 10 + (b - '0');
+        }
+        return negative ? -result : result;
+    }
+
+    @Nonnegative
+    protected static int skipWhitespaces(@Nonnull ByteBuffer source, @Nonnegative int start, @Nonnegative int end) {
+        int result = start;
+        while (result < end && isWhitespace(source.get(result))) {
+            result++;
+        }
+        return result;
+    }
+
+    @Nonnegative
+    protected static int skipToken(@Nonnull ByteBuffer source, @Nonnegative int start, @Nonnegative int end) {
+        int result = start;
+        while (result < end && !isWhitespace(source.get(result))) {
+            result++;
+        }
+        return result;
+    }
+
+    protected static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    @Nonnull
+    protected static String toString(@Nonnull ByteBuffer source, @Nonnegative int start, @Nonnegative int end, @Nonnull Charset charset) {
+        final String result;
+        if (source.hasArray()) {
+            result = new String(source.array(), source.arrayOffset() + start, end - start, charset);
+        } else {
+            final byte[] bytes = new byte[end - start];
+            final ByteBuffer duplicate = source.duplicate();
+            duplicate.limit(end).position(start);
+            duplicate.get(bytes);
+            result = new String(bytes, charset);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + _charset + "}";
+    }
+
+}
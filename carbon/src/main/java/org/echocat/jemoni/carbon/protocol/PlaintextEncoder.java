@@ -0,0 +1,223 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.protocol;
+
+import org.echocat.jemoni.carbon.Tags;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Encodes measure points in the line oriented plaintext protocol of carbon:
+ * <code>&lt;path&gt; &lt;value&gt; &lt;timestamp&gt;\n</code>. Paths are sanitized by {@link PathEncoder}, numbers
+ * are written as ASCII without creating any intermediate objects.
+ */
+public class PlaintextEncoder implements Encoder {
+
+    protected static final int MAXIMUM_VALUE_SIZE = 32;
+    protected static final int MAXIMUM_TIMESTAMP_SIZE = 20;
+    protected static final int MAXIMUM_FRACTION_DIGITS = 17;
+    protected static final double MAXIMUM_EXACT_DOUBLE = 9007199254740992d;
+
+    protected static final long[] LONG_POWERS_OF_TEN = new long[19];
+    protected static final double[] DOUBLE_POWERS_OF_TEN = new double[MAXIMUM_FRACTION_DIGITS + 1];
+    protected static final byte[] LONG_MIN_VALUE = asciiOf(Long.toString(Long.MIN_VALUE));
+    protected static final byte[] NAN = asciiOf(Double.toString(Double.NaN));
+    protected static final byte[] POSITIVE_INFINITY = asciiOf(Double.toString(Double.POSITIVE_INFINITY));
+    protected static final byte[] NEGATIVE_INFINITY = asciiOf(Double.toString(Double.NEGATIVE_INFINITY));
+
+    static {
+        long longPower = 1;
+        for (int i = 0; i < LONG_POWERS_OF_TEN.length; i++) {
+            LONG_POWERS_OF_TEN[i] = longPower;
+            longPower *= 10;
+        }
+        double doublePower = 1;
+        for (int i = 0; i < DOUBLE_POWERS_OF_TEN.length; i++) {
+            DOUBLE_POWERS_OF_TEN[i] = doublePower;
+            doublePower *= 10;
+        }
+    }
+
+    private final PathEncoder _pathEncoder;
+
+    public PlaintextEncoder(@Nonnull Charset charset) {
+        this(charset, null);
+    }
+
+    public PlaintextEncoder(@Nonnull Charset charset, @Nullable PathCache pathCache) {
+        _pathEncoder = new PathEncoder(charset, pathCache);
+    }
+
+    @Nonnull
+    public Charset getCharset() {
+        return _pathEncoder.getCharset();
+    }
+
+    @Override
+    @Nonnegative
+    public int getMaximumSizeOf(@Nonnull String path) {
+        return getMaximumSizeOf(path, Tags.EMPTY);
+    }
+
+    @Override
+    @Nonnegative
+    public int getMaximumSizeOf(@Nonnull String path, @Nonnull Tags tags) {
+        return _pathEncoder.getMaximumSizeOf(path) + tags.getEncodedSuffix(getCharset()).length + MAXIMUM_VALUE_SIZE + MAXIMUM_TIMESTAMP_SIZE + 3;
+    }
+
+    @Override
+    public void startFrame(@Nonnull ByteBuffer target) {}
+
+    @Override
+    public void finishFrame(@Nonnull ByteBuffer target) {}
+
+    @Override
+    public void encode(@Nonnull String path, long value, long timestamp, @Nonnull ByteBuffer target) {
+        encode(path, Tags.EMPTY, value, timestamp, target);
+    }
+
+    @Override
+    public void encode(@Nonnull String path, double value, long timestamp, @Nonnull ByteBuffer target) {
+        encode(path, Tags.EMPTY, value, timestamp, target);
+    }
+
+    @Override
+    public void encode(@Nonnull String path, @Nonnull Tags tags, long value, long timestamp, @Nonnull ByteBuffer target) {
+        writeSeries(path, tags, target);
+        target.put((byte) ' ');
+        writeLong(value, target);
+        target.put((byte) ' ');
+        writeLong(timestamp, target);
+        target.put((byte) '\n');
+    }
+
+    @Override
+    public void encode(@Nonnull String path, @Nonnull Tags tags, double value, long timestamp, @Nonnull ByteBuffer target) {
+        writeSeries(path, tags, target);
+        target.put((byte) ' ');
+        writeDouble(value, target);
+        target.put((byte) ' ');
+        writeLong(timestamp, target);
+        target.put((byte) '\n');
+    }
+
+    protected void writeSeries(@Nonnull String path, @Nonnull Tags tags, @Nonnull ByteBuffer target) {
+        _pathEncoder.write(path, target);
+        if (!tags.isEmpty()) {
+            target.put(tags.getEncodedSuffix(getCharset()));
+        }
+    }
+
+    public static void writeLong(long value, @Nonnull ByteBuffer target) {
+        if (value == Long.MIN_VALUE) {
+            target.put(LONG_MIN_VALUE);
+        } else {
+            long remaining = value;
+            if (remaining < 0) {
+                target.put((byte) '-');
+                remaining = -remaining;
+            }
+            writeDigits(remaining, numberOfDigitsOf(remaining), target);
+        }
+    }
+
+    /**
+     * Writes the shortest decimal representation (without exponent) which is parsed back to exactly the same
+     * <code>value</code>. Only very small or very large values fall back to {@link Double#toString(double)}.
+     */
+    public static void writeDouble(double value, @Nonnull ByteBuffer target) {
+        if (Double.isNaN(value)) {
+            target.put(NAN);
+        } else if (Double.isInfinite(value)) {
+            target.put(value > 0 ? POSITIVE_INFINITY : NEGATIVE_INFINITY);
+        } else {
+            boolean written = false;
+            for (int scale = 0; !written && scale <= MAXIMUM_FRACTION_DIGITS; scale++) {
+                final double scaled = value * DOUBLE_POWERS_OF_TEN[scale];
+                if (Math.abs(scaled) >= MAXIMUM_EXACT_DOUBLE) {
+                    break;
+                }
+                final long unscaled = Math.round(scaled);
+                if (unscaled / DOUBLE_POWERS_OF_TEN[scale] == value) {
+                    writeDecimal(unscaled, scale, target);
+                    written = true;
+                }
+            }
+            if (!written) {
+                writeAscii(Double.toString(value), target);
+            }
+        }
+    }
+
+    protected static void writeDecimal(long unscaled, @Nonnegative int scale, @Nonnull ByteBuffer target) {
+        long remaining = unscaled;
+        if (remaining < 0) {
+            target.put((byte) '-');
+            remaining = -remaining;
+        }
+        final long divisor = LONG_POWERS_OF_TEN[scale];
+        final long integer = remaining / divisor;
+        writeDigits(integer, numberOfDigitsOf(integer), target);
+        if (scale > 0) {
+            target.put((byte) '.');
+            writeDigits(remaining % divisor, scale, target);
+        }
+    }
+
+    protected static void writeDigits(long value, @Nonnegative int numberOfDigits, @Nonnull ByteBuffer target) {
+        final int start = target.position();
+        long remaining = value;
+        for (int i = start + numberOfDigits - 1; i >= start; i--) {
+            target.put(i, (byte) ('0' + remaining % 10));
+            remaining /= 10;
+        }
+        target.position(start + numberOfDigits);
+    }
+
+    @Nonnegative
+    protected static int numberOfDigitsOf(long positiveValue) {
+        int result = 1;
+        while (result < LONG_POWERS_OF_TEN.length && positiveValue >= LONG_POWERS_OF_TEN[result]) {
+            result++;
+        }
+        return result;
+    }
+
+    protected static void writeAscii(@Nonnull String value, @Nonnull ByteBuffer target) {
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            target.put((byte) value.charAt(i));
+        }
+    }
+
+    @Nonnull
+    protected static byte[] asciiOf(@Nonnull String value) {
+        final byte[] result = new byte[value.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) value.charAt(i);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + getCharset() + "}";
+    }
+
+}
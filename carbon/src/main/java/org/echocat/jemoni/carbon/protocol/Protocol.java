@@ -0,0 +1,58 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.protocol;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.charset.Charset;
+
+/**
+ * The wire protocols a {@link org.echocat.jemoni.carbon.CarbonWriter} could speak with carbon.
+ */
+public enum Protocol {
+
+    /**
+     * Line oriented <code>&lt;path&gt; &lt;value&gt; &lt;timestamp&gt;\n</code> messages (carbon port 2003).
+     */
+    plaintext {
+        @Nonnull
+        @Override
+        public Encoder createEncoder(@Nonnull Charset charset, @Nullable PathCache pathCache) {
+            return new PlaintextEncoder(charset, pathCache);
+        }
+    },
+    /**
+     * Length prefixed pickled batches of measure points (carbon port 2004). Paths are always encoded as UTF-8.
+     */
+    pickle {
+        @Nonnull
+        @Override
+        public Encoder createEncoder(@Nonnull Charset charset, @Nullable PathCache pathCache) {
+            return new PickleEncoder(pathCache);
+        }
+    };
+
+    @Nonnull
+    public Encoder createEncoder(@Nonnull Charset charset) {
+        return createEncoder(charset, null);
+    }
+
+    /**
+     * @param pathCache caches the encoded paths - must only be shared by encoders of the same charset.
+     */
+    @Nonnull
+    public abstract Encoder createEncoder(@Nonnull Charset charset, @Nullable PathCache pathCache);
+
+}
@@ -0,0 +1,173 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.queue;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import static java.util.concurrent.ThreadLocalRandom.current;
+
+/**
+ * Decides what happens to a new entry if a {@link RingBuffer} is full. Every decision is recorded in the given
+ * {@link BackpressureStatistics}.
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * Waits until there is room for the new entry.
+     */
+    block {
+        @Override
+        public long claim(@Nonnull RingBuffer<?> queue, @Nonnegative long timeoutInNanos, @Nonnull BackpressureStatistics statistics) throws InterruptedException {
+            return record(queue.claim(), statistics);
+        }
+
+        @Override
+        public long claim(@Nonnull RingBuffer<?> queue, @Nonnegative int count, @Nonnegative long timeoutInNanos, @Nonnull BackpressureStatistics statistics) throws InterruptedException {
+            return record(queue.claim(count), count, statistics);
+        }
+    },
+    /**
+     * Waits at most the given timeout for room and drops the new entry afterwards.
+     */
+    blockWithTimeout {
+        @Override
+        public long claim(@Nonnull RingBuffer<?> queue, @Nonnegative long timeoutInNanos, @Nonnull BackpressureStatistics statistics) throws InterruptedException {
+            return record(queue.claim(timeoutInNanos), statistics);
+        }
+
+        @Override
+        public long claim(@Nonnull RingBuffer<?> queue, @Nonnegative int count, @Nonnegative long timeoutInNanos, @Nonnull BackpressureStatistics statistics) throws InterruptedException {
+            return record(queue.claim(count, timeoutInNanos), count, statistics);
+        }
+    },
+    /**
+     * Drops the new entry immediately if there is no room.
+     */
+    dropNewest {
+        @Override
+        public long claim(@Nonnull RingBuffer<?> queue, @Nonnegative long timeoutInNanos, @Nonnull BackpressureStatistics statistics) throws InterruptedException {
+            return record(queue.tryClaim(), statistics);
+        }
+
+        @Override
+        public long claim(@Nonnull RingBuffer<?> queue, @Nonnegative int count, @Nonnegative long timeoutInNanos, @Nonnull BackpressureStatistics statistics) throws InterruptedException {
+            return record(queue.tryClaim(count), count, statistics);
+        }
+    },
+    /**
+     * Drops the oldest entries until there is room for the new one.
+     */
+    dropOldest {
+        @Override
+        public long claim(@Nonnull RingBuffer<?> queue, @Nonnegative long timeoutInNanos, @Nonnull BackpressureStatistics statistics) throws InterruptedException {
+            long sequence = queue.tryClaim();
+            for (int attempt = 0; sequence < 0 && attempt < MAXIMUM_EVICTION_ATTEMPTS; attempt++) {
+                evictOldest(queue, statistics);
+                sequence = queue.tryClaim();
+            }
+            return record(sequence, statistics);
+        }
+
+        @Override
+        public long claim(@Nonnull RingBuffer<?> queue, @Nonnegative int count, @Nonnegative long timeoutInNanos, @Nonnull BackpressureStatistics statistics) throws InterruptedException {
+            long sequence = queue.tryClaim(count);
+            for (int attempt = 0; sequence < 0 && attempt < MAXIMUM_EVICTION_ATTEMPTS + count; attempt++) {
+                evictOldest(queue, statistics);
+                sequence = queue.tryClaim(count);
+            }
+            return record(sequence, count, statistics);
+        }
+    },
+    /**
+     * Accepts every new entry as long as the queue is filled less than {@link #PRESSURE_THRESHOLD}. Above it new
+     * entries are accepted with a probability which decreases linearly to <code>0</code> for a full queue.
+     */
+    sampleUnderPressure {
+        @Override
+        public long claim(@Nonnull RingBuffer<?> queue, @Nonnegative long timeoutInNanos, @Nonnull BackpressureStatistics statistics) throws InterruptedException {
+            final int capacity = queue.getCapacity();
+            final double pressureStartsAt = capacity * PRESSURE_THRESHOLD;
+            final int size = queue.size();
+            final boolean sampled = size < pressureStartsAt || current().nextDouble() < (capacity - size) / (capacity - pressureStartsAt);
+            return record(sampled ? queue.tryClaim() : -1, statistics);
+        }
+
+        @Override
+        public long claim(@Nonnull RingBuffer<?> queue, @Nonnegative int count, @Nonnegative long timeoutInNanos, @Nonnull BackpressureStatistics statistics) throws InterruptedException {
+            final int capacity = queue.getCapacity();
+            final double pressureStartsAt = capacity * PRESSURE_THRESHOLD;
+            final int size = queue.size() + count;
+            final boolean sampled = size < pressureStartsAt || current().nextDouble() < (capacity - size) / (capacity - pressureStartsAt);
+            return record(sampled ? queue.tryClaim(count) : -1, count, statistics);
+        }
+    };
+
+    /**
+     * Entries which implement this are told if they are evicted by {@link #dropOldest}.
+     */
+    public interface Evictable {
+
+        public void evicted();
+
+    }
+
+    public static final double PRESSURE_THRESHOLD = 0.75d;
+
+    protected static final int MAXIMUM_EVICTION_ATTEMPTS = 16;
+
+    /**
+     * @return the claimed sequence or <code>-1</code> if the new entry was dropped.
+     */
+    public abstract long claim(@Nonnull RingBuffer<?> queue, @Nonnegative long timeoutInNanos, @Nonnull BackpressureStatistics statistics) throws InterruptedException;
+
+    /**
+     * Claims <code>count</code> consecutive entries at once. Either all of them are accepted or all are dropped.
+     *
+     * @return the first claimed sequence or <code>-1</code> if the new entries were dropped.
+     */
+    public abstract long claim(@Nonnull RingBuffer<?> queue, @Nonnegative int count, @Nonnegative long timeoutInNanos, @Nonnull BackpressureStatistics statistics) throws InterruptedException;
+
+    protected void evictOldest(@Nonnull RingBuffer<?> queue, @Nonnull BackpressureStatistics statistics) {
+        final long oldest = queue.tryTake();
+        if (oldest >= 0) {
+            final Object entry = queue.get(oldest);
+            if (entry instanceof Evictable) {
+                ((Evictable) entry).evicted();
+            }
+            queue.release(oldest);
+            statistics.recordDropped(this);
+        }
+    }
+
+    protected long record(long sequence, @Nonnegative int count, @Nonnull BackpressureStatistics statistics) {
+        if (sequence >= 0) {
+            statistics.recordAccepted(this, count);
+        } else {
+            statistics.recordDropped(this, count);
+        }
+        return sequence;
+    }
+
+    protected long record(long sequence, @Nonnull BackpressureStatistics statistics) {
+        if (sequence >= 0) {
+            statistics.recordAccepted(this);
+        } else {
+            statistics.recordDropped(this);
+        }
+        return sequence;
+    }
+
+}
@@ -0,0 +1,147 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.queue;
+
+import org.echocat.jemoni.jmx.annotations.Attribute;
+import org.echocat.jemoni.jmx.annotations.Bean;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.echocat.jemoni.carbon.queue.BackpressurePolicy.*;
+
+/**
+ * Exact number of accepted and dropped entries per {@link BackpressurePolicy}. Recording is one atomic increment.
+ */
+@Bean(description = "Number of accepted and dropped measure points of a carbon writer per backpressure policy.")
+public class BackpressureStatistics {
+
+    private static final int NUMBER_OF_POLICIES = BackpressurePolicy.values().length;
+
+    private final AtomicLongArray _counters = new AtomicLongArray(NUMBER_OF_POLICIES * 2);
+
+    public void recordAccepted(@Nonnull BackpressurePolicy policy) {
+        _counters.incrementAndGet(policy.ordinal());
+    }
+
+    public void recordDropped(@Nonnull BackpressurePolicy policy) {
+        _counters.incrementAndGet(NUMBER_OF_POLICIES + policy.ordinal());
+    }
+
+    public void recordAccepted(@Nonnull BackpressurePolicy policy, @Nonnegative int count) {
+        _counters.addAndGet(policy.ordinal(), count);
+    }
+
+    public void recordDropped(@Nonnull BackpressurePolicy policy, @Nonnegative int count) {
+        _counters.addAndGet(NUMBER_OF_POLICIES + policy.ordinal(), count);
+    }
+
+    @Nonnegative
+    public long getAccepted(@Nonnull BackpressurePolicy policy) {
+        return _counters.get(policy.ordinal());
+    }
+
+    @Nonnegative
+    public long getDropped(@Nonnull BackpressurePolicy policy) {
+        return _counters.get(NUMBER_OF_POLICIES + policy.ordinal());
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of all accepted measure points.")
+    public long getAccepted() {
+        long result = 0;
+        for (BackpressurePolicy policy : BackpressurePolicy.values()) {
+            result += getAccepted(policy);
+        }
+        return result;
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of all dropped measure points.")
+    public long getDropped() {
+        long result = 0;
+        for (BackpressurePolicy policy : BackpressurePolicy.values()) {
+            result += getDropped(policy);
+        }
+        return result;
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of measure points accepted with policy block.")
+    public long getBlockAccepted() {
+        return getAccepted(block);
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of measure points dropped with policy block. This only happens if the writer is not running.")
+    public long getBlockDropped() {
+        return getDropped(block);
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of measure points accepted with policy blockWithTimeout.")
+    public long getBlockWithTimeoutAccepted() {
+        return getAccepted(blockWithTimeout);
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of measure points dropped with policy blockWithTimeout.")
+    public long getBlockWithTimeoutDropped() {
+        return getDropped(blockWithTimeout);
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of measure points accepted with policy dropNewest.")
+    public long getDropNewestAccepted() {
+        return getAccepted(dropNewest);
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of measure points dropped with policy dropNewest.")
+    public long getDropNewestDropped() {
+        return getDropped(dropNewest);
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of measure points accepted with policy dropOldest.")
+    public long getDropOldestAccepted() {
+        return getAccepted(dropOldest);
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of measure points dropped with policy dropOldest - evicted old ones included.")
+    public long getDropOldestDropped() {
+        return getDropped(dropOldest);
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of measure points accepted with policy sampleUnderPressure.")
+    public long getSampleUnderPressureAccepted() {
+        return getAccepted(sampleUnderPressure);
+    }
+
+    @Nonnegative
+    @Attribute(description = "Number of measure points dropped with policy sampleUnderPressure.")
+    public long getSampleUnderPressureDropped() {
+        return getDropped(sampleUnderPressure);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{accepted=" + getAccepted() + ", dropped=" + getDropped() + "}";
+    }
+
+}
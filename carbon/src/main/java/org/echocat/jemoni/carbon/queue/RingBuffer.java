@@ -0,0 +1,282 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.queue;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.lang.System.nanoTime;
+import static java.lang.Thread.interrupted;
+
+/**
+ * Bounded lock free queue of pre allocated entries for many producers and consumers. Each slot carries its own
+ * sequence number (as described by Dmitry Vyukov) so producers only compete for the tail and never for a lock.
+ *
+ * <p>Producers {@link #claim() claim} a sequence, fill the {@link #get(long) entry} and {@link #publish(long)
+ * publish} it. A consumer {@link #take() takes} a sequence, reads the entry and {@link #release(long) releases} it
+ * again.</p>
+ */
+public class RingBuffer<E> {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    public interface EntryFactory<E> {
+
+        @Nonnull
+        public E create();
+
+    }
+
+    private final AtomicLong _head = new AtomicLong();
+    private final AtomicLong _tail = new AtomicLong();
+    private final AtomicLongArray _sequences;
+    private final Object[] _entries;
+    private final int _mask;
+    private final WaitStrategy _waitStrategy;
+
+    public RingBuffer(@Nonnegative int capacity, @Nonnull EntryFactory<E> entryFactory, @Nonnull WaitStrategy waitStrategy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity has to be greater than 0 but is " + capacity + ".");
+        }
+        final int size = capacity > 1 ? Integer.highestOneBit(capacity - 1) << 1 : 1;
+        _sequences = new AtomicLongArray(size);
+        _entries = new Object[size];
+        for (int i = 0; i < size; i++) {
+            _sequences.set(i, i);
+            _entries[i] = entryFactory.create();
+        }
+        _mask = size - 1;
+        _waitStrategy = waitStrategy;
+    }
+
+    @Nonnegative
+    public int getCapacity() {
+        return _entries.length;
+    }
+
+    @Nonnull
+    public WaitStrategy getWaitStrategy() {
+        return _waitStrategy;
+    }
+
+    @Nonnegative
+    public int size() {
+        final long size = _tail.get() - _head.get();
+        return size <= 0 ? 0 : size >= _entries.length ? _entries.length : (int) size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the claimed sequence or <code>-1</code> if this buffer is full.
+     */
+    public long tryClaim() {
+        long result = -1;
+        long tail = _tail.get();
+        while (result < 0) {
+            final long difference = _sequences.get(index(tail)) - tail;
+            if (difference == 0) {
+                if (_tail.compareAndSet(tail, tail + 1)) {
+                    result = tail;
+                } else {
+                    tail = _tail.get();
+                }
+            } else if (difference < 0) {
+                break;
+            } else {
+                tail = _tail.get();
+            }
+        }
+        return result;
+    }
+
+    @Nonnegative
+    public long claim() throws InterruptedException {
+        long sequence = tryClaim();
+        int attempt = 0;
+        while (sequence < 0) {
+            idle(attempt);
+            attempt = attempt < Integer.MAX_VALUE ? attempt + 1 : attempt;
+            sequence = tryClaim();
+        }
+        return sequence;
+    }
+
+    /**
+     * @return the claimed sequence or <code>-1</code> if this buffer is still full after <code>timeoutInNanos</code>.
+     */
+    public long claim(@Nonnegative long timeoutInNanos) throws InterruptedException {
+        long sequence = tryClaim();
+        if (sequence < 0) {
+            final long deadline = nanoTime() + timeoutInNanos;
+            int attempt = 0;
+            while (sequence < 0 && nanoTime() - deadline < 0) {
+                idle(attempt);
+                attempt = attempt < Integer.MAX_VALUE ? attempt + 1 : attempt;
+                sequence = tryClaim();
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * Claims <code>count</code> consecutive sequences at once - with one compare and set on the tail.
+     *
+     * @return the first claimed sequence or <code>-1</code> if there is not enough room for all of them.
+     */
+    public long tryClaim(@Nonnegative int count) {
+        if (count <= 0 || count > _entries.length) {
+            throw new IllegalArgumentException("Count has to be between 1 and " + _entries.length + " but is " + count + ".");
+        }
+        long result = -1;
+        long tail = _tail.get();
+        while (result < 0) {
+            long difference = 0;
+            for (int i = 0; difference == 0 && i < count; i++) {
+                difference = _sequences.get(index(tail + i)) - (tail + i);
+            }
+            if (difference == 0) {
+                if (_tail.compareAndSet(tail, tail + count)) {
+                    result = tail;
+                } else {
+                    tail = _tail.get();
+                }
+            } else if (difference < 0) {
+                break;
+            } else {
+                tail = _tail.get();
+            }
+        }
+        return result;
+    }
+
+    @Nonnegative
+    public long claim(@Nonnegative int count) throws InterruptedException {
+        long sequence = tryClaim(count);
+        int attempt = 0;
+        while (sequence < 0) {
+            idle(attempt);
+            attempt = attempt < Integer.MAX_VALUE ? attempt + 1 : attempt;
+            sequence = tryClaim(count);
+        }
+        return sequence;
+    }
+
+    /**
+     * @return the first claimed sequence or <code>-1</code> if there is still not enough room for <code>count</code>
+     * entries after <code>timeoutInNanos</code>.
+     */
+    public long claim(@Nonnegative int count, @Nonnegative long timeoutInNanos) throws InterruptedException {
+        long sequence = tryClaim(count);
+        if (sequence < 0) {
+            final long deadline = nanoTime() + timeoutInNanos;
+            int attempt = 0;
+            while (sequence < 0 && nanoTime() - deadline < 0) {
+                idle(attempt);
+                attempt = attempt < Integer.MAX_VALUE ? attempt + 1 : attempt;
+                sequence = tryClaim(count);
+            }
+        }
+        return sequence;
+    }
+
+    public void publish(@Nonnegative long sequence) {
+        _sequences.lazySet(index(sequence), sequence + 1);
+    }
+
+    /**
+     * @return the taken sequence or <code>-1</code> if there is currently no published entry.
+     */
+    public long tryTake() {
+        long result = -1;
+        long head = _head.get();
+        while (result < 0) {
+            final long difference = _sequences.get(index(head)) - (head + 1);
+            if (difference == 0) {
+                if (_head.compareAndSet(head, head + 1)) {
+                    result = head;
+                } else {
+                    head = _head.get();
+                }
+            } else if (difference < 0) {
+                break;
+            } else {
+                head = _head.get();
+            }
+        }
+        return result;
+    }
+
+    @Nonnegative
+    public long take() throws InterruptedException {
+        long sequence = tryTake();
+        int attempt = 0;
+        while (sequence < 0) {
+            idle(attempt);
+            attempt = attempt < Integer.MAX_VALUE ? attempt + 1 : attempt;
+            sequence = tryTake();
+        }
+        return sequence;
+    }
+
+    /**
+     * @return the taken sequence or <code>-1</code> if there is still no published entry after
+     * <code>timeoutInNanos</code>.
+     */
+    public long take(@Nonnegative long timeoutInNanos) throws InterruptedException {
+        long sequence = tryTake();
+        if (sequence < 0) {
+            final long deadline = nanoTime() + timeoutInNanos;
+            int attempt = 0;
+            while (sequence < 0 && nanoTime() - deadline < 0) {
+                idle(attempt);
+                attempt = attempt < Integer.MAX_VALUE ? attempt + 1 : attempt;
+                sequence = tryTake();
+            }
+        }
+        return sequence;
+    }
+
+    public void release(@Nonnegative long sequence) {
+        _sequences.lazySet(index(sequence), sequence + _entries.length);
+    }
+
+    @Nonnull
+    public E get(@Nonnegative long sequence) {
+        // noinspection unchecked
+        return (E) _entries[index(sequence)];
+    }
+
+    protected int index(long sequence) {
+        return (int) (sequence & _mask);
+    }
+
+    protected void idle(@Nonnegative int attempt) throws InterruptedException {
+        if (interrupted()) {
+            throw new InterruptedException();
+        }
+        _waitStrategy.idle(attempt);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{size=" + size() + ", capacity=" + getCapacity() + ", waitStrategy=" + _waitStrategy + "}";
+    }
+
+}
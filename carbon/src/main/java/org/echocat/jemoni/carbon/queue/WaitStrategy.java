@@ -0,0 +1,61 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.queue;
+
+import javax.annotation.Nonnegative;
+
+import static java.util.concurrent.locks.LockSupport.parkNanos;
+
+/**
+ * Describes what a thread does while it waits for a {@link RingBuffer} to become non full or non empty.
+ */
+public enum WaitStrategy {
+    /**
+     * Burns the CPU. Lowest latency but occupies a whole core while waiting.
+     */
+    spin {
+        @Override
+        public void idle(@Nonnegative int attempt) {}
+    },
+    /**
+     * Gives other threads the chance to run but never sleeps.
+     */
+    yield {
+        @Override
+        public void idle(@Nonnegative int attempt) {
+            Thread.yield();
+        }
+    },
+    /**
+     * Spins and yields shortly and then parks the thread for a growing time up to {@link #MAXIMUM_PARK_NANOS}.
+     */
+    park {
+        @Override
+        public void idle(@Nonnegative int attempt) {
+            if (attempt < 100) {
+                // Just spin...
+            } else if (attempt < 200) {
+                Thread.yield();
+            } else {
+                parkNanos(Math.min((attempt - 199) * 10000L, MAXIMUM_PARK_NANOS));
+            }
+        }
+    };
+
+    public static final long MAXIMUM_PARK_NANOS = 10000000L;
+
+    public abstract void idle(@Nonnegative int attempt);
+
+}
@@ -0,0 +1,124 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.sharding;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.Map.Entry;
+
+import static java.nio.charset.Charset.forName;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Consistent hash ring which places keys exactly like the <code>carbon_ch</code> ring of carbon-relay: Each node is
+ * placed <code>replicaCount</code> times at the first two bytes of the MD5 of <code>&lt;nodeKey&gt;:&lt;i&gt;</code>.
+ * A key belongs to the first node at or after the first two bytes of its own MD5.
+ *
+ * <p>The order of all distinct nodes following each position is calculated on construction, so a lookup costs one
+ * MD5 and one binary search and allocates nothing but the digest.</p>
+ */
+public class ConsistentHashRing<N> {
+
+    public static final int DEFAULT_REPLICA_COUNT = 100;
+
+    private static final Charset CHARSET = forName("UTF-8");
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() { @Override protected MessageDigest initialValue() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not supported by this JVM.", e);
+        }
+    }};
+
+    private final int[] _positions;
+    private final List<List<N>> _nodesByIndex;
+
+    public ConsistentHashRing(@Nonnull Map<String, N> nodesByKey) {
+        this(nodesByKey, DEFAULT_REPLICA_COUNT);
+    }
+
+    /**
+     * @param nodesByKey all nodes by their key. The iteration order has to be the same as the one of the carbon-relay
+     *                   destinations, because collisions are resolved in this order.
+     */
+    public ConsistentHashRing(@Nonnull Map<String, N> nodesByKey, @Nonnegative int replicaCount) {
+        if (nodesByKey.isEmpty()) {
+            throw new IllegalArgumentException("There has to be at least one node.");
+        }
+        if (replicaCount <= 0) {
+            throw new IllegalArgumentException("The replica count has to be greater than 0 but is " + replicaCount + ".");
+        }
+        final SortedMap<Integer, N> ring = new TreeMap<>();
+        for (Entry<String, N> keyAndNode : nodesByKey.entrySet()) {
+            for (int i = 0; i < replicaCount; i++) {
+                int position = positionOf(keyAndNode.getKey() + ":" + i);
+                while (ring.containsKey(position)) {
+                    position++;
+                }
+                ring.put(position, keyAndNode.getValue());
+            }
+        }
+        _positions = new int[ring.size()];
+        final List<N> nodes = new ArrayList<>(ring.values());
+        int index = 0;
+        for (Integer position : ring.keySet()) {
+            _positions[index++] = position;
+        }
+        final int numberOfNodes = new HashSet<>(nodesByKey.values()).size();
+        _nodesByIndex = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            final Set<N> ordered = new LinkedHashSet<>();
+            for (int j = i; ordered.size() < numberOfNodes; j = (j + 1) % nodes.size()) {
+                ordered.add(nodes.get(j));
+            }
+            _nodesByIndex.add(unmodifiableList(new ArrayList<>(ordered)));
+        }
+    }
+
+    /**
+     * @return the node the given key belongs to.
+     */
+    @Nonnull
+    public N getNode(@Nonnull String key) {
+        return getNodes(key).get(0);
+    }
+
+    /**
+     * @return all distinct nodes in the order they follow the position of the given key on the ring. The first one
+     * is the {@link #getNode(String) node the key belongs to}, the following ones are the ones to fail over to.
+     */
+    @Nonnull
+    public List<N> getNodes(@Nonnull String key) {
+        final int found = Arrays.binarySearch(_positions, positionOf(key));
+        final int index = found >= 0 ? found : -found - 1;
+        return _nodesByIndex.get(index < _positions.length ? index : 0);
+    }
+
+    @Nonnegative
+    protected static int positionOf(@Nonnull String key) {
+        final byte[] digest = DIGEST.get().digest(key.getBytes(CHARSET));
+        return ((digest[0] & 0xff) << 8) | (digest[1] & 0xff);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{positions=" + _positions.length + "}";
+    }
+
+}
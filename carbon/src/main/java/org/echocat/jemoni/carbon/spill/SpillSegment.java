@@ -0,0 +1,206 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.spill;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+
+/**
+ * One memory mapped, append only file of a {@link SpillStore}. Every record is a 4 byte length followed by the
+ * content. The length of a replayed record is negated, a length of <code>0</code> marks the end of the written part.
+ * This class is not thread safe.
+ */
+public class SpillSegment implements Closeable {
+
+    protected static final int RECORD_HEADER_SIZE = 4;
+
+    private final File _file;
+    private final long _sequence;
+
+    private MappedByteBuffer _buffer;
+    private int _readPosition;
+    private int _writePosition;
+    private long _pending;
+
+    /**
+     * Creates a new empty segment of the given <code>size</code>.
+     */
+    public SpillSegment(@Nonnull File file, @Nonnegative long sequence, @Nonnegative int size) throws IOException {
+        _file = file;
+        _sequence = sequence;
+        _buffer = map(file, size);
+    }
+
+    /**
+     * Opens an already existing segment and recovers its read and write positions.
+     */
+    public SpillSegment(@Nonnull File file, @Nonnegative long sequence) throws IOException {
+        _file = file;
+        _sequence = sequence;
+        _buffer = map(file, file.length());
+        recover();
+    }
+
+    @Nonnull
+    public File getFile() {
+        return _file;
+    }
+
+    @Nonnegative
+    public long getSequence() {
+        return _sequence;
+    }
+
+    @Nonnegative
+    public int getCapacity() {
+        return _buffer.capacity();
+    }
+
+    /**
+     * @return the number of content bytes which are written but not yet replayed.
+     */
+    @Nonnegative
+    public long getPending() {
+        return _pending;
+    }
+
+    public boolean isExhausted() {
+        return _readPosition >= _writePosition;
+    }
+
+    public boolean hasRoomFor(@Nonnegative int length) {
+        return _writePosition + RECORD_HEADER_SIZE + length <= _buffer.capacity();
+    }
+
+    /**
+     * Appends the remaining content of <code>record</code>. The caller has to ensure that there is
+     * {@link #hasRoomFor(int) room for it}.
+     */
+    public void append(@Nonnull ByteBuffer record) {
+        final int length = record.remaining();
+        final ByteBuffer target = _buffer.duplicate();
+        target.position(_writePosition + RECORD_HEADER_SIZE);
+        target.put(record);
+        _buffer.putInt(_writePosition, length);
+        _writePosition += RECORD_HEADER_SIZE + length;
+        _pending += length;
+    }
+
+    /**
+     * @return the oldest not yet replayed record or <code>null</code> if this segment is exhausted.
+     */
+    @Nullable
+    public ByteBuffer peek() {
+        final ByteBuffer result;
+        if (!isExhausted()) {
+            final ByteBuffer source = _buffer.duplicate();
+            source.position(_readPosition + RECORD_HEADER_SIZE);
+            source.limit(_readPosition + RECORD_HEADER_SIZE + _buffer.getInt(_readPosition));
+            result = source.slice();
+        } else {
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Marks the record returned by {@link #peek()} as replayed.
+     */
+    public void remove() {
+        if (!isExhausted()) {
+            final int length = _buffer.getInt(_readPosition);
+            _buffer.putInt(_readPosition, -length);
+            _readPosition += RECORD_HEADER_SIZE + length;
+            _pending -= length;
+        }
+    }
+
+    protected void recover() {
+        boolean readPositionFound = false;
+        int position = 0;
+        int length = recordLengthAt(position);
+        while (length != 0) {
+            if (length > 0) {
+                if (!readPositionFound) {
+                    _readPosition = position;
+                    readPositionFound = true;
+                }
+                _pending += length;
+            }
+            position += RECORD_HEADER_SIZE + Math.abs(length);
+            length = recordLengthAt(position);
+        }
+        _writePosition = position;
+        if (!readPositionFound) {
+            _readPosition = position;
+        }
+    }
+
+    /**
+     * @return the (maybe negated) length of the record at <code>position</code> or <code>0</code> if there is no
+     * complete record.
+     */
+    protected int recordLengthAt(@Nonnegative int position) {
+        int result = 0;
+        if (position + RECORD_HEADER_SIZE <= _buffer.capacity()) {
+            final int length = _buffer.getInt(position);
+            if (length != Integer.MIN_VALUE && Math.abs(length) <= _buffer.capacity() - position - RECORD_HEADER_SIZE) {
+                result = length;
+            }
+        }
+        return result;
+    }
+
+    public void delete() throws IOException {
+        close();
+        if (_file.exists() && !_file.delete()) {
+            throw new IOException("Could not delete " + _file + ".");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_buffer != null) {
+            _buffer.force();
+            _buffer = null;
+        }
+    }
+
+    @Nonnull
+    protected static MappedByteBuffer map(@Nonnull File file, @Nonnegative long size) throws IOException {
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(size);
+            try (final FileChannel channel = randomAccessFile.getChannel()) {
+                return channel.map(READ_WRITE, 0, size);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + _file + "}";
+    }
+
+}
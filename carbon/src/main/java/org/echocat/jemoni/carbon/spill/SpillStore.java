@@ -0,0 +1,287 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.spill;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.echocat.jomon.runtime.util.ResourceUtils.closeQuietly;
+
+/**
+ * Keeps buffers which could currently not be delivered to carbon in memory mapped, append only segment files below
+ * a {@link #getDirectory() directory} and returns them in the order they were appended. Segments which were
+ * completely replayed are deleted. Segments which exist when the store is opened are recovered, so buffers survive a
+ * restart of the application. A closed store will be reopened on next access.
+ */
+public class SpillStore implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    public static final long DEFAULT_MAXIMUM_SIZE = 1024L * 1024 * 1024;
+
+    protected static final String SEGMENT_SUFFIX = ".segment";
+    protected static final FilenameFilter SEGMENT_FILTER = new FilenameFilter() { @Override public boolean accept(File dir, String name) {
+        return name.endsWith(SEGMENT_SUFFIX) && name.length() > SEGMENT_SUFFIX.length();
+    }};
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpillStore.class);
+
+    private final Lock _lock = new ReentrantLock();
+
+    private volatile File _directory;
+    private volatile int _segmentSize = DEFAULT_SEGMENT_SIZE;
+    private volatile long _maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    private Deque<SpillSegment> _segments;
+
+    public SpillStore() {}
+
+    public SpillStore(@Nonnull File directory) {
+        _directory = directory;
+    }
+
+    @Nullable
+    public File getDirectory() {
+        return _directory;
+    }
+
+    public void setDirectory(@Nonnull File directory) {
+        _directory = directory;
+    }
+
+    @Nonnegative
+    public int getSegmentSize() {
+        return _segmentSize;
+    }
+
+    public void setSegmentSize(@Nonnegative int segmentSize) {
+        _segmentSize = segmentSize;
+    }
+
+    /**
+     * @return the maximum number of bytes all segments together could occupy on disk.
+     */
+    @Nonnegative
+    public long getMaximumSize() {
+        return _maximumSize;
+    }
+
+    public void setMaximumSize(@Nonnegative long maximumSize) {
+        _maximumSize = maximumSize;
+    }
+
+    /**
+     * Appends the remaining content of all <code>buffers</code> - each as one record. The positions of the buffers
+     * are not modified.
+     *
+     * @return <code>false</code> if the store is full and the buffers are not stored.
+     */
+    public boolean append(@Nonnull Iterable<ByteBuffer> buffers) throws IOException {
+        _lock.lock();
+        try {
+            final Deque<SpillSegment> segments = openIfRequired();
+            boolean result = hasRoomFor(segments, buffers);
+            if (result) {
+                for (ByteBuffer buffer : buffers) {
+                    final ByteBuffer record = buffer.duplicate();
+                    SpillSegment segment = segments.peekLast();
+                    if (segment == null || !segment.hasRoomFor(record.remaining())) {
+                        segment = createSegment(segments, record.remaining());
+                    }
+                    segment.append(record);
+                }
+            }
+            return result;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @return the oldest not yet {@link #remove() removed} record or <code>null</code> if this store is empty.
+     */
+    @Nullable
+    public ByteBuffer peek() throws IOException {
+        _lock.lock();
+        try {
+            final SpillSegment segment = findFirstNotExhausted(openIfRequired());
+            return segment != null ? segment.peek() : null;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the record which was returned by the last call of {@link #peek()}.
+     */
+    public void remove() throws IOException {
+        _lock.lock();
+        try {
+            final Deque<SpillSegment> segments = openIfRequired();
+            final SpillSegment segment = findFirstNotExhausted(segments);
+            if (segment != null) {
+                segment.remove();
+                if (segment.isExhausted()) {
+                    segments.removeFirst().delete();
+                }
+            }
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() throws IOException {
+        return getPending() == 0;
+    }
+
+    /**
+     * @return the number of content bytes which are stored and not yet removed.
+     */
+    @Nonnegative
+    public long getPending() throws IOException {
+        _lock.lock();
+        try {
+            long result = 0;
+            for (SpillSegment segment : openIfRequired()) {
+                result += segment.getPending();
+            }
+            return result;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    @Nullable
+    protected SpillSegment findFirstNotExhausted(@Nonnull Deque<SpillSegment> segments) throws IOException {
+        SpillSegment result = segments.peekFirst();
+        while (result != null && result.isExhausted()) {
+            segments.removeFirst().delete();
+            result = segments.peekFirst();
+        }
+        return result;
+    }
+
+    protected boolean hasRoomFor(@Nonnull Deque<SpillSegment> segments, @Nonnull Iterable<ByteBuffer> buffers) {
+        long used = 0;
+        for (SpillSegment segment : segments) {
+            used += segment.getCapacity();
+        }
+        long required = 0;
+        for (ByteBuffer buffer : buffers) {
+            required += SpillSegment.RECORD_HEADER_SIZE + buffer.remaining();
+        }
+        final SpillSegment last = segments.peekLast();
+        final boolean fitsIntoLast = last != null && required <= Integer.MAX_VALUE && last.hasRoomFor((int) required - SpillSegment.RECORD_HEADER_SIZE);
+        final long requiredOnDisk = fitsIntoLast ? 0 : (required + _segmentSize - 1) / _segmentSize * _segmentSize;
+        return used + requiredOnDisk <= _maximumSize;
+    }
+
+    @Nonnull
+    protected SpillSegment createSegment(@Nonnull Deque<SpillSegment> segments, @Nonnegative int recordLength) throws IOException {
+        final SpillSegment last = segments.peekLast();
+        final long sequence = last != null ? last.getSequence() + 1 : 0;
+        final int size = Math.max(_segmentSize, SpillSegment.RECORD_HEADER_SIZE + recordLength);
+        final SpillSegment result = new SpillSegment(fileFor(sequence), sequence, size);
+        segments.addLast(result);
+        return result;
+    }
+
+    @Nonnull
+    protected Deque<SpillSegment> openIfRequired() throws IOException {
+        if (_segments == null) {
+            final File directory = _directory;
+            if (directory == null) {
+                throw new IllegalStateException("No directory set for " + this + ".");
+            }
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create directory " + directory + ".");
+            }
+            final Deque<SpillSegment> segments = new ArrayDeque<>();
+            final String[] names = directory.list(SEGMENT_FILTER);
+            Arrays.sort(names);
+            boolean success = false;
+            try {
+                for (String name : names) {
+                    final SpillSegment segment = new SpillSegment(new File(directory, name), sequenceOf(name));
+                    segments.addLast(segment);
+                }
+                success = true;
+            } finally {
+                if (!success) {
+                    for (SpillSegment segment : segments) {
+                        closeQuietly(segment);
+                    }
+                }
+            }
+            if (!segments.isEmpty()) {
+                LOG.info("Recovered " + segments.size() + " segment(s) from " + directory + ".");
+            }
+            _segments = segments;
+        }
+        return _segments;
+    }
+
+    @Nonnull
+    protected File fileFor(@Nonnegative long sequence) {
+        return new File(_directory, String.format("%019d", sequence) + SEGMENT_SUFFIX);
+    }
+
+    @Nonnegative
+    protected long sequenceOf(@Nonnull String fileName) throws IOException {
+        final String plain = fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length());
+        try {
+            return Long.parseLong(plain);
+        } catch (NumberFormatException ignored) {
+            throw new IOException("Illegal segment file name: " + fileName);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        _lock.lock();
+        try {
+            if (_segments != null) {
+                try {
+                    for (SpillSegment segment : _segments) {
+                        closeQuietly(segment);
+                    }
+                } finally {
+                    _segments = null;
+                }
+            }
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + _directory + "}";
+    }
+
+}
@@ -29,6 +29,8 @@ import javax.annotation.Nonnull;
 
 import static org.echocat.jemoni.carbon.jmx.configuration.RulesConstants.SCHEMA_NAMESPACE;
 import static org.echocat.jemoni.carbon.jmx.configuration.RulesMarshaller.unmarshall;
+import static org.echocat.jemoni.carbon.ThreadMode.platform;
+import static org.echocat.jemoni.carbon.spring.WriterDefinitionParser.toThreadMode;
 import static org.springframework.util.StringUtils.hasText;
 
 public class Jmx2CarbonBridgeDefinitionParser extends AbstractSingleBeanDefinitionParser {
@@ -38,6 +40,8 @@ public class Jmx2CarbonBridgeDefinitionParser extends AbstractSingleBeanDefiniti
     public static final String WRITER_REF_ATTRIBUTE = "writer-ref";
     public static final String CLASS_LOADER_REF_ATTRIBUTE = "classLoader-ref";
     public static final String PATH_PREFIX_ATTRIBUTE = "pathPrefix";
+    public static final String THREAD_MODE_ATTRIBUTE = "threadMode";
+    public static final String KEY_PROPERTIES_AS_TAGS_ATTRIBUTE = "keyPropertiesAsTags";
     public static final String CONFIGURATION_ELEMENT = "configuration";
     public static final String CONFIGURATION_REF_ATTRIBUTE = CONFIGURATION_ELEMENT + "-ref";
 
@@ -70,6 +74,10 @@ public class Jmx2CarbonBridgeDefinitionParser extends AbstractSingleBeanDefiniti
             bean.addPropertyValue("pathPrefix", pathPrefix);
         }
 
+        bean.addPropertyValue("threadMode", toThreadMode(element.getAttribute(THREAD_MODE_ATTRIBUTE), platform));
+
+        bean.addPropertyValue("keyPropertiesAsTags", Boolean.valueOf(element.getAttribute(KEY_PROPERTIES_AS_TAGS_ATTRIBUTE).trim()));
+
         Configuration configuration = null;
         final NodeList children = element.getChildNodes();
         for (int i = 0; i < children.getLength(); i++) {
@@ -14,7 +14,17 @@
 
 package org.echocat.jemoni.carbon.spring;
 
+import org.echocat.jemoni.carbon.BufferPool;
 import org.echocat.jemoni.carbon.CarbonWriter;
+import org.echocat.jemoni.carbon.ThreadMode;
+import org.echocat.jemoni.carbon.aggregation.AggregationFunction;
+import org.echocat.jemoni.carbon.aggregation.AggregationRule;
+import org.echocat.jemoni.carbon.protocol.Protocol;
+import org.echocat.jemoni.carbon.queue.BackpressurePolicy;
+import org.echocat.jemoni.carbon.queue.WaitStrategy;
+import org.echocat.jemoni.carbon.spill.SpillStore;
+import org.echocat.jemoni.carbon.transport.TcpTransport;
+import org.echocat.jemoni.carbon.transport.UdpTransport;
 import org.echocat.jomon.runtime.util.Duration;
 import org.springframework.beans.factory.BeanDefinitionStoreException;
 import org.springframework.beans.factory.support.AbstractBeanDefinition;
@@ -22,14 +32,38 @@ import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.xml.AbstractSingleBeanDefinitionParser;
 import org.springframework.beans.factory.xml.ParserContext;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.File;
 import java.net.InetSocketAddress;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
+import static java.util.regex.Pattern.compile;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_AGGREGATION_INTERVAL;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_BACKPRESSURE_POLICY;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_BACKPRESSURE_TIMEOUT;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_BUFFER_SIZE;
 import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_CHARSET;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_MAXIMUM_RECONNECT_DELAY;
 import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_MAX_BUFFER_LIFETIME;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_MINIMUM_RECONNECT_DELAY;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_PATH_CACHE_CAPACITY;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_PROTOCOL;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_QUEUE_CAPACITY;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_SPILL_REPLAY_RATE;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_STATISTICS_INTERVAL;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_TARGET_BATCH_SIZE;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_THREAD_MODE;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_WAIT_STRATEGY;
+import static org.echocat.jemoni.carbon.spill.SpillStore.DEFAULT_MAXIMUM_SIZE;
+import static org.echocat.jemoni.carbon.transport.TcpTransport.DEFAULT_CONNECT_TIMEOUT;
+import static org.echocat.jemoni.carbon.transport.UdpTransport.DEFAULT_DATAGRAM_SIZE;
+import static org.springframework.beans.factory.support.BeanDefinitionBuilder.genericBeanDefinition;
 import static org.springframework.util.StringUtils.hasText;
 
 public class WriterDefinitionParser extends AbstractSingleBeanDefinitionParser {
@@ -37,6 +71,35 @@ public class WriterDefinitionParser extends AbstractSingleBeanDefinitionParser {
     public static final String ADDRESS_ATTRIBUTE = "address";
     public static final String MAX_BUFFER_LIFETIME_ATTRIBUTE = "maxBufferLifetime";
     public static final String CHARSET_ATTRIBUTE = "charset";
+    public static final String CONNECT_TIMEOUT_ATTRIBUTE = "connectTimeout";
+    public static final String QUEUE_CAPACITY_ATTRIBUTE = "queueCapacity";
+    public static final String WAIT_STRATEGY_ATTRIBUTE = "waitStrategy";
+    public static final String PROTOCOL_ATTRIBUTE = "protocol";
+    public static final String TRANSPORT_ATTRIBUTE = "transport";
+    public static final String DATAGRAM_SIZE_ATTRIBUTE = "datagramSize";
+    public static final String BACKPRESSURE_POLICY_ATTRIBUTE = "backpressurePolicy";
+    public static final String BACKPRESSURE_TIMEOUT_ATTRIBUTE = "backpressureTimeout";
+    public static final String JMX_REGISTRY_REF_ATTRIBUTE = "jmxRegistry-ref";
+    public static final String SPILL_DIRECTORY_ATTRIBUTE = "spillDirectory";
+    public static final String SPILL_MAXIMUM_SIZE_ATTRIBUTE = "spillMaximumSize";
+    public static final String SPILL_REPLAY_RATE_ATTRIBUTE = "spillReplayRate";
+    public static final String STATISTICS_PATH_ATTRIBUTE = "statisticsPath";
+    public static final String STATISTICS_INTERVAL_ATTRIBUTE = "statisticsInterval";
+    public static final String AGGREGATION_INTERVAL_ATTRIBUTE = "aggregationInterval";
+    public static final String BUFFER_SIZE_ATTRIBUTE = "bufferSize";
+    public static final String TARGET_BATCH_SIZE_ATTRIBUTE = "targetBatchSize";
+    public static final String DIRECT_BUFFERS_ATTRIBUTE = "directBuffers";
+    public static final String BUFFER_POOL_CAPACITY_ATTRIBUTE = "bufferPoolCapacity";
+    public static final String PATH_CACHE_CAPACITY_ATTRIBUTE = "pathCacheCapacity";
+    public static final String THREAD_MODE_ATTRIBUTE = "threadMode";
+    public static final String MINIMUM_RECONNECT_DELAY_ATTRIBUTE = "minimumReconnectDelay";
+    public static final String MAXIMUM_RECONNECT_DELAY_ATTRIBUTE = "maximumReconnectDelay";
+    public static final String AGGREGATE_ELEMENT = "aggregate";
+    public static final String AGGREGATE_PATTERN_ATTRIBUTE = "pattern";
+    public static final String AGGREGATE_FUNCTION_ATTRIBUTE = "function";
+
+    public static final String TCP_TRANSPORT = "tcp";
+    public static final String UDP_TRANSPORT = "udp";
 
     @Override
     protected Class<?> getBeanClass(Element element) {
@@ -46,8 +109,76 @@ public class WriterDefinitionParser extends AbstractSingleBeanDefinitionParser {
     @Override
     protected void doParse(@Nonnull Element element, @Nonnull BeanDefinitionBuilder bean) {
         bean.addPropertyValue("address", toSocketAddress(element.getAttribute(ADDRESS_ATTRIBUTE)));
-        bean.addPropertyValue("maxBufferLifetime", toMaxBufferLifetime(element.getAttribute(MAX_BUFFER_LIFETIME_ATTRIBUTE)));
+        bean.addPropertyValue("maxBufferLifetime", toDuration(element.getAttribute(MAX_BUFFER_LIFETIME_ATTRIBUTE), DEFAULT_MAX_BUFFER_LIFETIME));
         bean.addPropertyValue("charset", toCharset(element.getAttribute(CHARSET_ATTRIBUTE)));
+        bean.addPropertyValue("queueCapacity", toLong(element.getAttribute(QUEUE_CAPACITY_ATTRIBUTE), "queue capacity", DEFAULT_QUEUE_CAPACITY).intValue());
+        bean.addPropertyValue("waitStrategy", toWaitStrategy(element.getAttribute(WAIT_STRATEGY_ATTRIBUTE)));
+        bean.addPropertyValue("threadMode", toThreadMode(element.getAttribute(THREAD_MODE_ATTRIBUTE), DEFAULT_THREAD_MODE));
+        bean.addPropertyValue("bufferSize", toLong(element.getAttribute(BUFFER_SIZE_ATTRIBUTE), "buffer size", DEFAULT_BUFFER_SIZE).intValue());
+        bean.addPropertyValue("targetBatchSize", toLong(element.getAttribute(TARGET_BATCH_SIZE_ATTRIBUTE), "target batch size", DEFAULT_TARGET_BATCH_SIZE));
+        bean.addPropertyValue("directBuffers", Boolean.valueOf(element.getAttribute(DIRECT_BUFFERS_ATTRIBUTE).trim()));
+        bean.addPropertyValue("bufferPoolCapacity", toLong(element.getAttribute(BUFFER_POOL_CAPACITY_ATTRIBUTE), "buffer pool capacity", BufferPool.DEFAULT_CAPACITY).intValue());
+        bean.addPropertyValue("pathCacheCapacity", toLong(element.getAttribute(PATH_CACHE_CAPACITY_ATTRIBUTE), "path cache capacity", DEFAULT_PATH_CACHE_CAPACITY).intValue());
+        bean.addPropertyValue("protocol", toProtocol(element.getAttribute(PROTOCOL_ATTRIBUTE)));
+        bean.addPropertyValue("transport", toTransport(element));
+        bean.addPropertyValue("backpressurePolicy", toBackpressurePolicy(element.getAttribute(BACKPRESSURE_POLICY_ATTRIBUTE)));
+        bean.addPropertyValue("backpressureTimeout", toDuration(element.getAttribute(BACKPRESSURE_TIMEOUT_ATTRIBUTE), DEFAULT_BACKPRESSURE_TIMEOUT));
+        final String jmxRegistryRef = element.getAttribute(JMX_REGISTRY_REF_ATTRIBUTE);
+        if (hasText(jmxRegistryRef)) {
+            bean.addPropertyReference("jmxRegistry", jmxRegistryRef);
+        }
+        bean.addPropertyValue("spillReplayRate", toLong(element.getAttribute(SPILL_REPLAY_RATE_ATTRIBUTE), "spill replay rate", DEFAULT_SPILL_REPLAY_RATE));
+        if (hasText(element.getAttribute(SPILL_DIRECTORY_ATTRIBUTE))) {
+            bean.addPropertyValue("spillStore", toSpillStore(element));
+        }
+        final String statisticsPath = element.getAttribute(STATISTICS_PATH_ATTRIBUTE);
+        if (hasText(statisticsPath)) {
+            bean.addPropertyValue("statisticsPath", statisticsPath.trim());
+        }
+        bean.addPropertyValue("statisticsInterval", toDuration(element.getAttribute(STATISTICS_INTERVAL_ATTRIBUTE), DEFAULT_STATISTICS_INTERVAL));
+        bean.addPropertyValue("aggregationRules", toAggregationRules(element));
+        bean.addPropertyValue("aggregationInterval", toDuration(element.getAttribute(AGGREGATION_INTERVAL_ATTRIBUTE), DEFAULT_AGGREGATION_INTERVAL));
+        bean.addPropertyValue("minimumReconnectDelay", toDuration(element.getAttribute(MINIMUM_RECONNECT_DELAY_ATTRIBUTE), DEFAULT_MINIMUM_RECONNECT_DELAY));
+        bean.addPropertyValue("maximumReconnectDelay", toDuration(element.getAttribute(MAXIMUM_RECONNECT_DELAY_ATTRIBUTE), DEFAULT_MAXIMUM_RECONNECT_DELAY));
+    }
+
+    @Nonnull
+    protected List<AggregationRule> toAggregationRules(@Nonnull Element element) {
+        final List<AggregationRule> rules = new ArrayList<>();
+        final NodeList children = element.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            final Node child = children.item(i);
+            if (AGGREGATE_ELEMENT.equals(child.getLocalName()) && element.getNamespaceURI().equals(child.getNamespaceURI())) {
+                final Element aggregate = (Element) child;
+                final String function = aggregate.getAttribute(AGGREGATE_FUNCTION_ATTRIBUTE).trim();
+                rules.add(new AggregationRule(compile(aggregate.getAttribute(AGGREGATE_PATTERN_ATTRIBUTE)), AggregationFunction.valueOf(function)));
+            }
+        }
+        return rules;
+    }
+
+    @Nonnull
+    protected AbstractBeanDefinition toSpillStore(@Nonnull Element element) {
+        final BeanDefinitionBuilder spillStore = genericBeanDefinition(SpillStore.class);
+        spillStore.addPropertyValue("directory", new File(element.getAttribute(SPILL_DIRECTORY_ATTRIBUTE).trim()));
+        spillStore.addPropertyValue("maximumSize", toLong(element.getAttribute(SPILL_MAXIMUM_SIZE_ATTRIBUTE), "spill maximum size", DEFAULT_MAXIMUM_SIZE));
+        return spillStore.getBeanDefinition();
+    }
+
+    @Nonnull
+    protected AbstractBeanDefinition toTransport(@Nonnull Element element) {
+        final String type = element.getAttribute(TRANSPORT_ATTRIBUTE);
+        final BeanDefinitionBuilder transport;
+        if (!hasText(type) || TCP_TRANSPORT.equals(type.trim())) {
+            transport = genericBeanDefinition(TcpTransport.class);
+            transport.addPropertyValue("connectTimeout", toDuration(element.getAttribute(CONNECT_TIMEOUT_ATTRIBUTE), DEFAULT_CONNECT_TIMEOUT));
+        } else if (UDP_TRANSPORT.equals(type.trim())) {
+            transport = genericBeanDefinition(UdpTransport.class);
+            transport.addPropertyValue("datagramSize", toLong(element.getAttribute(DATAGRAM_SIZE_ATTRIBUTE), "datagram size", DEFAULT_DATAGRAM_SIZE).intValue());
+        } else {
+            throw new IllegalArgumentException("Illegal transport: " + type);
+        }
+        return transport.getBeanDefinition();
     }
 
     @Override
@@ -89,8 +220,43 @@ public class WriterDefinitionParser extends AbstractSingleBeanDefinitionParser {
     }
 
     @Nonnull
-    protected Duration toMaxBufferLifetime(@Nullable String plain) {
-        return hasText(plain) ? new Duration(plain) : DEFAULT_MAX_BUFFER_LIFETIME;
+    protected Long toLong(@Nullable String plain, @Nonnull String name, long defaultValue) {
+        final long result;
+        if (hasText(plain)) {
+            try {
+                result = Long.parseLong(plain.trim());
+            } catch (NumberFormatException ignored) {
+                throw new IllegalArgumentException("Illegal " + name + ": " + plain);
+            }
+        } else {
+            result = defaultValue;
+        }
+        return result;
+    }
+
+    @Nonnull
+    protected WaitStrategy toWaitStrategy(@Nullable String plain) {
+        return hasText(plain) ? WaitStrategy.valueOf(plain.trim()) : DEFAULT_WAIT_STRATEGY;
+    }
+
+    @Nonnull
+    protected BackpressurePolicy toBackpressurePolicy(@Nullable String plain) {
+        return hasText(plain) ? BackpressurePolicy.valueOf(plain.trim()) : DEFAULT_BACKPRESSURE_POLICY;
+    }
+
+    @Nonnull
+    public static ThreadMode toThreadMode(@Nullable String plain, @Nonnull ThreadMode defaultValue) {
+        return hasText(plain) ? ThreadMode.valueOf(plain.trim()) : defaultValue;
+    }
+
+    @Nonnull
+    protected Duration toDuration(@Nullable String plain, @Nonnull Duration defaultValue) {
+        return hasText(plain) ? new Duration(plain) : defaultValue;
+    }
+
+    @Nonnull
+    protected Protocol toProtocol(@Nullable String plain) {
+        return hasText(plain) ? Protocol.valueOf(plain.trim()) : DEFAULT_PROTOCOL;
     }
 
     @Nonnull
@@ -0,0 +1,174 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.store;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Path pattern like the ones of graphite: the pattern is matched segment by segment, each segment could contain
+ * <code>*</code> (any characters), <code>?</code> (one character), <code>[a-z]</code>, <code>[!a-z]</code> (one of or
+ * none of the characters) and <code>{foo,bar}</code> (one of the alternatives). Segments without any of them are
+ * literals and could be looked up directly.
+ */
+public class PathGlob {
+
+    @Nonnull
+    public static PathGlob glob(@Nonnull String pattern) throws IllegalArgumentException {
+        return new PathGlob(pattern);
+    }
+
+    private final String _pattern;
+    private final String[] _literals;
+    private final Pattern[] _patterns;
+
+    public PathGlob(@Nonnull String pattern) throws IllegalArgumentException {
+        _pattern = pattern;
+        final List<String> segments = split(pattern);
+        _literals = new String[segments.size()];
+        _patterns = new Pattern[segments.size()];
+        for (int i = 0; i < segments.size(); i++) {
+            final String segment = segments.get(i);
+            if (isLiteral(segment)) {
+                _literals[i] = segment;
+            } else {
+                try {
+                    _patterns[i] = Pattern.compile(toRegex(segment));
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("Illegal glob: " + pattern, e);
+                }
+            }
+        }
+    }
+
+    @Nonnegative
+    public int getNumberOfSegments() {
+        return _literals.length;
+    }
+
+    /**
+     * @return the segment at the given index if it is a literal otherwise <code>null</code>.
+     */
+    @Nullable
+    public String getLiteral(@Nonnegative int segment) {
+        return _literals[segment];
+    }
+
+    public boolean matches(@Nonnegative int segment, @Nonnull String value) {
+        final String literal = _literals[segment];
+        return literal != null ? literal.equals(value) : _patterns[segment].matcher(value).matches();
+    }
+
+    public boolean matches(@Nonnull String path) {
+        final List<String> segments = split(path);
+        boolean result = segments.size() == _literals.length;
+        for (int i = 0; result && i < _literals.length; i++) {
+            result = matches(i, segments.get(i));
+        }
+        return result;
+    }
+
+    @Nonnull
+    protected static List<String> split(@Nonnull String path) {
+        final List<String> result = new ArrayList<>();
+        int start = 0;
+        int depth = 0;
+        for (int i = 0; i < path.length(); i++) {
+            final char c = path.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}' && depth > 0) {
+                depth--;
+            } else if (c == '.' && depth == 0) {
+                result.add(path.substring(start, i));
+                start = i + 1;
+            }
+        }
+        result.add(path.substring(start));
+        return result;
+    }
+
+    protected static boolean isLiteral(@Nonnull String segment) {
+        boolean result = true;
+        for (int i = 0; result && i < segment.length(); i++) {
+            final char c = segment.charAt(i);
+            result = c != '*' && c != '?' && c != '[' && c != '{';
+        }
+        return result;
+    }
+
+    @Nonnull
+    protected static String toRegex(@Nonnull String segment) {
+        final StringBuilder result = new StringBuilder();
+        boolean inClass = false;
+        int alternatives = 0;
+        for (int i = 0; i < segment.length(); i++) {
+            final char c = segment.charAt(i);
+            if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                    result.append(']');
+                } else if (c == '!' && segment.charAt(i - 1) == '[') {
+                    result.append('^');
+                } else if (c == '\\' || c == '[' || c == '&') {
+                    result.append('\\').append(c);
+                } else {
+                    result.append(c);
+                }
+            } else if (c == '*') {
+                result.append(".*");
+            } else if (c == '?') {
+                result.append('.');
+            } else if (c == '[') {
+                inClass = true;
+                result.append('[');
+            } else if (c == '{') {
+                alternatives++;
+                result.append("(?:");
+            } else if (c == '}' && alternatives > 0) {
+                alternatives--;
+                result.append(')');
+            } else if (c == ',' && alternatives > 0) {
+                result.append('|');
+            } else if (Character.isLetterOrDigit(c) || c == '_') {
+                result.append(c);
+            } else {
+                result.append('\\').append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof PathGlob && _pattern.equals(((PathGlob) o)._pattern));
+    }
+
+    @Override
+    public int hashCode() {
+        return _pattern.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return _pattern;
+    }
+
+}
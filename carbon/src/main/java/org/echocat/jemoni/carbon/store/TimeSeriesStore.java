@@ -0,0 +1,420 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.store;
+
+import org.echocat.jemoni.carbon.MeasurePoint;
+import org.echocat.jemoni.carbon.Tags;
+import org.echocat.jomon.runtime.util.Duration;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.echocat.jemoni.carbon.store.PathGlob.glob;
+
+/**
+ * Memory bounded store of measure points which keeps each series - a path and its {@link Tags tags} - in primitive
+ * columns of timestamps and values. Paths are indexed twice: by a hash map for adding points and by a trie of their
+ * segments for {@link PathGlob glob} queries, so a query only visits the matching series.
+ *
+ * <p>Each series keeps at most {@link #getMaximumPointsPerSeries()} points and - if a {@link #getRetention() retention}
+ * is set - no points which are older than the retention before its newest point, also if they were added out of
+ * order. If the maximum is reached the earliest added point is dropped first. Points of new series are dropped if
+ * there are already {@link #getMaximumSeries()} series. With the defaults the points take at most about 160 MB.</p>
+ *
+ * <p>This class is thread safe.</p>
+ */
+public class TimeSeriesStore {
+
+    public static final int DEFAULT_MAXIMUM_POINTS_PER_SERIES = 1000;
+    public static final int DEFAULT_MAXIMUM_SERIES = 10000;
+
+    protected static final int INITIAL_SERIES_CAPACITY = 16;
+
+    protected static final Comparator<MeasurePoint> BY_TIMESTAMP = new Comparator<MeasurePoint>() { @Override public int compare(MeasurePoint o1, MeasurePoint o2) {
+        final int result = o1.getTimestamp().compareTo(o2.getTimestamp());
+        return result != 0 ? result : o1.getPath().compareTo(o2.getPath());
+    }};
+
+    private final AtomicInteger _numberOfSeries = new AtomicInteger();
+    private final AtomicLong _droppedPoints = new AtomicLong();
+
+    private volatile Node _root = new Node();
+    private volatile ConcurrentMap<String, Node> _pathToNode = new ConcurrentHashMap<>();
+
+    private volatile int _maximumPointsPerSeries = DEFAULT_MAXIMUM_POINTS_PER_SERIES;
+    private volatile int _maximumSeries = DEFAULT_MAXIMUM_SERIES;
+    private volatile Duration _retention;
+
+    @Nonnegative
+    public int getMaximumPointsPerSeries() {
+        return _maximumPointsPerSeries;
+    }
+
+    public void setMaximumPointsPerSeries(@Nonnegative int maximumPointsPerSeries) {
+        if (maximumPointsPerSeries <= 0) {
+            throw new IllegalArgumentException("The maximum points per series has to be greater than 0 but is " + maximumPointsPerSeries + ".");
+        }
+        _maximumPointsPerSeries = maximumPointsPerSeries;
+    }
+
+    @Nonnegative
+    public int getMaximumSeries() {
+        return _maximumSeries;
+    }
+
+    public void setMaximumSeries(@Nonnegative int maximumSeries) {
+        _maximumSeries = maximumSeries;
+    }
+
+    /**
+     * @return the time range before the newest point of a series in which its points are kept or <code>null</code> if
+     * points are only dropped if {@link #getMaximumPointsPerSeries()} is reached.
+     */
+    @Nullable
+    public Duration getRetention() {
+        return _retention;
+    }
+
+    public void setRetention(@Nullable Duration retention) {
+        _retention = retention;
+    }
+
+    public void add(@Nonnull MeasurePoint measurePoint) {
+        add(measurePoint.getPath(), measurePoint.getTags(), measurePoint.getTimestamp().getTime(), measurePoint.getValue().doubleValue());
+    }
+
+    public void add(@Nonnull String path, @Nullable Tags tags, long timestampInMillis, double value) {
+        final Series series = seriesFor(path, tags != null ? tags : Tags.EMPTY);
+        if (series != null) {
+            final Duration retention = _retention;
+            series.add(timestampInMillis, value, _maximumPointsPerSeries, retention != null ? retention.toMilliSeconds() : -1);
+        } else {
+            _droppedPoints.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return all points of the series matching the given glob in the given time range, ordered by their timestamp
+     * and path.
+     */
+    @Nonnull
+    public List<MeasurePoint> query(@Nonnull String glob, @Nullable Date from, @Nullable Date to) throws IllegalArgumentException {
+        return query(glob(glob), from, to);
+    }
+
+    /**
+     * @param from the first timestamp (inclusive) or <code>null</code> for no lower bound.
+     * @param to the last timestamp (exclusive) or <code>null</code> for no upper bound.
+     * @return all points of the series matching the given glob in the given time range, ordered by their timestamp
+     * and path.
+     */
+    @Nonnull
+    public List<MeasurePoint> query(@Nonnull PathGlob glob, @Nullable Date from, @Nullable Date to) {
+        final long fromInMillis = from != null ? from.getTime() : Long.MIN_VALUE;
+        final long toInMillis = to != null ? to.getTime() : Long.MAX_VALUE;
+        final List<MeasurePoint> result = new ArrayList<>();
+        final List<Node> nodes = new ArrayList<>();
+        collectNodes(_root, glob, 0, nodes);
+        for (Node node : nodes) {
+            for (Entry<Tags, Series> tagsAndSeries : node.getSeries().entrySet()) {
+                tagsAndSeries.getValue().collect(node.getPath(), tagsAndSeries.getKey(), fromInMillis, toInMillis, result);
+            }
+        }
+        Collections.sort(result, BY_TIMESTAMP);
+        return result;
+    }
+
+    @Nonnull
+    public List<MeasurePoint> query(@Nonnull String glob) throws IllegalArgumentException {
+        return query(glob, null, null);
+    }
+
+    /**
+     * @return all stored points ordered by their timestamp and path.
+     */
+    @Nonnull
+    public List<MeasurePoint> getAll() {
+        final List<MeasurePoint> result = new ArrayList<>();
+        for (Node node : _pathToNode.values()) {
+            for (Entry<Tags, Series> tagsAndSeries : node.getSeries().entrySet()) {
+                tagsAndSeries.getValue().collect(node.getPath(), tagsAndSeries.getKey(), Long.MIN_VALUE, Long.MAX_VALUE, result);
+            }
+        }
+        Collections.sort(result, BY_TIMESTAMP);
+        return result;
+    }
+
+    /**
+     * @return all paths with at least one series which match the given glob, sorted.
+     */
+    @Nonnull
+    public List<String> getPaths(@Nonnull String glob) throws IllegalArgumentException {
+        final List<Node> nodes = new ArrayList<>();
+        collectNodes(_root, glob(glob), 0, nodes);
+        final List<String> result = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            result.add(node.getPath());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    @Nonnegative
+    public int getNumberOfSeries() {
+        return _numberOfSeries.get();
+    }
+
+    @Nonnegative
+    public long getNumberOfPoints() {
+        long result = 0;
+        for (Node node : _pathToNode.values()) {
+            for (Series series : node.getSeries().values()) {
+                result += series.size();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of points which were dropped because there were already {@link #getMaximumSeries()} series.
+     */
+    @Nonnegative
+    public long getDroppedPoints() {
+        return _droppedPoints.get();
+    }
+
+    public void clear() {
+        _root = new Node();
+        _pathToNode = new ConcurrentHashMap<>();
+        _numberOfSeries.set(0);
+    }
+
+    @Nullable
+    protected Series seriesFor(@Nonnull String path, @Nonnull Tags tags) {
+        final ConcurrentMap<String, Node> pathToNode = _pathToNode;
+        Node node = pathToNode.get(path);
+        Series result = node != null ? node.getSeries().get(tags) : null;
+        if (result == null && _numberOfSeries.incrementAndGet() <= _maximumSeries) {
+            if (node == null) {
+                node = nodeFor(_root, path);
+                final Node existing = pathToNode.putIfAbsent(path, node);
+                node = existing != null ? existing : node;
+            }
+            final Series series = new Series();
+            final Series existing = node.getSeries().putIfAbsent(tags, series);
+            if (existing != null) {
+                _numberOfSeries.decrementAndGet();
+            }
+            result = existing != null ? existing : series;
+        } else if (result == null) {
+            _numberOfSeries.decrementAndGet();
+        }
+        return result;
+    }
+
+    @Nonnull
+    protected Node getRoot() {
+        return _root;
+    }
+
+    @Nonnull
+    protected static Node nodeFor(@Nonnull Node root, @Nonnull String path) {
+        Node result = root;
+        int start = 0;
+        while (start <= path.length()) {
+            int end = path.indexOf('.', start);
+            end = end >= 0 ? end : path.length();
+            result = result.child(path.substring(start, end), path.substring(0, end));
+            start = end + 1;
+        }
+        return result;
+    }
+
+    protected static void collectNodes(@Nonnull Node node, @Nonnull PathGlob glob, @Nonnegative int segment, @Nonnull List<Node> target) {
+        if (segment == glob.getNumberOfSegments()) {
+            if (!node.getSeries().isEmpty()) {
+                target.add(node);
+            }
+        } else {
+            final String literal = glob.getLiteral(segment);
+            if (literal != null) {
+                final Node child = node.getChildren().get(literal);
+                if (child != null) {
+                    collectNodes(child, glob, segment + 1, target);
+                }
+            } else {
+                for (Entry<String, Node> nameAndChild : node.getChildren().entrySet()) {
+                    if (glob.matches(segment, nameAndChild.getKey())) {
+                        collectNodes(nameAndChild.getValue(), glob, segment + 1, target);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{series=" + getNumberOfSeries() + ", maximumPointsPerSeries=" + getMaximumPointsPerSeries() + ", retention=" + getRetention() + "}";
+    }
+
+    protected static class Node {
+
+        private final String _path;
+        private final ConcurrentMap<String, Node> _children = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Tags, Series> _series = new ConcurrentHashMap<>();
+
+        protected Node() {
+            this("");
+        }
+
+        protected Node(@Nonnull String path) {
+            _path = path;
+        }
+
+        @Nonnull
+        public String getPath() {
+            return _path;
+        }
+
+        @Nonnull
+        public ConcurrentMap<String, Node> getChildren() {
+            return _children;
+        }
+
+        @Nonnull
+        public ConcurrentMap<Tags, Series> getSeries() {
+            return _series;
+        }
+
+        @Nonnull
+        protected Node child(@Nonnull String name, @Nonnull String path) {
+            Node result = _children.get(name);
+            if (result == null) {
+                final Node child = new Node(path);
+                result = _children.putIfAbsent(name, child);
+                result = result != null ? result : child;
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * Ring of timestamps and values which grows until the maximum number of points is reached. As long as points are
+     * added in order only the head of the ring is checked against the retention, otherwise the ring is compacted.
+     */
+    protected static class Series {
+
+        private long[] _timestamps = new long[INITIAL_SERIES_CAPACITY];
+        private double[] _values = new double[INITIAL_SERIES_CAPACITY];
+        private int _start;
+        private int _size;
+        private long _newest = Long.MIN_VALUE;
+        private boolean _ordered = true;
+        private long _oldest = Long.MAX_VALUE;
+
+        public synchronized void add(long timestamp, double value, @Nonnegative int maximumSize, long retentionInMillis) {
+            while (_size >= maximumSize) {
+                removeOldest();
+            }
+            if (_size == _timestamps.length) {
+                grow(Math.min(_timestamps.length * 2, maximumSize));
+            }
+            if (_ordered && _size > 0 && timestamp < _timestamps[(_start + _size - 1) % _timestamps.length]) {
+                _ordered = false;
+                _oldest = _timestamps[_start];
+            }
+            final int index = (_start + _size) % _timestamps.length;
+            _timestamps[index] = timestamp;
+            _values[index] = value;
+            _size++;
+            _newest = Math.max(_newest, timestamp);
+            _oldest = Math.min(_oldest, timestamp);
+            if (retentionInMillis >= 0) {
+                final long threshold = _newest - retentionInMillis;
+                if (_ordered) {
+                    while (_size > 0 && _timestamps[_start] < threshold) {
+                        removeOldest();
+                    }
+                } else if (_oldest < threshold) {
+                    removeOlderThan(threshold);
+                }
+            }
+        }
+
+        public synchronized void collect(@Nonnull String path, @Nonnull Tags tags, long from, long to, @Nonnull List<MeasurePoint> target) {
+            for (int i = 0; i < _size; i++) {
+                final int index = (_start + i) % _timestamps.length;
+                final long timestamp = _timestamps[index];
+                if (timestamp >= from && timestamp < to) {
+                    target.add(new MeasurePoint(path, tags, new Date(timestamp), _values[index]));
+                }
+            }
+        }
+
+        @Nonnegative
+        public synchronized int size() {
+            return _size;
+        }
+
+        protected void removeOldest() {
+            _start = (_start + 1) % _timestamps.length;
+            _size--;
+        }
+
+        protected void removeOlderThan(long threshold) {
+            int kept = 0;
+            boolean ordered = true;
+            long oldest = Long.MAX_VALUE;
+            for (int i = 0; i < _size; i++) {
+                final int index = (_start + i) % _timestamps.length;
+                final long timestamp = _timestamps[index];
+                if (timestamp >= threshold) {
+                    final int target = (_start + kept) % _timestamps.length;
+                    ordered &= kept == 0 || timestamp >= _timestamps[(_start + kept - 1) % _timestamps.length];
+                    _timestamps[target] = timestamp;
+                    _values[target] = _values[index];
+                    oldest = Math.min(oldest, timestamp);
+                    kept++;
+                }
+            }
+            _size = kept;
+            _ordered = ordered;
+            _oldest = ordered ? Long.MAX_VALUE : oldest;
+        }
+
+        protected void grow(@Nonnegative int capacity) {
+            final long[] timestamps = new long[capacity];
+            final double[] values = new double[capacity];
+            for (int i = 0; i < _size; i++) {
+                final int index = (_start + i) % _timestamps.length;
+                timestamps[i] = _timestamps[index];
+                values[i] = _values[index];
+            }
+            _timestamps = timestamps;
+            _values = values;
+            _start = 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,146 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.transport;
+
+import org.echocat.jomon.runtime.util.Duration;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.concurrent.ThreadLocalRandom.current;
+import static org.echocat.jemoni.carbon.transport.ConnectionState.*;
+
+/**
+ * Stops write attempts after a failed write for an exponentially growing backoff. The backoff starts with the
+ * minimum delay, doubles with every further failure up to the maximum delay and is randomized by up to one half
+ * (equal jitter), so many writers do not reconnect at the same moment.
+ *
+ * <p>This class is thread safe: every state change replaces an immutable snapshot of the state atomically.</p>
+ */
+public class CircuitBreaker {
+
+    public static final Duration DEFAULT_MINIMUM_DELAY = new Duration("100ms");
+    public static final Duration DEFAULT_MAXIMUM_DELAY = new Duration("1m");
+
+    private final long _minimumDelay;
+    private final long _maximumDelay;
+
+    private final AtomicReference<Snapshot> _snapshot = new AtomicReference<>(new Snapshot(connected, 0, 0));
+
+    public CircuitBreaker() {
+        this(DEFAULT_MINIMUM_DELAY, DEFAULT_MAXIMUM_DELAY);
+    }
+
+    public CircuitBreaker(@Nonnull Duration minimumDelay, @Nonnull Duration maximumDelay) {
+        _minimumDelay = Math.max(1, minimumDelay.toMilliSeconds());
+        _maximumDelay = Math.max(_minimumDelay, maximumDelay.toMilliSeconds());
+    }
+
+    @Nonnull
+    public ConnectionState getState() {
+        return _snapshot.get().getState();
+    }
+
+    /**
+     * @return the time in milliseconds when the next write is attempted if the state is
+     * {@link ConnectionState#disconnected}.
+     */
+    public long getRetryAt() {
+        return _snapshot.get().getRetryAt();
+    }
+
+    /**
+     * @return <code>true</code> if a write should be attempted now. If the backoff is over the state changes to
+     * {@link ConnectionState#reconnecting}.
+     */
+    public boolean isAttemptAllowed(long now) {
+        Snapshot snapshot = _snapshot.get();
+        while (snapshot.getState() == disconnected && now - snapshot.getRetryAt() >= 0) {
+            final Snapshot next = new Snapshot(reconnecting, snapshot.getFailures(), snapshot.getRetryAt());
+            snapshot = _snapshot.compareAndSet(snapshot, next) ? next : _snapshot.get();
+        }
+        return snapshot.getState() != disconnected;
+    }
+
+    /**
+     * @return the state before.
+     */
+    @Nonnull
+    public ConnectionState recordSuccess() {
+        return _snapshot.getAndSet(new Snapshot(connected, 0, 0)).getState();
+    }
+
+    /**
+     * @return the backoff in milliseconds until the next attempt.
+     */
+    @Nonnegative
+    public long recordFailure(long now) {
+        long result;
+        boolean changed;
+        do {
+            final Snapshot snapshot = _snapshot.get();
+            final int failures = snapshot.getFailures() < Integer.MAX_VALUE ? snapshot.getFailures() + 1 : snapshot.getFailures();
+            result = getDelayFor(failures);
+            changed = _snapshot.compareAndSet(snapshot, new Snapshot(disconnected, failures, now + result));
+        } while (!changed);
+        return result;
+    }
+
+    /**
+     * @return the randomized delay after the given number of consecutive failures.
+     */
+    @Nonnegative
+    protected long getDelayFor(@Nonnegative int failures) {
+        final int shift = Math.min(failures - 1, 62);
+        final long delay = _minimumDelay > (_maximumDelay >> shift) ? _maximumDelay : _minimumDelay << shift;
+        final long half = delay / 2;
+        return delay - half + (half > 0 ? current().nextLong(half + 1) : 0);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + getState() + "}";
+    }
+
+    protected static class Snapshot {
+
+        private final ConnectionState _state;
+        private final int _failures;
+        private final long _retryAt;
+
+        public Snapshot(@Nonnull ConnectionState state, @Nonnegative int failures, long retryAt) {
+            _state = state;
+            _failures = failures;
+            _retryAt = retryAt;
+        }
+
+        @Nonnull
+        public ConnectionState getState() {
+            return _state;
+        }
+
+        @Nonnegative
+        public int getFailures() {
+            return _failures;
+        }
+
+        public long getRetryAt() {
+            return _retryAt;
+        }
+
+    }
+
+}
@@ -0,0 +1,33 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.transport;
+
+/**
+ * State of the {@link CircuitBreaker circuit breaker} in front of a {@link Transport}.
+ */
+public enum ConnectionState {
+    /**
+     * The last write succeeded (or there was none yet). Writes are attempted.
+     */
+    connected,
+    /**
+     * The last write failed. No writes are attempted until the backoff is over.
+     */
+    disconnected,
+    /**
+     * The backoff is over. The next write decides if the connection is back.
+     */
+    reconnecting
+}
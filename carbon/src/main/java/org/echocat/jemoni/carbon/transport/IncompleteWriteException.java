@@ -0,0 +1,30 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.transport;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Signals that a {@link Transport} reached the target but could not write all of the given content - e.g. because
+ * a line does not fit into a datagram. Writing the same content again would not help, so it is not retried.
+ */
+public class IncompleteWriteException extends IOException {
+
+    public IncompleteWriteException(@Nonnull String message) {
+        super(message);
+    }
+
+}
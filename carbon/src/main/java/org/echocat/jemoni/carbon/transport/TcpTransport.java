@@ -0,0 +1,181 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.transport;
+
+import org.echocat.jomon.runtime.util.Duration;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.System.currentTimeMillis;
+import static java.nio.channels.SelectionKey.OP_CONNECT;
+import static java.nio.channels.SelectionKey.OP_WRITE;
+import static org.echocat.jomon.runtime.util.ResourceUtils.closeQuietly;
+
+/**
+ * Writes to carbon using a non blocking {@link SocketChannel}. All buffers of one batch are written with one
+ * gathering write as long as the socket accepts them.
+ */
+public class TcpTransport implements Transport {
+
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = new Duration("5s");
+    public static final Duration DEFAULT_WRITE_TIMEOUT = new Duration("30s");
+
+    private final Lock _lock = new ReentrantLock();
+
+    private volatile Duration _connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private volatile Duration _writeTimeout = DEFAULT_WRITE_TIMEOUT;
+
+    private SocketChannel _channel;
+    private Selector _selector;
+    private SelectionKey _key;
+    private InetSocketAddress _connectedTo;
+
+    @Nonnull
+    public Duration getConnectTimeout() {
+        return _connectTimeout;
+    }
+
+    public void setConnectTimeout(@Nonnull Duration connectTimeout) {
+        _connectTimeout = connectTimeout;
+    }
+
+    @Nonnull
+    public Duration getWriteTimeout() {
+        return _writeTimeout;
+    }
+
+    public void setWriteTimeout(@Nonnull Duration writeTimeout) {
+        _writeTimeout = writeTimeout;
+    }
+
+    @Override
+    public void write(@Nonnull InetSocketAddress address, @Nonnull ByteBuffer[] buffers) throws IOException, InterruptedException {
+        _lock.lockInterruptibly();
+        try {
+            boolean success = false;
+            try {
+                if (_channel == null || !_channel.isOpen() || !address.equals(_connectedTo)) {
+                    disconnect();
+                    connect(address);
+                }
+                writeFully(buffers);
+                success = true;
+            } finally {
+                if (!success) {
+                    disconnect();
+                }
+            }
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    protected void connect(@Nonnull InetSocketAddress address) throws IOException {
+        _channel = SocketChannel.open();
+        _channel.configureBlocking(false);
+        _selector = Selector.open();
+        _key = _channel.register(_selector, 0);
+        if (!_channel.connect(address)) {
+            final long deadline = currentTimeMillis() + _connectTimeout.toMilliSeconds();
+            _key.interestOps(OP_CONNECT);
+            try {
+                while (!_channel.finishConnect()) {
+                    final long remaining = deadline - currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new ConnectException("Could not connect to " + address + " within " + _connectTimeout + ".");
+                    }
+                    _selector.select(remaining);
+                }
+            } finally {
+                if (_key.isValid()) {
+                    _key.interestOps(0);
+                }
+            }
+        }
+        _connectedTo = address;
+    }
+
+    protected void writeFully(@Nonnull ByteBuffer[] buffers) throws IOException {
+        final long timeout = _writeTimeout.toMilliSeconds();
+        long lastProgressAt = currentTimeMillis();
+        while (hasRemaining(buffers)) {
+            if (_channel.write(buffers) > 0) {
+                lastProgressAt = currentTimeMillis();
+            } else {
+                final long remaining = lastProgressAt + timeout - currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException("Could not write to " + _connectedTo + " within " + _writeTimeout + ".");
+                }
+                _key.interestOps(OP_WRITE);
+                try {
+                    _selector.select(remaining);
+                } finally {
+                    if (_key.isValid()) {
+                        _key.interestOps(0);
+                    }
+                }
+            }
+        }
+    }
+
+    protected boolean hasRemaining(@Nonnull ByteBuffer[] buffers) {
+        boolean result = false;
+        for (int i = buffers.length - 1; !result && i >= 0; i--) {
+            result = buffers[i].hasRemaining();
+        }
+        return result;
+    }
+
+    protected void disconnect() {
+        try {
+            try {
+                closeQuietly(_channel);
+            } finally {
+                closeQuietly(_selector);
+            }
+        } finally {
+            _channel = null;
+            _selector = null;
+            _key = null;
+            _connectedTo = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        _lock.lock();
+        try {
+            disconnect();
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + _connectedTo + "}";
+    }
+
+}
@@ -0,0 +1,35 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.transport;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Delivers already encoded buffers to a carbon server. A closed transport will reconnect on the next
+ * {@link #write(InetSocketAddress, ByteBuffer[]) write}.
+ */
+public interface Transport extends Closeable {
+
+    /**
+     * Writes the remaining content of all given <code>buffers</code> in the given order. If this method returns
+     * normally all content was written. If it fails the position of each buffer has to tell how far it was written.
+     */
+    public void write(@Nonnull InetSocketAddress address, @Nonnull ByteBuffer[] buffers) throws IOException, InterruptedException;
+
+}
@@ -0,0 +1,184 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.transport;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.echocat.jomon.runtime.util.ResourceUtils.closeQuietly;
+
+/**
+ * Sends plaintext lines as UDP datagrams using a {@link DatagramChannel}. As many complete lines as fit are packed
+ * into one datagram of at most {@link #getDatagramSize() datagramSize} bytes, so there is one system call per
+ * datagram and not per line. Nothing is known about delivery - lost datagrams are lost. Lines which do not fit
+ * into one datagram or datagrams which could not be sent are dropped and reported by an
+ * {@link IncompleteWriteException} after everything else was sent. This transport could not be used with the pickle
+ * protocol.
+ */
+public class UdpTransport implements Transport {
+
+    /**
+     * Ethernet MTU of 1500 bytes minus 20 bytes IPv4 header and 8 bytes UDP header.
+     */
+    public static final int DEFAULT_DATAGRAM_SIZE = 1472;
+
+    private final Lock _lock = new ReentrantLock();
+
+    private volatile int _datagramSize = DEFAULT_DATAGRAM_SIZE;
+
+    private DatagramChannel _channel;
+    private ByteBuffer _datagram;
+
+    @Nonnegative
+    public int getDatagramSize() {
+        return _datagramSize;
+    }
+
+    public void setDatagramSize(@Nonnegative int datagramSize) {
+        _datagramSize = datagramSize;
+    }
+
+    @Override
+    public void write(@Nonnull InetSocketAddress address, @Nonnull ByteBuffer[] buffers) throws IOException, InterruptedException {
+        _lock.lockInterruptibly();
+        try {
+            final Drops drops = new Drops();
+            boolean success = false;
+            try {
+                if (_channel == null || !_channel.isOpen()) {
+                    _channel = DatagramChannel.open();
+                }
+                if (_datagram == null || _datagram.capacity() != _datagramSize) {
+                    _datagram = ByteBuffer.allocateDirect(_datagramSize);
+                }
+                writeLines(address, buffers, drops);
+                success = true;
+            } finally {
+                if (!success) {
+                    closeQuietly(_channel);
+                    _channel = null;
+                }
+            }
+            if (drops.getLines() > 0 || drops.getDatagrams() > 0) {
+                throw new IncompleteWriteException("Dropped " + drops.getLines() + " line(s) for " + address + " which do not fit into a datagram of " + _datagram.capacity() + " bytes and " + drops.getDatagrams() + " datagram(s) which could not be sent.");
+            }
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    protected void writeLines(@Nonnull InetSocketAddress address, @Nonnull ByteBuffer[] buffers, @Nonnull Drops drops) throws IOException {
+        final ByteBuffer datagram = _datagram;
+        datagram.clear();
+        int lineStart = 0;
+        boolean skipLine = false;
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                final byte b = buffer.get();
+                if (skipLine) {
+                    skipLine = b != '\n';
+                } else if (!datagram.hasRemaining() && lineStart == 0) {
+                    drops.recordLine();
+                    datagram.clear();
+                    skipLine = b != '\n';
+                } else {
+                    if (!datagram.hasRemaining()) {
+                        send(address, datagram, lineStart, drops);
+                        moveToStart(datagram, lineStart);
+                        lineStart = 0;
+                    }
+                    datagram.put(b);
+                    if (b == '\n') {
+                        lineStart = datagram.position();
+                    }
+                }
+            }
+        }
+        if (lineStart > 0) {
+            send(address, datagram, lineStart, drops);
+        }
+    }
+
+    protected void send(@Nonnull InetSocketAddress address, @Nonnull ByteBuffer datagram, @Nonnegative int length, @Nonnull Drops drops) throws IOException {
+        final int position = datagram.position();
+        datagram.position(0).limit(length);
+        if (_channel.send(datagram, address) < length) {
+            drops.recordDatagram();
+        }
+        datagram.limit(datagram.capacity()).position(position);
+    }
+
+    /**
+     * Moves the not yet sent bytes after <code>sent</code> to the start of the <code>datagram</code>.
+     */
+    protected void moveToStart(@Nonnull ByteBuffer datagram, @Nonnegative int sent) {
+        final int remaining = datagram.position() - sent;
+        for (int i = 0; i < remaining; i++) {
+            datagram.put(i, datagram.get(sent + i));
+        }
+        datagram.position(remaining);
+    }
+
+    @Override
+    public void close() throws IOException {
+        _lock.lock();
+        try {
+            closeQuietly(_channel);
+            _channel = null;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{datagramSize=" + _datagramSize + "}";
+    }
+
+    /**
+     * Counts what was dropped while one batch was written.
+     */
+    protected static class Drops {
+
+        private int _lines;
+        private int _datagrams;
+
+        public void recordLine() {
+            _lines++;
+        }
+
+        public void recordDatagram() {
+            _datagrams++;
+        }
+
+        @Nonnegative
+        public int getLines() {
+            return _lines;
+        }
+
+        @Nonnegative
+        public int getDatagrams() {
+            return _datagrams;
+        }
+
+    }
+
+}
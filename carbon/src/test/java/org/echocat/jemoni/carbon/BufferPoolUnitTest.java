@@ -0,0 +1,68 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class BufferPoolUnitTest {
+
+    @Test
+    public void testReleasedBufferIsReused() throws Exception {
+        final BufferPool pool = new BufferPool(16, false, 2);
+        final ByteBuffer buffer = pool.acquire();
+        buffer.putInt(666).flip();
+        pool.release(buffer);
+        final ByteBuffer reused = pool.acquire();
+        assertThat(reused == buffer, is(true));
+        assertThat(reused.position(), is(0));
+        assertThat(reused.remaining(), is(16));
+        assertThat(pool.getHits(), is(1L));
+        assertThat(pool.getMisses(), is(1L));
+    }
+
+    @Test
+    public void testPoolIsBounded() throws Exception {
+        final BufferPool pool = new BufferPool(16, false, 1);
+        final ByteBuffer a = pool.acquire();
+        final ByteBuffer b = pool.acquire();
+        pool.release(a);
+        pool.release(b);
+        assertThat(pool.getAvailable(), is(1));
+        assertThat(pool.getDiscards(), is(1L));
+    }
+
+    @Test
+    public void testBigBuffersAreNotPooled() throws Exception {
+        final BufferPool pool = new BufferPool(16, false, 2);
+        final ByteBuffer big = pool.acquire(17);
+        assertThat(big.capacity(), is(17));
+        pool.release(big);
+        assertThat(pool.getAvailable(), is(0));
+        assertThat(pool.getDiscards(), is(1L));
+    }
+
+    @Test
+    public void testDirect() throws Exception {
+        final BufferPool pool = new BufferPool(16, true, 2);
+        assertThat(pool.acquire().isDirect(), is(true));
+        assertThat(pool.acquire(17).isDirect(), is(true));
+    }
+
+}
@@ -0,0 +1,135 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon;
+
+import org.echocat.jemoni.carbon.CarbonRelay.Options;
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.testing.environments.LogEnvironment;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.net.InetSocketAddress;
+import java.util.Date;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.echocat.jemoni.carbon.VirtualCarbonServer.anyPoint;
+import static org.echocat.jemoni.carbon.aggregation.AggregationFunction.max;
+import static org.echocat.jemoni.carbon.aggregation.AggregationFunction.sum;
+import static org.echocat.jemoni.carbon.aggregation.AggregationRule.aggregate;
+import static org.echocat.jemoni.carbon.protocol.Protocol.pickle;
+import static org.echocat.jomon.runtime.concurrent.Retryer.executeWithRetry;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+import static org.echocat.jomon.testing.CollectionMatchers.containsAllItemsOf;
+
+public class CarbonRelayIntegrationTest {
+
+    protected static final Duration TIMEOUT = new Duration("1m");
+
+    @Rule
+    public LogEnvironment _logEnvironment = new LogEnvironment();
+    @Rule
+    public VirtualCarbonServerRule _carbonServer = new VirtualCarbonServerRule();
+
+    @Test
+    public void testAggregateAndForward() throws Exception {
+        try (final CarbonWriter relayWriter = writerTo(_carbonServer.getAddress())) {
+            relayWriter.setAggregationRules(asList(aggregate("requests\\..*", sum), aggregate("latency\\..*", max)));
+            relayWriter.setAggregationInterval(new Duration("1h"));
+            relayWriter.init();
+            try (final CarbonRelay relay = new CarbonRelay(new InetSocketAddress("localhost", 0), 2, relayWriter)) {
+                try (final CarbonWriter first = writerTo(relay.getAddress()); final CarbonWriter second = writerTo(relay.getAddress())) {
+                    first.init();
+                    second.init();
+                    for (int i = 0; i < 500; i++) {
+                        first.writeLong("requests.a", 1L, 1356998400L);
+                        second.writeLong("requests.a", 1L, 1356998400L);
+                        first.writeLong("latency.a", (long) i, 1356998400L);
+                    }
+                    second.writeLong("other.a", 3L, 1356998400L);
+                    first.flush();
+                    second.flush();
+                    executeWithRetry(new Runnable() { @Override public void run() {
+                        assertThat(relay.getForwarded(), is(1501L));
+                    }}, CarbonWriterIntegrationTest.STRATEGY);
+                    relayWriter.flush();
+                    final List<MeasurePoint> measurePoints = _carbonServer.awaitPoints(anyPoint(), 3, TIMEOUT);
+                    assertThat(measurePoints.size(), is(3));
+                    assertThat(measurePoints, containsAllItemsOf(asList(
+                        point("requests.a", 1000d),
+                        point("latency.a", 499d),
+                        point("other.a", 3d)
+                    )));
+                    assertThat(relay.getLastRecordedMeasurePoints().isEmpty(), is(true));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDropInsteadOfBlocking() throws Exception {
+        try (final CarbonWriter relayWriter = writerTo(_carbonServer.getAddress())) {
+            try (final CarbonRelay relay = new CarbonRelay(new InetSocketAddress("localhost", 0), 1, relayWriter)) {
+                try (final CarbonWriter writer = writerTo(relay.getAddress())) {
+                    writer.init();
+                    for (int i = 0; i < 10; i++) {
+                        writer.writeLong("requests.a", 1L, 1356998400L);
+                    }
+                    writer.flush();
+                    executeWithRetry(new Runnable() { @Override public void run() {
+                        assertThat(relay.getDropped(), is(10L));
+                    }}, CarbonWriterIntegrationTest.STRATEGY);
+                    assertThat(relay.getForwarded(), is(0L));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParseOptions() throws Exception {
+        final Options options = Options.parse("--target", "carbon:2004", "--listen", "2013", "--protocol", "pickle", "--interval", "10s", "--rule", "requests\\..*=sum");
+        assertThat(options.getTarget(), is(InetSocketAddress.createUnresolved("carbon", 2004)));
+        assertThat(options.getListen().getPort(), is(2013));
+        assertThat(options.getProtocol(), is(pickle));
+        assertThat(options.getInterval(), is(new Duration("10s")));
+        assertThat(options.getRules(), is(asList(aggregate("requests\\..*", sum))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseOptionsWithoutTarget() throws Exception {
+        Options.parse("--listen", "2013");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseIllegalRule() throws Exception {
+        Options.parse("--target", "localhost:2003", "--rule", "requests\\..*=foo");
+    }
+
+    @Nonnull
+    protected static CarbonWriter writerTo(@Nonnull InetSocketAddress address) {
+        final CarbonWriter writer = new CarbonWriter();
+        writer.setAddress(address);
+        return writer;
+    }
+
+    @Nonnull
+    protected static MeasurePoint point(@Nonnull String path, double value) {
+        return new MeasurePoint(path, new Date(SECONDS.toMillis(1356998400L)), value);
+    }
+
+}
@@ -14,19 +14,49 @@
 
 package org.echocat.jemoni.carbon;
 
+import org.echocat.jemoni.carbon.protocol.Protocol;
+import org.echocat.jemoni.carbon.queue.BackpressureStatistics;
+import org.echocat.jemoni.carbon.spill.SpillStore;
+import org.echocat.jemoni.carbon.store.TimeSeriesStore;
+import org.echocat.jemoni.carbon.transport.IncompleteWriteException;
+import org.echocat.jemoni.carbon.transport.Transport;
+import org.echocat.jemoni.carbon.transport.UdpTransport;
+import org.echocat.jemoni.jmx.JmxRegistry;
+import org.echocat.jomon.net.FreeTcpPortDetector;
 import org.echocat.jomon.runtime.concurrent.RetryForSpecifiedTimeStrategy;
 import org.echocat.jomon.runtime.concurrent.RetryingStrategy;
+import org.echocat.jomon.runtime.util.Duration;
 import org.echocat.jomon.testing.environments.LogEnvironment;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import javax.annotation.Nonnull;
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.echocat.jemoni.carbon.aggregation.AggregationFunction.sum;
+import static org.echocat.jemoni.carbon.aggregation.AggregationRule.aggregate;
+import static org.echocat.jemoni.carbon.protocol.Protocol.pickle;
+import static org.echocat.jemoni.carbon.protocol.Protocol.plaintext;
+import static org.echocat.jemoni.carbon.queue.BackpressurePolicy.dropNewest;
 import static org.echocat.jomon.runtime.concurrent.Retryer.executeWithRetry;
 import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
 import static org.echocat.jomon.testing.CollectionMatchers.containsAllItemsOf;
 import static org.echocat.jomon.testing.CollectionMatchers.hasSameSizeAs;
 
@@ -37,6 +67,8 @@ public class CarbonWriterIntegrationTest {
     @Rule
     public LogEnvironment _logEnvironment = new LogEnvironment();
     @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+    @Rule
     public VirtualCarbonServerRule _carbonServer = new VirtualCarbonServerRule();
 
     private static final Random RANDOM = new Random();
@@ -63,4 +95,617 @@ public class CarbonWriterIntegrationTest {
         }}, STRATEGY);
     }
 
+    @Test
+    public void testWriteIntoStore() throws Exception {
+        final TimeSeriesStore store = new TimeSeriesStore();
+        store.setMaximumPointsPerSeries(10);
+        _carbonServer.setStore(store);
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setAddress(_carbonServer.getAddress());
+        carbonWriter.init();
+        try {
+            for (int i = 0; i < 100; i++) {
+                carbonWriter.writeLong("motortalk_test.foo.bar.a", (long) i, 1356998400L + i);
+                carbonWriter.writeLong("motortalk_test.foo.baz.b", (long) i, 1356998400L + i);
+            }
+            carbonWriter.flush();
+            executeWithRetry(new Runnable() { @Override public void run() {
+                assertThat(store.getNumberOfPoints(), is(20L));
+                assertThat(store.query("motortalk_test.foo.{bar,baz}.*", new Date(SECONDS.toMillis(1356998400L + 99)), null), is(asList(
+                    new MeasurePoint("motortalk_test.foo.bar.a", new Date(SECONDS.toMillis(1356998400L + 99)), 99d),
+                    new MeasurePoint("motortalk_test.foo.baz.b", new Date(SECONDS.toMillis(1356998400L + 99)), 99d)
+                )));
+            }}, STRATEGY);
+        } finally {
+            carbonWriter.close();
+        }
+    }
+
+    @Test
+    public void testWritePickle() throws Exception {
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setProtocol(pickle);
+        carbonWriter.setAddress(_carbonServer.openPickleListener());
+        carbonWriter.init();
+        final List<MeasurePoint> sendMeasurePoints = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            sendMeasurePoints.add(carbonWriter.write("motortalk_test.foo.bar.a", (double) RANDOM.nextInt(1000)));
+            sendMeasurePoints.add(carbonWriter.write("motortalk_test.foo.bar.b", RANDOM.nextInt(1000) / 10d));
+        }
+        executeWithRetry(new Runnable() { @Override public void run() {
+            try {
+                final List<MeasurePoint> measurePoints = _carbonServer.getLastRecordedMeasurePoints();
+                assertThat(measurePoints, hasSameSizeAs(sendMeasurePoints));
+                assertThat(measurePoints, containsAllItemsOf(sendMeasurePoints));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }}, STRATEGY);
+    }
+
+    @Test
+    public void testWriteUdp() throws Exception {
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setTransport(new UdpTransport());
+        carbonWriter.setAddress(_carbonServer.openUdpListener());
+        carbonWriter.init();
+        final List<MeasurePoint> sendMeasurePoints = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            sendMeasurePoints.add(carbonWriter.write("motortalk_test.foo.bar.a", (double) RANDOM.nextInt(1000)));
+        }
+        carbonWriter.flush();
+        executeWithRetry(new Runnable() { @Override public void run() {
+            try {
+                final List<MeasurePoint> measurePoints = _carbonServer.getLastRecordedMeasurePoints();
+                assertThat(measurePoints, hasSameSizeAs(sendMeasurePoints));
+                assertThat(measurePoints, containsAllItemsOf(sendMeasurePoints));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }}, STRATEGY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPickleOverUdpIsRejected() throws Exception {
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setProtocol(pickle);
+        carbonWriter.setTransport(new UdpTransport());
+        carbonWriter.setAddress(_carbonServer.openUdpListener());
+        carbonWriter.init();
+    }
+
+    @Test
+    public void testWriteWithDirectBuffers() throws Exception {
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setAddress(_carbonServer.getAddress());
+        carbonWriter.setDirectBuffers(true);
+        carbonWriter.setBufferSize(128);
+        carbonWriter.init();
+        try {
+            final List<MeasurePoint> sendMeasurePoints = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                sendMeasurePoints.add(carbonWriter.write("motortalk_test.foo.bar.a", (double) RANDOM.nextInt(1000)));
+            }
+            executeWithRetry(new Runnable() { @Override public void run() {
+                try {
+                    final List<MeasurePoint> measurePoints = _carbonServer.getLastRecordedMeasurePoints();
+                    assertThat(measurePoints, hasSameSizeAs(sendMeasurePoints));
+                    assertThat(measurePoints, containsAllItemsOf(sendMeasurePoints));
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }}, STRATEGY);
+            assertThat(carbonWriter.getBufferPool().isDirect(), is(true));
+            // Buffers are released before the futures are completed, so the next buffer has to come from the pool.
+            carbonWriter.writeAsync("motortalk_test.foo.bar.a", 1L).get(1, MINUTES);
+            carbonWriter.write("motortalk_test.foo.bar.a", 2d);
+            carbonWriter.flush();
+            assertThat(carbonWriter.getBufferPool().getHits() > 0, is(true));
+        } finally {
+            carbonWriter.close();
+        }
+    }
+
+    @Test
+    public void testSpillWhileCarbonIsUnreachable() throws Exception {
+        final int port = new FreeTcpPortDetector(null, null).detect();
+        final SpillStore spillStore = new SpillStore(_folder.getRoot());
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setAddress(new InetSocketAddress("localhost", port));
+        carbonWriter.setMaxBufferLifetime(new Duration("100ms"));
+        carbonWriter.setSpillStore(spillStore);
+        carbonWriter.init();
+        try {
+            final List<MeasurePoint> sendMeasurePoints = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                sendMeasurePoints.add(carbonWriter.write("motortalk_test.foo.bar.a", (double) RANDOM.nextInt(1000)));
+            }
+            executeWithRetry(new Runnable() { @Override public void run() {
+                try {
+                    assertThat(spillStore.getPending() > 0, is(true));
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }}, STRATEGY);
+
+            try (final VirtualCarbonServer carbonServer = new VirtualCarbonServer(port)) {
+                executeWithRetry(new Runnable() { @Override public void run() {
+                    try {
+                        final List<MeasurePoint> measurePoints = carbonServer.getLastRecordedMeasurePoints();
+                        assertThat(measurePoints, hasSameSizeAs(sendMeasurePoints));
+                        assertThat(measurePoints, containsAllItemsOf(sendMeasurePoints));
+                        assertThat(spillStore.isEmpty(), is(true));
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    }
+                }}, STRATEGY);
+            }
+        } finally {
+            carbonWriter.close();
+        }
+    }
+
+    @Test
+    public void testPartiallyWrittenBuffersAreNotSpilled() throws Exception {
+        final SpillStore spillStore = new SpillStore(_folder.getRoot());
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setAddress(_carbonServer.getAddress());
+        carbonWriter.init();
+        try {
+            final ByteBuffer touched = ByteBuffer.wrap("a 1 1\n".getBytes(UTF_8));
+            touched.position(3);
+            final ByteBuffer untouched = ByteBuffer.wrap("b 2 1\n".getBytes(UTF_8));
+            final WriteFuture future = new WriteFuture(new MeasurePoint("a", 1L));
+            carbonWriter.new Writer().keepUndelivered(new ArrayList<>(asList(touched, untouched)), new ArrayList<>(asList(future)), spillStore, true);
+
+            assertThat(future.getFailure() instanceof IOException, is(true));
+            assertThat(UTF_8.decode(spillStore.peek()).toString(), is("b 2 1\n"));
+            spillStore.remove();
+            assertThat(spillStore.isEmpty(), is(true));
+        } finally {
+            carbonWriter.close();
+            spillStore.close();
+        }
+    }
+
+    @Test
+    public void testBackpressureStatistics() throws Exception {
+        final JmxRegistry jmxRegistry = new JmxRegistry();
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setAddress(_carbonServer.getAddress());
+        carbonWriter.setJmxRegistry(jmxRegistry);
+        carbonWriter.setBackpressurePolicy(dropNewest);
+        carbonWriter.write("motortalk_test.foo.bar.a", 1L);
+        carbonWriter.init();
+        try {
+            carbonWriter.write("motortalk_test.foo.bar.a", 2L);
+            final ObjectName objectName = jmxRegistry.getObjectNameFor(BackpressureStatistics.class, null, carbonWriter.getAddress().toString());
+            assertThat(jmxRegistry.getServer().getAttribute(objectName, "dropNewestAccepted"), is((Object) 1L));
+            assertThat(jmxRegistry.getServer().getAttribute(objectName, "dropNewestDropped"), is((Object) 1L));
+        } finally {
+            carbonWriter.close();
+        }
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        final JmxRegistry jmxRegistry = new JmxRegistry();
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setAddress(_carbonServer.getAddress());
+        carbonWriter.setJmxRegistry(jmxRegistry);
+        carbonWriter.setMaxBufferLifetime(new Duration("10ms"));
+        carbonWriter.setStatisticsPath("motortalk_test.writer");
+        carbonWriter.setStatisticsInterval(new Duration("10ms"));
+        carbonWriter.init();
+        try {
+            for (int i = 0; i < 1000; i++) {
+                carbonWriter.write("motortalk_test.foo.bar.a", (long) i);
+            }
+            carbonWriter.flush();
+            final ObjectName objectName = jmxRegistry.getObjectNameFor(CarbonWriterStatistics.class, null, carbonWriter.getAddress().toString());
+            executeWithRetry(new Runnable() { @Override public void run() {
+                try {
+                    assertThat((Long) jmxRegistry.getServer().getAttribute(objectName, "points") >= 1000, is(true));
+                    assertThat((Long) jmxRegistry.getServer().getAttribute(objectName, "batches") > 0, is(true));
+                    assertThat(containsPath(_carbonServer.getLastRecordedMeasurePoints(), "motortalk_test.writer.queueSize"), is(true));
+                    assertThat(containsPath(_carbonServer.getLastRecordedMeasurePoints(), "motortalk_test.writer.bytesPerSecond"), is(true));
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }}, STRATEGY);
+        } finally {
+            carbonWriter.close();
+        }
+    }
+
+    protected static boolean containsPath(@Nonnull Iterable<MeasurePoint> measurePoints, @Nonnull String path) {
+        boolean result = false;
+        for (MeasurePoint measurePoint : measurePoints) {
+            result |= path.equals(measurePoint.getPath());
+        }
+        return result;
+    }
+
+    @Test
+    public void testAggregation() throws Exception {
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setAddress(_carbonServer.getAddress());
+        carbonWriter.setAggregationRules(asList(aggregate("motortalk_test\\.requests\\..*", sum)));
+        carbonWriter.setAggregationInterval(new Duration("1h"));
+        carbonWriter.init();
+        try {
+            for (int i = 0; i < 1000; i++) {
+                carbonWriter.writeLong("motortalk_test.requests.a", 1L, 1356998400L);
+                carbonWriter.writeLong("motortalk_test.requests.b", 2L, 1356998400L);
+            }
+            carbonWriter.writeLong("motortalk_test.foo.bar.c", 3L, 1356998400L);
+            carbonWriter.flush();
+            final Date timestamp = new Date(SECONDS.toMillis(1356998400L));
+            final List<MeasurePoint> expectedMeasurePoints = asList(
+                new MeasurePoint("motortalk_test.requests.a", timestamp, 1000d),
+                new MeasurePoint("motortalk_test.requests.b", timestamp, 2000d),
+                new MeasurePoint("motortalk_test.foo.bar.c", timestamp, 3d)
+            );
+            executeWithRetry(new Runnable() { @Override public void run() {
+                try {
+                    final List<MeasurePoint> measurePoints = _carbonServer.getLastRecordedMeasurePoints();
+                    assertThat(measurePoints, hasSameSizeAs(expectedMeasurePoints));
+                    assertThat(measurePoints, containsAllItemsOf(expectedMeasurePoints));
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }}, STRATEGY);
+        } finally {
+            carbonWriter.close();
+        }
+    }
+
+    @Test
+    public void testWritePrimitives() throws Exception {
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setAddress(_carbonServer.getAddress());
+        carbonWriter.init();
+        final List<MeasurePoint> sendMeasurePoints = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            final long epochSeconds = 1356998400L + i;
+            final long longValue = RANDOM.nextInt(1000);
+            final double doubleValue = RANDOM.nextInt(1000) / 10d;
+            carbonWriter.writeLong("motortalk_test.foo.bar.a", longValue, epochSeconds);
+            carbonWriter.writeDouble("motortalk_test.foo.bar.b", doubleValue, epochSeconds);
+            sendMeasurePoints.add(new MeasurePoint("motortalk_test.foo.bar.a", new Date(SECONDS.toMillis(epochSeconds)), (double) longValue));
+            sendMeasurePoints.add(new MeasurePoint("motortalk_test.foo.bar.b", new Date(SECONDS.toMillis(epochSeconds)), doubleValue));
+        }
+        carbonWriter.flush();
+        executeWithRetry(new Runnable() { @Override public void run() {
+            try {
+                final List<MeasurePoint> measurePoints = _carbonServer.getLastRecordedMeasurePoints();
+                assertThat(measurePoints, hasSameSizeAs(sendMeasurePoints));
+                assertThat(measurePoints, containsAllItemsOf(sendMeasurePoints));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }}, STRATEGY);
+    }
+
+    @Test
+    public void testWriteTagged() throws Exception {
+        checkWriteTagged(_carbonServer.getAddress(), plaintext);
+    }
+
+    @Test
+    public void testWriteTaggedPickle() throws Exception {
+        checkWriteTagged(_carbonServer.openPickleListener(), pickle);
+    }
+
+    protected void checkWriteTagged(@Nonnull InetSocketAddress address, @Nonnull Protocol protocol) throws Exception {
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setProtocol(protocol);
+        carbonWriter.setAddress(address);
+        carbonWriter.init();
+        try {
+            final Tags tags = Tags.tags("host", "a", "dc", "b");
+            final Date timestamp = new Date(SECONDS.toMillis(1356998400L));
+            carbonWriter.writeLong("motortalk_test.foo", tags, 1L, 1356998400L);
+            carbonWriter.writeDouble("motortalk_test.foo", Tags.tags("host", "c"), 2.5d, 1356998400L);
+            carbonWriter.write(new MeasurePoint("motortalk_test.bar", tags, timestamp, 3L));
+            carbonWriter.flush();
+            final List<MeasurePoint> sendMeasurePoints = asList(
+                new MeasurePoint("motortalk_test.foo", tags, timestamp, 1d),
+                new MeasurePoint("motortalk_test.foo", Tags.tags("host", "c"), timestamp, 2.5d),
+                new MeasurePoint("motortalk_test.bar", tags, timestamp, 3d)
+            );
+            executeWithRetry(new Runnable() { @Override public void run() {
+                try {
+                    final List<MeasurePoint> measurePoints = _carbonServer.getLastRecordedMeasurePoints();
+                    assertThat(measurePoints, hasSameSizeAs(sendMeasurePoints));
+                    assertThat(measurePoints, containsAllItemsOf(sendMeasurePoints));
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }}, STRATEGY);
+        } finally {
+            carbonWriter.close();
+        }
+    }
+
+    @Test
+    public void testWriteBatch() throws Exception {
+        final JmxRegistry jmxRegistry = new JmxRegistry();
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setAddress(_carbonServer.getAddress());
+        carbonWriter.setJmxRegistry(jmxRegistry);
+        carbonWriter.init();
+        try {
+            final List<MeasurePoint> sendMeasurePoints = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                sendMeasurePoints.add(new MeasurePoint("motortalk_test.foo.bar.a", Double.valueOf(RANDOM.nextInt(1000))));
+            }
+            carbonWriter.write(sendMeasurePoints);
+            carbonWriter.flush();
+            assertThat(carbonWriter.getBackpressureStatistics().getBlockAccepted(), is(1000L));
+            executeWithRetry(new Runnable() { @Override public void run() {
+                try {
+                    final List<MeasurePoint> measurePoints = _carbonServer.getLastRecordedMeasurePoints();
+                    assertThat(measurePoints, hasSameSizeAs(sendMeasurePoints));
+                    assertThat(measurePoints, containsAllItemsOf(sendMeasurePoints));
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }}, STRATEGY);
+        } finally {
+            carbonWriter.close();
+        }
+    }
+
+    @Test
+    public void testTryWriteAndWriteAsync() throws Exception {
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setAddress(_carbonServer.getAddress());
+        assertThat(carbonWriter.tryWrite("motortalk_test.foo.bar.a", 1L), is(false));
+        assertThat(carbonWriter.writeAsync("motortalk_test.foo.bar.a", 1L).getFailure() instanceof RejectedExecutionException, is(true));
+        carbonWriter.init();
+        try {
+            final MeasurePoint tried = new MeasurePoint("motortalk_test.foo.bar.a", 2d);
+            assertThat(carbonWriter.tryWrite(tried), is(true));
+            final WriteFuture future = carbonWriter.writeAsync("motortalk_test.foo.bar.b", 3d);
+            future.get(1, MINUTES);
+            assertThat(future.isDone(), is(true));
+            executeWithRetry(new Runnable() { @Override public void run() {
+                try {
+                    assertThat(_carbonServer.getLastRecordedMeasurePoints(), containsAllItemsOf(asList(tried, future.getMeasurePoint())));
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }}, STRATEGY);
+            assertThat(carbonWriter.getBackpressureStatistics().getDropNewestAccepted(), is(2L));
+        } finally {
+            carbonWriter.close();
+        }
+    }
+
+    @Test
+    public void testIllegalMeasurePointsDoNotBlockTheQueue() throws Exception {
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setAddress(_carbonServer.getAddress());
+        carbonWriter.setQueueCapacity(8);
+        carbonWriter.init();
+        try {
+            final List<MeasurePoint> sendMeasurePoints = new ArrayList<>();
+            try {
+                carbonWriter.tryWrite(new MeasurePoint("motortalk_test.foo.bar.a", (Number) null));
+                throw new AssertionError("Expected NullPointerException.");
+            } catch (NullPointerException expected) {}
+            try {
+                carbonWriter.writeAsync(new MeasurePoint("motortalk_test.foo.bar.a", (Date) null, 1L));
+                throw new AssertionError("Expected NullPointerException.");
+            } catch (NullPointerException expected) {}
+            final MeasurePoint first = new MeasurePoint("motortalk_test.foo.bar.a", 1d);
+            try {
+                carbonWriter.write(asList(first, null, new MeasurePoint("motortalk_test.foo.bar.a", 2d)));
+                throw new AssertionError("Expected NullPointerException.");
+            } catch (NullPointerException expected) {}
+            sendMeasurePoints.add(first);
+            for (int i = 0; i < 100; i++) {
+                sendMeasurePoints.add(carbonWriter.write("motortalk_test.foo.bar.b", Double.valueOf(i)));
+            }
+            carbonWriter.flush();
+            executeWithRetry(new Runnable() { @Override public void run() {
+                try {
+                    final List<MeasurePoint> measurePoints = _carbonServer.getLastRecordedMeasurePoints();
+                    assertThat(measurePoints, hasSameSizeAs(sendMeasurePoints));
+                    assertThat(measurePoints, containsAllItemsOf(sendMeasurePoints));
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }}, STRATEGY);
+        } finally {
+            carbonWriter.close();
+        }
+    }
+
+    @Test
+    public void testWriteAsyncFailsIfClosedBeforeWritten() throws Exception {
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setAddress(new InetSocketAddress("localhost", new FreeTcpPortDetector(null, null).detect()));
+        carbonWriter.setMinimumReconnectDelay(new Duration("1h"));
+        carbonWriter.init();
+        final WriteFuture future;
+        try {
+            future = carbonWriter.writeAsync("motortalk_test.foo.bar.a", 1L);
+        } finally {
+            carbonWriter.close();
+        }
+        assertThat(future.isDone(), is(true));
+        assertThat(future.getFailure() != null, is(true));
+    }
+
+    @Test
+    public void testNumbersAreWrittenWithoutPrecisionLoss() throws Exception {
+        final StringBuilder written = new StringBuilder();
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setTransport(new Transport() {
+            @Override
+            public void write(@Nonnull InetSocketAddress address, @Nonnull ByteBuffer[] buffers) {
+                synchronized (written) {
+                    for (ByteBuffer buffer : buffers) {
+                        written.append(UTF_8.decode(buffer.duplicate()));
+                    }
+                }
+            }
+
+            @Override
+            public void close() {}
+        });
+        carbonWriter.setAddress(_carbonServer.getAddress());
+        carbonWriter.init();
+        try {
+            final Date timestamp = new Date(1356998400000L);
+            carbonWriter.write(new MeasurePoint("motortalk_test.foo.float", timestamp, 0.1f));
+            carbonWriter.write(new MeasurePoint("motortalk_test.foo.bigInteger", timestamp, BigInteger.valueOf(Long.MAX_VALUE)));
+            carbonWriter.write(new MeasurePoint("motortalk_test.foo.bigDecimal", timestamp, new BigDecimal("9007199254740993")));
+            carbonWriter.flush();
+        } finally {
+            carbonWriter.close();
+        }
+        final List<String> expectedLines = asList(
+            "motortalk_test.foo.float 0.1 1356998400",
+            "motortalk_test.foo.bigInteger 9223372036854775807 1356998400",
+            "motortalk_test.foo.bigDecimal 9007199254740993 1356998400"
+        );
+        final List<String> lines;
+        synchronized (written) {
+            lines = asList(written.toString().split("\n"));
+        }
+        assertThat(lines, hasSameSizeAs(expectedLines));
+        assertThat(lines, containsAllItemsOf(expectedLines));
+    }
+
+    @Test
+    public void testFlushWhileWriting() throws Exception {
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setAddress(_carbonServer.getAddress());
+        carbonWriter.setQueueCapacity(64);
+        carbonWriter.init();
+        try {
+            final List<MeasurePoint> sendMeasurePoints = new ArrayList<>();
+            final Thread thread = new Thread() { @Override public void run() {
+                try {
+                    for (int i = 0; i < 1000; i++) {
+                        sendMeasurePoints.add(carbonWriter.write("motortalk_test.foo.bar.a", Double.valueOf(i)));
+                    }
+                } catch (InterruptedException ignored) {
+                    Thread.currentThread().interrupt();
+                }
+            }};
+            thread.start();
+            while (thread.isAlive()) {
+                carbonWriter.flush();
+            }
+            thread.join();
+            carbonWriter.flush();
+            executeWithRetry(new Runnable() { @Override public void run() {
+                try {
+                    final List<MeasurePoint> measurePoints = _carbonServer.getLastRecordedMeasurePoints();
+                    assertThat(measurePoints, hasSameSizeAs(sendMeasurePoints));
+                    assertThat(measurePoints, containsAllItemsOf(sendMeasurePoints));
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }}, STRATEGY);
+        } finally {
+            carbonWriter.close();
+        }
+    }
+
+    @Test
+    public void testWriteAsyncFailsWithoutAddress() throws Exception {
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.init();
+        try {
+            final WriteFuture future = carbonWriter.writeAsync("motortalk_test.foo.bar.a", 1L);
+            try {
+                future.get(1, MINUTES);
+                throw new AssertionError("Expected ExecutionException.");
+            } catch (ExecutionException expected) {
+                assertThat(expected.getCause() instanceof IOException, is(true));
+            }
+        } finally {
+            carbonWriter.close();
+        }
+    }
+
+    @Test
+    public void testRetryOnlyResendsUntouchedBuffers() throws Exception {
+        final List<ByteBuffer[]> calls = new ArrayList<>();
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setTransport(new Transport() {
+            @Override
+            public void write(@Nonnull InetSocketAddress address, @Nonnull ByteBuffer[] buffers) throws IOException {
+                calls.add(buffers.clone());
+                if (calls.size() == 1) {
+                    buffers[0].position(3);
+                    throw new IOException("Connection reset.");
+                }
+            }
+
+            @Override
+            public void close() {}
+        });
+        final ByteBuffer first = ByteBuffer.wrap("a 1 1\n".getBytes(UTF_8));
+        final ByteBuffer second = ByteBuffer.wrap("b 2 1\n".getBytes(UTF_8));
+        final CarbonWriter.WriteAttempt attempt = carbonWriter.new WriteAttempt(_carbonServer.getAddress(), new ByteBuffer[]{first, second});
+        try {
+            attempt.call();
+            throw new AssertionError("Expected IOException.");
+        } catch (IOException expected) {}
+        attempt.call();
+
+        assertThat(calls.size(), is(2));
+        assertThat(asList(calls.get(1)), is(asList(second)));
+        assertThat(second.position(), is(0));
+        assertThat(attempt.getDropped(), is(1));
+    }
+
+    @Test
+    public void testPartiallyWrittenBatchIsNotWrittenAgain() throws Exception {
+        final List<String> written = new ArrayList<>();
+        final CarbonWriter carbonWriter = new CarbonWriter();
+        carbonWriter.setTransport(new Transport() {
+            private boolean _failed;
+
+            @Override
+            public void write(@Nonnull InetSocketAddress address, @Nonnull ByteBuffer[] buffers) throws IOException {
+                if (!_failed) {
+                    _failed = true;
+                    buffers[0].position(3);
+                    throw new IOException("Connection reset.");
+                }
+                synchronized (written) {
+                    for (ByteBuffer buffer : buffers) {
+                        written.add(UTF_8.decode(buffer).toString());
+                    }
+                }
+            }
+
+            @Override
+            public void close() {}
+        });
+        carbonWriter.setAddress(_carbonServer.getAddress());
+        carbonWriter.init();
+        try {
+            final WriteFuture future = carbonWriter.writeAsync("motortalk_test.foo.bar.a", 1L);
+            try {
+                future.get(1, MINUTES);
+                throw new AssertionError("Expected ExecutionException.");
+            } catch (ExecutionException expected) {
+                assertThat(expected.getCause() instanceof IncompleteWriteException, is(true));
+            }
+            synchronized (written) {
+                assertThat(written.isEmpty(), is(true));
+            }
+        } finally {
+            carbonWriter.close();
+        }
+    }
+
 }
@@ -0,0 +1,80 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon;
+
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class FlushPolicyUnitTest {
+
+    protected static final long START = 1000L;
+    protected static final long MAX_LATENCY = SECONDS.toNanos(10);
+
+    @Test
+    public void testCompleteBatchIsFlushedImmediately() throws Exception {
+        final FlushPolicy policy = new FlushPolicy(1000, MAX_LATENCY, START);
+        assertThat(policy.isBatchComplete(1000), is(true));
+        assertThat(policy.getFlushAt(START, 1000, START + 5), is(START + 5));
+    }
+
+    @Test
+    public void testQuietWriterFlushesImmediately() throws Exception {
+        final FlushPolicy policy = new FlushPolicy(1000, MAX_LATENCY, START);
+        policy.recordConverted(10);
+        final long now = START + SECONDS.toNanos(1);
+        assertThat(policy.getFlushAt(START, 10, now), is(now));
+    }
+
+    @Test
+    public void testBusyWriterWaitsForCompleteBatch() throws Exception {
+        final FlushPolicy policy = new FlushPolicy(1000, MAX_LATENCY, START);
+        policy.recordConverted(1000);
+        final long now = START + SECONDS.toNanos(1);
+        final long flushAt = policy.getFlushAt(now, 100, now);
+        assertThat(policy.getThroughput(now), is(300d));
+        assertThat(flushAt, is(now + SECONDS.toNanos(3)));
+    }
+
+    @Test
+    public void testWaitIsLimitedByMaxLatency() throws Exception {
+        final FlushPolicy policy = new FlushPolicy(1000, MAX_LATENCY, START);
+        policy.recordConverted(1000);
+        final long now = START + SECONDS.toNanos(1);
+        assertThat(policy.getFlushAt(now - SECONDS.toNanos(8), 100, now), is(now));
+    }
+
+    @Test
+    public void testChangedMaxLatencyIsAppliedImmediately() throws Exception {
+        final FlushPolicy policy = new FlushPolicy(1000, MAX_LATENCY, START);
+        policy.recordConverted(1000);
+        final long now = START + SECONDS.toNanos(1);
+        assertThat(policy.getFlushAt(now - SECONDS.toNanos(1), 100, now), is(now + SECONDS.toNanos(3)));
+        policy.setMaxLatencyInNanos(SECONDS.toNanos(2));
+        assertThat(policy.getFlushAt(now - SECONDS.toNanos(1), 100, now), is(now));
+    }
+
+    @Test
+    public void testThroughputIsOnlyUpdatedAfterAWindow() throws Exception {
+        final FlushPolicy policy = new FlushPolicy(1000, MAX_LATENCY, START);
+        policy.recordConverted(1000);
+        assertThat(policy.getThroughput(START + MILLISECONDS.toNanos(50)), is(0d));
+        assertThat(policy.getThroughput(START + MILLISECONDS.toNanos(100)) > 0, is(true));
+    }
+
+}
@@ -0,0 +1,155 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon;
+
+import org.echocat.jemoni.carbon.ShardedCarbonWriter.Shard;
+import org.echocat.jemoni.carbon.sharding.ConsistentHashRing;
+import org.echocat.jomon.net.FreeTcpPortDetector;
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.testing.environments.LogEnvironment;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.echocat.jemoni.carbon.CarbonWriterIntegrationTest.STRATEGY;
+import static org.echocat.jemoni.carbon.Tags.tags;
+import static org.echocat.jemoni.carbon.transport.ConnectionState.disconnected;
+import static org.echocat.jomon.runtime.concurrent.Retryer.executeWithRetry;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+import static org.echocat.jomon.testing.CollectionMatchers.containsAllItemsOf;
+import static org.echocat.jomon.testing.CollectionMatchers.hasSameSizeAs;
+
+public class ShardedCarbonWriterIntegrationTest {
+
+    @Rule
+    public LogEnvironment _logEnvironment = new LogEnvironment();
+    @Rule
+    public VirtualCarbonServerRule _carbonServerA = new VirtualCarbonServerRule();
+    @Rule
+    public VirtualCarbonServerRule _carbonServerB = new VirtualCarbonServerRule();
+
+    @Test
+    public void testWriteIsDistributedByRing() throws Exception {
+        final ConsistentHashRing<VirtualCarbonServer> ring = ringOf(_carbonServerA, _carbonServerB);
+        final List<MeasurePoint> expectedOnA = new ArrayList<>();
+        final List<MeasurePoint> expectedOnB = new ArrayList<>();
+        try (final ShardedCarbonWriter writer = new ShardedCarbonWriter()) {
+            writer.setShards(new Shard(writerFor(_carbonServerA.getAddress()), "a"), new Shard(writerFor(_carbonServerB.getAddress()), "b"));
+            writer.init();
+            for (int i = 0; i < 200; i++) {
+                final MeasurePoint measurePoint = writer.write("motortalk_test.node" + i + ".load", Double.valueOf(i));
+                (ring.getNode(measurePoint.getPath()) == _carbonServerA ? expectedOnA : expectedOnB).add(measurePoint);
+            }
+            assertThat(expectedOnA.isEmpty(), is(false));
+            assertThat(expectedOnB.isEmpty(), is(false));
+            executeWithRetry(new Runnable() { @Override public void run() {
+                try {
+                    assertThat(_carbonServerA.getLastRecordedMeasurePoints(), hasSameSizeAs(expectedOnA));
+                    assertThat(_carbonServerA.getLastRecordedMeasurePoints(), containsAllItemsOf(expectedOnA));
+                    assertThat(_carbonServerB.getLastRecordedMeasurePoints(), hasSameSizeAs(expectedOnB));
+                    assertThat(_carbonServerB.getLastRecordedMeasurePoints(), containsAllItemsOf(expectedOnB));
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }}, STRATEGY);
+        }
+    }
+
+    @Test
+    public void testSanitizedPathAndTagsAreHashed() throws Exception {
+        final ConsistentHashRing<VirtualCarbonServer> ring = ringOf(_carbonServerA, _carbonServerB);
+        final List<MeasurePoint> expectedOnA = new ArrayList<>();
+        final List<MeasurePoint> expectedOnB = new ArrayList<>();
+        try (final ShardedCarbonWriter writer = new ShardedCarbonWriter()) {
+            writer.setShards(new Shard(writerFor(_carbonServerA.getAddress()), "a"), new Shard(writerFor(_carbonServerB.getAddress()), "b"));
+            writer.init();
+            for (int i = 0; i < 100; i++) {
+                final MeasurePoint plain = writer.write("motortalk_test.G1 Young Generation " + i + ".count", Double.valueOf(i));
+                (ring.getNode("motortalk_test.G1_Young_Generation_" + i + ".count") == _carbonServerA ? expectedOnA : expectedOnB).add(new MeasurePoint("motortalk_test.G1_Young_Generation_" + i + ".count", plain.getTimestamp(), plain.getValue()));
+                final MeasurePoint tagged = new MeasurePoint("motortalk_test.gc.count", tags("name", "gc" + i), Double.valueOf(i));
+                writer.write(tagged);
+                (ring.getNode("motortalk_test.gc.count" + tagged.getTags().getSuffix()) == _carbonServerA ? expectedOnA : expectedOnB).add(tagged);
+            }
+            executeWithRetry(new Runnable() { @Override public void run() {
+                try {
+                    assertThat(_carbonServerA.getLastRecordedMeasurePoints(), hasSameSizeAs(expectedOnA));
+                    assertThat(_carbonServerA.getLastRecordedMeasurePoints(), containsAllItemsOf(expectedOnA));
+                    assertThat(_carbonServerB.getLastRecordedMeasurePoints(), hasSameSizeAs(expectedOnB));
+                    assertThat(_carbonServerB.getLastRecordedMeasurePoints(), containsAllItemsOf(expectedOnB));
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }}, STRATEGY);
+        }
+    }
+
+    @Test
+    public void testFailOverToNextWriterOnRing() throws Exception {
+        final InetSocketAddress unreachable = new InetSocketAddress("localhost", new FreeTcpPortDetector(null, null).detect());
+        final CarbonWriter unreachableWriter = writerFor(unreachable);
+        unreachableWriter.setMinimumReconnectDelay(new Duration("2m"));
+        try (final ShardedCarbonWriter writer = new ShardedCarbonWriter()) {
+            writer.setShards(new Shard(unreachableWriter, "a"), new Shard(writerFor(_carbonServerB.getAddress()), "b"));
+            writer.init();
+            final ConsistentHashRing<VirtualCarbonServer> ring = ringOf(_carbonServerA, _carbonServerB);
+            int i = 0;
+            while (ring.getNode("motortalk_test.node" + i + ".load") != _carbonServerA) {
+                i++;
+            }
+            writer.write("motortalk_test.node" + i + ".load", 1L);
+            executeWithRetry(new Runnable() { @Override public void run() {
+                assertThat(unreachableWriter.getConnectionState(), is(disconnected));
+            }}, STRATEGY);
+
+            final List<MeasurePoint> sendMeasurePoints = new ArrayList<>();
+            for (int j = 0; j < 200; j++) {
+                sendMeasurePoints.add(writer.write("motortalk_test.node" + j + ".load", Double.valueOf(j)));
+            }
+            executeWithRetry(new Runnable() { @Override public void run() {
+                try {
+                    assertThat(_carbonServerB.getLastRecordedMeasurePoints(), hasSameSizeAs(sendMeasurePoints));
+                    assertThat(_carbonServerB.getLastRecordedMeasurePoints(), containsAllItemsOf(sendMeasurePoints));
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }}, STRATEGY);
+        }
+    }
+
+    @Nonnull
+    protected static CarbonWriter writerFor(@Nonnull InetSocketAddress address) {
+        final CarbonWriter result = new CarbonWriter();
+        result.setAddress(address);
+        result.setMaxBufferLifetime(new Duration("10ms"));
+        return result;
+    }
+
+    @Nonnull
+    protected static ConsistentHashRing<VirtualCarbonServer> ringOf(@Nonnull VirtualCarbonServer a, @Nonnull VirtualCarbonServer b) {
+        final Map<String, VirtualCarbonServer> serversByKey = new LinkedHashMap<>();
+        serversByKey.put("('" + a.getAddress().getHostString() + "', 'a')", a);
+        serversByKey.put("('" + b.getAddress().getHostString() + "', 'b')", b);
+        return new ConsistentHashRing<>(serversByKey);
+    }
+
+}
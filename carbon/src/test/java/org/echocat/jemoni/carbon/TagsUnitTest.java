@@ -0,0 +1,72 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon;
+
+import org.junit.Test;
+
+import java.util.Date;
+
+import static java.nio.charset.Charset.forName;
+import static org.echocat.jemoni.carbon.Tags.tags;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+import static org.echocat.jomon.testing.BaseMatchers.isSameAs;
+
+public class TagsUnitTest {
+
+    @Test
+    public void testTagsAreSortedAndSanitized() throws Exception {
+        assertThat(tags("z", "1", "a", "2").getSuffix(), is(";a=2;z=1"));
+        assertThat(tags("a b", "c d").getSuffix(), is(";a_b=c_d"));
+        assertThat(tags("a;=b", "~c;d").getSuffix(), is(";ab=cd"));
+        assertThat(tags("a", "b~c").getSuffix(), is(";a=b~c"));
+        assertThat(tags("a", "", "", "b").isEmpty(), is(true));
+        assertThat(tags().getSuffix(), is(""));
+    }
+
+    @Test
+    public void testTagsAreInterned() throws Exception {
+        assertThat(tags("a", "1", "b", "2"), isSameAs(tags("b", "2", "a", "1")));
+        assertThat(tags(), isSameAs(Tags.EMPTY));
+    }
+
+    @Test
+    public void testEncodedSuffixIsCached() throws Exception {
+        final Tags tags = tags("host", "f\u00f6\u00f6");
+        final byte[] encoded = tags.getEncodedSuffix(forName("UTF-8"));
+        assertThat(new String(encoded, "UTF-8"), is(";host=f\u00f6\u00f6"));
+        assertThat(tags.getEncodedSuffix(forName("UTF-8")), isSameAs(encoded));
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        assertThat(Tags.parse("b=2;a=1"), isSameAs(tags("a", "1", "b", "2")));
+        assertThat(Tags.parse("a=1=2;b"), is(tags("a", "1=2")));
+        assertThat(Tags.parse(null), isSameAs(Tags.EMPTY));
+    }
+
+    @Test
+    public void testMeasurePointOfSeries() throws Exception {
+        final Date timestamp = new Date(0);
+        assertThat(MeasurePoint.ofSeries("a.b;x=1;y=2", timestamp, 1), is(new MeasurePoint("a.b", tags("x", "1", "y", "2"), timestamp, 1)));
+        assertThat(MeasurePoint.ofSeries("a.b", timestamp, 1), is(new MeasurePoint("a.b", timestamp, 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOddNumberOfNamesAndValues() throws Exception {
+        tags("a");
+    }
+
+}
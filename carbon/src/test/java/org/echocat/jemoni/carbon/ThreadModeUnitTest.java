@@ -0,0 +1,58 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.lang.Thread.currentThread;
+import static org.echocat.jemoni.carbon.ThreadMode.platform;
+import static org.echocat.jemoni.carbon.ThreadMode.virtual;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class ThreadModeUnitTest {
+
+    @Test
+    public void testPlatform() throws Exception {
+        final Thread thread = runWith(platform, true);
+        assertThat(thread.isDaemon(), is(true));
+        assertThat(platform.isSupported(), is(true));
+    }
+
+    @Test
+    public void testVirtual() throws Exception {
+        final Thread thread = runWith(virtual, false);
+        if (!virtual.isSupported()) {
+            assertThat(thread.isDaemon(), is(false));
+        } else {
+            assertThat(thread.isDaemon(), is(true));
+        }
+    }
+
+    protected static Thread runWith(ThreadMode mode, boolean daemon) throws Exception {
+        final AtomicReference<Thread> executedBy = new AtomicReference<>();
+        final Thread thread = mode.newThread(new Runnable() { @Override public void run() {
+            executedBy.set(currentThread());
+        }}, "test-" + mode, daemon);
+        assertThat(thread.getName(), is("test-" + mode));
+        thread.start();
+        thread.join();
+        assertThat(executedBy.get(), is(thread));
+        return thread;
+    }
+
+}
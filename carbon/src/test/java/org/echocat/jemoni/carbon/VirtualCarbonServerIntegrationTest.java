@@ -0,0 +1,214 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon;
+
+import org.echocat.jemoni.carbon.VirtualCarbonServer.Awaiter;
+import org.echocat.jemoni.carbon.VirtualCarbonServer.Subscriber;
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.testing.environments.LogEnvironment;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.echocat.jemoni.carbon.VirtualCarbonServer.anyPoint;
+import static org.echocat.jemoni.carbon.VirtualCarbonServer.pointsMatching;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+import static org.echocat.jomon.testing.CollectionMatchers.containsAllItemsOf;
+
+public class VirtualCarbonServerIntegrationTest {
+
+    protected static final Duration TIMEOUT = new Duration("1m");
+
+    @Rule
+    public LogEnvironment _logEnvironment = new LogEnvironment();
+    @Rule
+    public VirtualCarbonServerRule _carbonServer = new VirtualCarbonServerRule();
+
+    @Test
+    public void testAwaitPoints() throws Exception {
+        try (final CarbonWriter carbonWriter = writer()) {
+            carbonWriter.writeLong("foo.a", 1L, 1356998400L);
+            carbonWriter.writeLong("foo.b", 2L, 1356998400L);
+            carbonWriter.flush();
+            assertThat(_carbonServer.awaitPoints(pointsMatching("foo.a"), 1, TIMEOUT), is(asPoints("foo.a", 1)));
+            carbonWriter.writeLong("foo.a", 1L, 1356998401L);
+            carbonWriter.flush();
+            final List<MeasurePoint> measurePoints = _carbonServer.awaitPoints(pointsMatching("foo.a"), 2, TIMEOUT);
+            assertThat(measurePoints.size(), is(2));
+            assertThat(measurePoints.get(1).getTimestamp(), is(new Date(SECONDS.toMillis(1356998401L))));
+        }
+    }
+
+    @Test
+    public void testAwaitPointsWhileWriting() throws Exception {
+        try (final CarbonWriter carbonWriter = writer()) {
+            final Thread thread = new Thread() { @Override public void run() {
+                try {
+                    for (int i = 0; i < 10000; i++) {
+                        carbonWriter.writeLong("foo.a", (long) i, 1356998400L + i);
+                    }
+                    carbonWriter.flush();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }};
+            thread.start();
+            try {
+                assertThat(_carbonServer.awaitPoints(anyPoint(), 10000, TIMEOUT).size(), is(10000));
+            } finally {
+                thread.join();
+            }
+        }
+    }
+
+    @Test
+    public void testManyConnectionsWithFragmentedWrites() throws Exception {
+        final int connections = 20;
+        final int linesPerConnection = 200;
+        final CountDownLatch started = new CountDownLatch(1);
+        final List<Throwable> failures = new CopyOnWriteArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+        final List<MeasurePoint> expected = new ArrayList<>();
+        for (int connection = 0; connection < connections; connection++) {
+            final String path = "foo.connection" + connection;
+            for (int i = 0; i < linesPerConnection; i++) {
+                expected.add(new MeasurePoint(path, new Date(SECONDS.toMillis(1356998400L + i)), (double) i));
+            }
+            final Thread thread = new Thread() { @Override public void run() {
+                final Random random = new Random();
+                try (final Socket socket = new Socket()) {
+                    socket.setTcpNoDelay(true);
+                    socket.connect(_carbonServer.getAddress());
+                    final OutputStream os = socket.getOutputStream();
+                    started.await();
+                    for (int i = 0; i < linesPerConnection; i++) {
+                        final byte[] line = (path + " " + i + " " + (1356998400L + i) + "\n").getBytes("US-ASCII");
+                        final int split = 1 + random.nextInt(line.length - 1);
+                        os.write(line, 0, split);
+                        os.flush();
+                        if (i % 10 == 0) {
+                            Thread.sleep(1);
+                        }
+                        os.write(line, split, line.length - split);
+                    }
+                    os.flush();
+                } catch (Exception e) {
+                    failures.add(e);
+                }
+            }};
+            thread.start();
+            threads.add(thread);
+        }
+        started.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(failures.isEmpty(), is(true));
+        final List<MeasurePoint> measurePoints = _carbonServer.awaitPoints(anyPoint(), expected.size(), TIMEOUT);
+        assertThat(measurePoints.size(), is(expected.size()));
+        assertThat(measurePoints, containsAllItemsOf(expected));
+    }
+
+    @Test
+    public void testSamePointIsCountedAgainAfterSubscription() throws Exception {
+        final MeasurePoint measurePoint = asPoints("foo.a", 1).get(0);
+        final Awaiter awaiter = new Awaiter(anyPoint());
+        awaiter.onReceived(measurePoint);
+        awaiter.recorded(singletonList(measurePoint));
+        awaiter.onReceived(measurePoint);
+        assertThat(awaiter.await(2, TIMEOUT), is(asList(measurePoint, measurePoint)));
+    }
+
+    @Test
+    public void testAwaitSamePointWhileAwaiting() throws Exception {
+        try (final CarbonWriter carbonWriter = writer()) {
+            carbonWriter.writeLong("foo.a", 1L, 1356998400L);
+            carbonWriter.flush();
+            _carbonServer.awaitPoints(pointsMatching("foo.a"), 1, TIMEOUT);
+            final Thread thread = new Thread() { @Override public void run() {
+                try {
+                    Thread.sleep(100);
+                    carbonWriter.writeLong("foo.a", 1L, 1356998400L);
+                    carbonWriter.flush();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }};
+            thread.start();
+            try {
+                assertThat(_carbonServer.awaitPoints(pointsMatching("foo.a"), 2, TIMEOUT).size(), is(2));
+            } finally {
+                thread.join();
+            }
+        }
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void testAwaitPointsTimesOut() throws Exception {
+        try (final CarbonWriter carbonWriter = writer()) {
+            carbonWriter.writeLong("foo.a", 1L, 1356998400L);
+            carbonWriter.flush();
+            _carbonServer.awaitPoints(pointsMatching("foo.a"), 2, new Duration("100ms"));
+        }
+    }
+
+    @Test
+    public void testSubscribe() throws Exception {
+        final List<MeasurePoint> received = new CopyOnWriteArrayList<>();
+        final Subscriber subscriber = new Subscriber() { @Override public void onReceived(@Nonnull MeasurePoint measurePoint) {
+            received.add(measurePoint);
+        }};
+        _carbonServer.subscribe(subscriber);
+        try (final CarbonWriter carbonWriter = writer()) {
+            carbonWriter.writeLong("foo.a", 1L, 1356998400L);
+            carbonWriter.flush();
+            _carbonServer.awaitPoints(anyPoint(), 1, TIMEOUT);
+            assertThat(received, is(asPoints("foo.a", 1)));
+            _carbonServer.unsubscribe(subscriber);
+            carbonWriter.writeLong("foo.b", 1L, 1356998400L);
+            carbonWriter.flush();
+            _carbonServer.awaitPoints(anyPoint(), 2, TIMEOUT);
+            assertThat(received.size(), is(1));
+        }
+    }
+
+    @Nonnull
+    protected List<MeasurePoint> asPoints(@Nonnull String path, double value) {
+        return singletonList(new MeasurePoint(path, new Date(SECONDS.toMillis(1356998400L)), value));
+    }
+
+    @Nonnull
+    protected CarbonWriter writer() throws Exception {
+        final CarbonWriter writer = new CarbonWriter();
+        writer.setAddress(_carbonServer.getAddress());
+        writer.init();
+        return writer;
+    }
+
+}
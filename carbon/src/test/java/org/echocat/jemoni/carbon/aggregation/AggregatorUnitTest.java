@@ -0,0 +1,142 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.aggregation;
+
+import org.echocat.jemoni.carbon.Tags;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.util.Arrays.asList;
+import static org.echocat.jemoni.carbon.aggregation.AggregationFunction.*;
+import static org.echocat.jemoni.carbon.aggregation.AggregationRule.aggregate;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class AggregatorUnitTest {
+
+    @Test
+    public void testFunctions() throws Exception {
+        final Aggregator aggregator = new Aggregator(asList(
+            aggregate("a\\.sum", sum),
+            aggregate("a\\.avg", avg),
+            aggregate("a\\.min", min),
+            aggregate("a\\.max", max),
+            aggregate("a\\.last", last),
+            aggregate("a\\.count", count)
+        ));
+        for (String path : asList("a.sum", "a.avg", "a.min", "a.max", "a.last", "a.count")) {
+            assertThat(aggregator.aggregate(path, 3L, 10L), is(true));
+            assertThat(aggregator.aggregate(path, 1L, 11L), is(true));
+            assertThat(aggregator.aggregate(path, 2L, 12L), is(true));
+        }
+        final RecordingTarget target = new RecordingTarget();
+        aggregator.drainTo(target);
+        assertThat(target.get("a.sum"), is((Object) 6L));
+        assertThat(target.get("a.avg"), is((Object) 2d));
+        assertThat(target.get("a.min"), is((Object) 1L));
+        assertThat(target.get("a.max"), is((Object) 3L));
+        assertThat(target.get("a.last"), is((Object) 2L));
+        assertThat(target.get("a.count"), is((Object) 3L));
+        assertThat(target._timestamps.get("a.sum"), is(12L));
+    }
+
+    @Test
+    public void testMixedValuesAreAggregatedAsDoubles() throws Exception {
+        final Aggregator aggregator = new Aggregator(asList(aggregate("a\\..*", sum)));
+        aggregator.aggregate("a.b", 1L, 10L);
+        aggregator.aggregate("a.b", 0.5d, 10L);
+        final RecordingTarget target = new RecordingTarget();
+        aggregator.drainTo(target);
+        assertThat(target.get("a.b"), is((Object) 1.5d));
+    }
+
+    @Test
+    public void testFirstMatchingRuleWins() throws Exception {
+        final Aggregator aggregator = new Aggregator(asList(aggregate("a\\.b", max), aggregate("a\\..*", sum)));
+        aggregator.aggregate("a.b", 1L, 10L);
+        aggregator.aggregate("a.b", 2L, 10L);
+        aggregator.aggregate("a.c", 1L, 10L);
+        aggregator.aggregate("a.c", 2L, 10L);
+        final RecordingTarget target = new RecordingTarget();
+        aggregator.drainTo(target);
+        assertThat(target.get("a.b"), is((Object) 2L));
+        assertThat(target.get("a.c"), is((Object) 3L));
+    }
+
+    @Test
+    public void testNotMatchingPathsAreNotAggregated() throws Exception {
+        final Aggregator aggregator = new Aggregator(asList(aggregate("a\\..*", sum)));
+        assertThat(aggregator.aggregate("b.c", 1L, 10L), is(false));
+        assertThat(aggregator.aggregate("b.c", 1d, 10L), is(false));
+        final RecordingTarget target = new RecordingTarget();
+        aggregator.drainTo(target);
+        assertThat(target._values.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testDrainResetsValues() throws Exception {
+        final Aggregator aggregator = new Aggregator(asList(aggregate("a\\..*", sum)));
+        aggregator.aggregate("a.b", 1L, 10L);
+        aggregator.aggregate("a.c", 1L, 10L);
+        aggregator.drainTo(new RecordingTarget());
+        aggregator.aggregate("a.b", 5L, 11L);
+        final RecordingTarget target = new RecordingTarget();
+        aggregator.drainTo(target);
+        assertThat(target._values.size(), is(1));
+        assertThat(target.get("a.b"), is((Object) 5L));
+    }
+
+    @Test
+    public void testTaggedSeriesAreAggregatedSeparately() throws Exception {
+        final Aggregator aggregator = new Aggregator(asList(aggregate("a\\..*", sum)));
+        aggregator.aggregate("a.b", 1L, 10L);
+        aggregator.aggregate("a.b", Tags.tags("host", "x"), 2L, 10L);
+        aggregator.aggregate("a.b", Tags.tags("host", "x"), 3L, 10L);
+        aggregator.aggregate("a.b", Tags.tags("host", "y"), 4L, 10L);
+        final RecordingTarget target = new RecordingTarget();
+        aggregator.drainTo(target);
+        assertThat(target._values.size(), is(3));
+        assertThat(target.get("a.b"), is((Object) 1L));
+        assertThat(target.get("a.b;host=x"), is((Object) 5L));
+        assertThat(target.get("a.b;host=y"), is((Object) 4L));
+    }
+
+    protected static class RecordingTarget implements Aggregator.Target {
+
+        private final Map<String, Object> _values = new TreeMap<>();
+        private final Map<String, Long> _timestamps = new TreeMap<>();
+
+        @Override
+        public void write(@Nonnull String path, @Nonnull Tags tags, long value, long epochSeconds) {
+            _values.put(path + tags.getSuffix(), value);
+            _timestamps.put(path + tags.getSuffix(), epochSeconds);
+        }
+
+        @Override
+        public void write(@Nonnull String path, @Nonnull Tags tags, double value, long epochSeconds) {
+            _values.put(path + tags.getSuffix(), value);
+            _timestamps.put(path + tags.getSuffix(), epochSeconds);
+        }
+
+        public Object get(@Nonnull String series) {
+            return _values.get(series);
+        }
+
+    }
+
+}
@@ -0,0 +1,128 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.capture;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.Charset.forName;
+import static java.util.Arrays.asList;
+import static org.echocat.jemoni.carbon.protocol.Protocol.pickle;
+import static org.echocat.jemoni.carbon.protocol.Protocol.plaintext;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class CaptureFileUnitTest {
+
+    @Rule
+    public final TemporaryFolder _folder = new TemporaryFolder();
+
+    private CaptureFile _capture;
+
+    @After
+    public void tearDown() throws Exception {
+        if (_capture != null) {
+            _capture.close();
+        }
+    }
+
+    @Test
+    public void testRecordsAreReadInOrder() throws Exception {
+        _capture = new CaptureFile(_folder.getRoot());
+        final ByteBuffer content = bufferOf("a 1 1\n");
+        assertThat(_capture.append(plaintext, 10L, content), is(true));
+        assertThat(content.remaining(), is(6));
+        _capture.append(pickle, 20L, bufferOf("bb"));
+
+        assertThat(readAll(), is(asList("plaintext@10:a 1 1\n", "pickle@20:bb")));
+        assertThat(readAll(), is(asList("plaintext@10:a 1 1\n", "pickle@20:bb")));
+    }
+
+    @Test
+    public void testCaptureIsContinuedAfterReopen() throws Exception {
+        _capture = new CaptureFile(_folder.getRoot());
+        _capture.append(plaintext, 1L, bufferOf("a"));
+        _capture.close();
+
+        _capture = new CaptureFile(_folder.getRoot());
+        _capture.append(plaintext, 2L, bufferOf("b"));
+        assertThat(readAll(), is(asList("plaintext@1:a", "plaintext@2:b")));
+        assertThat(_folder.getRoot().list().length, is(1));
+    }
+
+    @Test
+    public void testCaptureContinuesWhileReading() throws Exception {
+        _capture = new CaptureFile(_folder.getRoot());
+        _capture.append(plaintext, 1L, bufferOf("a"));
+        assertThat(readAll(), is(asList("plaintext@1:a")));
+
+        _capture.append(plaintext, 2L, bufferOf("b"));
+        _capture.flush();
+        assertThat(readAll(), is(asList("plaintext@1:a", "plaintext@2:b")));
+        assertThat(_folder.getRoot().list().length, is(1));
+    }
+
+    @Test
+    public void testRecordsAreSpreadOverSegments() throws Exception {
+        _capture = new CaptureFile(_folder.getRoot());
+        _capture.setSegmentSize(32);
+        _capture.append(plaintext, 1L, bufferOf("aaaaaaaa"));
+        _capture.append(plaintext, 2L, bufferOf("bbbbbbbb"));
+        _capture.append(plaintext, 3L, bufferOf("cccccccccccccccccccccccccccccccccccccccc"));
+        assertThat(_folder.getRoot().list().length, is(3));
+        assertThat(readAll(), is(asList("plaintext@1:aaaaaaaa", "plaintext@2:bbbbbbbb", "plaintext@3:cccccccccccccccccccccccccccccccccccccccc")));
+    }
+
+    @Test
+    public void testRecordsAreDroppedIfMaximumSizeIsReached() throws Exception {
+        _capture = new CaptureFile(_folder.getRoot());
+        _capture.setSegmentSize(32);
+        _capture.setMaximumSize(64);
+        assertThat(_capture.append(plaintext, 1L, bufferOf("aaaaaaaaaa")), is(true));
+        assertThat(_capture.append(plaintext, 2L, bufferOf("bbbbbbbbbb")), is(true));
+        assertThat(_capture.append(plaintext, 3L, bufferOf("cccccccccc")), is(false));
+        assertThat(_capture.getDropped(), is(10L));
+        assertThat(readAll(), is(asList("plaintext@1:aaaaaaaaaa", "plaintext@2:bbbbbbbbbb")));
+    }
+
+    @Nonnull
+    protected List<String> readAll() throws Exception {
+        final List<String> result = new ArrayList<>();
+        try (final CaptureFile.Reader reader = _capture.openReader()) {
+            CaptureRecord record = reader.next();
+            while (record != null) {
+                final ByteBuffer content = record.getContent();
+                final byte[] bytes = new byte[content.remaining()];
+                content.get(bytes);
+                result.add(record.getProtocol() + "@" + record.getReceivedAt() + ":" + new String(bytes, "UTF-8"));
+                record = reader.next();
+            }
+        }
+        return result;
+    }
+
+    @Nonnull
+    protected static ByteBuffer bufferOf(@Nonnull String content) {
+        return ByteBuffer.wrap(content.getBytes(forName("UTF-8")));
+    }
+
+}
@@ -0,0 +1,97 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.capture;
+
+import org.echocat.jemoni.carbon.CarbonWriter;
+import org.echocat.jemoni.carbon.MeasurePoint;
+import org.echocat.jemoni.carbon.VirtualCarbonServer;
+import org.echocat.jemoni.carbon.VirtualCarbonServerRule;
+import org.echocat.jemoni.carbon.protocol.Protocol;
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.testing.environments.LogEnvironment;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.annotation.Nonnull;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import static org.echocat.jemoni.carbon.VirtualCarbonServer.anyPoint;
+import static org.echocat.jemoni.carbon.protocol.Protocol.pickle;
+import static org.echocat.jemoni.carbon.protocol.Protocol.plaintext;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class CaptureReplayerIntegrationTest {
+
+    protected static final Duration TIMEOUT = new Duration("1m");
+
+    @Rule
+    public LogEnvironment _logEnvironment = new LogEnvironment();
+    @Rule
+    public final TemporaryFolder _folder = new TemporaryFolder();
+    @Rule
+    public VirtualCarbonServerRule _carbonServer = new VirtualCarbonServerRule();
+
+    @Test
+    public void testReplayPlaintext() throws Exception {
+        testCaptureAndReplay(plaintext);
+    }
+
+    @Test
+    public void testReplayPickle() throws Exception {
+        testCaptureAndReplay(pickle);
+    }
+
+    protected void testCaptureAndReplay(@Nonnull Protocol protocol) throws Exception {
+        try (final CaptureFile capture = new CaptureFile(_folder.getRoot())) {
+            final List<MeasurePoint> captured = capture(capture, protocol, 1000);
+            try (final CarbonWriter writer = writerTo(_carbonServer.getAddress(), plaintext)) {
+                writer.init();
+                final CaptureReplayer replayer = new CaptureReplayer(capture, writer);
+                replayer.setSpeed(0);
+                assertThat(replayer.replay(), is(1000L));
+                writer.flush();
+            }
+            assertThat(_carbonServer.awaitPoints(anyPoint(), 1000, TIMEOUT), is(captured));
+        }
+    }
+
+    @Nonnull
+    protected List<MeasurePoint> capture(@Nonnull CaptureFile capture, @Nonnull Protocol protocol, int count) throws Exception {
+        try (final VirtualCarbonServer server = new VirtualCarbonServer(new InetSocketAddress("localhost", 0), 1)) {
+            server.setCapture(capture);
+            final InetSocketAddress address = protocol == pickle ? server.openPickleListener(0) : server.getAddress();
+            try (final CarbonWriter writer = writerTo(address, protocol)) {
+                writer.init();
+                for (int i = 0; i < count; i++) {
+                    writer.writeLong("capture.p" + (i % 10), (long) i, 1356998400L + i);
+                }
+                writer.flush();
+                return server.awaitPoints(anyPoint(), count, TIMEOUT);
+            }
+        }
+    }
+
+    @Nonnull
+    protected static CarbonWriter writerTo(@Nonnull InetSocketAddress address, @Nonnull Protocol protocol) {
+        final CarbonWriter writer = new CarbonWriter();
+        writer.setAddress(address);
+        writer.setProtocol(protocol);
+        return writer;
+    }
+
+}
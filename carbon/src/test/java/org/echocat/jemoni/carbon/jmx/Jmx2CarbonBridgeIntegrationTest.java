@@ -16,28 +16,43 @@ package org.echocat.jemoni.carbon.jmx;
 
 import org.echocat.jemoni.carbon.CarbonWriter;
 import org.echocat.jemoni.carbon.MeasurePoint;
+import org.echocat.jemoni.carbon.Tags;
+import org.echocat.jemoni.carbon.VirtualCarbonServer.PointMatcher;
 import org.echocat.jemoni.carbon.VirtualCarbonServerRule;
 import org.echocat.jemoni.carbon.jmx.configuration.Configuration;
 import org.echocat.jemoni.jmx.JmxRegistry;
 import org.echocat.jemoni.jmx.Registration;
 import org.echocat.jemoni.jmx.annotations.Attribute;
 import org.echocat.jomon.runtime.StringUtils;
+import org.echocat.jomon.runtime.util.Duration;
 import org.echocat.jomon.testing.environments.LogEnvironment;
 import org.junit.Rule;
 import org.junit.Test;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.management.AttributeList;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
 import java.beans.BeanInfo;
 import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.beans.Introspector.getBeanInfo;
 import static java.lang.Boolean.TRUE;
+import static java.util.Collections.singleton;
 import static java.util.regex.Pattern.quote;
 import static org.echocat.jemoni.carbon.jmx.configuration.AttributeRule.attribute;
 import static org.echocat.jemoni.carbon.jmx.configuration.Configuration.configuration;
@@ -65,14 +80,126 @@ public class Jmx2CarbonBridgeIntegrationTest {
         try (final Registration registration = registry.register(sampleBean)) {
             try (final CarbonWriter carbonWriter = writer()) {
                 //noinspection UnusedDeclaration
-                try (final Jmx2CarbonBridge bridge = bridgeFor(carbonWriter, sampleBean)) {
-                    sleep("500ms");
-                    checkMeasurePoints(sampleBean, _carbonServer.getLastRecordedMeasurePoints());
+                try (final Jmx2CarbonBridge bridge = bridgeFor(carbonWriter, sampleBean, false, null)) {
+                    final String expectedPathPrefix = "foo.bar." + sampleBean.getClass().getSimpleName() + ".";
+                    checkMeasurePoints(sampleBean, expectedPathPrefix, Tags.EMPTY, awaitPointsOf(sampleBean, expectedPathPrefix, Tags.EMPTY));
                 }
             }
         }
     }
 
+    @Test
+    public void testUnchangedValuesAreOnlyWrittenOnHeartbeat() throws Exception {
+        final JmxRegistry registry = new JmxRegistry();
+        final SampleBean sampleBean = new SampleBean();
+
+        //noinspection UnusedDeclaration
+        try (final Registration registration = registry.register(sampleBean)) {
+            try (final CarbonWriter carbonWriter = writer()) {
+                //noinspection UnusedDeclaration
+                try (final Jmx2CarbonBridge bridge = bridgeFor(carbonWriter, sampleBean, false, "1h")) {
+                    final String expectedPathPrefix = "foo.bar." + sampleBean.getClass().getSimpleName() + ".";
+                    checkMeasurePoints(sampleBean, expectedPathPrefix, Tags.EMPTY, awaitPointsOf(sampleBean, expectedPathPrefix, Tags.EMPTY));
+                    sleep("300ms");
+                    final List<MeasurePoint> measurePoints = _carbonServer.getLastRecordedMeasurePoints();
+                    for (String attribute : getPropertiesOf(sampleBean).keySet()) {
+                        int count = 0;
+                        for (MeasurePoint measurePoint : measurePoints) {
+                            if (measurePoint.getPath().equals(expectedPathPrefix + attribute)) {
+                                count++;
+                            }
+                        }
+                        assertThat("Expected measurePoint " + expectedPathPrefix + attribute + " only once", count, is(1));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testKeyPropertiesAsTags() throws Exception {
+        final JmxRegistry registry = new JmxRegistry();
+        final SampleBean sampleBean = new SampleBean();
+
+        //noinspection UnusedDeclaration
+        try (final Registration registration = registry.register(sampleBean)) {
+            try (final CarbonWriter carbonWriter = writer()) {
+                //noinspection UnusedDeclaration
+                try (final Jmx2CarbonBridge bridge = bridgeFor(carbonWriter, sampleBean, true, null)) {
+                    final Tags tags = Tags.tags(registration.getObjectName().getKeyPropertyList());
+                    assertThat(tags.isEmpty(), is(false));
+                    checkMeasurePoints(sampleBean, "foo.bar.", tags, awaitPointsOf(sampleBean, "foo.bar.", tags));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReadsAllAttributesOfAnObjectWithOneCall() throws Exception {
+        final CountingMBeanServer counting = new CountingMBeanServer(false, null);
+        checkReadAttributes(counting);
+        assertThat(counting.getAttributesCalls(), is(1));
+        assertThat(counting.getAttributeCalls().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testReadsAttributesOneByOneIfReadingAllFails() throws Exception {
+        final CountingMBeanServer counting = new CountingMBeanServer(true, null);
+        final SampleBean sampleBean = checkReadAttributes(counting);
+        assertThat(counting.getAttributesCalls(), is(1));
+        for (String attribute : getPropertiesOf(sampleBean).keySet()) {
+            assertThat("Expected one read of " + attribute, counting.getAttributeCalls().get(attribute), is(1));
+        }
+    }
+
+    @Test
+    public void testReadsOmittedAttributeByItsOwn() throws Exception {
+        final CountingMBeanServer counting = new CountingMBeanServer(false, "simpleInteger");
+        checkReadAttributes(counting);
+        assertThat(counting.getAttributesCalls(), is(1));
+        assertThat(counting.getAttributeCalls().keySet(), is(singleton("simpleInteger")));
+        assertThat(counting.getAttributeCalls().get("simpleInteger"), is(1));
+    }
+
+    /**
+     * Runs exactly one cycle of a bridge reading a {@link SampleBean} through the given server and checks that all
+     * of its attributes are written.
+     */
+    @Nonnull
+    protected SampleBean checkReadAttributes(@Nonnull CountingMBeanServer counting) throws Exception {
+        final MBeanServer server = MBeanServerFactory.newMBeanServer();
+        final JmxRegistry registry = new JmxRegistry(server);
+        final SampleBean result = new SampleBean();
+        try (final Registration registration = registry.register(result)) {
+            counting.setObjectName(registration.getObjectName());
+            try (final CarbonWriter carbonWriter = writer()) {
+                final Jmx2CarbonBridge bridge = new Jmx2CarbonBridge(counting.proxyFor(server), carbonWriter);
+                bridge.setPathPrefix("foo.");
+                bridge.setConfiguration(rulesFor(result, "1h", null));
+                bridge.init();
+                try {
+                    final String expectedPathPrefix = "foo.bar." + result.getClass().getSimpleName() + ".";
+                    checkMeasurePoints(result, expectedPathPrefix, Tags.EMPTY, awaitPointsOf(result, expectedPathPrefix, Tags.EMPTY));
+                } finally {
+                    bridge.close();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Awaits the first write of all expected attributes - every cycle of the bridge writes each of them once.
+     */
+    @Nonnull
+    protected List<MeasurePoint> awaitPointsOf(@Nonnull SampleBean sampleBean, @Nonnull final String expectedPathPrefix, @Nonnull final Tags expectedTags) throws Exception {
+        final Map<String, Number> properties = getPropertiesOf(sampleBean);
+        return _carbonServer.awaitPoints(new PointMatcher() { @Override public boolean matches(@Nonnull MeasurePoint measurePoint) {
+            final String path = measurePoint.getPath();
+            return path.startsWith(expectedPathPrefix) && properties.containsKey(path.substring(expectedPathPrefix.length())) && measurePoint.getTags().equals(expectedTags);
+        }}, properties.size(), new Duration("1m"));
+    }
+
     @Nonnull
     protected CarbonWriter writer() throws Exception {
         final CarbonWriter writer = new CarbonWriter();
@@ -82,20 +209,27 @@ public class Jmx2CarbonBridgeIntegrationTest {
     }
 
     @Nonnull
-    protected Jmx2CarbonBridge bridgeFor(@Nonnull CarbonWriter writer, @Nonnull SampleBean sampleBean) throws Exception {
+    protected Jmx2CarbonBridge bridgeFor(@Nonnull CarbonWriter writer, @Nonnull SampleBean sampleBean, boolean keyPropertiesAsTags, @Nullable String heartbeatEvery) throws Exception {
         final Jmx2CarbonBridge bridge = new Jmx2CarbonBridge(writer);
         bridge.setPathPrefix("foo.");
-        bridge.setConfiguration(rulesFor(sampleBean));
+        bridge.setKeyPropertiesAsTags(keyPropertiesAsTags);
+        bridge.setConfiguration(rulesFor(sampleBean, heartbeatEvery));
         bridge.init();
         return bridge;
     }
 
     @Nonnull
-    protected Configuration rulesFor(@Nonnull SampleBean sampleBean) {
+    protected Configuration rulesFor(@Nonnull SampleBean sampleBean, @Nullable String heartbeatEvery) {
+        return rulesFor(sampleBean, "100ms", heartbeatEvery);
+    }
+
+    @Nonnull
+    protected Configuration rulesFor(@Nonnull SampleBean sampleBean, @Nonnull String updateEvery, @Nullable String heartbeatEvery) {
         final String originalPackage = sampleBean.getClass().getPackage().getName().replace('.', '_');
         return configuration().rules(
             rule()
-                .updateEvery("100ms")
+                .updateEvery(updateEvery)
+                .heartbeatEvery(heartbeatEvery)
                 .includes(object().pattern(".*" + quote(sampleBean.getClass().getPackage().getName()) + ".*"))
                 .excludes(object().attributes(attribute("excludedOne")))
         ).formats(
@@ -103,23 +237,23 @@ public class Jmx2CarbonBridgeIntegrationTest {
         );
     }
 
-    protected void checkMeasurePoints(@Nonnull SampleBean sampleBean, @Nonnull List<MeasurePoint> measurePoints) throws Exception {
+    protected void checkMeasurePoints(@Nonnull SampleBean sampleBean, @Nonnull String expectedPathPrefix, @Nonnull Tags expectedTags, @Nonnull List<MeasurePoint> measurePoints) throws Exception {
         final Map<String, Number> properties = getPropertiesOf(sampleBean);
         for (Entry<String, Number> attributeToValue : properties.entrySet()) {
             final String attribute = attributeToValue.getKey();
-            final String expectedPath = "foo.bar." + sampleBean.getClass().getSimpleName() + "." + attribute;
+            final String expectedPath = expectedPathPrefix + attribute;
             final Number value = attributeToValue.getValue();
             boolean found = false;
             for (MeasurePoint measurePoint : measurePoints) {
                 final String path = measurePoint.getPath();
-                if (path.equals(expectedPath)) {
+                if (path.equals(expectedPath) && measurePoint.getTags().equals(expectedTags)) {
                     if (measurePoint.getValue().equals(value.doubleValue())) {
                         found = true;
                         break;
                     }
                 }
             }
-            assertThat("Expected measurePoint " + expectedPath + " with value " + value, found, is(true));
+            assertThat("Expected measurePoint " + expectedPath + expectedTags + " with value " + value, found, is(true));
         }
     }
 
@@ -176,4 +310,81 @@ public class Jmx2CarbonBridgeIntegrationTest {
     protected boolean isAcceptableValueType(@Nonnull Class<?> type) {
         return Number.class.isAssignableFrom(type) || Boolean.class.equals(type) || Character.class.equals(type);
     }
+
+    /**
+     * Counts the reads of attributes of one object and could let reading all attributes at once fail or omit one of
+     * them.
+     */
+    protected static class CountingMBeanServer implements InvocationHandler {
+
+        private final boolean _failGetAttributes;
+        private final String _omittedAttribute;
+        private final AtomicInteger _getAttributesCalls = new AtomicInteger();
+        private final ConcurrentMap<String, Integer> _getAttributeCalls = new ConcurrentHashMap<>();
+
+        private volatile ObjectName _objectName;
+        private volatile MBeanServer _delegate;
+
+        public CountingMBeanServer(boolean failGetAttributes, @Nullable String omittedAttribute) {
+            _failGetAttributes = failGetAttributes;
+            _omittedAttribute = omittedAttribute;
+        }
+
+        public void setObjectName(@Nonnull ObjectName objectName) {
+            _objectName = objectName;
+        }
+
+        @Nonnull
+        public MBeanServer proxyFor(@Nonnull MBeanServer delegate) {
+            _delegate = delegate;
+            return (MBeanServer) Proxy.newProxyInstance(MBeanServer.class.getClassLoader(), new Class<?>[]{MBeanServer.class}, this);
+        }
+
+        public int getAttributesCalls() {
+            return _getAttributesCalls.get();
+        }
+
+        @Nonnull
+        public Map<String, Integer> getAttributeCalls() {
+            return _getAttributeCalls;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            final boolean ofObject = args != null && args.length > 0 && args[0] != null && args[0].equals(_objectName);
+            final Object result;
+            if (ofObject && "getAttributes".equals(method.getName())) {
+                _getAttributesCalls.incrementAndGet();
+                if (_failGetAttributes) {
+                    throw new ReflectionException(new Exception("Reading all attributes at once is not supported."));
+                }
+                final AttributeList attributes = new AttributeList();
+                for (javax.management.Attribute attribute : ((AttributeList) invokeDelegate(method, args)).asList()) {
+                    if (!attribute.getName().equals(_omittedAttribute)) {
+                        attributes.add(attribute);
+                    }
+                }
+                result = attributes;
+            } else {
+                if (ofObject && "getAttribute".equals(method.getName())) {
+                    final String name = (String) args[1];
+                    final Integer calls = _getAttributeCalls.get(name);
+                    _getAttributeCalls.put(name, calls != null ? calls + 1 : 1);
+                }
+                result = invokeDelegate(method, args);
+            }
+            return result;
+        }
+
+        @Nullable
+        protected Object invokeDelegate(@Nonnull Method method, @Nullable Object[] args) throws Throwable {
+            try {
+                return method.invoke(_delegate, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+    }
+
 }
@@ -0,0 +1,67 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.jmx;
+
+import org.junit.Test;
+
+import static org.echocat.jemoni.carbon.jmx.LastValueMap.toBits;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class LastValueMapUnitTest {
+
+    @Test
+    public void testOnlyChangedValuesAndHeartbeatsAreWritten() throws Exception {
+        final LastValueMap map = new LastValueMap();
+        assertThat(map.update("a", 1L, 0L, 100L), is(true));
+        assertThat(map.update("a", 1L, 50L, 100L), is(false));
+        assertThat(map.update("a", 2L, 60L, 100L), is(true));
+        assertThat(map.update("a", 2L, 159L, 100L), is(false));
+        assertThat(map.update("a", 2L, 160L, 100L), is(true));
+        assertThat(map.update("b", 2L, 160L, 100L), is(true));
+        assertThat(map.size(), is(2));
+    }
+
+    @Test
+    public void testGrow() throws Exception {
+        final LastValueMap map = new LastValueMap();
+        for (int i = 0; i < 1000; i++) {
+            assertThat(map.update("path" + i, i, 0L, 100L), is(true));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertThat(map.update("path" + i, i, 1L, 100L), is(false));
+        }
+        assertThat(map.size(), is(1000));
+    }
+
+    @Test
+    public void testClearedIfMaximumSizeIsReached() throws Exception {
+        final LastValueMap map = new LastValueMap(2);
+        map.update("a", 1L, 0L, 100L);
+        map.update("b", 1L, 0L, 100L);
+        map.update("c", 1L, 0L, 100L);
+        assertThat(map.size(), is(1));
+        assertThat(map.update("a", 1L, 0L, 100L), is(true));
+    }
+
+    @Test
+    public void testToBits() throws Exception {
+        assertThat(toBits(Long.MAX_VALUE) == toBits(Long.MAX_VALUE - 1), is(false));
+        assertThat(toBits(1) == toBits(1L), is(true));
+        assertThat(toBits(Double.NaN) == toBits(Double.NaN), is(true));
+        assertThat(toBits(0.1d) == toBits(0.2d), is(false));
+    }
+
+}
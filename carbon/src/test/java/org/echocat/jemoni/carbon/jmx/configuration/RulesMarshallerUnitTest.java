@@ -48,10 +48,30 @@ public class RulesMarshallerUnitTest {
         }
     }
 
+    @Test
+    public void testUnmarshallHeartbeat() throws Exception {
+        try (final StringReader reader = new StringReader(getReference("heartbeat.xml"))) {
+            assertThat(unmarshall(reader), is(createHeartbeatRules()));
+        }
+    }
+
+    @Test
+    public void testMarshallHeartbeat() throws Exception {
+        try (final StringWriter writer = new StringWriter()) {
+            marshall(createHeartbeatRules(), writer);
+            assertThat(writer.toString(), is(getReference("heartbeat.xml")));
+        }
+    }
+
     @Nonnull
     protected static String getReference() throws IOException {
+        return getReference("example1.xml");
+    }
+
+    @Nonnull
+    protected static String getReference(@Nonnull String name) throws IOException {
         final StringBuilder sb = new StringBuilder();
-        try (final InputStream is = RulesMarshallerUnitTest.class.getResourceAsStream("example1.xml")) {
+        try (final InputStream is = RulesMarshallerUnitTest.class.getResourceAsStream(name)) {
             try (final Reader reader = new InputStreamReader(is, "UTF-8")) {
                 int c = reader.read();
                 while (c >= 0) {
@@ -129,4 +149,15 @@ public class RulesMarshallerUnitTest {
             );
     }
 
+    @Nonnull
+    public static Configuration createHeartbeatRules() {
+        return configuration().rules(
+            rule().name("rule1").updateEvery("1s").heartbeatEvery("1m").includes(
+                object().pattern("objecti11.*").attributes(
+                    attribute("attributei111.*")
+                )
+            )
+        );
+    }
+
 }
@@ -0,0 +1,55 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.protocol;
+
+import org.junit.Test;
+
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+import static org.echocat.jomon.testing.BaseMatchers.isSameAs;
+
+public class PathCacheUnitTest {
+
+    @Test
+    public void testGetAndPut() throws Exception {
+        final PathCache cache = new PathCache(16);
+        final byte[] bytes = {'a'};
+        assertThat(cache.get("a"), is((byte[]) null));
+        cache.put("a", bytes);
+        assertThat(cache.get("a"), isSameAs(bytes));
+        assertThat(cache.get(new String("a")), isSameAs(bytes));
+        assertThat(cache.getHits(), is(2L));
+        assertThat(cache.getMisses(), is(1L));
+        assertThat(cache.getSize(), is(1));
+    }
+
+    @Test
+    public void testCapacityIsNeverExceeded() throws Exception {
+        final PathCache cache = new PathCache(10);
+        assertThat(cache.getCapacity(), is(16));
+        for (int i = 0; i < 1000; i++) {
+            cache.put("path" + i, new byte[0]);
+        }
+        assertThat(cache.getSize() <= 16, is(true));
+        int cached = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (cache.get("path" + i) != null) {
+                cached++;
+            }
+        }
+        assertThat(cached, is(cache.getSize()));
+    }
+
+}
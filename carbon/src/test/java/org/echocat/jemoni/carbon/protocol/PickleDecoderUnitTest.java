@@ -0,0 +1,93 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.protocol;
+
+import org.echocat.jemoni.carbon.MeasurePoint;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import static java.nio.ByteBuffer.allocate;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class PickleDecoderUnitTest {
+
+    /**
+     * <code>pickle.dumps([('foo.bar', (1356998400, 1.5)), ('foo.baz', (1356998401, 66)), ('foo.bar', (1356998402, 2**40))], protocol=2)</code>
+     */
+    private static final String FRAME_OF_PYTHON = "80025d7100285807000000666f6f2e62617271014a0027e250473ff80000000000008671028671035807000000666f6f2e62617a71044a0127e2504b4286710586710668014a0227e2508a06000000000001867107867108652e";
+
+    private final PickleDecoder _decoder = new PickleDecoder();
+
+    @Test
+    public void testDecodeFrameOfPython() throws Exception {
+        assertThat(_decoder.decode(ByteBuffer.wrap(bytesOf(FRAME_OF_PYTHON))), is(asList(
+            measurePoint("foo.bar", 1356998400L, 1.5d),
+            measurePoint("foo.baz", 1356998401L, 66d),
+            measurePoint("foo.bar", 1356998402L, 1099511627776d)
+        )));
+    }
+
+    @Test
+    public void testDecodeFrameOfEncoder() throws Exception {
+        final PickleEncoder encoder = new PickleEncoder();
+        final ByteBuffer buffer = allocate(encoder.getMaximumSizeOf("foo bar") * 4);
+        encoder.startFrame(buffer);
+        encoder.encode("foo bar", 1L, 1356998400L, buffer);
+        encoder.encode("foo bar", -2.5d, 1356998401L, buffer);
+        encoder.encode("foo.b\u00e4r", Long.MIN_VALUE, 1356998402L, buffer);
+        encoder.encode("foo.baz", 3L, Long.MAX_VALUE / 1000, buffer);
+        encoder.finishFrame(buffer);
+        buffer.flip();
+
+        assertThat(buffer.getInt(), is(buffer.remaining()));
+        assertThat(_decoder.decode(buffer.slice()), is(asList(
+            measurePoint("foo_bar", 1356998400L, 1d),
+            measurePoint("foo_bar", 1356998401L, -2.5d),
+            measurePoint("foo.b\u00e4r", 1356998402L, (double) Long.MIN_VALUE),
+            measurePoint("foo.baz", Long.MAX_VALUE / 1000, 3d)
+        )));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeTruncatedFrame() throws Exception {
+        _decoder.decode(ByteBuffer.wrap(bytesOf(FRAME_OF_PYTHON.substring(0, 40))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeUnsupportedOpcode() throws Exception {
+        _decoder.decode(ByteBuffer.wrap(bytesOf("80026300")));
+    }
+
+    @Nonnull
+    protected static MeasurePoint measurePoint(@Nonnull String path, long epochSeconds, double value) {
+        return new MeasurePoint(path, new Date(SECONDS.toMillis(epochSeconds)), value);
+    }
+
+    @Nonnull
+    protected static byte[] bytesOf(@Nonnull String hex) {
+        final byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,85 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.protocol;
+
+import org.echocat.jemoni.carbon.MeasurePoint;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.Random;
+
+import static java.nio.charset.Charset.forName;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.echocat.jemoni.carbon.Tags.tags;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class PlaintextDecoderUnitTest {
+
+    private static final Random RANDOM = new Random();
+
+    private final PlaintextDecoder _decoder = new PlaintextDecoder(forName("UTF-8"));
+
+    @Test
+    public void testDecode() throws Exception {
+        assertThat(decode("foo.bar 666 1356998400"), is(measurePoint("foo.bar", 666d, 1356998400L)));
+        assertThat(decode("  foo.bar\t-0.5  1356998400 \r"), is(measurePoint("foo.bar", -0.5d, 1356998400L)));
+        assertThat(decode("f\u00f6\u00f6.b\u00e4r 1e-3 -1"), is(measurePoint("f\u00f6\u00f6.b\u00e4r", 1e-3d, -1L)));
+        assertThat(decode("foo.bar NaN 1"), is(measurePoint("foo.bar", Double.NaN, 1L)));
+        assertThat(decode("foo.bar;b=2;a=1 1 1"), is(new MeasurePoint("foo.bar", tags("a", "1", "b", "2"), new Date(SECONDS.toMillis(1L)), 1d)));
+        assertThat(decode("   "), is((MeasurePoint) null));
+    }
+
+    @Test
+    public void testDecodedValuesAreEqualToParseDouble() throws Exception {
+        for (int i = 0; i < 100000; i++) {
+            final String plain = i % 3 == 0 ? Double.toString(RANDOM.nextDouble() * RANDOM.nextInt(100000)) : i % 3 == 1 ? Long.toString(RANDOM.nextLong()) : (RANDOM.nextInt(2000000) - 1000000) / 1000d + "";
+            assertThat(decode("a " + plain + " 1").getValue(), is((Number) Double.parseDouble(plain)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingTimestamp() throws Exception {
+        decode("foo.bar 1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalValue() throws Exception {
+        decode("foo.bar 1.2.3 1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalTimestamp() throws Exception {
+        decode("foo.bar 1 1.5");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyTokens() throws Exception {
+        decode("foo.bar 1 1 1");
+    }
+
+    protected MeasurePoint decode(@Nonnull String line) throws Exception {
+        final byte[] bytes = ("xx" + line + "yy").getBytes("UTF-8");
+        return _decoder.decode(ByteBuffer.wrap(bytes), 2, bytes.length - 2);
+    }
+
+    @Nonnull
+    protected static MeasurePoint measurePoint(@Nonnull String path, double value, long timestamp) {
+        return new MeasurePoint(path, new Date(SECONDS.toMillis(timestamp)), value);
+    }
+
+}
@@ -0,0 +1,114 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.protocol;
+
+import org.echocat.jemoni.carbon.Tags;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static java.nio.ByteBuffer.allocate;
+import static java.nio.charset.Charset.forName;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class PlaintextEncoderUnitTest {
+
+    private static final Random RANDOM = new Random();
+
+    private final PlaintextEncoder _encoder = new PlaintextEncoder(forName("UTF-8"));
+
+    @Test
+    public void testEncodeLong() throws Exception {
+        assertThat(encode("foo.bar", 666L, 1356998400L), is("foo.bar 666 1356998400\n"));
+        assertThat(encode("foo.bar", -1L, 0L), is("foo.bar -1 0\n"));
+        assertThat(encode("foo.bar", Long.MIN_VALUE, 1L), is("foo.bar " + Long.MIN_VALUE + " 1\n"));
+        assertThat(encode("foo.bar", Long.MAX_VALUE, 1L), is("foo.bar " + Long.MAX_VALUE + " 1\n"));
+    }
+
+    @Test
+    public void testEncodeDouble() throws Exception {
+        assertThat(encode("foo.bar", 666d, 1L), is("foo.bar 666 1\n"));
+        assertThat(encode("foo.bar", 0.5d, 1L), is("foo.bar 0.5 1\n"));
+        assertThat(encode("foo.bar", -0.05d, 1L), is("foo.bar -0.05 1\n"));
+        assertThat(encode("foo.bar", 0.1d + 0.2d, 1L), is("foo.bar 0.30000000000000004 1\n"));
+        assertThat(encode("foo.bar", 1e-300d, 1L), is("foo.bar 1.0E-300 1\n"));
+        assertThat(encode("foo.bar", Double.NaN, 1L), is("foo.bar NaN 1\n"));
+    }
+
+    @Test
+    public void testEncodedDoublesCouldBeParsedBack() throws Exception {
+        final ByteBuffer buffer = allocate(PlaintextEncoder.MAXIMUM_VALUE_SIZE);
+        for (int i = 0; i < 100000; i++) {
+            final double value = i % 2 == 0 ? RANDOM.nextDouble() * RANDOM.nextInt(100000) : RANDOM.nextInt(100000) / 100d;
+            buffer.clear();
+            PlaintextEncoder.writeDouble(value, buffer);
+            assertThat(Double.parseDouble(new String(buffer.array(), 0, buffer.position(), "US-ASCII")), is(value));
+        }
+    }
+
+    @Test
+    public void testPathIsSanitized() throws Exception {
+        assertThat(encode("foo bar.a-b_c.(d)/e:f", 1L, 1L), is("foo_bar.a-b_c.def 1 1\n"));
+        assertThat(encode("f\u00f6\u00f6.b\u00e4r", 1L, 1L), is("f\u00f6\u00f6.b\u00e4r 1 1\n"));
+    }
+
+    @Test
+    public void testEncodeTagged() throws Exception {
+        final Tags tags = Tags.tags("host", "a b", "dc", "x;y");
+        final ByteBuffer buffer = allocate(_encoder.getMaximumSizeOf("foo bar", tags));
+        _encoder.encode("foo bar", tags, 666L, 1L, buffer);
+        assertThat(new String(buffer.array(), 0, buffer.position(), "UTF-8"), is("foo_bar;dc=xy;host=a_b 666 1\n"));
+    }
+
+    @Test
+    public void testEncodeWithPathCache() throws Exception {
+        final PathCache pathCache = new PathCache();
+        final PlaintextEncoder encoder = new PlaintextEncoder(forName("UTF-8"), pathCache);
+        for (int i = 0; i < 3; i++) {
+            final ByteBuffer buffer = allocate(encoder.getMaximumSizeOf("f\u00f6o bar(1)"));
+            encoder.encode("f\u00f6o bar(1)", 1L, 1L, buffer);
+            assertThat(new String(buffer.array(), 0, buffer.position(), "UTF-8"), is("f\u00f6o_bar1 1 1\n"));
+        }
+        assertThat(pathCache.getMisses(), is(1L));
+        assertThat(pathCache.getHits(), is(2L));
+    }
+
+    @Test
+    public void testMaximumSizeIsNeverExceeded() throws Exception {
+        final String path = "f\u00f6\u00f6.b\u00e4r.\u4e2d\u6587";
+        final ByteBuffer buffer = allocate(_encoder.getMaximumSizeOf(path));
+        _encoder.encode(path, -Double.MAX_VALUE, Long.MIN_VALUE, buffer);
+        buffer.clear();
+        _encoder.encode(path, Long.MIN_VALUE, Long.MIN_VALUE, buffer);
+    }
+
+    @Nonnull
+    protected String encode(@Nonnull String path, long value, long timestamp) throws Exception {
+        final ByteBuffer buffer = allocate(_encoder.getMaximumSizeOf(path));
+        _encoder.encode(path, value, timestamp, buffer);
+        return new String(buffer.array(), 0, buffer.position(), "UTF-8");
+    }
+
+    @Nonnull
+    protected String encode(@Nonnull String path, double value, long timestamp) throws Exception {
+        final ByteBuffer buffer = allocate(_encoder.getMaximumSizeOf(path));
+        _encoder.encode(path, value, timestamp, buffer);
+        return new String(buffer.array(), 0, buffer.position(), "UTF-8");
+    }
+
+}
@@ -0,0 +1,150 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.queue;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.echocat.jemoni.carbon.queue.BackpressurePolicy.*;
+import static org.echocat.jemoni.carbon.queue.RingBufferUnitTest.FACTORY;
+import static org.echocat.jemoni.carbon.queue.WaitStrategy.park;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class BackpressurePolicyUnitTest {
+
+    private final BackpressureStatistics _statistics = new BackpressureStatistics();
+
+    @Test
+    public void testBlockWithTimeout() throws Exception {
+        final RingBuffer<AtomicLong> queue = fullQueueOf(4);
+
+        final long started = System.currentTimeMillis();
+        assertThat(blockWithTimeout.claim(queue, MILLISECONDS.toNanos(50), _statistics), is(-1L));
+        assertThat(System.currentTimeMillis() - started >= 50, is(true));
+
+        queue.release(queue.tryTake());
+        assertThat(blockWithTimeout.claim(queue, MILLISECONDS.toNanos(50), _statistics) >= 0, is(true));
+        assertThat(_statistics.getAccepted(blockWithTimeout), is(1L));
+        assertThat(_statistics.getDropped(blockWithTimeout), is(1L));
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        final RingBuffer<AtomicLong> queue = fullQueueOf(4);
+
+        assertThat(dropNewest.claim(queue, 0, _statistics), is(-1L));
+        assertThat(dropNewest.claim(queue, 0, _statistics), is(-1L));
+        assertThat(queue.get(queue.tryTake()).get(), is(0L));
+        assertThat(_statistics.getAccepted(dropNewest), is(0L));
+        assertThat(_statistics.getDropped(dropNewest), is(2L));
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        final RingBuffer<AtomicLong> queue = fullQueueOf(4);
+
+        final long sequence = dropOldest.claim(queue, 0, _statistics);
+        queue.get(sequence).set(4);
+        queue.publish(sequence);
+
+        for (long expected = 1; expected <= 4; expected++) {
+            final long taken = queue.tryTake();
+            assertThat(queue.get(taken).get(), is(expected));
+            queue.release(taken);
+        }
+        assertThat(_statistics.getAccepted(dropOldest), is(1L));
+        assertThat(_statistics.getDropped(dropOldest), is(1L));
+    }
+
+    @Test
+    public void testDropOldestBatch() throws Exception {
+        final RingBuffer<AtomicLong> queue = fullQueueOf(4);
+
+        final long first = dropOldest.claim(queue, 3, 0, _statistics);
+        assertThat(first, is(4L));
+        for (int i = 0; i < 3; i++) {
+            queue.get(first + i).set(4 + i);
+            queue.publish(first + i);
+        }
+
+        for (long expected = 3; expected <= 6; expected++) {
+            final long taken = queue.tryTake();
+            assertThat(queue.get(taken).get(), is(expected));
+            queue.release(taken);
+        }
+        assertThat(_statistics.getAccepted(dropOldest), is(3L));
+        assertThat(_statistics.getDropped(dropOldest), is(3L));
+    }
+
+    @Test
+    public void testDropOldestTellsEvictedEntries() throws Exception {
+        final RingBuffer<EvictableEntry> queue = new RingBuffer<>(2, new RingBuffer.EntryFactory<EvictableEntry>() { @Nonnull @Override public EvictableEntry create() {
+            return new EvictableEntry();
+        }}, park);
+        final long oldest = dropOldest.claim(queue, 0, _statistics);
+        queue.publish(oldest);
+        queue.publish(dropOldest.claim(queue, 0, _statistics));
+        final EvictableEntry oldestEntry = queue.get(oldest);
+
+        queue.publish(dropOldest.claim(queue, 0, _statistics));
+        assertThat(oldestEntry._evicted, is(true));
+    }
+
+    @Test
+    public void testSampleUnderPressure() throws Exception {
+        final RingBuffer<AtomicLong> queue = new RingBuffer<>(8, FACTORY, park);
+        for (int i = 0; i < 6; i++) {
+            queue.publish(sampleUnderPressure.claim(queue, 0, _statistics));
+        }
+        assertThat(_statistics.getAccepted(sampleUnderPressure), is(6L));
+
+        for (int i = 0; i < 1000; i++) {
+            final long sequence = sampleUnderPressure.claim(queue, 0, _statistics);
+            if (sequence >= 0) {
+                queue.publish(sequence);
+            }
+        }
+        assertThat(queue.size(), is(8));
+        assertThat(_statistics.getAccepted(sampleUnderPressure), is(8L));
+        assertThat(_statistics.getDropped(sampleUnderPressure), is(998L));
+    }
+
+    @Nonnull
+    protected RingBuffer<AtomicLong> fullQueueOf(int capacity) throws Exception {
+        final RingBuffer<AtomicLong> result = new RingBuffer<>(capacity, FACTORY, park);
+        for (int i = 0; i < capacity; i++) {
+            final long sequence = block.claim(result, 0, _statistics);
+            result.get(sequence).set(i);
+            result.publish(sequence);
+        }
+        return result;
+    }
+
+    protected static class EvictableEntry implements Evictable {
+
+        private boolean _evicted;
+
+        @Override
+        public void evicted() {
+            _evicted = true;
+        }
+
+    }
+
+}
@@ -0,0 +1,133 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.queue;
+
+import org.echocat.jemoni.carbon.queue.RingBuffer.EntryFactory;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.echocat.jemoni.carbon.queue.WaitStrategy.park;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class RingBufferUnitTest {
+
+    protected static final EntryFactory<AtomicLong> FACTORY = new EntryFactory<AtomicLong>() { @Nonnull @Override public AtomicLong create() {
+        return new AtomicLong();
+    }};
+
+    @Test
+    public void testCapacityIsRoundedUpToPowerOfTwo() throws Exception {
+        assertThat(new RingBuffer<>(1, FACTORY, park).getCapacity(), is(1));
+        assertThat(new RingBuffer<>(2, FACTORY, park).getCapacity(), is(2));
+        assertThat(new RingBuffer<>(3, FACTORY, park).getCapacity(), is(4));
+        assertThat(new RingBuffer<>(1000, FACTORY, park).getCapacity(), is(1024));
+        assertThat(new RingBuffer<>(1024, FACTORY, park).getCapacity(), is(1024));
+    }
+
+    @Test
+    public void testClaimUntilFullAndTakeInOrder() throws Exception {
+        final RingBuffer<AtomicLong> buffer = new RingBuffer<>(4, FACTORY, park);
+        for (int i = 0; i < 4; i++) {
+            final long sequence = buffer.tryClaim();
+            assertThat(sequence, is((long) i));
+            buffer.get(sequence).set(i * 10);
+            buffer.publish(sequence);
+        }
+        assertThat(buffer.tryClaim(), is(-1L));
+        assertThat(buffer.size(), is(4));
+
+        for (int i = 0; i < 4; i++) {
+            final long sequence = buffer.tryTake();
+            assertThat(buffer.get(sequence).get(), is(i * 10L));
+            buffer.release(sequence);
+        }
+        assertThat(buffer.tryTake(), is(-1L));
+        assertThat(buffer.isEmpty(), is(true));
+        assertThat(buffer.tryClaim(), is(4L));
+    }
+
+    @Test
+    public void testClaimBatch() throws Exception {
+        final RingBuffer<AtomicLong> buffer = new RingBuffer<>(8, FACTORY, park);
+        final long first = buffer.tryClaim(5);
+        assertThat(first, is(0L));
+        for (int i = 0; i < 5; i++) {
+            buffer.get(first + i).set(i);
+            buffer.publish(first + i);
+        }
+        assertThat(buffer.tryClaim(4), is(-1L));
+        assertThat(buffer.tryClaim(3), is(5L));
+        assertThat(buffer.tryClaim(1), is(-1L));
+
+        for (int i = 0; i < 5; i++) {
+            final long sequence = buffer.tryTake();
+            assertThat(buffer.get(sequence).get(), is((long) i));
+            buffer.release(sequence);
+        }
+        assertThat(buffer.claim(5, 0), is(8L));
+    }
+
+    @Test
+    public void testUnpublishedEntriesAreNotTaken() throws Exception {
+        final RingBuffer<AtomicLong> buffer = new RingBuffer<>(4, FACTORY, park);
+        final long first = buffer.claim();
+        final long second = buffer.claim();
+        buffer.publish(second);
+        assertThat(buffer.tryTake(), is(-1L));
+        buffer.publish(first);
+        assertThat(buffer.tryTake(), is(first));
+        assertThat(buffer.tryTake(), is(second));
+    }
+
+    @Test
+    public void testManyProducers() throws Exception {
+        final RingBuffer<AtomicLong> buffer = new RingBuffer<>(16, FACTORY, park);
+        final int producers = 8;
+        final int perProducer = 10000;
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < producers; i++) {
+            final Thread thread = new Thread() { @Override public void run() {
+                try {
+                    for (int j = 1; j <= perProducer; j++) {
+                        final long sequence = buffer.claim();
+                        buffer.get(sequence).set(j);
+                        buffer.publish(sequence);
+                    }
+                } catch (InterruptedException ignored) {
+                    currentThread().interrupt();
+                }
+            }};
+            thread.start();
+            threads.add(thread);
+        }
+        long sum = 0;
+        for (int i = 0; i < producers * perProducer; i++) {
+            final long sequence = buffer.take();
+            sum += buffer.get(sequence).get();
+            buffer.release(sequence);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(sum, is((long) producers * perProducer * (perProducer + 1) / 2));
+        assertThat(buffer.isEmpty(), is(true));
+    }
+
+}
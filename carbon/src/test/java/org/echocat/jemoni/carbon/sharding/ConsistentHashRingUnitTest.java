@@ -0,0 +1,69 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.sharding;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class ConsistentHashRingUnitTest {
+
+    /**
+     * The expected nodes were calculated with <code>carbon.hashing.ConsistentHashRing</code> of carbon-relay.
+     */
+    @Test
+    public void testGetNodesLikeCarbonRelay() throws Exception {
+        final ConsistentHashRing<Integer> ring = new ConsistentHashRing<>(nodes());
+        assertThat(ring.getNodes("foo.bar"), is(asList(2, 0, 1)));
+        assertThat(ring.getNodes("carbon.agents.a.cpuUsage"), is(asList(0, 2, 1)));
+        assertThat(ring.getNodes("servers.web01.load.shortterm"), is(asList(1, 2, 0)));
+        assertThat(ring.getNodes("a"), is(asList(2, 1, 0)));
+        assertThat(ring.getNodes("x.y.z"), is(asList(2, 0, 1)));
+    }
+
+    @Test
+    public void testGetNodeOnExactPosition() throws Exception {
+        final ConsistentHashRing<Integer> ring = new ConsistentHashRing<>(nodes());
+        assertThat(ring.getNode("servers.node118.load"), is(0));
+    }
+
+    @Test
+    public void testGetNodeBehindLastPosition() throws Exception {
+        final ConsistentHashRing<Integer> ring = new ConsistentHashRing<>(nodes());
+        assertThat(ring.getNode("servers.node24.load"), is(1));
+    }
+
+    @Test
+    public void testSingleNode() throws Exception {
+        final Map<String, Integer> nodes = new LinkedHashMap<>();
+        nodes.put("('10.0.0.1', None)", 0);
+        final ConsistentHashRing<Integer> ring = new ConsistentHashRing<>(nodes, 1);
+        assertThat(ring.getNodes("foo.bar"), is(asList(0)));
+    }
+
+    protected static Map<String, Integer> nodes() {
+        final Map<String, Integer> result = new LinkedHashMap<>();
+        result.put("('10.0.0.1', None)", 0);
+        result.put("('10.0.0.2', None)", 1);
+        result.put("('10.0.0.3', 'c')", 2);
+        return result;
+    }
+
+}
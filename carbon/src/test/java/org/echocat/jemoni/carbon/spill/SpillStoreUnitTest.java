@@ -0,0 +1,128 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.spill;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.Charset.forName;
+import static java.util.Arrays.asList;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+import static org.echocat.jomon.testing.BaseMatchers.isNull;
+
+public class SpillStoreUnitTest {
+
+    @Rule
+    public final TemporaryFolder _folder = new TemporaryFolder();
+
+    private SpillStore _store;
+
+    @After
+    public void tearDown() throws Exception {
+        if (_store != null) {
+            _store.close();
+        }
+    }
+
+    @Test
+    public void testRecordsAreReturnedInOrder() throws Exception {
+        _store = new SpillStore(_folder.getRoot());
+        assertThat(_store.append(asList(bufferOf("a"), bufferOf("bb"))), is(true));
+        assertThat(_store.append(asList(bufferOf("ccc"))), is(true));
+        assertThat(_store.getPending(), is(6L));
+
+        assertThat(takeAll(), is(asList("a", "bb", "ccc")));
+        assertThat(_store.isEmpty(), is(true));
+        assertThat(_store.peek(), isNull());
+    }
+
+    @Test
+    public void testRecordsAreRecoveredAfterReopen() throws Exception {
+        _store = new SpillStore(_folder.getRoot());
+        _store.append(asList(bufferOf("a"), bufferOf("bb"), bufferOf("ccc")));
+        assertThat(take(), is("a"));
+        _store.close();
+
+        _store = new SpillStore(_folder.getRoot());
+        assertThat(_store.getPending(), is(5L));
+        assertThat(takeAll(), is(asList("bb", "ccc")));
+    }
+
+    @Test
+    public void testReplayedSegmentsAreDeleted() throws Exception {
+        _store = new SpillStore(_folder.getRoot());
+        _store.setSegmentSize(16);
+        _store.append(asList(bufferOf("aaaaaaaa"), bufferOf("bbbbbbbb"), bufferOf("cccccccccccccccccccc")));
+        assertThat(_folder.getRoot().list().length, is(3));
+
+        assertThat(take(), is("aaaaaaaa"));
+        assertThat(_folder.getRoot().list().length, is(2));
+        assertThat(takeAll(), is(asList("bbbbbbbb", "cccccccccccccccccccc")));
+        assertThat(_folder.getRoot().list().length, is(0));
+    }
+
+    @Test
+    public void testAppendIsRejectedIfStoreIsFull() throws Exception {
+        _store = new SpillStore(_folder.getRoot());
+        _store.setSegmentSize(16);
+        _store.setMaximumSize(32);
+        assertThat(_store.append(asList(bufferOf("aaaaaaaa"), bufferOf("bbbbbbbb"))), is(true));
+        assertThat(_store.append(asList(bufferOf("cccccccc"))), is(false));
+
+        assertThat(takeAll(), is(asList("aaaaaaaa", "bbbbbbbb")));
+        assertThat(_store.append(asList(bufferOf("cccccccc"))), is(true));
+    }
+
+    @Nonnull
+    protected List<String> takeAll() throws Exception {
+        final List<String> result = new ArrayList<>();
+        String record = take();
+        while (record != null) {
+            result.add(record);
+            record = take();
+        }
+        return result;
+    }
+
+    @Nullable
+    protected String take() throws Exception {
+        final ByteBuffer record = _store.peek();
+        final String result;
+        if (record != null) {
+            final byte[] bytes = new byte[record.remaining()];
+            record.get(bytes);
+            _store.remove();
+            result = new String(bytes, forName("US-ASCII"));
+        } else {
+            result = null;
+        }
+        return result;
+    }
+
+    @Nonnull
+    protected static ByteBuffer bufferOf(@Nonnull String content) {
+        return ByteBuffer.wrap(content.getBytes(forName("US-ASCII")));
+    }
+
+}
@@ -22,6 +22,8 @@ import org.junit.Test;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import static java.lang.Thread.currentThread;
+import static org.echocat.jemoni.carbon.ThreadMode.platform;
+import static org.echocat.jemoni.carbon.ThreadMode.virtual;
 import static org.echocat.jemoni.carbon.jmx.configuration.RulesMarshallerUnitTest.createReferenceRules;
 import static org.echocat.jomon.testing.Assert.assertThat;
 import static org.echocat.jomon.testing.BaseMatchers.is;
@@ -43,12 +45,16 @@ public class Jmx2CarbonBridgeDefinitionParserUnitTest {
             assertThat(bridge1.getCarbonWriter(), isSameAs(carbonWriter));
             assertThat(bridge1.getClassLoader(), isSameAs(classLoader));
             assertThat(bridge1.getPathPrefix(), is("foo."));
+            assertThat(bridge1.getThreadMode(), is(virtual));
+            assertThat(bridge1.isKeyPropertiesAsTags(), is(true));
             assertThat(bridge1.getConfiguration(), is(createReferenceRules()));
 
             final Jmx2CarbonBridge bridge2 = context.getBean(Jmx2CarbonBridge.class.getName(), Jmx2CarbonBridge.class);
             assertThat(bridge2.getCarbonWriter(), isSameAs(carbonWriter));
             assertThat(bridge2.getClassLoader(), isSameAs(currentThread().getContextClassLoader()));
             assertThat(bridge2.getConfiguration(), is(null));
+            assertThat(bridge2.getThreadMode(), is(platform));
+            assertThat(bridge2.isKeyPropertiesAsTags(), is(false));
         } finally {
             context.close();
         }
@@ -14,18 +14,48 @@
 
 package org.echocat.jemoni.carbon.spring;
 
+import org.echocat.jemoni.carbon.BufferPool;
 import org.echocat.jemoni.carbon.CarbonWriter;
+import org.echocat.jemoni.carbon.ThreadMode;
+import org.echocat.jemoni.carbon.protocol.PathCache;
+import org.echocat.jemoni.carbon.queue.WaitStrategy;
+import org.echocat.jemoni.carbon.spill.SpillStore;
+import org.echocat.jemoni.carbon.transport.TcpTransport;
+import org.echocat.jemoni.carbon.transport.UdpTransport;
+import org.echocat.jemoni.jmx.JmxRegistry;
 import org.echocat.jomon.runtime.util.Duration;
 import org.echocat.jomon.testing.environments.LogEnvironment;
 import org.junit.Rule;
 import org.junit.Test;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
+import java.io.File;
 import java.net.InetSocketAddress;
 
 import static java.nio.charset.Charset.forName;
+import static java.util.Arrays.asList;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_AGGREGATION_INTERVAL;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_BACKPRESSURE_POLICY;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_BACKPRESSURE_TIMEOUT;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_BUFFER_SIZE;
 import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_CHARSET;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_MAXIMUM_RECONNECT_DELAY;
 import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_MAX_BUFFER_LIFETIME;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_MINIMUM_RECONNECT_DELAY;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_PATH_CACHE_CAPACITY;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_PROTOCOL;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_QUEUE_CAPACITY;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_SPILL_REPLAY_RATE;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_STATISTICS_INTERVAL;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_TARGET_BATCH_SIZE;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_THREAD_MODE;
+import static org.echocat.jemoni.carbon.CarbonWriter.DEFAULT_WAIT_STRATEGY;
+import static org.echocat.jemoni.carbon.aggregation.AggregationFunction.avg;
+import static org.echocat.jemoni.carbon.aggregation.AggregationFunction.sum;
+import static org.echocat.jemoni.carbon.aggregation.AggregationRule.aggregate;
+import static org.echocat.jemoni.carbon.protocol.Protocol.pickle;
+import static org.echocat.jemoni.carbon.queue.BackpressurePolicy.blockWithTimeout;
+import static org.echocat.jemoni.carbon.transport.TcpTransport.DEFAULT_CONNECT_TIMEOUT;
 import static org.echocat.jomon.testing.Assert.assertThat;
 import static org.echocat.jomon.testing.BaseMatchers.is;
 
@@ -42,11 +72,59 @@ public class WriterDefinitionParserUnitTest {
             assertThat(defaultWriter.getAddress(), is(new InetSocketAddress("localhost", 667)));
             assertThat(defaultWriter.getMaxBufferLifetime(), is(DEFAULT_MAX_BUFFER_LIFETIME));
             assertThat(defaultWriter.getCharset(), is(DEFAULT_CHARSET));
+            assertThat(((TcpTransport) defaultWriter.getTransport()).getConnectTimeout(), is(DEFAULT_CONNECT_TIMEOUT));
+            assertThat(defaultWriter.getQueueCapacity(), is(DEFAULT_QUEUE_CAPACITY));
+            assertThat(defaultWriter.getWaitStrategy(), is(DEFAULT_WAIT_STRATEGY));
+            assertThat(defaultWriter.getProtocol(), is(DEFAULT_PROTOCOL));
+            assertThat(defaultWriter.getSpillStore(), is((SpillStore) null));
+            assertThat(defaultWriter.getBackpressurePolicy(), is(DEFAULT_BACKPRESSURE_POLICY));
+            assertThat(defaultWriter.getBackpressureTimeout(), is(DEFAULT_BACKPRESSURE_TIMEOUT));
+            assertThat(defaultWriter.getJmxRegistry(), is((JmxRegistry) null));
+            assertThat(defaultWriter.getSpillReplayRate(), is(DEFAULT_SPILL_REPLAY_RATE));
+            assertThat(defaultWriter.getStatisticsPath(), is((String) null));
+            assertThat(defaultWriter.getStatisticsInterval(), is(DEFAULT_STATISTICS_INTERVAL));
+            assertThat(defaultWriter.getAggregationRules().isEmpty(), is(true));
+            assertThat(defaultWriter.getAggregationInterval(), is(DEFAULT_AGGREGATION_INTERVAL));
+            assertThat(defaultWriter.getBufferSize(), is(DEFAULT_BUFFER_SIZE));
+            assertThat(defaultWriter.getTargetBatchSize(), is(DEFAULT_TARGET_BATCH_SIZE));
+            assertThat(defaultWriter.isDirectBuffers(), is(false));
+            assertThat(defaultWriter.getBufferPoolCapacity(), is(BufferPool.DEFAULT_CAPACITY));
+            assertThat(defaultWriter.getMinimumReconnectDelay(), is(DEFAULT_MINIMUM_RECONNECT_DELAY));
+            assertThat(defaultWriter.getThreadMode(), is(DEFAULT_THREAD_MODE));
+            assertThat(defaultWriter.getMaximumReconnectDelay(), is(DEFAULT_MAXIMUM_RECONNECT_DELAY));
+            assertThat(defaultWriter.getPathCacheCapacity(), is(DEFAULT_PATH_CACHE_CAPACITY));
 
             final CarbonWriter xxxWriter = context.getBean("xxx", CarbonWriter.class);
             assertThat(xxxWriter.getAddress(), is(new InetSocketAddress("localhost", 666)));
             assertThat(xxxWriter.getMaxBufferLifetime(), is(new Duration("666h")));
             assertThat(xxxWriter.getCharset(), is(forName("ISO-8859-15")));
+            assertThat(((TcpTransport) xxxWriter.getTransport()).getConnectTimeout(), is(new Duration("66s")));
+            assertThat(xxxWriter.getQueueCapacity(), is(66));
+            assertThat(xxxWriter.getWaitStrategy(), is(WaitStrategy.yield));
+            assertThat(xxxWriter.getProtocol(), is(pickle));
+            assertThat(xxxWriter.getSpillStore().getDirectory(), is(new File("target/spill")));
+            assertThat(xxxWriter.getSpillStore().getMaximumSize(), is(6666666L));
+            assertThat(xxxWriter.getSpillReplayRate(), is(666L));
+            assertThat(xxxWriter.getAggregationRules(), is(asList(aggregate("requests\\..*", sum), aggregate(".*\\.duration", avg))));
+            assertThat(xxxWriter.getAggregationInterval(), is(new Duration("66s")));
+            assertThat(xxxWriter.getMinimumReconnectDelay(), is(new Duration("66ms")));
+            assertThat(xxxWriter.getThreadMode(), is(ThreadMode.virtual));
+            assertThat(xxxWriter.getMaximumReconnectDelay(), is(new Duration("66m")));
+
+            final CarbonWriter udpWriter = context.getBean("udp", CarbonWriter.class);
+            assertThat(udpWriter.getAddress(), is(new InetSocketAddress("localhost", 668)));
+            assertThat(((UdpTransport) udpWriter.getTransport()).getDatagramSize(), is(512));
+            assertThat(udpWriter.getBackpressurePolicy(), is(blockWithTimeout));
+            assertThat(udpWriter.getBackpressureTimeout(), is(new Duration("66ms")));
+            assertThat(udpWriter.getJmxRegistry(), is(context.getBean("jmxRegistry", JmxRegistry.class)));
+            assertThat(udpWriter.getStatisticsPath(), is("carbon.writer"));
+            assertThat(udpWriter.getStatisticsInterval(), is(new Duration("66s")));
+            assertThat(udpWriter.getBufferSize(), is(666));
+            assertThat(udpWriter.getTargetBatchSize(), is(6666L));
+            assertThat(udpWriter.isDirectBuffers(), is(true));
+            assertThat(udpWriter.getBufferPoolCapacity(), is(6));
+            assertThat(udpWriter.getPathCacheCapacity(), is(0));
+            assertThat(udpWriter.getPathCache(), is((PathCache) null));
         } finally {
             context.close();
         }
@@ -0,0 +1,58 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.store;
+
+import org.junit.Test;
+
+import static org.echocat.jemoni.carbon.store.PathGlob.glob;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class PathGlobUnitTest {
+
+    @Test
+    public void testMatches() throws Exception {
+        assertThat(glob("foo.bar").matches("foo.bar"), is(true));
+        assertThat(glob("foo.bar").matches("foo.bar.baz"), is(false));
+        assertThat(glob("foo.*").matches("foo.bar"), is(true));
+        assertThat(glob("foo.*").matches("foo.bar.baz"), is(false));
+        assertThat(glob("foo.*.baz").matches("foo.bar.baz"), is(true));
+        assertThat(glob("foo.b?r").matches("foo.bar"), is(true));
+        assertThat(glob("foo.b?r").matches("foo.baar"), is(false));
+        assertThat(glob("foo.ba[rz]").matches("foo.baz"), is(true));
+        assertThat(glob("foo.ba[!rz]").matches("foo.baz"), is(false));
+        assertThat(glob("foo.ba[!rz]").matches("foo.bax"), is(true));
+        assertThat(glob("foo.{bar,baz}").matches("foo.baz"), is(true));
+        assertThat(glob("foo.{bar,baz}").matches("foo.bax"), is(false));
+        assertThat(glob("foo.{a.b,c}").getNumberOfSegments(), is(2));
+        assertThat(glob("foo.a+b").matches("foo.a+b"), is(true));
+        assertThat(glob("foo.a+*").matches("foo.aab"), is(false));
+    }
+
+    @Test
+    public void testLiterals() throws Exception {
+        final PathGlob glob = glob("foo.*.baz");
+        assertThat(glob.getNumberOfSegments(), is(3));
+        assertThat(glob.getLiteral(0), is("foo"));
+        assertThat(glob.getLiteral(1), is((String) null));
+        assertThat(glob.getLiteral(2), is("baz"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalGlob() throws Exception {
+        glob("foo.[bar*");
+    }
+
+}
@@ -0,0 +1,114 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.store;
+
+import org.echocat.jemoni.carbon.MeasurePoint;
+import org.echocat.jomon.runtime.util.Duration;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Date;
+
+import static java.util.Arrays.asList;
+import static org.echocat.jemoni.carbon.Tags.tags;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class TimeSeriesStoreUnitTest {
+
+    @Test
+    public void testQuery() throws Exception {
+        final TimeSeriesStore store = new TimeSeriesStore();
+        store.add("foo.bar.a", null, 3000L, 3d);
+        store.add("foo.bar.a", null, 1000L, 1d);
+        store.add("foo.bar.b", null, 2000L, 2d);
+        store.add("foo.baz.a", tags("x", "1"), 4000L, 4d);
+        store.add("foo", null, 5000L, 5d);
+        assertThat(store.query("foo.bar.a"), is(asList(point("foo.bar.a", 1000L, 1d), point("foo.bar.a", 3000L, 3d))));
+        assertThat(store.query("foo.bar.*"), is(asList(point("foo.bar.a", 1000L, 1d), point("foo.bar.b", 2000L, 2d), point("foo.bar.a", 3000L, 3d))));
+        assertThat(store.query("foo.*.a", new Date(2000L), new Date(4001L)), is(asList(point("foo.bar.a", 3000L, 3d), new MeasurePoint("foo.baz.a", tags("x", "1"), new Date(4000L), 4d))));
+        assertThat(store.query("*"), is(asList(point("foo", 5000L, 5d))));
+        assertThat(store.query("bar.*").isEmpty(), is(true));
+        assertThat(store.getPaths("foo.*.*"), is(asList("foo.bar.a", "foo.bar.b", "foo.baz.a")));
+        assertThat(store.getAll().size(), is(5));
+        assertThat(store.getNumberOfSeries(), is(4));
+        assertThat(store.getNumberOfPoints(), is(5L));
+    }
+
+    @Test
+    public void testMaximumPointsPerSeries() throws Exception {
+        final TimeSeriesStore store = new TimeSeriesStore();
+        store.setMaximumPointsPerSeries(100);
+        for (int i = 0; i < 1000; i++) {
+            store.add("foo", null, i, i);
+        }
+        assertThat(store.getNumberOfPoints(), is(100L));
+        assertThat(store.query("foo").get(0), is(point("foo", 900L, 900d)));
+        assertThat(store.query("foo").get(99), is(point("foo", 999L, 999d)));
+    }
+
+    @Test
+    public void testRetention() throws Exception {
+        final TimeSeriesStore store = new TimeSeriesStore();
+        store.setRetention(new Duration("10s"));
+        for (int i = 0; i < 100; i++) {
+            store.add("foo", null, i * 1000L, i);
+        }
+        assertThat(store.getNumberOfPoints(), is(11L));
+        assertThat(store.query("foo").get(0), is(point("foo", 89000L, 89d)));
+    }
+
+    @Test
+    public void testRetentionOfPointsAddedOutOfOrder() throws Exception {
+        final TimeSeriesStore store = new TimeSeriesStore();
+        store.setRetention(new Duration("10s"));
+        store.add("foo", null, 50000L, 50d);
+        store.add("foo", null, 1000L, 1d);
+        store.add("foo", null, 52000L, 52d);
+        assertThat(store.query("foo"), is(asList(point("foo", 50000L, 50d), point("foo", 52000L, 52d))));
+        store.add("foo", null, 45000L, 45d);
+        store.add("foo", null, 60000L, 60d);
+        assertThat(store.query("foo"), is(asList(point("foo", 50000L, 50d), point("foo", 52000L, 52d), point("foo", 60000L, 60d))));
+        for (int i = 61; i < 100; i++) {
+            store.add("foo", null, i * 1000L, i);
+        }
+        assertThat(store.getNumberOfPoints(), is(11L));
+        assertThat(store.query("foo").get(0), is(point("foo", 89000L, 89d)));
+    }
+
+    @Test
+    public void testMaximumSeries() throws Exception {
+        final TimeSeriesStore store = new TimeSeriesStore();
+        store.setMaximumSeries(2);
+        store.add("a", null, 0L, 1d);
+        store.add("b", null, 0L, 1d);
+        store.add("c", null, 0L, 1d);
+        store.add("a", tags("x", "1"), 0L, 1d);
+        store.add("a", null, 1L, 1d);
+        assertThat(store.getNumberOfSeries(), is(2));
+        assertThat(store.getNumberOfPoints(), is(3L));
+        assertThat(store.getDroppedPoints(), is(2L));
+        assertThat(store.getRoot().getChildren().containsKey("c"), is(false));
+        store.clear();
+        assertThat(store.getNumberOfSeries(), is(0));
+        assertThat(store.getAll().isEmpty(), is(true));
+    }
+
+    @Nonnull
+    protected static MeasurePoint point(@Nonnull String path, long timestamp, double value) {
+        return new MeasurePoint(path, new Date(timestamp), value);
+    }
+
+}
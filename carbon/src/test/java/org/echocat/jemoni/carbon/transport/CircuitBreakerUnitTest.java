@@ -0,0 +1,66 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.transport;
+
+import org.echocat.jomon.runtime.util.Duration;
+import org.junit.Test;
+
+import static org.echocat.jemoni.carbon.transport.ConnectionState.*;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+import static org.echocat.jomon.testing.BaseMatchers.isGreaterThanOrEqualTo;
+import static org.echocat.jomon.testing.BaseMatchers.isLessThanOrEqualTo;
+
+public class CircuitBreakerUnitTest {
+
+    @Test
+    public void testStateTransitions() throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker(new Duration("100ms"), new Duration("1s"));
+        assertThat(breaker.getState(), is(connected));
+        assertThat(breaker.isAttemptAllowed(0), is(true));
+
+        final long delay = breaker.recordFailure(1000);
+        assertThat(breaker.getState(), is(disconnected));
+        assertThat(breaker.isAttemptAllowed(1000 + delay - 1), is(false));
+        assertThat(breaker.getState(), is(disconnected));
+
+        assertThat(breaker.isAttemptAllowed(1000 + delay), is(true));
+        assertThat(breaker.getState(), is(reconnecting));
+
+        assertThat(breaker.recordSuccess(), is(reconnecting));
+        assertThat(breaker.getState(), is(connected));
+    }
+
+    @Test
+    public void testBackoffGrowsExponentiallyUpToMaximum() throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker(new Duration("100ms"), new Duration("1s"));
+        assertDelayBetween(breaker.recordFailure(0), 50, 100);
+        assertDelayBetween(breaker.recordFailure(0), 100, 200);
+        assertDelayBetween(breaker.recordFailure(0), 200, 400);
+        assertDelayBetween(breaker.recordFailure(0), 400, 800);
+        for (int i = 0; i < 100; i++) {
+            assertDelayBetween(breaker.recordFailure(0), 500, 1000);
+        }
+
+        breaker.recordSuccess();
+        assertDelayBetween(breaker.recordFailure(0), 50, 100);
+    }
+
+    protected static void assertDelayBetween(long delay, long minimum, long maximum) {
+        assertThat(delay, isGreaterThanOrEqualTo(minimum));
+        assertThat(delay, isLessThanOrEqualTo(maximum));
+    }
+
+}
@@ -0,0 +1,158 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.transport;
+
+import org.echocat.jomon.runtime.util.Duration;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.net.InetAddress.getLoopbackAddress;
+import static java.nio.charset.Charset.forName;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class TcpTransportIntegrationTest {
+
+    private final ServerSocket _serverSocket;
+    private final InetSocketAddress _address;
+    private final TcpTransport _transport = new TcpTransport();
+    private final List<SocketChannel> _fillers = new ArrayList<>();
+
+    public TcpTransportIntegrationTest() throws Exception {
+        _serverSocket = new ServerSocket(0, 1, getLoopbackAddress());
+        _serverSocket.setSoTimeout(5000);
+        _address = new InetSocketAddress(getLoopbackAddress(), _serverSocket.getLocalPort());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        _transport.close();
+        for (SocketChannel filler : _fillers) {
+            filler.close();
+        }
+        _serverSocket.close();
+    }
+
+    @Test
+    public void testGatheringWriteOfSeveralBuffers() throws Exception {
+        final ByteBuffer[] buffers = {bufferOf("a.b 1 1\n"), bufferOf("a.c 2 1\na."), bufferOf("d 3 1\n")};
+        _transport.write(_address, buffers);
+
+        try (final Socket socket = _serverSocket.accept()) {
+            assertThat(read(socket, 24), is("a.b 1 1\na.c 2 1\na.d 3 1\n"));
+        }
+        for (ByteBuffer buffer : buffers) {
+            assertThat(buffer.hasRemaining(), is(false));
+        }
+    }
+
+    @Test
+    public void testConnectTimeout() throws Exception {
+        fillBacklog();
+        _transport.setConnectTimeout(new Duration("200ms"));
+        final long start = System.currentTimeMillis();
+        try {
+            _transport.write(_address, new ByteBuffer[]{bufferOf("a.b 1 1\n")});
+            throw new AssertionError("Expected ConnectException.");
+        } catch (ConnectException expected) {}
+
+        assertThat(System.currentTimeMillis() - start < 5000, is(true));
+    }
+
+    @Test
+    public void testWriteTimeout() throws Exception {
+        _transport.setWriteTimeout(new Duration("200ms"));
+        final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024 * 1024);
+        try {
+            _transport.write(_address, new ByteBuffer[]{buffer});
+            throw new AssertionError("Expected SocketTimeoutException.");
+        } catch (SocketTimeoutException expected) {}
+
+        assertThat(buffer.position() > 0, is(true));
+        assertThat(buffer.hasRemaining(), is(true));
+    }
+
+    @Test
+    public void testReconnectAfterClosedChannel() throws Exception {
+        _transport.write(_address, new ByteBuffer[]{bufferOf("a.b 1 1\n")});
+        try (final Socket socket = _serverSocket.accept()) {
+            assertThat(read(socket, 8), is("a.b 1 1\n"));
+        }
+        boolean failed = false;
+        for (int i = 0; !failed && i < 100; i++) {
+            try {
+                _transport.write(_address, new ByteBuffer[]{bufferOf("a.c 2 1\n")});
+                Thread.sleep(10);
+            } catch (IOException ignored) {
+                failed = true;
+            }
+        }
+        assertThat(failed, is(true));
+
+        _transport.write(_address, new ByteBuffer[]{bufferOf("a.d 3 1\n")});
+        try (final Socket socket = _serverSocket.accept()) {
+            assertThat(read(socket, 8), is("a.d 3 1\n"));
+        }
+    }
+
+    /**
+     * Fills the accept queue of the never accepting server socket, so the kernel drops further connection attempts.
+     */
+    protected void fillBacklog() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            final SocketChannel filler = SocketChannel.open();
+            _fillers.add(filler);
+            filler.configureBlocking(false);
+            filler.connect(_address);
+        }
+        Thread.sleep(100);
+    }
+
+    @Nonnull
+    protected static String read(@Nonnull Socket socket, @Nonnegative int length) throws Exception {
+        socket.setSoTimeout(5000);
+        final byte[] bytes = new byte[length];
+        final InputStream is = socket.getInputStream();
+        int read = 0;
+        while (read < length) {
+            final int count = is.read(bytes, read, length - read);
+            if (count < 0) {
+                throw new IOException("Expected " + length + " bytes but got only " + read + ".");
+            }
+            read += count;
+        }
+        return new String(bytes, "US-ASCII");
+    }
+
+    @Nonnull
+    protected static ByteBuffer bufferOf(@Nonnull String content) {
+        return ByteBuffer.wrap(content.getBytes(forName("US-ASCII")));
+    }
+
+}
@@ -0,0 +1,93 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat JeMoni, Copyright (c) 2012-2016 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jemoni.carbon.transport;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.net.InetAddress.getLoopbackAddress;
+import static java.nio.charset.Charset.forName;
+import static java.util.Arrays.asList;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class UdpTransportIntegrationTest {
+
+    private final DatagramSocket _socket;
+    private final InetSocketAddress _address;
+    private final UdpTransport _transport = new UdpTransport();
+
+    public UdpTransportIntegrationTest() throws Exception {
+        _socket = new DatagramSocket(new InetSocketAddress(getLoopbackAddress(), 0));
+        _socket.setSoTimeout(5000);
+        _address = new InetSocketAddress(getLoopbackAddress(), _socket.getLocalPort());
+        _transport.setDatagramSize(20);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        _transport.close();
+        _socket.close();
+    }
+
+    @Test
+    public void testLinesArePackedWithoutSplitting() throws Exception {
+        _transport.write(_address, new ByteBuffer[]{bufferOf("a.b 1 1\na.c 2 1\na.d 3 1\na."), bufferOf("e 4 1\n")});
+
+        assertThat(receive(3), is(asList("a.b 1 1\na.c 2 1\n", "a.d 3 1\na.e 4 1\n")));
+    }
+
+    @Test
+    public void testTooLongLinesAreDropped() throws Exception {
+        try {
+            _transport.write(_address, new ByteBuffer[]{bufferOf("a.b 1 1\nthis.is.a.too.long.path 2 1\na.c 3 1\n")});
+            throw new AssertionError("Expected IncompleteWriteException.");
+        } catch (IncompleteWriteException expected) {}
+
+        assertThat(receive(3), is(asList("a.b 1 1\n", "a.c 3 1\n")));
+    }
+
+    @Nonnull
+    protected List<String> receive(int maximum) throws Exception {
+        final List<String> result = new ArrayList<>();
+        final DatagramPacket packet = new DatagramPacket(new byte[1024], 1024);
+        boolean timedOut = false;
+        for (int i = 0; !timedOut && i < maximum; i++) {
+            try {
+                _socket.receive(packet);
+                result.add(new String(packet.getData(), 0, packet.getLength(), "US-ASCII"));
+                _socket.setSoTimeout(200);
+            } catch (SocketTimeoutException ignored) {
+                timedOut = true;
+            }
+        }
+        return result;
+    }
+
+    @Nonnull
+    protected static ByteBuffer bufferOf(@Nonnull String content) {
+        return ByteBuffer.wrap(content.getBytes(forName("US-ASCII")));
+    }
+
+}
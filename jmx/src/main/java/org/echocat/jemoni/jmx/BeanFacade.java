@@ -93,7 +93,15 @@ public class BeanFacade<B> implements DynamicMBean {
 
     @Override
     public AttributeList getAttributes(String[] attributes) {
-        throw new UnsupportedOperationException();
+        final AttributeList result = new AttributeList(attributes.length);
+        for (String name : attributes) {
+            try {
+                result.add(new Attribute(name, getAttribute(name)));
+            } catch (Exception ignored) {
+                // Attributes which could not be read are omitted - callers could ask for them by getAttribute().
+            }
+        }
+        return result;
     }
 
     @Override
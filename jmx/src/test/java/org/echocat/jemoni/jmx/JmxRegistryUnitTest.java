@@ -17,6 +17,8 @@ package org.echocat.jemoni.jmx;
 import org.echocat.jemoni.jmx.sample.TestBean1;
 import org.junit.Test;
 
+import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanInfo;
 import javax.management.MBeanOperationInfo;
@@ -42,6 +44,20 @@ public class JmxRegistryUnitTest {
         }
     }
 
+    @Test
+    public void testGetAttributes() throws Exception {
+        final JmxRegistry registry = new JmxRegistry();
+
+        final TestBean1 testBean1 = new TestBean1();
+        testBean1.setBoolean(true);
+        try (final RegistrationWithFacade<TestBean1> registration = registry.register(testBean1)) {
+            final AttributeList attributes = registry.getServer().getAttributes(registration.getObjectName(), new String[]{"roInteger", "unknown", "boolean"});
+            assertThat(attributes.asList().size(), is(2));
+            assertThat(attributes.asList().get(0), is(new Attribute("roInteger", 666)));
+            assertThat(attributes.asList().get(1), is(new Attribute("boolean", true)));
+        }
+    }
+
     protected void check(MBeanAttributeInfo[] attributes) {
         assertThat(attributes.length, is(4));
 